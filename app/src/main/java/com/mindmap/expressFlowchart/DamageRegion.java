@@ -0,0 +1,69 @@
+package com.mindmap.expressFlowchart;
+
+import android.graphics.RectF;
+
+/**
+ * Union of the world space areas that changed since the last frame,
+ * mapped to the screen rectangle MainView has to repaint.
+ */
+public class DamageRegion {
+
+    private float mLeft,mTop,mRight,mBottom;
+    private boolean mEmpty = true;
+    //screen rectangle from the last mapToScreen, rounded outwards
+    private int mScreenLeft,mScreenTop,mScreenRight,mScreenBottom;
+
+    public void reset(){
+        mEmpty = true;
+    }
+
+    public boolean isEmpty(){
+        return mEmpty;
+    }
+
+    public void union(RectF bounds){
+        union(bounds.left,bounds.top,bounds.right,bounds.bottom);
+    }
+
+    public void union(float left,float top,float right,float bottom){
+        if(mEmpty) {
+            mLeft = left;
+            mTop = top;
+            mRight = right;
+            mBottom = bottom;
+            mEmpty = false;
+            return;
+        }
+        mLeft = Math.min(mLeft,left);
+        mTop = Math.min(mTop,top);
+        mRight = Math.max(mRight,right);
+        mBottom = Math.max(mBottom,bottom);
+    }
+
+    /**
+     * Map the damaged world area through the camera, screen = world*scale + translate
+     * @param pad extra pixels on every side for antialiased edges
+     */
+    public void mapToScreen(float scale,float translateX,float translateY,int pad){
+        mScreenLeft = (int)Math.floor(mLeft*scale+translateX)-pad;
+        mScreenTop = (int)Math.floor(mTop*scale+translateY)-pad;
+        mScreenRight = (int)Math.ceil(mRight*scale+translateX)+pad;
+        mScreenBottom = (int)Math.ceil(mBottom*scale+translateY)+pad;
+    }
+
+    public int getScreenLeft(){
+        return mScreenLeft;
+    }
+
+    public int getScreenTop(){
+        return mScreenTop;
+    }
+
+    public int getScreenRight(){
+        return mScreenRight;
+    }
+
+    public int getScreenBottom(){
+        return mScreenBottom;
+    }
+}
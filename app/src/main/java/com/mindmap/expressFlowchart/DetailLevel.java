@@ -0,0 +1,8 @@
+package com.mindmap.expressFlowchart;
+
+/**
+ * How much of each drawable is rendered, from everything down to plain shapes
+ */
+enum DetailLevel{
+    FULL,NO_LABELS,NO_ARROWHEADS,SIMPLE_SHAPES;
+}
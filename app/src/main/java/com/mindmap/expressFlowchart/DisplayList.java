@@ -0,0 +1,61 @@
+package com.mindmap.expressFlowchart;
+
+import android.graphics.Canvas;
+import android.graphics.RecordingCanvas;
+import android.graphics.RectF;
+import android.graphics.RenderNode;
+import android.os.Build;
+
+import androidx.annotation.RequiresApi;
+
+/**
+ * Recorded drawing commands of one MindMapDrawable, replayed until the drawable changes.
+ * Only loaded on API 29+, where RenderNode is public, and only used on hardware accelerated canvases.
+ */
+@RequiresApi(api = Build.VERSION_CODES.Q)
+class DisplayList {
+
+    private final RenderNode mRenderNode = new RenderNode("MindMapDrawable");
+    private final RectF mBounds = new RectF();
+    //key of the current recording
+    private boolean mRecorded = false;
+    private int mRevision;
+    private float mScale;
+    private DetailLevel mDetail;
+
+    DisplayList() {
+        //bounds only position the recording, the content is never cut by them
+        mRenderNode.setClipToBounds(false);
+    }
+
+    /**
+     * Draw the drawable through its recording, recording it again first if it changed
+     * @param revision changes whenever anything draw() depends on changes
+     * @param scale    scale the drawable is drawn at
+     * @param detail   level of detail it is drawn with
+     */
+    void draw(Canvas canvas,MindMapDrawable drawable,int revision,float scale,DetailLevel detail) {
+        if(!mRecorded || revision != mRevision || scale != mScale || detail != mDetail) {
+            drawable.getDrawBounds(mBounds,scale);
+            int left = (int)Math.floor(mBounds.left), top = (int)Math.floor(mBounds.top);
+            mRenderNode.setPosition( left, top, (int)Math.ceil(mBounds.right), (int)Math.ceil(mBounds.bottom) );
+            RecordingCanvas recording = mRenderNode.beginRecording();
+            recording.translate( -left, -top );
+            drawable.drawDirect(recording);
+            mRenderNode.endRecording();
+            mRecorded = true;
+            mRevision = revision;
+            mScale = scale;
+            mDetail = detail;
+        }
+        canvas.drawRenderNode(mRenderNode);
+    }
+
+    /**
+     * Callers check for API 29 first, before this class is loaded
+     * @return true when canvas can replay a DisplayList
+     */
+    static boolean isSupported(Canvas canvas) {
+        return canvas.isHardwareAccelerated();
+    }
+}
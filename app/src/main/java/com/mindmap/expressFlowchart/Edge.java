@@ -5,141 +5,145 @@ import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Path;
 import android.graphics.PointF;
-import android.graphics.Rect;
 import android.graphics.RectF;
+import android.os.Build;
 
-import org.json.JSONObject;
-
-import java.util.List;
+import com.mindmap.expressFlowchart.document.ArrowShape;
+import com.mindmap.expressFlowchart.document.Box;
+import com.mindmap.expressFlowchart.document.EdgeLayout;
+import com.mindmap.expressFlowchart.document.GraphEdge;
+import com.mindmap.expressFlowchart.document.GraphNode;
+import com.mindmap.expressFlowchart.document.IdRemap;
 
-enum ArrowShape { START,END,DOUBLE,NONE };
+import org.json.JSONException;
+import org.json.JSONObject;
 
+/**
+ * Draws a GraphEdge, everything that is saved lives in the model
+ */
 public class Edge implements MindMapDrawable{
 
-    //Saved in Json
-    private String mId;
-    private int mEdgeColorID;
-    private float mEdgeStrokeWidth;
-    private float mTextSize;
-    private Node mFromNode;
-    private Node mToNode;
-    private String mTitle = "";
-    private String mDescription  = "";
-    private ArrowShape mArrowShape = ArrowShape.NONE;
+    private final GraphEdge mModel;
     //Not Saved in Json
-    public static final int DEFAULT_STROKE_WIDTH = 14,DEFAULT_EDGE_COLOR = Color.RED,MIN_STROKE_WIDTH = 10;
+    public static final int DEFAULT_STROKE_WIDTH = (int)GraphEdge.DEFAULT_STROKE_WIDTH,DEFAULT_EDGE_COLOR = GraphEdge.DEFAULT_COLOR,
+            MIN_STROKE_WIDTH = (int)GraphEdge.MIN_STROKE_WIDTH;
     public static final float DEFAULT_CURSOR_RADIUS = 30, DEFAULT_CURSOR_STROKE_WIDTH = 4f;
     public static final int DEFAULT_TEXT_COLOR = Color.BLACK;
-    public static final int DEFAULT_TEXT_SIZE = 40;
+    public static final int DEFAULT_TEXT_SIZE = (int)GraphEdge.DEFAULT_TEXT_SIZE;
 
-    private Path mPath,mStartCursorPath,mEndCursorPath;
+    private Path mPath,mStartCursorPath,mEndCursorPath,mArrowPath;
     private Paint mPaint,mCursorPaint,mTitlePaint, mArrowHeadFillPaint;
     //Edge state variables
     private boolean mEditable;
     private MainView mParentView;
-    private float mCurrentScale = 1f;
-    private float mStartX,mStartY,mEndX,mEndY;
+    //Scratch state reused by draw so a frame does not allocate
+    private final EdgeLayout mLayout = new EdgeLayout();
+    private final Box mBox = new Box();
+    private final LabelCache mLabel = new LabelCache();
+    //Bumped when the edge starts or stops being edited, the model counts every other change
+    private int mEditRevision = 0;
+    private DisplayList mDisplayList;
 
     public void setArrowShape(ArrowShape arrowShape){
-        mArrowShape = arrowShape;
+        mModel.setArrowShape(arrowShape);
     }
 
     public ArrowShape getArrowShape() {
-        return mArrowShape;
+        return mModel.getArrowShape();
     }
 
     public PointF getStartXY() {
-        return new PointF( mStartX, mStartY );
+        return new PointF( mModel.getStartX(), mModel.getStartY() );
     }
 
     @Override
     public String getTitle(){
-        return mTitle;
+        return mModel.getTitle();
     }
 
     @Override
     public String getDescription(){
-        if(mDescription==null)
-            return "";
-        return mDescription;
+        return mModel.getDescription();
     }
 
     public Node getFromNode() {
-        return mFromNode;
+        return node(mModel.getFrom());
+    }
+
+    public Node getToNode() {
+        return node(mModel.getTo());
+    }
+
+    private static Node node(GraphNode model) {
+        return model == null ? null : (Node) model.getTag();
     }
 
     @Override
     public void setTitle(String title){
-        mTitle = title;
-        }
+        mModel.setTitle(title);
+    }
 
     @Override
     public void setDescription(String description){
-        if(description==null)
-            mDescription = "";
-        else
-            mDescription = description;
+        mModel.setDescription(description);
     }
 
     @Override
     public void setColorID(int colorID) {
-        this.mEdgeColorID = colorID;
+        mModel.setColor(colorID);
     }
 
     @Override
     public int getColorID() {
-        return mEdgeColorID;
+        return mModel.getColor();
     }
 
     public DrawableType type(){
         return DrawableType.EDGE;
     }
 
-    //Called from MainView
-    Edge(float startX,float startY,float endX,float endY,MainView parent){
-        setStart(startX,startY);
-        setEnd(endX,endY);
-        init(parent);
+    @Override
+    public GraphEdge getModel() {
+        return mModel;
+    }
+
+    //Called from MainView when the user starts drawing an edge from fromNode
+    Edge(Node fromNode,float endX,float endY,MainView parent){
+        this(new GraphEdge(null,fromNode.getModel(),endX,endY),parent);
         editable(true);
-        mId = FileHelper.getUniqueID();
     }
 
-    //Called while decoding Json
     Edge(Node fromNode,Node toNode,String Id,MainView parent,int colorID,String title,String description,ArrowShape arrowShape,float textSize){
-        float[] startXY = (fromNode).centre();
-        float[] endXY = (toNode).centre();
-        setStart(startXY[0],startXY[1]);
-        setEnd(endXY[0],endXY[1]);
-        setFromNode(fromNode);
-        setToNode(toNode);
-        init( parent );
-        editable(false);
-        mId = Id;
-        setColorID( colorID );
-        setTitle( title );
-        setDescription( description);
-        setArrowShape(arrowShape);
-        mTextSize = textSize;
+        this(new GraphEdge(Id,fromNode.getModel(),toNode.getModel(),colorID,title,description,arrowShape,textSize),parent);
     }
 
-    public void setFromNode(Node fromNode){
-        mFromNode = fromNode;
-    }
-    public void setToNode(Node toNode){
-        mToNode = toNode;
+    Edge(GraphEdge model,MainView parent){
+        mModel = model;
+        model.setTag(this);
+        init(parent);
     }
 
-    public void setStart(float startX,float startY) {
-        mStartX = startX;
-        mStartY = startY;
-    }
+    /**
+     * Move the free end of an edge that has no end node yet
+     */
     public void setEnd(float endX,float endY) {
-        mEndX = endX;
-        mEndY = endY;
+        mModel.setFreeEnd(endX,endY);
+    }
+
+    public boolean isEditable(){
+        return mEditable;
     }
 
     public void editable(boolean state){
         mEditable = state;
+        mEditRevision++;
+    }
+
+    /**
+     * @return a number that changes whenever the edge's look changes, the end nodes' size and shape included
+     */
+    int getRevision(){
+        return mModel.getRevision() + mEditRevision;
     }
 
     private void init(MainView parent){
@@ -147,6 +151,7 @@ public class Edge implements MindMapDrawable{
         mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         mPaint.setStyle(Paint.Style.STROKE);
         mPath = new Path();
+        mArrowPath = new Path();
 
         mCursorPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         mCursorPaint.setStyle(Paint.Style.STROKE);
@@ -154,333 +159,178 @@ public class Edge implements MindMapDrawable{
         mCursorPaint.setStrokeWidth( DEFAULT_CURSOR_STROKE_WIDTH );
         mStartCursorPath = new Path();
         mEndCursorPath = new Path();
-        mEdgeColorID = DEFAULT_EDGE_COLOR;
-        mPaint.setColor( mEdgeColorID );
-        mCurrentScale = mParentView.mScaleFactor;
-        mEdgeStrokeWidth = (int)(DEFAULT_STROKE_WIDTH);
-        mPaint.setStrokeWidth(mEdgeStrokeWidth);
-        mCursorPaint.setColor( mEdgeColorID );
 
         mTitlePaint= new Paint();
         mTitlePaint.setColor( DEFAULT_TEXT_COLOR );
-        mTextSize = DEFAULT_TEXT_SIZE;
-        mTitlePaint.setTextSize(mTextSize);
+        mTitlePaint.setTextSize(mModel.getTextSize());
         mTitlePaint.setTextAlign(Paint.Align.CENTER);
 
         mArrowHeadFillPaint = new Paint();
         mArrowHeadFillPaint.setStyle(Paint.Style.FILL);
-        mArrowHeadFillPaint.setColor(mEdgeColorID);
-    }
-
-    String reduceText(String title,PointF start,PointF end){
-        if(title.equals(""))
-            return "";
-        Rect boundTitle = new Rect();
-        int length = title.length();
-        float pathLength = calculateDistance(start,end);
-        mTitlePaint.getTextBounds(title, 0, length, boundTitle);
-        int x = boundTitle.width();
-        int y = boundTitle.height();
-
-        while(boundTitle.width()>pathLength/2) {
-            int factor =  (int)(boundTitle.width()/(pathLength));
-            if(factor>2)
-                length = (2*length)/factor;
-            else
-                length = length-1;
-            mTitlePaint.getTextBounds( title, 0, length, boundTitle );
-        }
-        if(length==title.length())
-            return title;
-        if(length<4)
-            return "...";
-        return title.substring(0,length-3)+"...";
-    }
-
-    @Override
-    public void draw(Canvas canvas,PointF reference){
-        mStartX = mStartX-reference.x;
-        mStartY = mStartY-reference.y;
-        mEndX = mEndX-reference.x;
-        mEndY = mEndY-reference.y;
-        mFromNode.set(mFromNode.getXY().x-reference.x,mFromNode.getXY().y-reference.y);
-        mToNode.set(mToNode.getXY().x-reference.x,mToNode.getXY().y-reference.y);
-        draw( canvas );
-        mStartX = mStartX+reference.x;
-        mStartY = mStartY+reference.y;
-        mEndX = mEndX+reference.x;
-        mEndY = mEndY+reference.y;
-        mFromNode.set(mFromNode.getXY().x+reference.x,mFromNode.getXY().y+reference.y);
-        mToNode.set(mToNode.getXY().x+reference.x,mToNode.getXY().y+reference.y);
     }
 
     public void draw(Canvas canvas) {
-        mPath.reset();
-
-        //get end and start direction points to calculate start and end angle
-        PointF startDirectionPoint = new PointF(0,0);
-        PointF endDirectionPoint = new PointF(0,0);
-        if(mStartX==mEndX) {
-            startDirectionPoint.x = mStartX;
-            endDirectionPoint.x = mEndX;
-            if (mEndY > mStartY) {
-                startDirectionPoint.y = mStartY + 10;
-                endDirectionPoint.y = mEndY - 10;
-            } else {
-                startDirectionPoint.y = mStartY - 10;
-                endDirectionPoint.y = mEndY + 10;
-            }
+        //checked here so DisplayList is never loaded below API 29
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && DisplayList.isSupported(canvas)) {
+            if(mDisplayList == null)
+                mDisplayList = new DisplayList();
+            mDisplayList.draw(canvas,this,getRevision(),mParentView.getDrawScale(),mParentView.getDetailLevel());
+            return;
         }
-        else {
-            float slope = -(mStartY - mEndY) / (mStartX - mEndX);//android cordinate increases downwards unlike ordinary coordinate
-            if(mStartX<mEndX) {
-                startDirectionPoint.x = mStartX + 10;
-                startDirectionPoint.y = mStartY - slope * 10;
-                endDirectionPoint.x = mEndX - 10;
-                endDirectionPoint.y = mEndY + slope*10;
-            }
-            else{
-                startDirectionPoint.x = mStartX - 10;
-                startDirectionPoint.y = mStartY + slope * 10;
-                endDirectionPoint.x = mEndX + 10;
-                endDirectionPoint.y = mEndY - slope*10;
-            }
+        drawDirect(canvas);
+    }
+
+    public void drawDirect(Canvas canvas) {
+        float scale = mParentView.getDrawScale();
+        DetailLevel detail = mParentView.getDetailLevel();
+        int color = mModel.getColor();
+        float strokeWidth = mModel.getStrokeWidth();
+        mPaint.setColor( color );
+        mPaint.setStrokeWidth( strokeWidth );
+        if(detail == DetailLevel.SIMPLE_SHAPES && !mEditable) {
+            //too small to tell where the node boundary is, join the centres
+            canvas.drawLine( mModel.getStartX(), mModel.getStartY(), mModel.getEndX(), mModel.getEndY(), mPaint );
+            return;
+        }
+        layout(detail);
+        EdgeLayout layout = mLayout;
+        mArrowHeadFillPaint.setColor( color );
+        if(layout.startArrow) {
+            layout.arrowHead( layout.arrowStartX, layout.arrowStartY, layout.startAngle, strokeWidth );
+            drawArrowHead( canvas );
         }
-        
-        //calculate start and end angles
-        float startAngle = calculateAngle(new PointF(mStartX,mStartY),startDirectionPoint);
-        float endAngle = calculateAngle(new PointF(mEndX,mEndY),endDirectionPoint);
-        
-        //calculate line arrow start and end points
-        PointF start = new PointF(mStartX,mStartY);
-        PointF end = new PointF(mEndX,mEndY);
-        if(!mEditable) {
-            calculateStartEndPointsInBoundary( start, end, startAngle, endAngle );
-            //drawing arrows and adjusting start and end points if necessary
-            mArrowHeadFillPaint.setColor( mEdgeColorID );
-            if (mArrowShape == ArrowShape.START || mArrowShape == ArrowShape.DOUBLE) {
-                drawArrowHead( canvas, start, startAngle );
-                start.x = start.x - (float) (4 * mEdgeStrokeWidth * Math.cos( startAngle ) * Math.cos( ARROW_ANGLE ));
-                start.y = start.y - (float) (4 * mEdgeStrokeWidth * Math.sin( startAngle ) * Math.cos( ARROW_ANGLE ));
-            }
-            if (mArrowShape == ArrowShape.END || mArrowShape == ArrowShape.DOUBLE) {
-                drawArrowHead( canvas, end, endAngle );
-                end.x = end.x - (float) (4 * mEdgeStrokeWidth * Math.cos( endAngle ) * Math.cos( ARROW_ANGLE ));
-                end.y = end.y - (float) (4 * mEdgeStrokeWidth * Math.sin( endAngle ) * Math.cos( ARROW_ANGLE ));
-            }
+        if(layout.endArrow) {
+            layout.arrowHead( layout.arrowEndX, layout.arrowEndY, layout.endAngle, strokeWidth );
+            drawArrowHead( canvas );
         }
 
-        mPath.moveTo( start.x, start.y );
-        mPath.quadTo( start.x, start.y, end.x, end.y );
-        mPaint.setColor( mEdgeColorID );
-        mPaint.setStrokeWidth( mEdgeStrokeWidth );
+        mPath.reset();
+        mPath.moveTo( layout.lineStartX, layout.lineStartY );
+        mPath.quadTo( layout.lineStartX, layout.lineStartY, layout.lineEndX, layout.lineEndY );
         canvas.drawPath( mPath,  mPaint);
 
 
-        mCursorPaint.setColor( mEdgeColorID );
+        mCursorPaint.setColor( color );
         if(mEditable) {
+            //cursors keep their size on screen whatever the zoom
+            mCursorPaint.setStrokeWidth( DEFAULT_CURSOR_STROKE_WIDTH/scale );
             mStartCursorPath.reset();
-            mStartCursorPath.addCircle( mStartX, mStartY, DEFAULT_CURSOR_RADIUS, Path.Direction.CW );
+            mStartCursorPath.addCircle( mModel.getStartX(), mModel.getStartY(), DEFAULT_CURSOR_RADIUS/scale, Path.Direction.CW );
             canvas.drawPath( mStartCursorPath, mCursorPaint );
 
             mEndCursorPath.reset();
-            mEndCursorPath.addCircle( mEndX, mEndY, DEFAULT_CURSOR_RADIUS, Path.Direction.CW );
+            mEndCursorPath.addCircle( mModel.getEndX(), mModel.getEndY(), DEFAULT_CURSOR_RADIUS/scale, Path.Direction.CW );
             canvas.drawPath( mEndCursorPath, mCursorPaint );
             return;
         }
-
-        //for maintaing orientation of the text flip the path if necessary.
-        if(mStartX>mEndX){
-            mPath.reset();
-            mPath.moveTo(end.x, end.y);
-            mPath.quadTo(end.x, end.y, start.x,start.y);
-        }
-        float voffset = 3.5f*mEdgeStrokeWidth;
-        if(mCurrentScale<1)
-            voffset/=mCurrentScale;
-        canvas.drawTextOnPath(reduceText(mTitle,start,end),mPath,0,voffset,mTitlePaint );
-
+        drawLabel( canvas );
     }
 
-    private void calculateStartEndPointsInBoundary(PointF start, PointF end, float startAngle, float endAngle) {
-        float startR = mFromNode.getR();
-        if(mFromNode.getShape()==NodeShape.CIRCLE) {
-            start.x = mStartX - startR * ((float) Math.cos( startAngle ));
-            start.y = mStartY - startR * ((float) Math.sin( startAngle ));
+    /**
+     * Add the line and arrowheads of this edge to batch instead of drawing them
+     * @return false when the edge is being edited and has to be drawn on its own
+     */
+    boolean batch(EdgeBatch batch) {
+        if(mEditable)
+            return false;
+        DetailLevel detail = mParentView.getDetailLevel();
+        int color = mModel.getColor();
+        float strokeWidth = mModel.getStrokeWidth();
+        if(detail == DetailLevel.SIMPLE_SHAPES) {
+            batch.addLine( color, strokeWidth, mModel.getStartX(), mModel.getStartY(), mModel.getEndX(), mModel.getEndY() );
+            return true;
         }
-        else if(mFromNode.getShape()==NodeShape.SQUARE) {
-            float sin = (float) Math.sin( startAngle );
-            float cos = (float) Math.cos( startAngle );
-            if (cos < 0 && Math.abs( sin ) <= Math.abs( cos )) {
-                start.x = mStartX + startR;
-                start.y = mStartY + startR * sin / cos;
-            }
-            else if(cos>0 && Math.abs(sin)<=Math.abs(cos)){
-                start.x = mStartX - startR;
-                start.y = mStartY - startR*sin/cos;
-            }
-            else if(sin > 0 && Math.abs(sin)>Math.abs(cos)){
-                start.x = mStartX - startR*cos/sin;
-                start.y = mStartY - startR;
-            }
-            else if(sin < 0 && Math.abs(sin)>Math.abs(cos)){
-                start.x = mStartX + startR*cos/sin;
-                start.y = mStartY + startR;
-            }
+        layout(detail);
+        EdgeLayout layout = mLayout;
+        if(layout.startArrow) {
+            layout.arrowHead( layout.arrowStartX, layout.arrowStartY, layout.startAngle, strokeWidth );
+            batch.addArrowHead( color, strokeWidth, layout.arrowTipX, layout.arrowTipY, layout.arrowX1, layout.arrowY1, layout.arrowX2, layout.arrowY2 );
         }
-        else if(mFromNode.getShape()==NodeShape.DIAMOND) {
-            float sin = (float) Math.sin( startAngle );
-            float cos = (float) Math.cos( startAngle );
-            if(sin>=0 && cos>0){
-                start.x = (-(float) Math.sqrt(2)*startR)/((sin/cos)+1) + mStartX ;
-                start.y = (-(float) Math.sqrt(2)*startR*(sin/cos))/((sin/cos)+1) + mStartY ;
-            }
-            if(sin>=0 && cos<0){
-                start.x = (-(float) Math.sqrt(2)*startR)/((sin/cos)-1) + mStartX;
-                start.y = (-(float) Math.sqrt(2)*startR*(sin/cos))/((sin/cos)-1) + mStartY ;
-            }
-            if(sin<=0 && cos<0){
-                start.x = ((float) Math.sqrt(2)*startR)/((sin/cos)+1) + mStartX ;
-                start.y = ((float) Math.sqrt(2)*startR*(sin/cos))/((sin/cos)+1) + mStartY ;
-            }
-            if(sin<=0 && cos>0){
-                start.x = ((float) Math.sqrt(2)*startR)/((sin/cos)-1) + mStartX;
-                start.y = ((float) Math.sqrt(2)*startR*(sin/cos))/((sin/cos)-1) + mStartY;
-            }
-            if(cos==0){
-                start.x = mStartX;
-                if(sin>0)
-                    start.y = mStartY - (float) Math.sqrt(2)*startR;
-                else
-                    start.y = mStartY + (float) Math.sqrt(2)*startR;
-            }
+        if(layout.endArrow) {
+            layout.arrowHead( layout.arrowEndX, layout.arrowEndY, layout.endAngle, strokeWidth );
+            batch.addArrowHead( color, strokeWidth, layout.arrowTipX, layout.arrowTipY, layout.arrowX1, layout.arrowY1, layout.arrowX2, layout.arrowY2 );
         }
+        batch.addLine( color, strokeWidth, layout.lineStartX, layout.lineStartY, layout.lineEndX, layout.lineEndY );
+        return true;
+    }
 
-        float endR = mToNode.getR();
-        if(mToNode.getShape()==NodeShape.CIRCLE) {
-            end.x = mEndX - endR * ((float) Math.cos( endAngle ));
-            end.y = mEndY - endR * ((float) Math.sin( endAngle ));
-        }
-        else if(mToNode.getShape()==NodeShape.SQUARE) {
-            float sin = (float) Math.sin( endAngle );
-            float cos = (float) Math.cos( endAngle );
-            if (cos < 0 && Math.abs( sin ) <= Math.abs( cos )) {
-                end.x = mEndX + endR;
-                end.y = mEndY + endR * sin / cos;
-            }
-            else if(cos>0 && Math.abs(sin)<=Math.abs(cos)){
-                end.x = mEndX - endR;
-                end.y = mEndY - endR*sin/cos;
-            }
-            else if(sin > 0 && Math.abs(sin)>Math.abs(cos)){
-                end.x = mEndX - endR*cos/sin;
-                end.y = mEndY - endR;
-            }
-            else if(sin < 0 && Math.abs(sin)>Math.abs(cos)){
-                end.x = mEndX + endR*cos/sin;
-                end.y = mEndY + endR;
-            }
+    /**
+     * Draw the title along the line, only at full detail. Uses the line from the last draw or batch call
+     */
+    void drawLabel(Canvas canvas) {
+        if(mEditable || mParentView.getDetailLevel() != DetailLevel.FULL)
+            return;
+        float scale = mParentView.getDrawScale();
+        EdgeLayout layout = mLayout;
+        //for maintaing orientation of the text flip the path if necessary.
+        mPath.reset();
+        if(mModel.getStartX()>mModel.getEndX()){
+            mPath.moveTo(layout.lineEndX, layout.lineEndY);
+            mPath.quadTo(layout.lineEndX, layout.lineEndY, layout.lineStartX, layout.lineStartY);
         }
-        else if(mToNode.getShape()==NodeShape.DIAMOND) {
-            float sin = (float) Math.sin( endAngle );
-            float cos = (float) Math.cos( endAngle );
-            if(sin>=0 && cos>0){
-                end.x = (-(float) Math.sqrt(2)*endR)/((sin/cos)+1) + mEndX ;
-                end.y = (-(float) Math.sqrt(2)*endR*(sin/cos))/((sin/cos)+1) + mEndY ;
-            }
-            if(sin>=0 && cos<0){
-                end.x = (-(float) Math.sqrt(2)*endR)/((sin/cos)-1) + mEndX;
-                end.y = (-(float) Math.sqrt(2)*endR*(sin/cos))/((sin/cos)-1) + mEndY ;
-            }
-            if(sin<=0 && cos<0){
-                end.x = ((float) Math.sqrt(2)*endR)/((sin/cos)+1) + mEndX ;
-                end.y = ((float) Math.sqrt(2)*endR*(sin/cos))/((sin/cos)+1) + mEndY ;
-            }
-            if(sin<=0 && cos>0){
-                end.x = ((float) Math.sqrt(2)*endR)/((sin/cos)-1) + mEndX;
-                end.y = ((float) Math.sqrt(2)*endR*(sin/cos))/((sin/cos)-1) + mEndY;
-            }
-            if(cos==0){
-                end.x = mEndX;
-                if(sin>0)
-                    end.y = mEndY - (float) Math.sqrt(2)*endR;
-                else
-                    end.y = mEndY + (float) Math.sqrt(2)*endR;
-            }
+        else {
+            mPath.moveTo(layout.lineStartX, layout.lineStartY);
+            mPath.quadTo(layout.lineStartX, layout.lineStartY, layout.lineEndX, layout.lineEndY);
         }
+        float voffset = 3.5f*mModel.getStrokeWidth();
+        if(scale<1)
+            voffset/=scale;
+        float textSize = Node.titleTextSize(mModel.getTextSize(),scale);
+        if(mTitlePaint.getTextSize() != textSize)
+            mTitlePaint.setTextSize(textSize);
+        canvas.drawTextOnPath(mLabel.get(mModel.getTitle(),mTitlePaint,layout.getLineLength()/2),mPath,0,voffset,mTitlePaint );
+    }
+
+    /**
+     * Work out the visible line between the node boundaries and where arrowheads go, results are left in mLayout
+     */
+    private void layout(DetailLevel detail) {
+        boolean drawArrowheads = detail == DetailLevel.FULL || detail == DetailLevel.NO_LABELS;
+        mLayout.compute( mModel, !mEditable, drawArrowheads );
     }
 
     boolean fromNode(Node node){
-       return mFromNode==node;
+       return getFromNode()==node;
     }
     boolean toNode(Node node){
-        return mToNode==node;
+        return getToNode()==node;
     }
 
     public boolean contains(float x, float y){
-        PointF leftTop = new PointF((float)Math.min(mEndX-3*mEdgeStrokeWidth,mStartX-3*mEdgeStrokeWidth),
-                                    (float)Math.min(mEndY+3*mEdgeStrokeWidth,mStartY-3*mEdgeStrokeWidth));
-        PointF rightBottom = new PointF((float)Math.max(mStartX+3*mEdgeStrokeWidth,mEndX+3*mEdgeStrokeWidth),
-                                        (float)Math.max(mStartY+3*mEdgeStrokeWidth,mEndY+3*mEdgeStrokeWidth));
-        RectF point =new RectF(x-0.1f,y-0.1f,x+0.1f,y+0.1f);
-        return point.intersect(new RectF( leftTop.x,leftTop.y,rightBottom.x,rightBottom.y ));
+        return mModel.contains(x,y);
     }
 
     @Override
-    public boolean onScreen(float width, float height) {
-
-        float left,top,right,bottom;
-        if(mStartX<mEndX) {
-            left = mStartX;
-            right = mEndX;
-        }
-        else {
-            left = mEndX;
-            right = mStartX;
-        }
-        if(mStartY<mEndY) {
-            top = mStartY;
-            bottom = mEndY;
-        }
-        else {
-            top = mEndY;
-            bottom = mStartY;
-        }
-        RectF boundPath = new RectF(left-mEdgeStrokeWidth,top-mEdgeStrokeWidth,right+mEdgeStrokeWidth,bottom+mEdgeStrokeWidth);
-        RectF boundView = new RectF(0,0,width,height);
-        return boundPath.intersect(boundView);
-
+    public void getBounds(RectF bounds) {
+        mModel.getBounds(mBox);
+        bounds.set(mBox.left,mBox.top,mBox.right,mBox.bottom);
     }
 
     @Override
-    public void move(float shiftX, float shiftY) {
-        mStartX = mStartX+shiftX;
-        mEndX = mEndX+shiftX;
-        mStartY = mStartY+ shiftY;
-        mEndY = mEndY+shiftY;
+    public void getDrawBounds(RectF bounds,float scale) {
+        getBounds(bounds);
+        //title is offset from the line, cursors keep their screen size
+        float titlePad = 3.5f*mModel.getStrokeWidth()/Math.min(scale,1) + Node.titleTextSize(mModel.getTextSize(),scale);
+        float cursorPad = (DEFAULT_CURSOR_RADIUS+DEFAULT_CURSOR_STROKE_WIDTH)/scale;
+        float pad = Math.max(titlePad,cursorPad);
+        bounds.left -= pad;
+        bounds.top -= pad;
+        bounds.right += pad;
+        bounds.bottom += pad;
     }
 
     public void setEdgeStrokeWidth(float edgeStrokeWidth) {
-        this.mEdgeStrokeWidth = Math.max(MIN_STROKE_WIDTH,edgeStrokeWidth);
+        mModel.setStrokeWidth(edgeStrokeWidth);
     }
 
     @Override
-    public void scale(float scale) {
-        float scaleFactor = scale/mCurrentScale;
-        mStartX*=scaleFactor;
-        mEndX*=scaleFactor;
-        mStartY*=scaleFactor;
-        mEndY*=scaleFactor;
-        mCurrentScale = scale;
-        mEdgeStrokeWidth = mEdgeStrokeWidth*scaleFactor;
-        mPaint.setStrokeWidth(mEdgeStrokeWidth);
-        mTextSize = (float) Math.max(DEFAULT_TEXT_SIZE, DEFAULT_TEXT_SIZE*mCurrentScale*0.5);
-        mTitlePaint.setTextSize(mTextSize);
+    public int getKey(){
+        return mModel.getKey();
     }
 
     @Override
     public String getId(){
-        return mId;
+        return mModel.getId();
     }
 
     /**
@@ -491,104 +341,44 @@ public class Edge implements MindMapDrawable{
     @Override
     public JSONObject toJson() {
         try {
-            JSONObject obj = new JSONObject();
-            obj.put( FileHelper.ITEM_TYPE_KEY, getClass().getName());
-            obj.put( FileHelper.EdgeSchema.EDGE_START_NODE_KEY, this.mFromNode.getId());
-            obj.put( FileHelper.EdgeSchema.EDGE_END_NODE_KEY, this.mToNode.getId());
-            obj.put( FileHelper.EdgeSchema.EDGE_STROKE_WIDTH_KEY, this.mEdgeStrokeWidth);
-            obj.put( FileHelper.ITEM_ID_KEY, this.getId());
-            obj.put( FileHelper.EdgeSchema.EDGE_TITLE_KEY, this.getTitle());
-            obj.put( FileHelper.EdgeSchema.EDGE_DESCRIPTION_KEY, this.getDescription());
-            obj.put( FileHelper.EdgeSchema.EDGE_COLOR_KEY, this.getColorID());
-            obj.put( FileHelper.EdgeSchema.EDGE_ARROW_TYPE_KEY, this.getArrowShape().toString());
-            obj.put( FileHelper.EdgeSchema.EDGE_TEXT_SIZE_KEY,this.mTextSize);
-            return obj;
-
-        } catch (Exception e) {
+            return mModel.toJson();
+        } catch (JSONException e) {
             return null;
         }
     }
 
-
-    private static ArrowShape shapeStringToEnum(String string){
-        if(string.equals( ArrowShape.START.toString()))
-            return ArrowShape.START;
-        else if(string.equals( ArrowShape.END.toString()))
-            return ArrowShape.END;
-        else if(string.equals( ArrowShape.DOUBLE.toString()))
-            return ArrowShape.DOUBLE;
-        return ArrowShape.NONE;
-    }
-
     /**
-     * Get a UmlBentArrow from a saved JSONObject representing a UmlBentArrow
+     * Get an Edge from a saved JSONObject representing an Edge
      *
-     * @param jsonObject     representing a UmlBentArrow
-     * @param alldrDrawables all possible shapes this UmlBentArrow can point to/from
-     * @return a new UmlBentArrow
+     * @param jsonObject     representing an Edge
+     * @param view  MainView the Edge is drawn in
+     * @param remap the nodes read before it from the same file, its ends are looked up in it
+     * @return a new Edge, null if either node is missing
      */
-    public static Edge fromJson(JSONObject jsonObject, List<MindMapDrawable> alldrDrawables,MainView view) {
+    public static Edge fromJson(JSONObject jsonObject, MainView view, IdRemap remap) {
         try {
-
-            Node startNode = null;
-            Node endNode = null;
-            String startShapeId = jsonObject.getString( FileHelper.EdgeSchema.EDGE_START_NODE_KEY);
-            String endShapeId = jsonObject.getString( FileHelper.EdgeSchema.EDGE_END_NODE_KEY);
-
-            for (MindMapDrawable shape : alldrDrawables) {
-                if (shape instanceof Node) {
-                    if (shape.getId().equals(startShapeId)) startNode = (Node) shape;
-                    if (shape.getId().equals(endShapeId)) endNode = (Node) shape;
-                }
-            }
-
-            //return a new arrow if we found both the items
-            return (startNode == null || endNode == null) ? null
-                    : new Edge(startNode, endNode,jsonObject.getString( FileHelper.ITEM_ID_KEY),view,jsonObject.getInt( FileHelper.EdgeSchema.EDGE_COLOR_KEY),
-                    jsonObject.getString( FileHelper.EdgeSchema.EDGE_TITLE_KEY),jsonObject.getString( FileHelper.EdgeSchema.EDGE_DESCRIPTION_KEY),
-                    shapeStringToEnum(jsonObject.getString( FileHelper.EdgeSchema.EDGE_ARROW_TYPE_KEY )),
-                    (float)jsonObject.getDouble( FileHelper.EdgeSchema.EDGE_TEXT_SIZE_KEY));
+            GraphEdge model = GraphEdge.fromJson(jsonObject,remap);
+            return model == null ? null : new Edge(model,view);
         } catch (Exception e) {
             return null;
         }
     }
 
-    //how far the user can click away from an arrow to select it
-    private final double ARROW_ANGLE = Math.PI / 6d;
-
-    static private float calculateAngle(PointF location, PointF directionPoint){
-
-        float dx = location.x - directionPoint.x;
-        float dy = (location.y - directionPoint.y);
-        return  (float) Math.atan2(dy, dx);
-
-    }
-
-    static private float calculateDistance(PointF p1, PointF p2) {
-        return (float)Math.sqrt((p1.x-p2.x)*(p1.x-p2.x) + (p1.y-p2.y)*(p1.y-p2.y));
-    }
-
-    private void drawArrowHead(Canvas canvas, PointF location, float angle) {
-
-        float arrLength = 4*mEdgeStrokeWidth;
-        /* logic inspired by Cay Horstmann's Violet */
-        float x1 = (float) (location.x - arrLength * Math.cos(angle + ARROW_ANGLE));
-        float y1 = (float) (location.y - arrLength * Math.sin(angle + ARROW_ANGLE));
-        float x2 = (float) (location.x - arrLength * Math.cos(angle - ARROW_ANGLE));
-        float y2 = (float) (location.y - arrLength * Math.sin(angle - ARROW_ANGLE));
-
-        Path outlinePath = new Path();
-        outlinePath.moveTo(location.x, location.y);
-        outlinePath.lineTo(x1, y1);
+    private void drawArrowHead(Canvas canvas) {
+        EdgeLayout layout = mLayout;
+        Path outlinePath = mArrowPath;
+        outlinePath.reset();
+        outlinePath.moveTo(layout.arrowTipX, layout.arrowTipY);
+        outlinePath.lineTo(layout.arrowX1, layout.arrowY1);
 
 
-        outlinePath.lineTo(x2, y2);
+        outlinePath.lineTo(layout.arrowX2, layout.arrowY2);
         outlinePath.close();
 
         canvas.drawPath(outlinePath, mArrowHeadFillPaint );
     }
 
     public float getEdgeStrokeWidth() {
-        return mEdgeStrokeWidth;
+        return mModel.getStrokeWidth();
     }
 }
@@ -0,0 +1,143 @@
+package com.mindmap.expressFlowchart;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+
+import java.util.ArrayList;
+
+/**
+ * Straight edges and arrowheads of a frame grouped by (color, stroke width).
+ * Each group is drawn with one drawLines call and one drawPath for all of its arrowheads,
+ * so the number of draw calls follows the number of edge styles, not the number of edges.
+ */
+public class EdgeBatch {
+
+    private static class Group {
+        int color;
+        float width;
+        float[] lines = new float[64]; //x1,y1,x2,y2 per line
+        int lineCount = 0; //floats used in lines
+        final Path arrowHeads = new Path();
+        boolean hasArrowHeads = false;
+    }
+
+    //groups are kept between frames, only the first mGroupCount are in use
+    private final ArrayList<Group> mGroups = new ArrayList<>();
+    private int mGroupCount = 0;
+    private final Paint mLinePaint;
+    private final Paint mArrowHeadPaint;
+    private int mDrawCalls = 0;
+
+    public EdgeBatch() {
+        //same paints Edge draws with on its own
+        mLinePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mLinePaint.setStyle(Paint.Style.STROKE);
+        mArrowHeadPaint = new Paint();
+        mArrowHeadPaint.setStyle(Paint.Style.FILL);
+    }
+
+    /**
+     * Start a new frame
+     */
+    public void reset() {
+        for (int i = 0; i < mGroupCount; i++) {
+            Group group = mGroups.get(i);
+            group.lineCount = 0;
+            if(group.hasArrowHeads)
+                group.arrowHeads.reset();
+            group.hasArrowHeads = false;
+        }
+        mGroupCount = 0;
+    }
+
+    private Group group(int color,float width) {
+        //maps use a handful of styles, a linear search beats hashing here
+        for (int i = 0; i < mGroupCount; i++) {
+            Group group = mGroups.get(i);
+            if(group.color == color && group.width == width)
+                return group;
+        }
+        if(mGroupCount == mGroups.size())
+            mGroups.add(new Group());
+        Group group = mGroups.get(mGroupCount++);
+        group.color = color;
+        group.width = width;
+        return group;
+    }
+
+    public void addLine(int color,float width,float startX,float startY,float endX,float endY) {
+        Group group = group(color,width);
+        if(group.lineCount+4 > group.lines.length) {
+            float[] lines = new float[2*group.lines.length];
+            System.arraycopy(group.lines,0,lines,0,group.lineCount);
+            group.lines = lines;
+        }
+        float[] lines = group.lines;
+        int i = group.lineCount;
+        lines[i] = startX;
+        lines[i+1] = startY;
+        lines[i+2] = endX;
+        lines[i+3] = endY;
+        group.lineCount = i+4;
+    }
+
+    /**
+     * Add a filled triangle with its tip at tipX,tipY
+     */
+    public void addArrowHead(int color,float width,float tipX,float tipY,float x1,float y1,float x2,float y2) {
+        Group group = group(color,width);
+        group.arrowHeads.moveTo(tipX,tipY);
+        group.arrowHeads.lineTo(x1,y1);
+        group.arrowHeads.lineTo(x2,y2);
+        group.arrowHeads.close();
+        group.hasArrowHeads = true;
+    }
+
+    /**
+     * Draw every group, arrowheads first like Edge does
+     */
+    public void draw(Canvas canvas) {
+        mDrawCalls = 0;
+        for (int i = 0; i < mGroupCount; i++) {
+            Group group = mGroups.get(i);
+            if(group.hasArrowHeads) {
+                mArrowHeadPaint.setColor(group.color);
+                canvas.drawPath(group.arrowHeads,mArrowHeadPaint);
+                mDrawCalls++;
+            }
+            if(group.lineCount > 0) {
+                mLinePaint.setColor(group.color);
+                mLinePaint.setStrokeWidth(group.width);
+                canvas.drawLines(group.lines,0,group.lineCount,mLinePaint);
+                mDrawCalls++;
+            }
+        }
+    }
+
+    /**
+     * @return number of styles in the current frame
+     */
+    public int getGroupCount() {
+        return mGroupCount;
+    }
+
+    /**
+     * @return number of lines added to the group of the given style
+     */
+    public int getLineCount(int color,float width) {
+        for (int i = 0; i < mGroupCount; i++) {
+            Group group = mGroups.get(i);
+            if(group.color == color && group.width == width)
+                return group.lineCount/4;
+        }
+        return 0;
+    }
+
+    /**
+     * @return canvas calls made by the last draw()
+     */
+    public int getDrawCalls() {
+        return mDrawCalls;
+    }
+}
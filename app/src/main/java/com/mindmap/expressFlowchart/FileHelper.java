@@ -1,19 +1,18 @@
 package com.mindmap.expressFlowchart;
 
+import android.app.Activity;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.graphics.Bitmap;
 import android.os.Environment;
-import android.widget.Toast;
 
-import org.json.JSONObject;
+import com.mindmap.expressFlowchart.document.DocumentSchema;
+import com.mindmap.expressFlowchart.document.GraphItem;
+import com.mindmap.expressFlowchart.document.MapCompression;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.util.UUID;
 
 /**
  * Use to manage Files, i.e. saving and loading
@@ -26,45 +25,58 @@ public final class FileHelper {
     public final File PICTURES_FOLDER;
     /** Extension for saved files */
     public static final String EXTENSION = ".map";
+    /** Extension for files in the binary .map format, see BinaryMapFormat */
+    public static final String BINARY_EXTENSION = ".mapb";
     /** Extension used for images */
     public static final String IMG_EXTENSION = ".png";
+    /** Compression level of saved maps until another one is set in the options, plain files every version can open */
+    public static final int DEFAULT_COMPRESSION_LEVEL = MapCompression.NONE;
 
+    //keys of the .map format, DocumentSchema defines them for the document model
     /** key used to get an items */
-    public static final String ITEMS_KEY = "items";
-    /** key used to get an items */
-    public static final String SCALE_KEY = "scale";
+    public static final String ITEMS_KEY = DocumentSchema.ITEMS_KEY;
+    /** key used to get the zoom of the view */
+    public static final String SCALE_KEY = DocumentSchema.SCALE_KEY;
+    /** keys used to get the pan of the view, files without them hold screen coordinates */
+    public static final String TRANSLATE_X_KEY = DocumentSchema.TRANSLATE_X_KEY;
+    public static final String TRANSLATE_Y_KEY = DocumentSchema.TRANSLATE_Y_KEY;
     /** key used to get an item type */
-    public static final String ITEM_TYPE_KEY = "drawable_type";
+    public static final String ITEM_TYPE_KEY = DocumentSchema.ITEM_TYPE_KEY;
     /** key used to get an item id */
-    public static final String ITEM_ID_KEY = "drawable_id";
+    public static final String ITEM_ID_KEY = DocumentSchema.ITEM_ID_KEY;
 
     public class NodeSchema{
         NodeSchema(){};
-        public static final String NODE_CENTRE_X_KEY = "node_centre_x";
-        public static final String NODE_CENTRE_Y_KEY = "node_centre_y";
-        public static final String NODE_RADIUS_KEY = "node_radius";
-        public static final String NODE_TITLE_KEY = "node_title";
-        public static final String NODE_DESCRIPTION_KEY = "node_description";
-        public static final String NODE_COLOR_KEY = "node_color";
-        public static final String NODE_SHAPE_KEY = "node_shape";
-        public static final String NODE_TEXT_SIZE_KEY = "node_text_size";
+        public static final String NODE_CENTRE_X_KEY = DocumentSchema.NODE_CENTRE_X_KEY;
+        public static final String NODE_CENTRE_Y_KEY = DocumentSchema.NODE_CENTRE_Y_KEY;
+        public static final String NODE_RADIUS_KEY = DocumentSchema.NODE_RADIUS_KEY;
+        public static final String NODE_TITLE_KEY = DocumentSchema.NODE_TITLE_KEY;
+        public static final String NODE_DESCRIPTION_KEY = DocumentSchema.NODE_DESCRIPTION_KEY;
+        public static final String NODE_COLOR_KEY = DocumentSchema.NODE_COLOR_KEY;
+        public static final String NODE_SHAPE_KEY = DocumentSchema.NODE_SHAPE_KEY;
+        public static final String NODE_TEXT_SIZE_KEY = DocumentSchema.NODE_TEXT_SIZE_KEY;
     }
 
     public class EdgeSchema{
         EdgeSchema(){};
-        public static final String EDGE_START_NODE_KEY = "edge_start_node";
-        public static final String EDGE_END_NODE_KEY = "edge_end_node";
-        public static final String EDGE_STROKE_WIDTH_KEY = "edge_stroke_width";
-        public static final String EDGE_TITLE_KEY = "edge_title";
-        public static final String EDGE_DESCRIPTION_KEY = "edge_description";
-        public static final String EDGE_COLOR_KEY = "edge_color";
-        public static final String EDGE_ARROW_TYPE_KEY = "edge_arrow_type";
-        public static final String EDGE_TEXT_SIZE_KEY = "edge_text_size";
+        public static final String EDGE_START_NODE_KEY = DocumentSchema.EDGE_START_NODE_KEY;
+        public static final String EDGE_END_NODE_KEY = DocumentSchema.EDGE_END_NODE_KEY;
+        public static final String EDGE_STROKE_WIDTH_KEY = DocumentSchema.EDGE_STROKE_WIDTH_KEY;
+        public static final String EDGE_TITLE_KEY = DocumentSchema.EDGE_TITLE_KEY;
+        public static final String EDGE_DESCRIPTION_KEY = DocumentSchema.EDGE_DESCRIPTION_KEY;
+        public static final String EDGE_COLOR_KEY = DocumentSchema.EDGE_COLOR_KEY;
+        public static final String EDGE_ARROW_TYPE_KEY = DocumentSchema.EDGE_ARROW_TYPE_KEY;
+        public static final String EDGE_TEXT_SIZE_KEY = DocumentSchema.EDGE_TEXT_SIZE_KEY;
 
     }
 
 
+    private final SharedPreferences mPreferences;
+    private final String mCompressionLevelKey;
+
     public FileHelper(Context context) {
+        mPreferences = context.getApplicationContext().getSharedPreferences(context.getString(R.string.preference_file_name), Activity.MODE_PRIVATE);
+        mCompressionLevelKey = context.getString(R.string.compression_level);
         MIND_MAP_FOLDER = new File(context.getExternalFilesDir(null).getAbsolutePath() + "/mindmap/");
         PICTURES_FOLDER = context.getExternalFilesDir( Environment.DIRECTORY_PICTURES);
 
@@ -76,97 +88,61 @@ public final class FileHelper {
     }
 
     /**
-     * Saves the given contents to the given location
-     * Will overwrite if the file already exists
-     *
-     * @param obj contents to sv
-     * @param f   location to fileSave the object
-     * @param ctx used to throw toast
-     * @return true if fileSave was successful, false otherwise
+     * @return level maps are saved with, MapCompression.NONE for plain files that older versions can open
      */
-    public static boolean writeFile(Object obj, File f, Context ctx) {
-        if (obj instanceof JSONObject)
-            return writeJsonFile((JSONObject) obj, f, ctx);
-        else if (obj instanceof Bitmap)
-            return writeImageFile((Bitmap) obj, f, ctx);
-        else {
-            return false;
-        }
+    public int getCompressionLevel() {
+        return mPreferences.getInt(mCompressionLevelKey, DEFAULT_COMPRESSION_LEVEL);
     }
 
     /**
-     * Writes an image file at the given location
+     * @param level MapCompression.NONE or from MapCompression.BEST_SPEED to BEST_COMPRESSION
+     */
+    public void setCompressionLevel(int level) {
+        if (level != MapCompression.NONE && (level < MapCompression.BEST_SPEED || level > MapCompression.BEST_COMPRESSION))
+            throw new IllegalArgumentException("Bad compression level " + level);
+        mPreferences.edit().putInt(mCompressionLevelKey, level).apply();
+    }
+
+    /**
+     * Writes an image file at the given location, it may run off the UI thread
      * Will overwrite if it already exists
      *
      * @param image           to be written
      * @param destinationFile where to write the given image
-     * @param ctx Context of the application
-     * @return true if the file was written successfully, false otherwise
      */
-    public static boolean writeImageFile(Bitmap image, File destinationFile, Context ctx) {
-        FileOutputStream out = null;
+    public static void writeImageFile(Bitmap image, File destinationFile) throws IOException {
+        FileOutputStream out = new FileOutputStream(destinationFile);
         try {
-            if (destinationFile.exists()) destinationFile.delete();
-            out = new FileOutputStream(destinationFile);
-            image.compress( Bitmap.CompressFormat.JPEG, 80, out);
-            Toast.makeText(ctx, R.string.save_successful, Toast.LENGTH_SHORT).show();
-            return true;
-        } catch (Exception e) {
-            Toast.makeText(ctx, R.string.save_error, Toast.LENGTH_SHORT).show();
-            return false;
+            if (!image.compress( Bitmap.CompressFormat.JPEG, 80, out))
+                throw new IOException("Could not compress " + destinationFile);
         } finally {
-            try {
-                if (out != null)
-                    out.close();
-            } catch (IOException e) {
-                //do nothing
-            }
+            out.close();
         }
     }
 
     /**
-     * Writes an JSONObject at the given location
-     * Will overwrite if it already exists
-     *
-     * @param jObj            to be written
-     * @param destinationFile where to write the given JSONObject
-     * @param ctx Context of the application
-     * @return true if the file was written successfully, false otherwise
+     * @return true if the file name has the extension of either .map format
      */
-    public static boolean writeJsonFile(JSONObject jObj, File destinationFile, Context ctx) {
-        try {
-            destinationFile.createNewFile();
-            PrintWriter out = new PrintWriter(destinationFile);
-            out.print(jObj.toString());
-            out.close();
-            Toast.makeText(ctx, R.string.save_successful, Toast.LENGTH_SHORT).show();
-            return true;
-        } catch (Exception e) {
-            Toast.makeText(ctx, R.string.save_error, Toast.LENGTH_SHORT).show();
-            return false;
-        }
+    public static boolean isMapFile(String name) {
+        name = name.toLowerCase();
+        return name.endsWith(EXTENSION) || name.endsWith(BINARY_EXTENSION);
     }
 
     /**
-     * Return the JSONObject contents of a given File
-     *
-     * @param f   File where the JSONObject is located
-     * @param ctx used to throw a toast
-     * @return JSONObject contents of a given file
+     * @return the name of a .map file without its extension
      */
-    public static JSONObject getJsonFromFile(File f, Context ctx) {
-        try {
-            BufferedReader reader = new BufferedReader(new FileReader(f));
-            return new JSONObject(reader.readLine());
-        } catch (Exception e) {
-            Toast.makeText(ctx, R.string.load_error, Toast.LENGTH_LONG).show();
-            return null;
-        }
+    public static String mapName(File f) {
+        String name = f.getName();
+        String lower = name.toLowerCase();
+        if (lower.endsWith(BINARY_EXTENSION))
+            return name.substring(0, name.length() - BINARY_EXTENSION.length());
+        if (lower.endsWith(EXTENSION))
+            return name.substring(0, name.length() - EXTENSION.length());
+        return name;
     }
 
     public static String getUniqueID() {
-        UUID uuid = UUID.randomUUID();
-        return uuid.toString();
+        return GraphItem.newId();
     }
 
 }
@@ -0,0 +1,94 @@
+package com.mindmap.expressFlowchart;
+
+import android.graphics.Paint;
+
+/**
+ * Title of a Node or Edge cut down with "..." to a maximum width.
+ * The cut label and its width are kept until the title, text size or available width changes,
+ * so a frame normally does no text measurement at all.
+ */
+public class LabelCache {
+
+    static final String ELLIPSIS = "...";
+
+    //key of the cached label
+    private String mSource;
+    private float mTextSize = -1;
+    private float mMaxWidth = -1;
+    //cached label
+    private String mLabel = "";
+    private float mWidth = 0;
+    //glyph widths of the title, turned into running totals while cutting, allocated on first use
+    private static final float[] NO_WIDTHS = new float[0];
+    private float[] mWidths = NO_WIDTHS;
+
+    /**
+     * @param title    full title
+     * @param paint    Paint the label is drawn with, its text size is part of the key
+     * @param maxWidth width available for the label
+     * @return the title, or its longest prefix followed by "..." that fits maxWidth
+     */
+    public String get(String title,Paint paint,float maxWidth){
+        if(title == mSource && paint.getTextSize() == mTextSize && maxWidth == mMaxWidth)
+            return mLabel;
+        mSource = title;
+        mTextSize = paint.getTextSize();
+        mMaxWidth = maxWidth;
+
+        int count = title.length();
+        if(count == 0) {
+            mLabel = "";
+            mWidth = 0;
+            return mLabel;
+        }
+        if(mWidths.length < count)
+            mWidths = new float[Math.max(count,2*mWidths.length)];
+        paint.getTextWidths(title,0,count,mWidths);
+        accumulate(mWidths,count);
+        if(mWidths[count-1] <= maxWidth) {
+            mLabel = title;
+            mWidth = mWidths[count-1];
+            return mLabel;
+        }
+
+        float ellipsisWidth = paint.measureText(ELLIPSIS);
+        int fit = fitCount(mWidths,count,maxWidth-ellipsisWidth);
+        //never split a surrogate pair
+        if(fit > 0 && Character.isHighSurrogate(title.charAt(fit-1)))
+            fit--;
+        mLabel = title.substring(0,fit)+ELLIPSIS;
+        mWidth = (fit > 0 ? mWidths[fit-1] : 0)+ellipsisWidth;
+        return mLabel;
+    }
+
+    /**
+     * @return measured width of the last label returned by get()
+     */
+    public float getWidth(){
+        return mWidth;
+    }
+
+    /**
+     * Turn glyph widths into running totals, widths[i] becomes the width of the first i+1 glyphs
+     */
+    static void accumulate(float[] widths,int count){
+        for (int i = 1; i < count; i++)
+            widths[i] += widths[i-1];
+    }
+
+    /**
+     * Binary search over running totals
+     * @return how many leading glyphs fit in maxWidth
+     */
+    static int fitCount(float[] totals,int count,float maxWidth){
+        int low = 0, high = count; //answer is in [low,high]
+        while (low < high) {
+            int mid = (low+high+1) >>> 1;
+            if(totals[mid-1] <= maxWidth)
+                low = mid;
+            else
+                high = mid-1;
+        }
+        return low;
+    }
+}
@@ -8,6 +8,7 @@ import androidx.core.content.ContextCompat;
 import android.annotation.TargetApi;
 import android.app.Activity;
 import android.app.AlertDialog;
+import android.content.ContentResolver;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.SharedPreferences;
@@ -15,6 +16,8 @@ import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.provider.MediaStore;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -23,18 +26,25 @@ import android.widget.EditText;
 import android.widget.ImageButton;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
+import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import com.google.android.gms.ads.AdListener;
 import com.google.android.gms.ads.AdRequest;
 import com.google.android.gms.ads.InterstitialAd;
-
-import org.json.JSONArray;
-import org.json.JSONObject;
+import com.mindmap.expressFlowchart.document.Camera;
+import com.mindmap.expressFlowchart.document.EditJournal;
+import com.mindmap.expressFlowchart.document.GraphDocument;
+import com.mindmap.expressFlowchart.document.GraphItem;
+import com.mindmap.expressFlowchart.document.MapCompression;
+import com.mindmap.expressFlowchart.document.MapIo;
 
 import java.io.File;
 import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 import static android.Manifest.permission.WRITE_EXTERNAL_STORAGE;
 
@@ -44,6 +54,25 @@ public class MainActivity extends AppCompatActivity {
     private File mCurrentFile = null;
     private InterstitialAd mInterstitialAd;
     private boolean mAdCalledByNew;
+    //saves, loads and exports run on its thread, one at a time
+    private MapIo mMapIo;
+    private MapIo.Task<?> mIoTask;
+    private View mIoPanel;
+    private ProgressBar mIoProgress;
+    private TextView mIoText;
+    //edits are logged as they are made and compacted into the file now and then, see EditJournal
+    private static final long AUTOSAVE_INTERVAL = 60*1000; //ms
+    private EditJournal mJournal;
+    private File mAutosaveFile;
+    private MapIo.Task<File> mAutosaveTask;
+    private Handler mMainHandler;
+    private final Runnable mAutosave = new Runnable() {
+        @Override
+        public void run() {
+            autosave();
+            mMainHandler.postDelayed(this, AUTOSAVE_INTERVAL);
+        }
+    };
     ViewGroup mRoot;
     View mOptions;
 
@@ -66,6 +95,24 @@ public class MainActivity extends AppCompatActivity {
         mMainView = findViewById(R.id.MainViewID);
         mRoot = findViewById(R.id.RootConstraintView);
         mFileHelper = new FileHelper(this);
+        mMainHandler = new Handler(Looper.getMainLooper());
+        mMapIo = MapIo.create(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                mMainHandler.post(command);
+            }
+        });
+        mIoPanel = findViewById(R.id.io_panel);
+        mIoProgress = findViewById(R.id.io_progress);
+        mIoText = findViewById(R.id.io_text);
+        findViewById(R.id.io_cancel).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if (mIoTask != null)
+                    mIoTask.cancel();
+            }
+        });
+        initAutosave();
 
         mOptions = layoutInflater.inflate(R.layout.options,null);
         mOptions.setVisibility(View.GONE);
@@ -115,6 +162,161 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    @Override
+    protected void onResume() {
+        super.onResume();
+        mMainHandler.postDelayed(mAutosave, AUTOSAVE_INTERVAL);
+    }
+
+    @Override
+    protected void onPause() {
+        mMainHandler.removeCallbacks(mAutosave);
+        //a drag cut short by the pause is logged as far as it got
+        mMainView.getHistory().endMerge();
+        autosave();
+        try {
+            mJournal.sync();
+        } catch (IOException e) {
+            //the compaction started above has it all
+        }
+        super.onPause();
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (mIoTask != null)
+            mIoTask.cancel();
+        mMapIo.shutdown();
+        mJournal.close();
+        super.onDestroy();
+    }
+
+    /**
+     * Log the edits of the view and bring back those of a run that crashed
+     */
+    private void initAutosave() {
+        File journalFile = new File(getFilesDir(), "autosave.journal");
+        mAutosaveFile = new File(getFilesDir(), "autosave" + FileHelper.BINARY_EXTENSION);
+        mJournal = new EditJournal(journalFile);
+        mJournal.setLimit(EditJournal.DEFAULT_MAX_BYTES, new Runnable() {
+            @Override
+            public void run() {
+                //not in the middle of the edit that filled it
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        autosave();
+                    }
+                });
+            }
+        });
+        mMainView.getHistory().setListener(mJournal);
+        if (EditJournal.needsRecovery(journalFile))
+            recover(journalFile);
+        else
+            startJournal(null);
+    }
+
+    /**
+     * @param base the file the view's document was just loaded from or saved to, null for a new one
+     */
+    private void startJournal(File base) {
+        startJournal(base, base);
+    }
+
+    /**
+     * @param base the file the view's document is all in, null for a new one
+     * @param file the file the user keeps the document in, null for none
+     */
+    private void startJournal(File base, File file) {
+        try {
+            mJournal.start(base, file, mMainView.getDocument());
+        } catch (IOException e) {
+            //nothing is logged until the next autosave manages to
+        }
+    }
+
+    /**
+     * Compact the edits logged so far into the autosave file, the user's file is only written when they save.
+     * It runs quietly in the background and is skipped while a file is being saved or loaded
+     */
+    private void autosave() {
+        if (mIoTask != null || mAutosaveTask != null || !mJournal.hasEdits())
+            return;
+        GraphDocument snapshot = mMainView.getDocument().snapshot();
+        final int compaction;
+        try {
+            compaction = mJournal.rotate(mAutosaveFile, mCurrentFile, snapshot);
+        } catch (IOException e) {
+            return;
+        }
+        //the autosave file is only read back by this app, it is left plain to be quick
+        mAutosaveTask = mMapIo.save(snapshot, mAutosaveFile, isBinary(mAutosaveFile), MapCompression.NONE, new MapIo.Callback<File>() {
+            @Override
+            public void onProgress(long done, long total) {
+            }
+
+            @Override
+            public void onDone(File file) {
+                mAutosaveTask = null;
+                mJournal.commit(compaction);
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                //the records set aside are kept until a compaction is written
+                mAutosaveTask = null;
+            }
+
+            @Override
+            public void onCancelled() {
+                onFailed(null);
+            }
+        });
+    }
+
+    /**
+     * Replay the log left by a run that crashed into the autosave file, then load it as a map with unsaved
+     * changes, the file the user kept it in is left as they last saved it
+     */
+    private void recover(final File journalFile) {
+        startIo(R.string.loading);
+        mIoTask = mMapIo.submit(new MapIo.Job<File>() {
+            @Override
+            public File run(MapIo.Task<File> task) throws IOException {
+                EditJournal.Recovery recovery = EditJournal.recover(journalFile);
+                MapIo.write(recovery.getDocument(), mAutosaveFile, isBinary(mAutosaveFile), MapCompression.NONE, null);
+                return recovery.getFile();
+            }
+        }, new IoCallback<File>() {
+            @Override
+            void done(File file) {
+                Toast.makeText(MainActivity.this, R.string.autosave_recovered, Toast.LENGTH_LONG).show();
+                mCurrentFile = file;
+                mMainView.beginLoad();
+                startIo(R.string.loading);
+                //the recovered edits are only in the autosave file until the user saves
+                mIoTask = mMapIo.load(mAutosaveFile, new MapLoadCallback(mAutosaveFile, file, true));
+            }
+
+            @Override
+            void failed(Exception e) {
+                Toast.makeText(MainActivity.this, R.string.load_error, Toast.LENGTH_LONG).show();
+                startJournal(null);
+            }
+
+            @Override
+            void cancelled() {
+                startJournal(null);
+                super.cancelled();
+            }
+        });
+    }
+
+    private static boolean isBinary(File file) {
+        return file.getName().toLowerCase().endsWith(FileHelper.BINARY_EXTENSION);
+    }
+
     public void openOptions()
     {
         mOptions.setVisibility(View.VISIBLE);
@@ -136,6 +338,9 @@ public class MainActivity extends AppCompatActivity {
         LinearLayout linearlayoutMenuSave = mOptions.findViewById(R.id.linearlayout_menu_save);
         LinearLayout linearlayoutMenuExport = mOptions.findViewById(R.id.linearlayout_menu_export);
         LinearLayout linearlayoutMenuDelete = mOptions.findViewById(R.id.linearlayout_menu_delete);
+        LinearLayout linearlayoutMenuUndo = mOptions.findViewById(R.id.linearlayout_menu_undo);
+        LinearLayout linearlayoutMenuRedo = mOptions.findViewById(R.id.linearlayout_menu_redo);
+        LinearLayout linearlayoutMenuCompression = mOptions.findViewById(R.id.linearlayout_menu_compression);
 
         linearlayoutMenuAbout.setOnClickListener( new View.OnClickListener() {
             @Override
@@ -198,6 +403,26 @@ public class MainActivity extends AppCompatActivity {
                 closeOptions();
             }
         } );
+        //the menu stays open so several edits can be undone in a row
+        linearlayoutMenuUndo.setOnClickListener( new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                mMainView.undo();
+            }
+        } );
+        linearlayoutMenuRedo.setOnClickListener( new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                mMainView.redo();
+            }
+        } );
+        linearlayoutMenuCompression.setOnClickListener( new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                compression();
+                closeOptions();
+            }
+        } );
 
     }
 
@@ -220,6 +445,36 @@ public class MainActivity extends AppCompatActivity {
         aboutDialogBuilder.create().show();
     }
 
+    /**
+     * Shows the dialog to pick the compression level sheets are saved with
+     */
+    public void compression()
+    {
+        final int[] levels = {MapCompression.NONE, MapCompression.BEST_SPEED, MapCompression.DEFAULT_LEVEL, MapCompression.BEST_COMPRESSION};
+        String[] names = {getString(R.string.compression_none), getString(R.string.compression_fast),
+                getString(R.string.compression_default), getString(R.string.compression_best)};
+        int checked = 0;
+        for (int i = 0; i < levels.length; i++)
+            if (levels[i] == mFileHelper.getCompressionLevel())
+                checked = i;
+        AlertDialog.Builder compressionDialogBuilder = new AlertDialog.Builder( this );
+        compressionDialogBuilder.setTitle(R.string.compression_dialog_title);
+        compressionDialogBuilder.setSingleChoiceItems(names, checked, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                mFileHelper.setCompressionLevel(levels[which]);
+                dialog.dismiss();
+            }
+        });
+        compressionDialogBuilder.setNegativeButton(R.string.cancel_str, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                dialog.dismiss();
+            }
+        });
+        compressionDialogBuilder.create().show();
+    }
+
     /**
      * Shows the help dialog.
      */
@@ -257,8 +512,7 @@ public class MainActivity extends AppCompatActivity {
             fileNameEditText.setSingleLine();
             //if we are currently working on a file, set the text to that file's name
             if (this.mCurrentFile != null)
-                fileNameEditText.setText(mCurrentFile.getName().substring(0,
-                        mCurrentFile.getName().length() - mFileHelper.EXTENSION.length()));
+                fileNameEditText.setText(FileHelper.mapName(mCurrentFile));
             fileNameEditText.selectAll();
             exportImgDialogBuilder.setView(fileNameEditText);
             exportImgDialogBuilder.setPositiveButton(R.string.ok_str, new DialogInterface.OnClickListener() {
@@ -326,17 +580,18 @@ public class MainActivity extends AppCompatActivity {
      *
      * @param fileName to be used for the image
      */
-    private void exportImg(String fileName) {
-        Bitmap img = mMainView.getBitmap();
+    private void exportImg(final String fileName) {
+        if (ioBusy())
+            return;
+        //drawing needs the views, only compressing and writing the picture runs in the background
+        final Bitmap img = mMainView.getBitmap();
 
         if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.Q) {
             File destFile = new File( mFileHelper.PICTURES_FOLDER, fileName + FileHelper.IMG_EXTENSION );
             if (destFile.exists()) //because we're saving this file as an image, we don't want to update the editorView's
-                warnOverwrite( img, destFile, false );
-            else {
-                FileHelper.writeFile( img, destFile, this );
-                Toast.makeText( this,R.string.file_saved_in + destFile.getAbsolutePath(), Toast.LENGTH_SHORT ).show();
-            }
+                warnOverwrite( img, destFile );
+            else
+                writeImage( img, destFile );
         }
         else {
             if (!checkPermission())
@@ -345,13 +600,155 @@ public class MainActivity extends AppCompatActivity {
                 Toast.makeText( this, R.string.permission_necessary_message, Toast.LENGTH_SHORT ).show();
                 return;
             }
-            String ImagePath = MediaStore.Images.Media.insertImage(
-                    getContentResolver(),
-                    img,
-                    fileName,
-                    ""
-            );
-            Toast.makeText( this, R.string.successfully_exported, Toast.LENGTH_SHORT ).show();
+            final ContentResolver resolver = getContentResolver();
+            startIo( R.string.exporting );
+            mIoTask = mMapIo.submit( new MapIo.Job<String>() {
+                @Override
+                public String run(MapIo.Task<String> task) {
+                    return MediaStore.Images.Media.insertImage( resolver, img, fileName, "" );
+                }
+            }, new IoCallback<String>() {
+                @Override
+                void done(String imagePath) {
+                    Toast.makeText( MainActivity.this, R.string.successfully_exported, Toast.LENGTH_SHORT ).show();
+                }
+
+                @Override
+                void failed(Exception e) {
+                    Toast.makeText( MainActivity.this, R.string.save_error, Toast.LENGTH_SHORT ).show();
+                }
+            } );
+        }
+    }
+
+    /**
+     * Writes the image in the background, toasts when it is done
+     */
+    private void writeImage(final Bitmap img, final File destFile) {
+        if (ioBusy())
+            return;
+        startIo( R.string.exporting );
+        mIoTask = mMapIo.submit( new MapIo.Job<File>() {
+            @Override
+            public File run(MapIo.Task<File> task) throws IOException {
+                FileHelper.writeImageFile( img, destFile );
+                return destFile;
+            }
+        }, new IoCallback<File>() {
+            @Override
+            void done(File file) {
+                Toast.makeText( MainActivity.this, getString( R.string.file_saved_in ) + file.getAbsolutePath(), Toast.LENGTH_SHORT ).show();
+            }
+
+            @Override
+            void failed(Exception e) {
+                Toast.makeText( MainActivity.this, R.string.save_error, Toast.LENGTH_SHORT ).show();
+            }
+        } );
+    }
+
+    /**
+     * Saves a snapshot of the document in the background, the map can be edited meanwhile
+     * The format is chosen by the extension of the file
+     */
+    private void writeMap(GraphDocument document, final File destFile) {
+        if (ioBusy())
+            return;
+        mCurrentFile = destFile;
+        //edits made while the file is written set it again
+        mMainView.setSavePending( false );
+        startIo( R.string.saving );
+        //the log goes on from the snapshot, the edits before it are in the file once it is written
+        GraphDocument snapshot = document.snapshot();
+        int compaction = -1;
+        try {
+            compaction = mJournal.rotate( destFile, snapshot );
+        } catch (IOException e) {
+            //the next autosave starts it again
+        }
+        final int saved = compaction;
+        mIoTask = mMapIo.save( snapshot, destFile, isBinary( destFile ), mFileHelper.getCompressionLevel(), new IoCallback<File>() {
+            @Override
+            void done(File file) {
+                mJournal.commit( saved );
+                Toast.makeText( MainActivity.this, R.string.save_successful, Toast.LENGTH_SHORT ).show();
+            }
+
+            @Override
+            void failed(Exception e) {
+                mMainView.setSavePending( true );
+                Toast.makeText( MainActivity.this, R.string.save_error, Toast.LENGTH_SHORT ).show();
+            }
+
+            @Override
+            void cancelled() {
+                mMainView.setSavePending( true );
+                super.cancelled();
+            }
+        } );
+    }
+
+    /**
+     * @return true and tells the user if a file is still being saved, loaded, exported or autosaved
+     */
+    private boolean ioBusy() {
+        if (mIoTask == null && mAutosaveTask == null)
+            return false;
+        Toast.makeText( this, R.string.io_busy, Toast.LENGTH_SHORT ).show();
+        return true;
+    }
+
+    /**
+     * Shows the progress bar, the task is set by the caller
+     */
+    private void startIo(int textId) {
+        mIoText.setText( textId );
+        mIoProgress.setIndeterminate( true );
+        mIoProgress.setProgress( 0 );
+        mIoPanel.setVisibility( View.VISIBLE );
+    }
+
+    private void endIo() {
+        mIoTask = null;
+        mIoPanel.setVisibility( View.GONE );
+    }
+
+    /**
+     * Shows the progress of the running task and hides it once the task ended
+     */
+    private abstract class IoCallback<T> implements MapIo.Callback<T> {
+        @Override
+        public void onProgress(long done, long total) {
+            if (total > 0) {
+                mIoProgress.setIndeterminate( false );
+                mIoProgress.setProgress( (int) (mIoProgress.getMax() * Math.min( done, total ) / total) );
+            }
+        }
+
+        @Override
+        public final void onDone(T result) {
+            endIo();
+            done( result );
+        }
+
+        @Override
+        public final void onFailed(Exception e) {
+            endIo();
+            failed( e );
+        }
+
+        @Override
+        public final void onCancelled() {
+            endIo();
+            cancelled();
+        }
+
+        abstract void done(T result);
+
+        abstract void failed(Exception e);
+
+        void cancelled() {
+            Toast.makeText( MainActivity.this, R.string.io_cancelled, Toast.LENGTH_SHORT ).show();
         }
     }
 
@@ -359,6 +756,9 @@ public class MainActivity extends AppCompatActivity {
      * Prompt the user if they want to reset the working area
      */
     private void newWorkingArea() {
+        //a file still streaming in would keep adding to the new sheet
+        if (ioBusy())
+            return;
         //only show the dialog if it makes sense to do so
         if (!mMainView.isEmpty() && mMainView.getSavePending()) {
 
@@ -380,6 +780,7 @@ public class MainActivity extends AppCompatActivity {
                     mMainView.setSavePending(false);
                     mMainView.resetSpace();
                     mCurrentFile = null;
+                    startJournal(null);
                 }
             });
             resetAreaDialog.show();
@@ -387,31 +788,28 @@ public class MainActivity extends AppCompatActivity {
         else{
             mMainView.setSavePending(false);
             mMainView.resetSpace();
+            mCurrentFile = null;
+            startJournal(null);
         }
     }
 
     /**
      * Warns the user that the file exists and prompts the user to overwrite the file
      *
-     * @param toWrite           contents the user wants to fileSave
+     * @param toWrite           contents the user wants to fileSave, a GraphDocument or a Bitmap
      * @param destFile          where the user wants to fileSave the contents
-     * @param updateSavePending update the editorView's savePending boolean,
      */
-    private void warnOverwrite(final Object toWrite, final File destFile, final boolean updateSavePending) {
+    private void warnOverwrite(final Object toWrite, final File destFile) {
         AlertDialog.Builder overwriteWarning = new AlertDialog.Builder(this);
         overwriteWarning.setTitle(R.string.overwrite_dialog_title);
         overwriteWarning.setMessage(R.string.overwrite_dialog_body);
         overwriteWarning.setPositiveButton(R.string.yes_str, new DialogInterface.OnClickListener() {
             @Override
             public void onClick(DialogInterface dialog, int which) {
-                if (FileHelper.writeFile(toWrite, destFile, getApplicationContext())) {
-                    if (updateSavePending)
-                        mMainView.setSavePending( false ); //only call setSavePending if we're told to change it
-                    if(toWrite instanceof Bitmap)
-                        Toast.makeText(getApplicationContext(),R.string.file_saved_in + destFile.getAbsolutePath(), Toast.LENGTH_SHORT ).show();
-                    else
-                        Toast.makeText(getApplicationContext(),R.string.file_saved_successfully, Toast.LENGTH_SHORT ).show();
-                }
+                if(toWrite instanceof Bitmap)
+                    writeImage((Bitmap) toWrite, destFile);
+                else
+                    writeMap((GraphDocument) toWrite, destFile);
             }
         });
         overwriteWarning.setNegativeButton(R.string.no_str, new DialogInterface.OnClickListener() {
@@ -428,15 +826,14 @@ public class MainActivity extends AppCompatActivity {
      * if the file does exist, then warn the user about overwriting the file before saving
      *
      * @param obj      contents to fileSave
-     * @param destFile location to fileSave the JSONObject
+     * @param destFile location to fileSave the document
      */
-    public void checkAndSaveJson(final JSONObject obj, final File destFile) {
+    public void checkAndSaveJson(final GraphDocument obj, final File destFile) {
         try {
-            mCurrentFile = destFile;
             if (!destFile.exists())
-                FileHelper.writeFile(obj, destFile, this);
+                writeMap(obj, destFile);
             else //the file already exists, warn the user that it will be overwritten
-                warnOverwrite(obj, destFile, true);
+                warnOverwrite(obj, destFile);
         } catch (Exception e) {
             Toast.makeText(this, R.string.save_error, Toast.LENGTH_SHORT).show();
         }
@@ -450,7 +847,7 @@ public class MainActivity extends AppCompatActivity {
      * @param obj      contents to fileSave
      * @param fileName name for the File
      */
-    public void checkAndSaveJson(final JSONObject obj, String fileName) {
+    public void checkAndSaveJson(final GraphDocument obj, String fileName) {
         checkAndSaveJson(obj, new File(mFileHelper.MIND_MAP_FOLDER.getAbsolutePath() + "/"
                 + fileName + FileHelper.EXTENSION));
     }
@@ -465,7 +862,7 @@ public class MainActivity extends AppCompatActivity {
             return;
         }
         else {
-            final JSONObject obj = mMainView.toJson();
+            final GraphDocument obj = mMainView.getDocument();
             AlertDialog.Builder saveFileBuilder = new AlertDialog.Builder(this);
             final EditText fileNameEditText = new EditText(this);
             fileNameEditText.setHint(R.string.file_name_hint);
@@ -495,8 +892,7 @@ public class MainActivity extends AppCompatActivity {
                         return;
                     }
                     //check if the file exists and warn the user if it does
-                    checkAndSaveJson(obj, fileNameEditText.getText().toString());
-                    mMainView.setSavePending(false); //once we've saved, we don't have changes pending
+                    checkAndSaveJson(obj, fileNameEditText.getText().toString()); //clears savePending once the save starts
                     saveFileDialog.dismiss();
                 }
             });
@@ -553,7 +949,7 @@ public class MainActivity extends AppCompatActivity {
             //get all the .map files from the directory
             final File MindMapFiles[] = mFileHelper.MIND_MAP_FOLDER.listFiles(new FilenameFilter() {
                 public boolean accept(File dir, String name) {
-                    return name.toLowerCase().endsWith( FileHelper.EXTENSION.toLowerCase());
+                    return FileHelper.isMapFile(name);
                 }
             });
 
@@ -561,8 +957,7 @@ public class MainActivity extends AppCompatActivity {
             if (MindMapFiles != null && MindMapFiles.length > 0) {
                 final String fileNames[] = new String[MindMapFiles.length];
                 for (int i = 0; i < MindMapFiles.length; i++)
-                    fileNames[i] = MindMapFiles[i].getName().substring(0, MindMapFiles[i].getName().length()
-                            - FileHelper.EXTENSION.length());
+                    fileNames[i] = FileHelper.mapName(MindMapFiles[i]);
                 AlertDialog.Builder listBuilder = new AlertDialog.Builder(this);
 
                 listBuilder.setItems(fileNames, new DialogInterface.OnClickListener() {
@@ -603,33 +998,63 @@ public class MainActivity extends AppCompatActivity {
     }
 
     /**
-     * loads a saved state from the given File
+     * loads a saved state from the given File in the background, items are shown while the file is streamed in
      * shows a Toast when an exception is encountered
      *
      * @param f File with saved state to fileLoad
      */
     private void loadFromFile(File f) {
-        JSONObject obj = FileHelper.getJsonFromFile(f, this); //create a JSONObject from the File
+        if (ioBusy())
+            return;
         mCurrentFile = f; //this is referenced later on in saveAs and deleteFile
+        mMainView.beginLoad();
+        startIo(R.string.loading);
+        mIoTask = mMapIo.load(f, new MapLoadCallback(f, f, false));
+    }
 
-        //currentFile = f; //this is referenced later on in saveAs
-        try {
-            mMainView.resetSpace((float)obj.getDouble( FileHelper.SCALE_KEY)); //clear the view
-            //get a JSONArray with all the items
-            JSONArray arr = obj.getJSONArray( FileHelper.ITEMS_KEY);
+    private class MapLoadCallback extends IoCallback<Camera> implements MapIo.LoadCallback {
+        private final File mBase;
+        private final File mFile;
+        private final boolean mPending;
 
-            //for each item, add it to the view
-            for (int i = 0; i < arr.length(); i++) {
-                if (arr.getJSONObject(i).getString( FileHelper.ITEM_TYPE_KEY).equals(Node.class.getName()))
-                    mMainView.addDrawable(Node.fromJson(arr.getJSONObject(i),mMainView));
-                else if (arr.getJSONObject(i).getString( FileHelper.ITEM_TYPE_KEY).equals(Edge.class.getName()))
-                    mMainView.addDrawable(Edge.fromJson(arr.getJSONObject(i),mMainView.getAllClassDrawables(),mMainView));
-            }
+        /**
+         * @param base    the file being loaded, edits are logged from it
+         * @param file    the file the user keeps the map in, null for none
+         * @param pending true if the map has changes that are not in a file the user saved
+         */
+        MapLoadCallback(File base, File file, boolean pending) {
+            mBase = base;
+            mFile = file;
+            mPending = pending;
+        }
 
-            mMainView.setSavePending(false); //when we fileLoad, there are no more saves pending
+        @Override
+        public void onItems(List<GraphItem> items) {
+            mMainView.addItems(items);
+        }
 
-        } catch (Exception e) {
-            Toast.makeText(this, R.string.load_error, Toast.LENGTH_LONG).show();
+        @Override
+        void done(Camera camera) {
+            mMainView.finishLoad(camera);
+            mMainView.setSavePending(mPending);
+            startJournal(mBase, mFile);
+        }
+
+        @Override
+        void failed(Exception e) {
+            //a part of the file is not worth editing
+            mMainView.resetSpace(1f, 0f, 0f);
+            mCurrentFile = null;
+            startJournal(null);
+            Toast.makeText(MainActivity.this, R.string.load_error, Toast.LENGTH_LONG).show();
+        }
+
+        @Override
+        void cancelled() {
+            mMainView.resetSpace(1f, 0f, 0f);
+            mCurrentFile = null;
+            startJournal(null);
+            super.cancelled();
         }
     }
 
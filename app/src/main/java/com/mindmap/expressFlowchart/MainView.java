@@ -6,8 +6,11 @@ import android.content.DialogInterface;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Paint;
 import android.graphics.Point;
 import android.graphics.PointF;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.graphics.drawable.ColorDrawable;
 import android.os.Build;
 import android.util.AttributeSet;
@@ -29,11 +32,31 @@ import android.widget.Toast;
 import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
+import com.mindmap.expressFlowchart.document.ArrowShape;
+import com.mindmap.expressFlowchart.document.Camera;
+import com.mindmap.expressFlowchart.document.EditCommand;
+import com.mindmap.expressFlowchart.document.EditHistory;
+import com.mindmap.expressFlowchart.document.GraphDocument;
+import com.mindmap.expressFlowchart.document.GraphEdge;
+import com.mindmap.expressFlowchart.document.GraphEditor;
+import com.mindmap.expressFlowchart.document.GraphItem;
+import com.mindmap.expressFlowchart.document.GraphNode;
+import com.mindmap.expressFlowchart.document.IdRemap;
+import com.mindmap.expressFlowchart.document.ItemStyle;
+import com.mindmap.expressFlowchart.document.ItemTarget;
+import com.mindmap.expressFlowchart.document.MapIo;
+import com.mindmap.expressFlowchart.document.MapReader;
+import com.mindmap.expressFlowchart.document.NodeShape;
+import com.mindmap.expressFlowchart.document.NodeStore;
+
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.List;
 
 enum ViewTask{
     MOVE_NODE,SHOW_CONNECTED,
@@ -46,7 +69,7 @@ enum DrawableType{
    NODE,EDGE;
 }
 
-public class MainView extends View implements View.OnClickListener,View.OnLongClickListener {
+public class MainView extends View implements View.OnClickListener,View.OnLongClickListener,GraphEditor,ItemTarget {
 
     //MainView state variables
     private MindMapDrawable mClicked = null; //null means none are clicked
@@ -77,11 +100,56 @@ public class MainView extends View implements View.OnClickListener,View.OnLongCl
     private float lastSelectedStrokeWidth = Edge.DEFAULT_STROKE_WIDTH;
 
     //Saved in Json
-    private ArrayList<MindMapDrawable> mAllViewDrawables;
-    float mScaleFactor = 1f;
+    //What is drawn, the view only keeps renderers and indexes over it
+    private GraphDocument mDocument;
+    //Camera of mDocument, drawables stay in world coordinates and screen = world*scale + translate
+    private Camera mCamera;
+    //one renderer layer per type, edges are always drawn beneath nodes
+    private ArrayList<Node> mNodes;
+    private ArrayList<Edge> mEdges;
+
+    //Spatial index per layer, kept in sync on every add, move and delete.
+    //Their result order is the z-order within the layer, bottom first
+    private QuadTree<Node> mNodeIndex;
+    private QuadTree<Edge> mEdgeIndex;
+    private final RectF mIndexBounds = new RectF();
+    private final ArrayList<MindMapDrawable> mHitCandidates = new ArrayList<>();
+    private final ArrayList<MindMapDrawable> mVisibleDrawables = new ArrayList<>();
+
+    //Area changed by the current drag, only that part of the view is invalidated
+    private final DamageRegion mDamage = new DamageRegion();
+    private final RectF mDamageBounds = new RectF();
+    private final Rect mClipBounds = new Rect();
+    private static final int DAMAGE_PAD = 2; //pixels, covers antialiasing
+
+    //While a node is dragged everything else is drawn once into mStaticLayer,
+    //frames then composite it with the node and its edges only
+    private Bitmap mStaticLayer = null;
+    private Node mStaticLayerNode = null;
+    private final ArrayList<MindMapDrawable> mMovingDrawables = new ArrayList<>();
+
+    //Paints every Node draws with, a node sets its color and text size before each use
+    private final Paint mNodePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mNodeTitlePaint = new Paint();
+    private final Rect mTextBounds = new Rect();
+
+    //Edits that can be undone, each one holds only what it changed
+    private final EditHistory mHistory = new EditHistory(DEFAULT_HISTORY_BYTES);
+    public static final long DEFAULT_HISTORY_BYTES = 1024*1024;
+
+    //Straight edges of a frame grouped by style, drawn with a few drawLines calls
+    private final EdgeBatch mEdgeBatch = new EdgeBatch();
+
+    //Rendered tiles drawn instead of the vector content while panning and zooming
+    private TileCache mTileCache;
+    private final Paint mTilePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final RectF mTileBounds = new RectF();
+    private static final float TILE_QUERY_PAD = 128; //pixels, labels reaching over from neighbouring tiles
+    //scale tiles are rendered at, 0 when drawing to the screen
+    private float mRenderScale = 0f;
 
     //Panning
-    //coordinates to shift the Drawables by
+    //screen distance to shift the camera by
     public float mSwipeDownX=0f;
     public float mSwipeDownY=0f;
     public float mShiftX=0f;
@@ -91,8 +159,13 @@ public class MainView extends View implements View.OnClickListener,View.OnLongCl
     ScaleGestureDetector mScaleDetector;
     float mScaleFocusX = 0f;
     float mScaleFocusY = 0f;
-    float MIN_SCALE = 0.5f;
+    float MIN_SCALE = 0.1f;
     float MAX_SCALE = 4f;
+
+    //Level of detail, below each scale one more layer of detail is dropped
+    private float mNoLabelsScale = 0.45f;
+    private float mNoArrowheadsScale = 0.3f;
+    private float mSimpleShapesScale = 0.2f;
     float mChangeInscale = 1f;
     MotionEvent mEvent;
 
@@ -100,6 +173,8 @@ public class MainView extends View implements View.OnClickListener,View.OnLongCl
     //constant for defining the maximum total time duration between the first click and second click that can be considered as double-click
     private static final long MAX_DOUBLE_CLICK_DURATION = 500;
     private Context mContext = null;
+    //true while a file streams in, it can be looked at but not edited until all of it is read
+    private boolean mLoading = false;
     Point mNewButtonXY = new Point( 0,0 );
 
     public void setNewButtonXY(Point newButtonXY){
@@ -113,16 +188,24 @@ public class MainView extends View implements View.OnClickListener,View.OnLongCl
      * THIS SHOULD ONLY BE CALLED AFTER USER'S CONSENT
      */
     public void resetSpace(){
-        resetSpace(1.0f);
+        resetSpace(1.0f,0f,0f);
         Toast.makeText(mContext,R.string.new_working_area, Toast.LENGTH_SHORT ).show();
     }
-    public void resetSpace(float scale) {
-        mAllViewDrawables.clear();
+    public void resetSpace(float scale,float translateX,float translateY) {
+        dropStaticLayer();
+        mNodes.clear();
+        mEdges.clear();
+        mNodeIndex.clear();
+        mEdgeIndex.clear();
+        mDocument.clear();
+        mHistory.clear();
+        mTileCache.clear();
         mClicked = null;
         mLongClicked = null;
         mEdge = null;
         savePending = false;
-        mScaleFactor = scale;
+        mLoading = false;
+        mCamera.set(scale,translateX,translateY);
         postInvalidate();
 
     }
@@ -142,7 +225,7 @@ public class MainView extends View implements View.OnClickListener,View.OnLongCl
     }
 
     public boolean isEmpty() {
-        return this.mAllViewDrawables.isEmpty();
+        return this.mNodes.isEmpty() && this.mEdges.isEmpty();
     }
 
     /**
@@ -150,15 +233,7 @@ public class MainView extends View implements View.OnClickListener,View.OnLongCl
      */
     public JSONObject toJson() {
         try {
-            JSONArray arr = new JSONArray();
-            for (MindMapDrawable drawable : mAllViewDrawables)
-                arr.put(drawable.toJson());
-
-            JSONObject obj = new JSONObject();
-            obj.put( FileHelper.SCALE_KEY, this.mScaleFactor);
-            obj.put( FileHelper.ITEMS_KEY, arr);
-            return obj;
-
+            return mDocument.toJson();
         } catch (Exception e) {
             Toast.makeText(mContext, R.string.save_error, Toast.LENGTH_LONG).show();
             return null;
@@ -176,15 +251,16 @@ public class MainView extends View implements View.OnClickListener,View.OnLongCl
         }
         @Override
         public boolean onScale(ScaleGestureDetector detector) {
-            float oldScaleFactor = mScaleFactor;
-            mScaleFactor *= detector.getScaleFactor();
-            mScaleFactor = Math.max( MIN_SCALE,Math.min( MAX_SCALE,mScaleFactor));
-            mChangeInscale = mScaleFactor/oldScaleFactor;
-            if(oldScaleFactor == mScaleFactor) // only need to scale otherwise
+            float oldScaleFactor = mCamera.getScale();
+            float scaleFactor = oldScaleFactor*detector.getScaleFactor();
+            scaleFactor = Math.max( MIN_SCALE,Math.min( MAX_SCALE,scaleFactor));
+            mCamera.setScale(scaleFactor);
+            mChangeInscale = scaleFactor/oldScaleFactor;
+            if(oldScaleFactor == scaleFactor) // only need to scale otherwise
                 return true;
             mScaleFocusX = detector.getFocusX();
             mScaleFocusY = detector.getFocusY();
-            scaleDrawables(mScaleFocusX,mScaleFocusY,true);
+            scaleView(mScaleFocusX,mScaleFocusY);
             return true;
         }
         @Override
@@ -219,7 +295,14 @@ public class MainView extends View implements View.OnClickListener,View.OnLongCl
         this.setClickable(true);
         this.setOnClickListener(this);
         this.setOnLongClickListener(this);
-        mAllViewDrawables = new ArrayList<>();
+        mDocument = new GraphDocument();
+        mCamera = mDocument.getCamera();
+        mNodes = new ArrayList<>();
+        mEdges = new ArrayList<>();
+        mNodeIndex = new QuadTree<>();
+        mEdgeIndex = new QuadTree<>();
+        mTileCache = new TileCache(Runtime.getRuntime().maxMemory()/8);
+        mNodeTitlePaint.setTextAlign(Paint.Align.CENTER);
         mContext = context;
         mViewTask = ViewTask.IDLE;
         mScaleDetector = new ScaleGestureDetector(context, new ScaleListener());
@@ -232,31 +315,509 @@ public class MainView extends View implements View.OnClickListener,View.OnLongCl
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
-        for (MindMapDrawable drawable : mAllViewDrawables) {
-            if (drawable.onScreen( getWidth(), getHeight() ) || mExporting)
-                    drawable.draw(canvas);
+        //the clip is the dirty rectangle when only part of the view was invalidated
+        if(!canvas.getClipBounds(mClipBounds))
+            mClipBounds.set(0,0,getWidth(),getHeight());
+        float left = toWorldX(mClipBounds.left), top = toWorldY(mClipBounds.top);
+        float right = toWorldX(mClipBounds.right), bottom = toWorldY(mClipBounds.bottom);
+        if(mStaticLayer != null && !mExporting) {
+            canvas.drawBitmap( mStaticLayer, 0, 0, null );
+            canvas.save();
+            canvas.translate( mCamera.getTranslateX(), mCamera.getTranslateY() );
+            canvas.scale( mCamera.getScale(), mCamera.getScale() );
+            drawDrawables(canvas,mMovingDrawables);
+            canvas.restore();
+            return;
+        }
+        if((mViewTask == ViewTask.PAN_SCREEN || mViewTask == ViewTask.ZOOM_SCREEN) && !mExporting) {
+            drawTiles(canvas,left,top,right,bottom);
+            return;
+        }
+        canvas.save();
+        canvas.translate( mCamera.getTranslateX(), mCamera.getTranslateY() );
+        canvas.scale( mCamera.getScale(), mCamera.getScale() );
+        //only the drawables whose bounds intersect the viewport, in z-order
+        mVisibleDrawables.clear();
+        query( left, top, right, bottom, mVisibleDrawables );
+        drawDrawables(canvas,mVisibleDrawables);
+        mVisibleDrawables.clear();
+        canvas.restore();
+    }
+
+    /**
+     * Draw the drawables in order, except that the lines and arrowheads of finished edges
+     * are batched by style and drawn first, their labels still go in order
+     */
+    void drawDrawables(Canvas canvas,List<MindMapDrawable> drawables) {
+        mEdgeBatch.reset();
+        for (int i = 0; i < drawables.size(); i++) {
+            MindMapDrawable drawable = drawables.get(i);
+            if(drawable instanceof Edge)
+                ((Edge) drawable).batch(mEdgeBatch);
+        }
+        mEdgeBatch.draw(canvas);
+        for (int i = 0; i < drawables.size(); i++) {
+            MindMapDrawable drawable = drawables.get(i);
+            if(drawable instanceof Edge && !((Edge) drawable).isEditable())
+                ((Edge) drawable).drawLabel(canvas);
+            else
+                drawable.draw(canvas);
+        }
+    }
+
+    EdgeBatch getEdgeBatch() {
+        return mEdgeBatch;
+    }
+
+    Paint getNodePaint() {
+        return mNodePaint;
+    }
+
+    Paint getNodeTitlePaint() {
+        return mNodeTitlePaint;
+    }
+
+    /**
+     * @return scratch Rect for measuring text
+     */
+    Rect getTextBounds() {
+        return mTextBounds;
+    }
+
+    /**
+     * Draw the world area from cached tiles, rendering the missing ones
+     */
+    private void drawTiles(Canvas canvas,float left,float top,float right,float bottom) {
+        int level = TileCache.levelFor(mCamera.getScale());
+        float size = TileCache.tileWorldSize(level);
+        int firstCol = (int)Math.floor(left/size), lastCol = (int)Math.floor(right/size);
+        int firstRow = (int)Math.floor(top/size), lastRow = (int)Math.floor(bottom/size);
+        canvas.save();
+        canvas.translate( mCamera.getTranslateX(), mCamera.getTranslateY() );
+        canvas.scale( mCamera.getScale(), mCamera.getScale() );
+        for (int row = firstRow; row <= lastRow; row++)
+            for (int col = firstCol; col <= lastCol; col++) {
+                TileCache.Tile tile = mTileCache.get(level,col,row);
+                if(tile == null)
+                    tile = renderTile(level,col,row);
+                if(tile.bitmap == null)
+                    continue;
+                mTileBounds.left = col*size;
+                mTileBounds.top = row*size;
+                mTileBounds.right = mTileBounds.left+size;
+                mTileBounds.bottom = mTileBounds.top+size;
+                canvas.drawBitmap( tile.bitmap, null, mTileBounds, mTilePaint );
+            }
+        canvas.restore();
+    }
+
+    private TileCache.Tile renderTile(int level,int col,int row) {
+        float scale = TileCache.levelScale(level);
+        float size = TileCache.tileWorldSize(level);
+        float left = col*size, top = row*size, pad = TILE_QUERY_PAD/scale;
+        query( left-pad, top-pad, left+size+pad, top+size+pad, mVisibleDrawables );
+        Bitmap bitmap = null;
+        if(!mVisibleDrawables.isEmpty()) {
+            try {
+                bitmap = Bitmap.createBitmap( TileCache.TILE_SIZE, TileCache.TILE_SIZE, Bitmap.Config.ARGB_8888 );
+            } catch (OutOfMemoryError e) {
+                mTileCache.clear();
+                bitmap = Bitmap.createBitmap( TileCache.TILE_SIZE, TileCache.TILE_SIZE, Bitmap.Config.ARGB_8888 );
+            }
+            Canvas canvas = new Canvas(bitmap);
+            canvas.scale( scale, scale );
+            canvas.translate( -left, -top );
+            mRenderScale = scale;
+            drawDrawables(canvas,mVisibleDrawables);
+            mRenderScale = 0f;
+        }
+        mVisibleDrawables.clear();
+        return mTileCache.put(level,col,row,bitmap,bitmap == null ? 0 : bitmap.getByteCount());
+    }
+
+    /**
+     * Drop the cached tiles the drawable is painted on, call before and after changing it
+     */
+    void invalidateTiles(MindMapDrawable drawable) {
+        for (int level = TileCache.MIN_LEVEL; level <= TileCache.MAX_LEVEL; level++) {
+            if(!mTileCache.hasLevel(level))
+                continue;
+            drawable.getDrawBounds(mTileBounds,TileCache.levelScale(level));
+            mTileCache.invalidate(level,mTileBounds.left,mTileBounds.top,mTileBounds.right,mTileBounds.bottom);
         }
+    }
+
+    /**
+     * @param maxBytes memory the tile cache may hold, tiles are evicted least recently used first
+     */
+    public void setTileCacheSize(long maxBytes) {
+        mTileCache.setMaxBytes(maxBytes);
+    }
+
+    /**
+     * @param maxBytes memory the undo history may hold, the oldest edits are forgotten first
+     */
+    public void setHistorySize(long maxBytes) {
+        mHistory.setMaxBytes(maxBytes);
+    }
+
+    EditHistory getHistory() {
+        return mHistory;
+    }
+
+    /**
+     * Undo the last edit, nothing happens while a node or an edge is being dragged or a file is loading
+     * @return false if there was nothing to undo
+     */
+    public boolean undo() {
+        if(mLoading || mViewTask == ViewTask.MOVE_EDGE || mEdge != null)
+            return false;
+        if(!mHistory.undo(this))
+            return false;
+        savePending = true;
+        postInvalidate();
+        return true;
+    }
 
+    /**
+     * Redo the last edit undone
+     * @return false if there was nothing to redo
+     */
+    public boolean redo() {
+        if(mLoading || mViewTask == ViewTask.MOVE_EDGE || mEdge != null)
+            return false;
+        if(!mHistory.redo(this))
+            return false;
+        savePending = true;
+        postInvalidate();
+        return true;
+    }
+
+    /**
+     * Add an item, a renderer is made for it if it has none yet
+     */
+    @Override
+    public void addItem(GraphItem item) {
+        MindMapDrawable drawable = (MindMapDrawable) item.getTag();
+        if(drawable == null)
+            drawable = item.isNode() ? new Node((GraphNode) item,this) : new Edge((GraphEdge) item,this);
+        addDrawable(drawable);
+    }
+
+    /**
+     * Nodes read by readItems() go straight into the document's store
+     */
+    @Override
+    public NodeStore getNodeStore() {
+        return mDocument.getNodeStore();
+    }
+
+    @Override
+    public void removeItem(GraphItem item) {
+        removeDrawable((MindMapDrawable) item.getTag());
+    }
+
+    @Override
+    public void moveNode(GraphNode node,float x,float y) {
+        dropStaticLayer();
+        moveNode((Node) node.getTag(),x,y);
+        invalidateDamage();
+    }
+
+    @Override
+    public void restyle(GraphItem item,ItemStyle style) {
+        MindMapDrawable drawable = (MindMapDrawable) item.getTag();
+        dropStaticLayer();
+        invalidateTiles(drawable);
+        style.applyTo(item);
+        if(mDocument.contains(item)) {
+            indexDrawable(drawable);
+            invalidateTiles(drawable);
+        }
+    }
+
+    /**
+     * Draw everything the drag of node does not change into mStaticLayer,
+     * the node and its incident edges are kept in mMovingDrawables
+     */
+    private void buildStaticLayer(Node node) {
+        dropStaticLayer();
+        //set even without a layer, so the rest of the drag does not try again
+        mStaticLayerNode = node;
+        if(getWidth() <= 0 || getHeight() <= 0)
+            return;
+        Bitmap layer;
+        try {
+            layer = Bitmap.createBitmap( getWidth(), getHeight(), Bitmap.Config.ARGB_8888 );
+        } catch (OutOfMemoryError e) {
+            return; //keep drawing everything every frame
+        }
+        mMovingDrawables.addAll(getIncidentEdges(node));
+        mMovingDrawables.add(node);
+
+        Canvas canvas = new Canvas(layer);
+        canvas.translate( mCamera.getTranslateX(), mCamera.getTranslateY() );
+        canvas.scale( mCamera.getScale(), mCamera.getScale() );
+        query( toWorldX(0), toWorldY(0), toWorldX(getWidth()), toWorldY(getHeight()), mVisibleDrawables );
+        mVisibleDrawables.removeAll(mMovingDrawables);
+        drawDrawables(canvas,mVisibleDrawables);
+        mVisibleDrawables.clear();
+        mStaticLayer = layer;
+    }
+
+    /**
+     * Forget the static layer, the next frame draws every drawable again
+     */
+    void dropStaticLayer() {
+        mStaticLayerNode = null;
+        if(mStaticLayer == null)
+            return;
+        mStaticLayer.recycle();
+        mStaticLayer = null;
+        mMovingDrawables.clear();
+        postInvalidate();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        dropStaticLayer();
+    }
+
+    float toWorldX(float screenX) {
+        return mCamera.toWorldX(screenX);
+    }
+
+    float toWorldY(float screenY) {
+        return mCamera.toWorldY(screenY);
+    }
+
+    /**
+     * Configure the level of detail, each threshold is a view scale below which that level applies
+     * @param noLabels      titles are no longer drawn
+     * @param noArrowheads  arrowheads are no longer drawn either
+     * @param simpleShapes  nodes become plain rectangles and edges centre to centre lines
+     */
+    public void setDetailThresholds(float noLabels,float noArrowheads,float simpleShapes){
+        mNoLabelsScale = noLabels;
+        mNoArrowheadsScale = Math.min(noArrowheads,noLabels);
+        mSimpleShapesScale = Math.min(simpleShapes,mNoArrowheadsScale);
+        mTileCache.clear();
+        postInvalidate();
+    }
+
+    /**
+     * @return how much detail drawables should render at the current zoom, everything while exporting
+     */
+    DetailLevel getDetailLevel() {
+        float scale = getDrawScale();
+        if(scale < mSimpleShapesScale)
+            return DetailLevel.SIMPLE_SHAPES;
+        if(scale < mNoArrowheadsScale)
+            return DetailLevel.NO_ARROWHEADS;
+        if(scale < mNoLabelsScale)
+            return DetailLevel.NO_LABELS;
+        return DetailLevel.FULL;
+    }
+
+    /**
+     * @return scale the drawables are currently drawn at, 1 while exporting
+     */
+    float getDrawScale() {
+        if(mExporting)
+            return 1f;
+        return mRenderScale > 0 ? mRenderScale : mCamera.getScale();
     }
 
     public void addDrawable(MindMapDrawable drawable) {
-        mAllViewDrawables.add(drawable);
+        if(drawable == null)
+            return;
+        dropStaticLayer();
+        mDocument.add(drawable.getModel());
+        if(drawable.type() == DrawableType.NODE)
+            mNodes.add((Node) drawable);
+        else
+            mEdges.add((Edge) drawable);
+        indexDrawable(drawable);
+        //the indexes draw in the z-order of the document
+        if(drawable.type() == DrawableType.NODE)
+            mNodeIndex.setOrder((Node) drawable,mDocument.getOrder(drawable.getModel()));
+        else
+            mEdgeIndex.setOrder((Edge) drawable,mDocument.getOrder(drawable.getModel()));
+        invalidateTiles(drawable);
         savePending = true;
         postInvalidate();
     }
 
+    /**
+     * Add the items of a saved file, edges are resolved against the nodes added before them.
+     * Every item gets a new key, the ids in the file are only used while reading it
+     * @param items JSONArray of Node and Edge JSONObjects
+     */
+    public void addItems(JSONArray items) throws JSONException {
+        IdRemap remap = new IdRemap();
+        for (int i = 0; i < items.length(); i++) {
+            GraphItem item = GraphDocument.readItem(items.getJSONObject(i),remap);
+            if (item == null)
+                continue;
+            if (item.isNode())
+                addDrawable(new Node((GraphNode) item,this));
+            else
+                addDrawable(new Edge((GraphEdge) item,this));
+        }
+    }
+
+    /**
+     * Replace what is shown with a .map file in either format, items are added while the file is being read
+     * @param totalBytes size of the file for progress reports, -1 if it is not known
+     * @param listener   told how far the read got, may be null
+     */
+    public void readItems(InputStream in,long totalBytes,MapReader.ProgressListener listener) throws IOException {
+        resetSpace(1f,0f,0f);
+        MapIo.read(in,totalBytes,this,mCamera,listener);
+        //the camera is only known once the whole file was read
+        mTileCache.clear();
+        savePending = false;
+        postInvalidate();
+    }
+
+    /**
+     * Start showing a file read on another thread, its items come through addItems and it ends with finishLoad,
+     * the view takes no edits until then
+     */
+    public void beginLoad() {
+        resetSpace(1f,0f,0f);
+        mLoading = true;
+    }
+
+    /**
+     * Add a batch of items read on another thread, those read before them are already shown
+     */
+    public void addItems(List<GraphItem> items) {
+        for (GraphItem item : items)
+            addItem(item);
+        postInvalidate();
+    }
+
+    /**
+     * @param camera the camera of the file, only known once all of it was read
+     */
+    public void finishLoad(Camera camera) {
+        mCamera.set(camera.getScale(),camera.getTranslateX(),camera.getTranslateY());
+        mTileCache.clear();
+        savePending = false;
+        mLoading = false;
+        postInvalidate();
+    }
+
+    /**
+     * @return true between beginLoad and finishLoad, edits are ignored meanwhile
+     */
+    public boolean isLoading() {
+        return mLoading;
+    }
+
+    /**
+     * @return the drawable with the given key, null if there is none
+     */
+    public MindMapDrawable getDrawable(int key) {
+        GraphItem item = mDocument.getItem(key);
+        return item == null ? null : (MindMapDrawable) item.getTag();
+    }
+
+    /**
+     * @return the node with the given key, null if there is none or it is an edge
+     */
+    public Node getNode(int key) {
+        MindMapDrawable drawable = getDrawable(key);
+        return drawable != null && drawable.type() == DrawableType.NODE ? (Node) drawable : null;
+    }
+
+    /**
+     * @return the document this view draws, change it through the view so its indexes follow
+     */
+    public GraphDocument getDocument() {
+        return mDocument;
+    }
+
+    /**
+     * Insert the drawable into the spatial index or refresh its bounds after it changed
+     */
+    void indexDrawable(MindMapDrawable drawable) {
+        drawable.getBounds(mIndexBounds);
+        if(drawable.type() == DrawableType.NODE)
+            mNodeIndex.update((Node) drawable,mIndexBounds.left,mIndexBounds.top,mIndexBounds.right,mIndexBounds.bottom);
+        else
+            mEdgeIndex.update((Edge) drawable,mIndexBounds.left,mIndexBounds.top,mIndexBounds.right,mIndexBounds.bottom);
+    }
+
+    /**
+     * Collect the drawables whose bounds intersect the world rectangle in drawing order,
+     * edges bottom to top followed by nodes bottom to top
+     */
+    void query(float left,float top,float right,float bottom,List<MindMapDrawable> out) {
+        mEdgeIndex.query( left, top, right, bottom, out );
+        mNodeIndex.query( left, top, right, bottom, out );
+    }
+
+    /**
+     * Draw the drawable above every other one of its type, its place in the saved order follows
+     */
+    public void bringDrawableToFront(MindMapDrawable drawable) {
+        mDocument.bringToFront(drawable.getModel());
+        if(drawable.type() == DrawableType.NODE)
+            mNodeIndex.setOrder((Node) drawable,mDocument.getOrder(drawable.getModel()));
+        else
+            mEdgeIndex.setOrder((Edge) drawable,mDocument.getOrder(drawable.getModel()));
+        invalidateTiles(drawable);
+        dropStaticLayer();
+        postInvalidate();
+    }
+
+    /**
+     * Bring the drawable to the front as an edit that can be undone, the edit it is raised for is merged into it.
+     * Nothing is recorded if it is in front already
+     */
+    void raise(MindMapDrawable drawable) {
+        GraphItem item = drawable.getModel();
+        if(mDocument.isInFront(item))
+            return;
+        long fromOrder = mDocument.getOrder(item);
+        bringDrawableToFront(drawable);
+        mHistory.record(EditCommand.raise(item,fromOrder));
+    }
+
+    @Override
+    public void bringToFront(GraphItem item) {
+        bringDrawableToFront((MindMapDrawable) item.getTag());
+    }
+
+    @Override
+    public void setOrder(GraphItem item,long order) {
+        mDocument.setOrder(item,order);
+        MindMapDrawable drawable = (MindMapDrawable) item.getTag();
+        if(drawable.type() == DrawableType.NODE)
+            mNodeIndex.setOrder((Node) drawable,order);
+        else
+            mEdgeIndex.setOrder((Edge) drawable,order);
+        invalidateTiles(drawable);
+        dropStaticLayer();
+        postInvalidate();
+    }
+
     public void addNode(float x,float y,String title,String description,NodeShape shape,int color,float nodeRadius){
         Node node = new Node(x,y,this,title, description,shape);
         node.set( x,y);
         node.setColorID(color);
         node.setR(nodeRadius);
         addDrawable(node);
+        mHistory.record(EditCommand.add(node.getModel()));
     }
     @Override
     public boolean onTouchEvent(MotionEvent event) {
         super.onTouchEvent(event);
         ((MainActivity)mContext).closeOptions();
-        if(mViewTask == ViewTask.DETAILS_WINDOW) {
+        if(mViewTask == ViewTask.DETAILS_WINDOW || mLoading) {
             return true;
         }
         mEvent = event;
@@ -271,8 +832,8 @@ public class MainView extends View implements View.OnClickListener,View.OnLongCl
             case MotionEvent.ACTION_DOWN:
                 if(mViewTask ==  ViewTask.PAN_SCREEN)
                     break;
-                mDownX = event.getX();
-                mDownY = event.getY();
+                mDownX = toWorldX(event.getX());
+                mDownY = toWorldY(event.getY());
                 break;
             case MotionEvent.ACTION_MOVE:
                 float moveX = event.getX();
@@ -283,9 +844,11 @@ public class MainView extends View implements View.OnClickListener,View.OnLongCl
                     mShiftY = moveY-mSwipeDownY;
                     mSwipeDownX = moveX;
                     mSwipeDownY = moveY;
-                    moveDrawables(true);
+                    moveView();
                     return true;
                 }
+                moveX = toWorldX(moveX);
+                moveY = toWorldY(moveY);
 
                 if(mClicked==null)
                     mClickedNodeSelected = false;
@@ -298,15 +861,26 @@ public class MainView extends View implements View.OnClickListener,View.OnLongCl
 
                 if(mViewTask == ViewTask.MOVE_NODE) {
                     Node selectedNode = (Node) mClicked;
+                    if(mStaticLayerNode != selectedNode) {
+                        //a node being dragged is drawn above the others
+                        raise(selectedNode);
+                        buildStaticLayer(selectedNode);
+                    }
+                    float fromX = selectedNode.getX(), fromY = selectedNode.getY();
                     moveNode(selectedNode,moveX,moveY);
+                    //one drag is one undo step, the moves of a drag are merged until the finger is lifted
+                    mHistory.record(EditCommand.move(selectedNode.getModel(),fromX,fromY));
                     savePending = true;
-                    postInvalidate();
+                    invalidateDamage();
                     return true;
                 }
                 else if(mViewTask==ViewTask.MOVE_EDGE){
+                    addDamage(mEdge);
                     mEdge.setEnd(moveX,moveY);
+                    indexDrawable(mEdge);
+                    addDamage(mEdge);
                     savePending = true;
-                    postInvalidate();
+                    invalidateDamage();
                     return true;
                 }
                 break;
@@ -322,22 +896,28 @@ public class MainView extends View implements View.OnClickListener,View.OnLongCl
                 }
                 if(mViewTask == ViewTask.MOVE_NODE) {
                     mViewTask = ViewTask.IDLE;
+                    mHistory.endMerge();
                     mClickedNodeSelected = false;
+                    dropStaticLayer();
                     return true;
                 }
                 if(mViewTask == ViewTask.MOVE_EDGE){
-                    float upX = event.getX();
-                    float upY = event.getY();
+                    float upX = toWorldX(event.getX());
+                    float upY = toWorldY(event.getY());
                     Node toNode =  (Node)findItem(upX, upY,DrawableType.NODE);
+                    invalidateTiles(mEdge);
                     if(toNode == null || toNode == mEdge.getFromNode()){
-                        if( mAllViewDrawables.size() > 0 )
-                            mAllViewDrawables.remove( mAllViewDrawables.size() - 1 );
+                        mDocument.remove(mEdge.getModel());
+                        mEdges.remove(mEdge);
+                        mEdgeIndex.remove(mEdge);
                     }
                     else {
-                        mEdge.setToNode(toNode);
-                        float[] centreXY = (toNode).centre();
-                        mEdge.setEnd(centreXY[0],centreXY[1]);
+                        reconnectEdge(mEdge,mEdge.getFromNode(),toNode);
                         mEdge.editable( false );
+                        indexDrawable(mEdge);
+                        invalidateTiles(mEdge);
+                        //the edge was in the view while it was drawn, it only becomes an edit once connected
+                        mHistory.record(EditCommand.add(mEdge.getModel()));
                     }
                     mEdge = null;
                     mClickedNodeSelected = false;
@@ -356,6 +936,8 @@ public class MainView extends View implements View.OnClickListener,View.OnLongCl
 
     @Override
     public void onClick(View view){
+        if(mLoading)
+            return;
         //Double CLick
         if(mClicked!=null){
            MindMapDrawable  pClicked = mClicked;
@@ -367,15 +949,11 @@ public class MainView extends View implements View.OnClickListener,View.OnLongCl
                if(mClicked instanceof Node) {
                    if(mViewTask == ViewTask.IDLE) {
                        float[] centreXY = ((Node)mClicked).centre();
-                       mEdge = new Edge( centreXY[0], centreXY[1], centreXY[0], centreXY[1],this );
-                       mEdge.setFromNode((Node)mClicked);
+                       mEdge = new Edge( (Node)mClicked, centreXY[0], centreXY[1], this );
                        mEdge.setArrowShape(lastSelectedArrowShape);
                        mEdge.setColorID(lastSelectedEdgeColor);
-                       if(mScaleFactor!=0)
-                           mEdge.setEdgeStrokeWidth(lastSelectedStrokeWidth*mScaleFactor);
-                       else
-                           mEdge.setEdgeStrokeWidth(Edge.DEFAULT_STROKE_WIDTH);
-                       mAllViewDrawables.add( mEdge );
+                       mEdge.setEdgeStrokeWidth(lastSelectedStrokeWidth);
+                       addDrawable( mEdge );
                        mViewTask = ViewTask.MOVE_EDGE;
                        savePending = true;
                        postInvalidate();
@@ -391,7 +969,6 @@ public class MainView extends View implements View.OnClickListener,View.OnLongCl
         if(mClicked==null)
             mClicked = findItem(mDownX, mDownY,DrawableType.EDGE);
         if(mClicked!=null) {
-
             if(mClicked instanceof Node) {
                 if( mViewTask == ViewTask.IDLE)
                     mViewTask = ViewTask.MOVE_NODE;
@@ -409,6 +986,8 @@ public class MainView extends View implements View.OnClickListener,View.OnLongCl
 
     @Override
     public boolean onLongClick(View view) {
+        if(mLoading)
+            return true;
         mLongClicked = findItem(mDownX, mDownY,DrawableType.NODE);
         if(mLongClicked==null)
             mLongClicked = findItem(mDownX, mDownY,DrawableType.EDGE);
@@ -462,10 +1041,7 @@ public class MainView extends View implements View.OnClickListener,View.OnLongCl
         if(mLongClicked == null){
             mColorId = lastSelectedNodeColor;
             mNodeShape = lastSelectedNodeShape;
-            if(mScaleFactor!=0)
-                mNodeRadius = lastSelectedNodeRadius*mScaleFactor;
-            else
-                mNodeRadius = Node.DEFAULT_NODE_RADIUS;
+            mNodeRadius = lastSelectedNodeRadius;
         }
 
         final ImageButton setButton = detailsLayout.findViewById(R.id.set_button );
@@ -478,12 +1054,11 @@ public class MainView extends View implements View.OnClickListener,View.OnLongCl
                     addNode( mDownX, mDownY, nameEditText.getText().toString(), descriptionEditText.getText().toString(), mNodeShape, mColorId,mNodeRadius );
                     lastSelectedNodeColor = mColorId;
                     lastSelectedNodeShape = mNodeShape;
-                    if(mScaleFactor!=0)
-                        lastSelectedNodeRadius = mNodeRadius/mScaleFactor;
-                    else
-                        lastSelectedNodeRadius = Node.DEFAULT_NODE_RADIUS;
+                    lastSelectedNodeRadius = mNodeRadius;
                 }
                 else{
+                    ItemStyle before = ItemStyle.of(mLongClicked.getModel());
+                    invalidateTiles(mLongClicked);
                     (mLongClicked).setTitle( nameEditText.getText().toString() );
                     (mLongClicked).setDescription( descriptionEditText.getText().toString() );
                     (mLongClicked).setColorID(mColorId);
@@ -493,22 +1068,23 @@ public class MainView extends View implements View.OnClickListener,View.OnLongCl
                         ((Node)mLongClicked).setR(mNodeRadius);
                         lastSelectedNodeColor = mColorId;
                         lastSelectedNodeShape = mNodeShape;
-                        if(mScaleFactor!=0)
-                            lastSelectedNodeRadius = mNodeRadius/mScaleFactor;
-                        else
-                            lastSelectedNodeRadius = Node.DEFAULT_NODE_RADIUS;
+                        lastSelectedNodeRadius = mNodeRadius;
                     }
                     else {
                         ((Edge) mLongClicked).setArrowShape(mArrowShape);
                         ((Edge) mLongClicked).setEdgeStrokeWidth(mEdgeStrokeWidth);
                         lastSelectedEdgeColor = mColorId;
                         lastSelectedArrowShape = mArrowShape;
-                        if(mScaleFactor!=0)
-                            lastSelectedStrokeWidth = mEdgeStrokeWidth/mScaleFactor;
-                        else
-                            lastSelectedStrokeWidth = Edge.DEFAULT_STROKE_WIDTH;
+                        lastSelectedStrokeWidth = mEdgeStrokeWidth;
+                    }
+                    indexDrawable(mLongClicked);
+                    invalidateTiles(mLongClicked);
+                    if(!before.equals(ItemStyle.of(mLongClicked.getModel()))) {
+                        //an item just edited is drawn above the others
+                        raise(mLongClicked);
+                        mHistory.record(EditCommand.restyle(mLongClicked.getModel(),before));
+                        mHistory.endMerge();
                     }
-
                 }
                 detailsAlertDialog.dismiss();
                 postInvalidate();
@@ -878,75 +1454,167 @@ public class MainView extends View implements View.OnClickListener,View.OnLongCl
         return findItem(x,y,null);
     }
 
+    /**
+     * @param type only look in this layer, null for nodes first and then edges
+     * @return the topmost drawable at the point
+     */
     public MindMapDrawable findItem(float x, float y, DrawableType type) {
-        for (MindMapDrawable drawable : mAllViewDrawables)
-            if (drawable.contains( (int)(x), (int)(y) ) && ((type == null)||(type == drawable.type())))
-                return drawable;
-        return null;
+        MindMapDrawable found = null;
+        if(type == null || type == DrawableType.NODE)
+            found = findTopmost(mNodeIndex,x,y);
+        if(found == null && (type == null || type == DrawableType.EDGE))
+            found = findTopmost(mEdgeIndex,x,y);
+        return found;
+    }
+
+    private <T extends MindMapDrawable> MindMapDrawable findTopmost(QuadTree<T> index,float x,float y) {
+        //candidates come back bottom to top, the last hit is the one drawn over the others
+        mHitCandidates.clear();
+        index.query( (int)(x), (int)(y), mHitCandidates );
+        MindMapDrawable found = null;
+        for (int i = mHitCandidates.size()-1; i >= 0; i--)
+            if (mHitCandidates.get(i).contains( (int)(x), (int)(y) )) {
+                found = mHitCandidates.get(i);
+                break;
+            }
+        mHitCandidates.clear();
+        return found;
     }
 
     public void deleteItem(MindMapDrawable item) {
         if (item != null) {
-            if (item instanceof Node) {
-                Iterator<MindMapDrawable> iterator = mAllViewDrawables.iterator();
-                //check all the items and see if there's an arrow pointing to the item we will remove
-                while (iterator.hasNext()) {
-                    MindMapDrawable drawable = iterator.next();
-                    if (drawable instanceof Edge) {
-                        Edge edge = (Edge) drawable;
-                        if (edge.fromNode((Node)item)||edge.toNode((Node)item))
-                            iterator.remove();
-                    }
-                }
-            }
-            mAllViewDrawables.remove(item);
+            List<GraphEdge> removed = removeDrawable(item);
+            mHistory.record(EditCommand.delete(item.getModel(),removed));
         }
         savePending = true;
         postInvalidate();
     }
 
-    public void moveNode(Node node,float moveX,float moveY) {
-        Iterator<MindMapDrawable> iterator = mAllViewDrawables.iterator();
-        while (iterator.hasNext()) {
-            MindMapDrawable drawable = iterator.next();
-            if (drawable instanceof Edge) {
-                Edge edge = (Edge) drawable;
-                if (edge.fromNode(node))
-                    edge.setStart(moveX,moveY);
-                if (edge.toNode(node))
-                    edge.setEnd(moveX,moveY);
+    /**
+     * Take the drawable out of the document and the view without recording an edit
+     * @return the edges removed along with a node
+     */
+    private List<GraphEdge> removeDrawable(MindMapDrawable item) {
+        dropStaticLayer();
+        //the edges pointing to or from a node go with it
+        List<GraphEdge> removed = mDocument.remove(item.getModel());
+        if (item.type() == DrawableType.NODE) {
+            for (int i = 0; i < removed.size(); i++) {
+                Edge edge = (Edge) removed.get(i).getTag();
+                invalidateTiles(edge);
+                mEdges.remove(edge);
+                mEdgeIndex.remove(edge);
             }
+            invalidateTiles(item);
+            mNodes.remove(item);
+            mNodeIndex.remove((Node) item);
         }
-        node.set( moveX, moveY );
+        else {
+            invalidateTiles(item);
+            mEdges.remove(item);
+            mEdgeIndex.remove((Edge) item);
+        }
+        savePending = true;
+        postInvalidate();
+        return removed;
     }
 
-    public void moveDrawables(boolean postInvalidate){
-        for (MindMapDrawable drawable : mAllViewDrawables) {
-            drawable.move(mShiftX,mShiftY);
+    /**
+     * Move a node and the ends of its edges, the old and new areas are added to the damage region
+     */
+    public void moveNode(Node node,float moveX,float moveY) {
+        //edges take their ends from the node, only the incident ones need new bounds
+        List<GraphEdge> incident = mDocument.getIncidentEdges(node.getModel());
+        for (int i = 0; i < incident.size(); i++)
+            addDamage((Edge) incident.get(i).getTag());
+        addDamage(node);
+        node.set( moveX, moveY );
+        indexDrawable(node);
+        addDamage(node);
+        for (int i = 0; i < incident.size(); i++) {
+            Edge edge = (Edge) incident.get(i).getTag();
+            indexDrawable(edge);
+            addDamage(edge);
         }
+    }
+
+    /**
+     * @return a new list of the edges attached to node
+     */
+    ArrayList<Edge> getIncidentEdges(Node node) {
+        List<GraphEdge> models = mDocument.getIncidentEdges(node.getModel());
+        ArrayList<Edge> edges = new ArrayList<>(models.size());
+        for (int i = 0; i < models.size(); i++)
+            edges.add((Edge) models.get(i).getTag());
+        return edges;
+    }
+
+    /**
+     * Attach the edge to other nodes, keeping the adjacency and spatial indexes in sync
+     */
+    public void reconnectEdge(Edge edge,Node fromNode,Node toNode) {
+        mDocument.reconnect(edge.getModel(),fromNode.getModel(),toNode == null ? null : toNode.getModel());
+        if(mEdgeIndex.contains(edge))
+            indexDrawable(edge);
+    }
+
+    /**
+     * Add the area the drawable is painted on to the damage region and drop the tiles under it
+     */
+    void addDamage(MindMapDrawable drawable) {
+        drawable.getDrawBounds(mDamageBounds,mCamera.getScale());
+        mDamage.union(mDamageBounds);
+        invalidateTiles(drawable);
+    }
+
+    DamageRegion getDamage() {
+        return mDamage;
+    }
+
+    /**
+     * Invalidate only the screen area covered by the damage region and start a new one
+     */
+    void invalidateDamage() {
+        if(mDamage.isEmpty())
+            return;
+        mDamage.mapToScreen( mCamera.getScale(), mCamera.getTranslateX(), mCamera.getTranslateY(), DAMAGE_PAD );
+        postInvalidate( mDamage.getScreenLeft(), mDamage.getScreenTop(), mDamage.getScreenRight(), mDamage.getScreenBottom() );
+        mDamage.reset();
+    }
+
+    /**
+     * pan the camera by mShiftX,mShiftY, the drawables themselves do not move
+     */
+    public void moveView(){
+        dropStaticLayer();
+        mCamera.translate( mShiftX, mShiftY );
         savePending = true;
-        if(postInvalidate)
-            postInvalidate();
+        postInvalidate();
     }
 
-    public void scaleDrawables(float focusX,float focusY,boolean postInvaclidate){
-        for (MindMapDrawable drawable : mAllViewDrawables) {
-            drawable.scale(mScaleFactor);
-        }
-        float scaledFocusX =  focusX*mChangeInscale;
-        float scaledFocusY =  focusY*mChangeInscale;
-        mShiftX = focusX - scaledFocusX;
-        mShiftY = focusY - scaledFocusY;
-        moveDrawables(postInvaclidate);
-//        savePending = true;
-//        postInvalidate();
+    /**
+     * zoom the camera by mChangeInscale keeping the world point under the focus still
+     */
+    public void scaleView(float focusX,float focusY){
+        dropStaticLayer();
+        mCamera.setTranslate( focusX - (focusX-mCamera.getTranslateX())*mChangeInscale,
+                focusY - (focusY-mCamera.getTranslateY())*mChangeInscale );
+        savePending = true;
+        postInvalidate();
     }
 
     /**
-     * @return an ArrayList contianing all the drawables
+     * @return the node layer in the order nodes were added
      */
-    public ArrayList<MindMapDrawable> getAllClassDrawables() {
-        return mAllViewDrawables;
+    public ArrayList<Node> getNodes() {
+        return mNodes;
+    }
+
+    /**
+     * @return the edge layer in the order edges were added
+     */
+    public ArrayList<Edge> getEdges() {
+        return mEdges;
     }
 
 
@@ -955,40 +1623,40 @@ public class MainView extends View implements View.OnClickListener,View.OnLongCl
      */
     public Bitmap getBitmap() {
         mExporting = true;
-        float oldChnageInScale = mChangeInscale;
-        if(mScaleFactor!=1) {
-            mChangeInscale = 1 / mScaleFactor;
-            scaleDrawables( getWidth(), getHeight(),false );
-        }
-        PointF topLeft = new PointF(0,0), bottomRight = new PointF( getWidth(),getHeight() );
-        for (MindMapDrawable drawable : mAllViewDrawables) {
-            if (drawable instanceof Node) {
-                PointF p = ((Node) drawable).getXY();
-                float r = ((Node) drawable).getR();
-                if (topLeft.x > p.x - 2 * r)
-                    topLeft.x = p.x - 2 * r;
-                if (topLeft.y > p.y - 2 * r)
-                    topLeft.y = p.y - 2 * r;
-                if (bottomRight.x < p.x + 2 * r)
-                    bottomRight.x = p.x + 2 * r;
-                if (bottomRight.y < p.y + 2 * r)
-                    bottomRight.y = p.y + 2 * r;
-            }
+        //export at scale 1 around every node, a margin of one radius on each side
+        float left = Float.MAX_VALUE, top = Float.MAX_VALUE, right = -Float.MAX_VALUE, bottom = -Float.MAX_VALUE;
+        for (Node node : mNodes) {
+            PointF p = node.getXY();
+            float r = node.getR();
+            left = Math.min(left, p.x - 2 * r);
+            top = Math.min(top, p.y - 2 * r);
+            right = Math.max(right, p.x + 2 * r);
+            bottom = Math.max(bottom, p.y + 2 * r);
+        }
+        //curved edges and their titles can reach past the nodes they join
+        for (Edge edge : mEdges) {
+            edge.getDrawBounds(mIndexBounds, 1);
+            left = Math.min(left, mIndexBounds.left);
+            top = Math.min(top, mIndexBounds.top);
+            right = Math.max(right, mIndexBounds.right);
+            bottom = Math.max(bottom, mIndexBounds.bottom);
+        }
+        if (left > right) {
+            left = toWorldX(0);
+            top = toWorldY(0);
+            right = left + getWidth();
+            bottom = top + getHeight();
         }
-        Bitmap result = Bitmap.createBitmap((int)(bottomRight.x - topLeft.x), (int)(bottomRight.y - topLeft.y),
+        Bitmap result = Bitmap.createBitmap((int)(right - left), (int)(bottom - top),
                 Bitmap.Config.ARGB_8888);
         Canvas canvas = new Canvas(result);
         canvas.drawColor(Color.WHITE);
+        canvas.translate(-left, -top);
 
-        for (MindMapDrawable drawable : mAllViewDrawables){
-            drawable.draw(canvas,topLeft);
-        }
-
-        if(mScaleFactor!=1) {
-            mChangeInscale = mScaleFactor;
-            scaleDrawables( getWidth(), getHeight(),false );
-            mChangeInscale = oldChnageInScale;
-        }
+        mVisibleDrawables.clear();
+        query(-Float.MAX_VALUE, -Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE, mVisibleDrawables);
+        drawDrawables(canvas,mVisibleDrawables);
+        mVisibleDrawables.clear();
 
         mExporting = false;
         return result;
@@ -1,7 +1,9 @@
 package com.mindmap.expressFlowchart;
 
 import android.graphics.Canvas;
-import android.graphics.PointF;
+import android.graphics.RectF;
+
+import com.mindmap.expressFlowchart.document.GraphItem;
 
 import org.json.JSONObject;
 
@@ -12,27 +14,31 @@ public interface MindMapDrawable {
     DrawableType type();
 
     /**
-     * Draw the item in a given Canvas
+     * Draw the item in a given Canvas, coordinates are world coordinates
+     * the Canvas is expected to carry the view's pan and zoom
      * @param c Canvas on which to draw the MindMapDrawable
      */
     void draw(Canvas c);
-    void draw(Canvas c, PointF reference);
 
     /**
-     * returns if the item is in vieport of screen
-     * @param height,width of the screen
+     * Issue the drawing commands of the item, draw() either calls this
+     * or replays a recording of it on hardware accelerated API 29+ canvases
+     * @param c Canvas on which to draw the MindMapDrawable
      */
-    boolean onScreen(float width ,float height);
+    void drawDirect(Canvas c);
 
     /**
-     * move the drawable as the screen moves
+     * Bounding box of everything contains() can return true for, used by the spatial index
+     * @param bounds RectF the bounds are written into
      */
-    void move(float shiftX,float shiftY);
+    void getBounds(RectF bounds);
 
     /**
-     * scale the drawable as the screen moves
+     * Bounding box of everything draw() paints at the given zoom, labels and cursors included
+     * @param bounds RectF the bounds are written into
+     * @param scale  view scale the drawable is drawn at
      */
-    void scale(float mScaleFactor);
+    void getDrawBounds(RectF bounds,float scale);
 
     /**
      * Check if the given points lie inside the UmlDrawable
@@ -48,10 +54,20 @@ public interface MindMapDrawable {
     JSONObject toJson();
 
     /**
-     * @return a Unique String Id of this MindMapDrawable
+     * @return the compact id this MindMapDrawable is known by while the map is open
+     */
+    int getKey();
+
+    /**
+     * @return the String Id this MindMapDrawable is saved with
      */
     String getId();
 
+    /**
+     * @return the document item this draws, it holds everything that is saved
+     */
+    GraphItem getModel();
+
     String getTitle();
     void setTitle(String title);
 
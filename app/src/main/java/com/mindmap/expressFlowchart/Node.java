@@ -7,112 +7,108 @@ import android.graphics.Path;
 import android.graphics.PointF;
 import android.graphics.Rect;
 import android.graphics.RectF;
+import android.os.Build;
 
+import com.mindmap.expressFlowchart.document.GraphNode;
+import com.mindmap.expressFlowchart.document.NodeShape;
+
+import org.json.JSONException;
 import org.json.JSONObject;
-enum NodeShape { CIRCLE, SQUARE, DIAMOND };
+
+/**
+ * Draws a GraphNode, everything that is saved lives in the model.
+ * Paints are shared by every node of the view, so a node only keeps its outline and label
+ */
 public class Node implements MindMapDrawable{
 
-    //Saved in Json
-    int mNodeColorID;
-    private float mX,mY,mR;
-    private String mId;
-    private String mTitle = "";
-    private String mDescription  = "";
-    private NodeShape mShape = NodeShape.CIRCLE;
-    private float mTextSize;
+    private final GraphNode mModel;
     //Not Saved in Json
-    Paint mPaint;
-    Path mPath;
-    Paint mTitlePaint;
-    public static final int DEFAULT_NODE_COLOR = Color.BLUE;
-    public static final float DEFAULT_NODE_RADIUS = 100;
+    Path mPath; //created on the first detailed draw
+    public static final int DEFAULT_NODE_COLOR = GraphNode.DEFAULT_COLOR;
+    public static final float DEFAULT_NODE_RADIUS = GraphNode.DEFAULT_RADIUS;
     public static final float NODE_RADIUS_WARP_TEXT = -100;
     public static final int DEFAULT_TITLE_COLOR = Color.BLACK;
-    public static final int DEFAULT_TEXT_SIZE = 40;
+    public static final int DEFAULT_TEXT_SIZE = (int)GraphNode.DEFAULT_TEXT_SIZE;
     //Node state variables
     private MainView mParentView;
-    private float mCurrentScale = 1f;
+    //Cached outline and title so a frame does not allocate
+    private float mPathX,mPathY,mPathR = -1;
+    private NodeShape mPathShape;
+    private final LabelCache mLabel = new LabelCache();
+    private DisplayList mDisplayList;
 
     public void setShape(NodeShape shape) {
-        this.mShape = shape;
+        mModel.setShape(shape);
     }
 
     public NodeShape getShape() {
-        return mShape;
+        return mModel.getShape();
     }
 
     @Override
     public void setColorID(int colorID) {
-        this.mNodeColorID = colorID;
+        mModel.setColor(colorID);
     }
 
     @Override
     public int getColorID() {
-        return this.mNodeColorID;
+        return mModel.getColor();
     }
 
     public float getR(){
-        return mR;
+        return mModel.getR();
+    }
+
+    public float getX() {
+        return mModel.getX();
+    }
+
+    public float getY() {
+        return mModel.getY();
     }
 
     public PointF getXY() {
-        return new PointF( mX,mY );
+        return new PointF( mModel.getX(),mModel.getY() );
     }
 
     @Override
     public String getTitle(){
-        return mTitle;
+        return mModel.getTitle();
     }
 
     @Override
     public String getDescription(){
-        if(mDescription==null)
-            return "";
-        return mDescription;
-    }
-
-    String reduceText(String title){
-        Rect boundTitle = new Rect();
-        int length = title.length();
-        mTitlePaint.getTextBounds(title, 0, length, boundTitle);
-
-        while(boundTitle.width()>2*mR) {
-            int factor =  (int)(boundTitle.width()/(2*mR));
-            if(factor>2)
-                length = (int)((2*length)/factor);
-            else
-                length = length-1;
-            mTitlePaint.getTextBounds( title, 0, length, boundTitle );
-        }
-        if(length==title.length())
-            return title;
-        return title.substring(0,length-3)+"...";
+        return mModel.getDescription();
     }
 
     public void wrapText(){
-        String dummyTitle = mTitle + "....";//for taking care of padding
-        Rect boundTitle = new Rect();
-        mTitlePaint.getTextBounds(dummyTitle, 0, dummyTitle.length(), boundTitle);
+        String dummyTitle = mModel.getTitle() + "....";//for taking care of padding
+        Rect boundTitle = mParentView.getTextBounds();
+        Paint titlePaint = mParentView.getNodeTitlePaint();
+        titlePaint.setTextSize(titleTextSize(mModel.getTextSize(),mParentView.getDrawScale()));
+        titlePaint.getTextBounds(dummyTitle, 0, dummyTitle.length(), boundTitle);
         //wrap the node radius as required by the title
-        mR = (boundTitle.width()/2);
+        mModel.setR(boundTitle.width()/2);
     }
 
     @Override
     public void setTitle(String title){
-        mTitle = title;
+        mModel.setTitle(title);
     }
 
     @Override
     public void setDescription(String description){
-        if(description==null)
-            mDescription = "";
-        else
-            mDescription = description;
+        mModel.setDescription(description);
+    }
+
+    @Override
+    public int getKey(){
+        return mModel.getKey();
     }
 
     @Override
     public String getId(){
-        return mId;
+        return mModel.getId();
     }
 
     @Override
@@ -120,13 +116,14 @@ public class Node implements MindMapDrawable{
         return DrawableType.NODE;
     }
 
+    @Override
+    public GraphNode getModel() {
+        return mModel;
+    }
+
     //called by from Json
     public Node(float x,float y,float r,String id,MainView parent,String title,String description,int colorID,NodeShape shape,float textSize){
-        this(x,y,parent,title,description,shape);
-        this.mId = id;
-        this.mR = r;
-        setColorID(colorID);
-        mTextSize = textSize;
+        this(new GraphNode(id,x,y,r,title,description,colorID,shape,textSize),parent);
     }
 
     public Node(float x,float y,MainView parentView,String title,String description,NodeShape shape){
@@ -136,110 +133,105 @@ public class Node implements MindMapDrawable{
     }
 
     public Node(float x,float y,MainView parentView,String title) {
-        mId = FileHelper.getUniqueID();
-        mPath = new Path();
-        setParentView(parentView);
-        mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        mNodeColorID = DEFAULT_NODE_COLOR;
-        mPaint.setColor( mNodeColorID );
-        mCurrentScale = parentView.mScaleFactor;
-        mR = mCurrentScale*DEFAULT_NODE_RADIUS;
-        set(x,y);
-        mTitlePaint= new Paint();
-        mTitlePaint.setColor( DEFAULT_TITLE_COLOR );
-        mTextSize = DEFAULT_TEXT_SIZE;
-        mTitlePaint.setTextSize(mTextSize);
-        mTitlePaint.setTextAlign(Paint.Align.CENTER);
-        setTitle(title);
+        this(new GraphNode(null,x,y,title),parentView);
     }
 
-    public void set(float x, float y) {
-        mX = x;
-        mY = y;
+    public Node(GraphNode model,MainView parentView) {
+        mModel = model;
+        model.setTag(this);
+        setParentView(parentView);
     }
 
-    public float distance(PointF p1,PointF p2){
-        return Math.abs( (float)Math.sqrt( (p1.x-p2.x)*(p1.x-p2.x) + (p1.y-p2.y)*(p1.y-p2.y) ) );
+    public void set(float x, float y) {
+        mModel.set(x,y);
     }
 
     @Override
     public boolean contains(float x, float y) {
-        if(mShape==NodeShape.CIRCLE) {
-            if ((x - mX) * (x - mX) + (y - mY) * (y - mY) <= mR * mR)
-                return true;
-        }
-        else if(mShape==NodeShape.SQUARE){
-
-            PointF currP = new PointF(x,y);
-            PointF p1 = new PointF(mX-mR,mY-mR);
-            PointF p2 = new PointF(mX-mR,mY+mR);
-            PointF p3 = new PointF(mX+mR,mY-mR);
-            PointF p4 = new PointF(mX+mR,mY+mR);
+        return mModel.contains(x,y);
+    }
 
-            if( distance(p1,currP) < 2*mR && distance(p2,currP) < 2*mR &&
-                distance(p3,currP) < 2*mR && distance(p4,currP) < 2*mR )
-                return true;
-        }
-        else if(mShape==NodeShape.DIAMOND){
-            PointF currP = new PointF(x,y);
-            PointF p1 = new PointF(mX-mR*(float)Math.sqrt(2),mY);
-            PointF p2 = new PointF(mX,mY-mR*(float)Math.sqrt(2));
-            PointF p3 = new PointF(mX+mR*(float)Math.sqrt(2),mY);
-            PointF p4 = new PointF(mX,mY+mR*(float)Math.sqrt(2));
-
-            if( distance(p1,currP) < 2*mR && distance(p2,currP) < 2*mR &&
-                    distance(p3,currP) < 2*mR && distance(p4,currP) < 2*mR )
-                return true;
-        }
-        return false;
+    /**
+     * @return a number that changes whenever the node's look changes
+     */
+    int getRevision(){
+        return mModel.getRevision();
     }
 
     @Override
-    public void draw(Canvas canvas,PointF reference){
-        mX = mX-reference.x;
-        mY = mY-reference.y;
-        draw( canvas );
-        mX = mX+reference.x;
-        mY = mY+reference.y;
+    public void draw(Canvas canvas){
+        //checked here so DisplayList is never loaded below API 29
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && DisplayList.isSupported(canvas)) {
+            if(mDisplayList == null)
+                mDisplayList = new DisplayList();
+            mDisplayList.draw(canvas,this,mModel.getRevision(),mParentView.getDrawScale(),mParentView.getDetailLevel());
+            return;
+        }
+        drawDirect(canvas);
     }
 
-
     @Override
-    public void draw(Canvas canvas){
-        mPath.reset();
-        if(mShape == NodeShape.CIRCLE)
-            mPath.addCircle( mX, mY, mR, Path.Direction.CW );
-        else if(mShape == NodeShape.SQUARE || mShape == NodeShape.DIAMOND)
-            mPath.addRect( mX-mR, mY-mR, mX+mR,mY+mR, Path.Direction.CW );
-        mPaint.setColor(mNodeColorID);
-        if(mShape == NodeShape.DIAMOND) {
+    public void drawDirect(Canvas canvas){
+        float x = mModel.getX(), y = mModel.getY(), r = mModel.getR();
+        NodeShape shape = mModel.getShape();
+        int color = mModel.getColor();
+        DetailLevel detail = mParentView.getDetailLevel();
+        Paint paint = mParentView.getNodePaint();
+        if(detail == DetailLevel.SIMPLE_SHAPES) {
+            paint.setColor(color);
+            //less than a pixel across on screen, a point is enough
+            if(r*mParentView.getDrawScale() < 1)
+                canvas.drawPoint( x, y, paint );
+            else
+                canvas.drawRect( x-r, y-r, x+r, y+r, paint );
+            return;
+        }
+        //the outline only changes when the node is moved, resized or reshaped
+        if(x != mPathX || y != mPathY || r != mPathR || shape != mPathShape) {
+            if(mPath == null)
+                mPath = new Path();
+            mPath.reset();
+            if(shape == NodeShape.CIRCLE)
+                mPath.addCircle( x, y, r, Path.Direction.CW );
+            else if(shape == NodeShape.SQUARE || shape == NodeShape.DIAMOND)
+                mPath.addRect( x-r, y-r, x+r,y+r, Path.Direction.CW );
+            mPathX = x;
+            mPathY = y;
+            mPathR = r;
+            mPathShape = shape;
+        }
+        paint.setColor(color);
+        if(shape == NodeShape.DIAMOND) {
             canvas.save();
-            canvas.rotate( 45,mX,mY );
+            canvas.rotate( 45,x,y );
         }
-        canvas.drawPath(mPath, mPaint);
-        if(mShape == NodeShape.DIAMOND)
+        canvas.drawPath(mPath, paint);
+        if(shape == NodeShape.DIAMOND)
             canvas.restore();
+        if(detail != DetailLevel.FULL)
+            return;
 
         //change text color to white for dark colors
-        if(mNodeColorID == Color.BLACK || mNodeColorID == Color.RED || mNodeColorID ==Color.BLUE
-        || mNodeColorID == -65409 || mNodeColorID == -65281 || mNodeColorID == -8453889){
-            mTitlePaint.setColor(Color.WHITE);
+        Paint titlePaint = mParentView.getNodeTitlePaint();
+        if(color == Color.BLACK || color == Color.RED || color ==Color.BLUE
+        || color == -65409 || color == -65281 || color == -8453889){
+            titlePaint.setColor(Color.WHITE);
         }
         else{
-            mTitlePaint.setColor(Color.BLACK);
+            titlePaint.setColor(DEFAULT_TITLE_COLOR);
         }
-        canvas.drawText( reduceText(mTitle), mX, mY, mTitlePaint);
+        float textSize = titleTextSize(mModel.getTextSize(),mParentView.getDrawScale());
+        if(titlePaint.getTextSize() != textSize)
+            titlePaint.setTextSize(textSize);
+        canvas.drawText( mLabel.get(mModel.getTitle(),titlePaint,2*r), x, y, titlePaint);
     }
 
-    @Override
-    public void scale(float scale){
-        float scaleFactor = scale/mCurrentScale;
-        mX = mX*scaleFactor;
-        mY = mY*scaleFactor;
-        mR = mR*scaleFactor;
-        mCurrentScale = scale;
-        mTextSize = (float) Math.max(DEFAULT_TEXT_SIZE, DEFAULT_TEXT_SIZE*mCurrentScale*0.5);
-        mTitlePaint.setTextSize(mTextSize);
+    /**
+     * Titles do not shrink below their base size on screen when zooming out
+     * @return text size in world units for the given view scale
+     */
+    static float titleTextSize(float baseTextSize,float scale){
+        return Math.max(baseTextSize, baseTextSize*scale*0.5f)/scale;
     }
 
 
@@ -253,27 +245,24 @@ public class Node implements MindMapDrawable{
 
 
     public float[] centre(){
-        float[] centreXY = {mX,mY};
+        float[] centreXY = {mModel.getX(),mModel.getY()};
         return centreXY;
     }
 
 
     @Override
-    public boolean onScreen(float width, float height ) {
-        final RectF boundShape;
-        if(mShape == NodeShape.CIRCLE || mShape == NodeShape.SQUARE)
-            boundShape  = new RectF(mX-mR,mY-mR,mX+mR,mY+mR);
-        else
-            boundShape = new RectF(mX -  mR*(float)Math.sqrt(2),mY - mR*(float)Math.sqrt(2),
-                                mX + mR*(float)Math.sqrt(2),mY + mR*(float)Math.sqrt(2));
-        final RectF boundView = new RectF(0,0,width,height);
-        return boundShape.intersect(boundView);
+    public void getBounds(RectF bounds) {
+        float extent = mModel.getExtent(), x = mModel.getX(), y = mModel.getY();
+        bounds.set(x-extent,y-extent,x+extent,y+extent);
     }
 
     @Override
-    public void move(float shiftX, float shiftY) {
-        mX=mX+shiftX;
-        mY=mY+shiftY;
+    public void getDrawBounds(RectF bounds,float scale) {
+        getBounds(bounds);
+        //the title sits on the centre line and can be taller than a small node
+        float textSize = titleTextSize(mModel.getTextSize(),scale);
+        bounds.top = Math.min(bounds.top,mModel.getY()-textSize);
+        bounds.bottom = Math.max(bounds.bottom,mModel.getY()+textSize);
     }
 
     @Override
@@ -282,56 +271,29 @@ public class Node implements MindMapDrawable{
      */
     public JSONObject toJson() {
         try {
-            JSONObject obj = new JSONObject();
-            obj.put( FileHelper.ITEM_TYPE_KEY, getClass().getName());
-            obj.put( FileHelper.NodeSchema.NODE_CENTRE_X_KEY, this.mX);
-            obj.put( FileHelper.NodeSchema.NODE_CENTRE_Y_KEY, this.mY);
-            obj.put( FileHelper.NodeSchema.NODE_RADIUS_KEY, this.mR);
-            obj.put( FileHelper.ITEM_ID_KEY, this.getId());
-            obj.put( FileHelper.NodeSchema.NODE_TITLE_KEY,this.mTitle);
-            obj.put( FileHelper.NodeSchema.NODE_DESCRIPTION_KEY,this.mDescription);
-            obj.put( FileHelper.NodeSchema.NODE_COLOR_KEY,this.mNodeColorID );
-            obj.put( FileHelper.NodeSchema.NODE_SHAPE_KEY,this.mShape.toString() );
-            obj.put( FileHelper.NodeSchema.NODE_TEXT_SIZE_KEY,this.mTextSize);
-            return obj;
-
-        } catch (Exception e) {
+            return mModel.toJson();
+        } catch (JSONException e) {
             return null;
         }
     }
 
-    private static NodeShape shapeStringToEnum(String string){
-        if(string.equals(NodeShape.CIRCLE.toString()))
-            return NodeShape.CIRCLE;
-        return NodeShape.SQUARE;
-    }
-
     public void setR(float radius) {
-        if(radius==Node.NODE_RADIUS_WARP_TEXT && mTitle.length()!=0) {
+        if(radius==Node.NODE_RADIUS_WARP_TEXT && mModel.getTitle().length()!=0) {
             wrapText();
         }
-        else if(radius>0)
-            this.mR = radius;
+        else
+            mModel.setR(radius);
     }
 
     /**
-     * get a UmlNoteNode from a JSONObject
+     * get a Node from a JSONObject
      *
-     * @param obj JSONObject representation of a UmlNoteNode
-     * @return a Node of the given JSONObject
+     * @param obj JSONObject representation of a Node
+     * @return a Node of the given JSONObject with a new key
      */
     public static Node fromJson(JSONObject obj,MainView view) {
         try {
-
-            return new Node((float) obj.getDouble( FileHelper.NodeSchema.NODE_CENTRE_X_KEY),
-                            (float) obj.getDouble( FileHelper.NodeSchema.NODE_CENTRE_Y_KEY),
-                            (float)obj.getDouble( FileHelper.NodeSchema.NODE_RADIUS_KEY),
-                            obj.getString( FileHelper.ITEM_ID_KEY),view,
-                            obj.getString( FileHelper.NodeSchema.NODE_TITLE_KEY),
-                            obj.getString( FileHelper.NodeSchema.NODE_DESCRIPTION_KEY ),
-                            obj.getInt( FileHelper.NodeSchema.NODE_COLOR_KEY ),
-                            shapeStringToEnum(obj.getString( FileHelper.NodeSchema.NODE_SHAPE_KEY)),
-                            (float)obj.getDouble( FileHelper.NodeSchema.NODE_TEXT_SIZE_KEY));
+            return new Node(GraphNode.fromJson(obj),view);
         } catch (Exception e) {
             return null;
         }
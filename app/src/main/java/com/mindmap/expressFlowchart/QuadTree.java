@@ -0,0 +1,317 @@
+package com.mindmap.expressFlowchart;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Region quadtree over axis aligned bounding boxes, used to find MindMapDrawables
+ * under a point without walking every item.
+ * An item is kept in the smallest quad that fully contains its bounds and the root
+ * grows on demand, so there is no fixed world size.
+ * Query results are returned in insertion order, same as a scan of the original list,
+ * except that bringToFront() moves an item to the end of that order.
+ */
+public class QuadTree<T> {
+
+    private static final int MAX_ITEMS = 8; //entries held by a leaf before it is split
+    private static final float MIN_QUAD_SIZE = 32f; //quads smaller than this are never split
+    private static final float INITIAL_SIZE = 1024f;
+
+    private static class Entry<T> {
+        T item;
+        float left,top,right,bottom;
+        long order;
+        Quad<T> quad;
+    }
+
+    private static class Quad<T> {
+        final float left,top,size;
+        Quad<T> parent;
+        Quad<T>[] children; //null for a leaf, otherwise NW,NE,SW,SE
+        final ArrayList<Entry<T>> entries = new ArrayList<>();
+
+        Quad(float left,float top,float size){
+            this.left = left;
+            this.top = top;
+            this.size = size;
+        }
+
+        boolean encloses(float l,float t,float r,float b){
+            return l >= left && t >= top && r <= left+size && b <= top+size;
+        }
+
+        boolean intersects(float l,float t,float r,float b){
+            return l <= left+size && r >= left && t <= top+size && b >= top;
+        }
+
+        Quad<T> childEnclosing(float l,float t,float r,float b){
+            if(children == null)
+                return null;
+            for (Quad<T> child : children)
+                if(child.encloses(l,t,r,b))
+                    return child;
+            return null;
+        }
+    }
+
+    private Quad<T> mRoot;
+    private final HashMap<T,Entry<T>> mEntries = new HashMap<>();
+    private long mNextOrder = 0;
+    //reused between queries so a hit test does not allocate
+    private final ArrayList<Entry<T>> mResults = new ArrayList<>();
+    private final ArrayList<Quad<T>> mStack = new ArrayList<>();
+
+    public int size(){
+        return mEntries.size();
+    }
+
+    public boolean contains(T item){
+        return mEntries.containsKey(item);
+    }
+
+    public void clear(){
+        mEntries.clear();
+        mRoot = null;
+        mNextOrder = 0;
+    }
+
+    /**
+     * Add an item, or update its bounds if it is already in the tree
+     */
+    public void insert(T item,float left,float top,float right,float bottom){
+        Entry<T> entry = mEntries.get(item);
+        if(entry != null) {
+            update(item,left,top,right,bottom);
+            return;
+        }
+        entry = new Entry<>();
+        entry.item = item;
+        entry.order = mNextOrder++;
+        setBounds(entry,left,top,right,bottom);
+        mEntries.put(item,entry);
+        insert(entry);
+    }
+
+    /**
+     * Move an item to new bounds keeping its position in the result order
+     */
+    public void update(T item,float left,float top,float right,float bottom){
+        Entry<T> entry = mEntries.get(item);
+        if(entry == null) {
+            insert(item,left,top,right,bottom);
+            return;
+        }
+        setBounds(entry,left,top,right,bottom);
+        Quad<T> quad = entry.quad;
+        //still the tightest quad, nothing to relink
+        if(quad.encloses(entry.left,entry.top,entry.right,entry.bottom)
+                && quad.childEnclosing(entry.left,entry.top,entry.right,entry.bottom) == null)
+            return;
+        unlink(entry);
+        insert(entry);
+    }
+
+    /**
+     * Give the item the last place in the result order, its bounds stay the same
+     */
+    public void bringToFront(T item){
+        Entry<T> entry = mEntries.get(item);
+        if(entry != null)
+            entry.order = mNextOrder++;
+    }
+
+    /**
+     * Give the item a place of its own in the result order, for a tree kept in the order of another list
+     * @param order larger is later, it must not be the order of another item
+     */
+    public void setOrder(T item,long order){
+        Entry<T> entry = mEntries.get(item);
+        if(entry != null)
+            entry.order = order;
+    }
+
+    /**
+     * @return position of the item in the result order, larger is later, -1 if it is not in the tree
+     */
+    public long getOrder(T item){
+        Entry<T> entry = mEntries.get(item);
+        return entry == null ? -1 : entry.order;
+    }
+
+    public void remove(T item){
+        Entry<T> entry = mEntries.remove(item);
+        if(entry != null)
+            unlink(entry);
+    }
+
+    /**
+     * Collect all items whose bounds contain the point, in insertion order
+     * @param out list the items are appended to
+     */
+    public void query(float x,float y,List<? super T> out){
+        query(x,y,x,y,out);
+    }
+
+    /**
+     * Collect all items whose bounds intersect the given rectangle, in insertion order
+     * @param out list the items are appended to
+     */
+    public void query(float left,float top,float right,float bottom,List<? super T> out){
+        if(mRoot == null)
+            return;
+        mResults.clear();
+        mStack.clear();
+        mStack.add(mRoot);
+        while (!mStack.isEmpty()) {
+            Quad<T> quad = mStack.remove(mStack.size()-1);
+            if(!quad.intersects(left,top,right,bottom))
+                continue;
+            for (int i = 0; i < quad.entries.size(); i++) {
+                Entry<T> entry = quad.entries.get(i);
+                if(entry.left <= right && entry.right >= left && entry.top <= bottom && entry.bottom >= top)
+                    mResults.add(entry);
+            }
+            if(quad.children != null)
+                for (Quad<T> child : quad.children)
+                    mStack.add(child);
+        }
+        sortByOrder(mResults);
+        for (int i = 0; i < mResults.size(); i++)
+            out.add(mResults.get(i).item);
+        mResults.clear();
+    }
+
+    private static <T> void setBounds(Entry<T> entry,float left,float top,float right,float bottom){
+        entry.left = Math.min(left,right);
+        entry.right = Math.max(left,right);
+        entry.top = Math.min(top,bottom);
+        entry.bottom = Math.max(top,bottom);
+    }
+
+    private void insert(Entry<T> entry){
+        if(mRoot == null) {
+            float size = Math.max(INITIAL_SIZE,2*Math.max(entry.right-entry.left,entry.bottom-entry.top));
+            float centreX = (entry.left+entry.right)/2, centreY = (entry.top+entry.bottom)/2;
+            mRoot = new Quad<>(centreX-size/2,centreY-size/2,size);
+        }
+        while (!mRoot.encloses(entry.left,entry.top,entry.right,entry.bottom))
+            grow(entry);
+
+        Quad<T> quad = mRoot;
+        while (true) {
+            Quad<T> child = quad.childEnclosing(entry.left,entry.top,entry.right,entry.bottom);
+            if(child == null)
+                break;
+            quad = child;
+        }
+        entry.quad = quad;
+        quad.entries.add(entry);
+        if(quad.children == null && quad.entries.size() > MAX_ITEMS && quad.size > MIN_QUAD_SIZE)
+            split(quad);
+    }
+
+    /**
+     * Double the root towards the entry, the old root becomes one of the new quadrants
+     */
+    @SuppressWarnings("unchecked")
+    private void grow(Entry<T> entry){
+        Quad<T> old = mRoot;
+        boolean towardsLeft = entry.left < old.left;
+        boolean towardsTop = entry.top < old.top;
+        float left = towardsLeft ? old.left-old.size : old.left;
+        float top = towardsTop ? old.top-old.size : old.top;
+        Quad<T> root = new Quad<>(left,top,2*old.size);
+        root.children = (Quad<T>[]) new Quad<?>[4];
+        int oldIndex = (towardsTop ? 2 : 0) + (towardsLeft ? 1 : 0);
+        float half = old.size;
+        for (int i = 0; i < 4; i++) {
+            if(i == oldIndex)
+                root.children[i] = old;
+            else
+                root.children[i] = new Quad<>(left+(i%2)*half,top+(i/2)*half,half);
+            root.children[i].parent = root;
+        }
+        mRoot = root;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void split(Quad<T> quad){
+        float half = quad.size/2;
+        quad.children = (Quad<T>[]) new Quad<?>[4];
+        for (int i = 0; i < 4; i++) {
+            quad.children[i] = new Quad<>(quad.left+(i%2)*half,quad.top+(i/2)*half,half);
+            quad.children[i].parent = quad;
+        }
+        for (int i = quad.entries.size()-1; i >= 0; i--) {
+            Entry<T> entry = quad.entries.get(i);
+            Quad<T> child = quad.childEnclosing(entry.left,entry.top,entry.right,entry.bottom);
+            if(child != null) {
+                quad.entries.remove(i);
+                entry.quad = child;
+                child.entries.add(entry);
+            }
+        }
+    }
+
+    private void unlink(Entry<T> entry){
+        Quad<T> quad = entry.quad;
+        quad.entries.remove(entry);
+        entry.quad = null;
+        if(quad.children == null)
+            quad = quad.parent;
+        //drop children that became empty leaves
+        while (quad != null && quad.children != null && isEmptyLeaves(quad.children)) {
+            quad.children = null;
+            quad = quad.parent;
+        }
+    }
+
+    private static <T> boolean isEmptyLeaves(Quad<T>[] quads){
+        for (Quad<T> quad : quads)
+            if(quad.children != null || !quad.entries.isEmpty())
+                return false;
+        return true;
+    }
+
+    //sorted in place so a query does not allocate, insertion sort for the usual handful of hits
+    private static <T> void sortByOrder(ArrayList<Entry<T>> entries){
+        int n = entries.size();
+        if(n <= 16) {
+            for (int i = 1; i < n; i++) {
+                Entry<T> current = entries.get(i);
+                int j = i-1;
+                while (j >= 0 && entries.get(j).order > current.order) {
+                    entries.set(j+1,entries.get(j));
+                    j--;
+                }
+                entries.set(j+1,current);
+            }
+            return;
+        }
+        for (int i = n/2-1; i >= 0; i--)
+            siftDown(entries,i,n);
+        for (int end = n-1; end > 0; end--) {
+            Entry<T> top = entries.get(0);
+            entries.set(0,entries.get(end));
+            entries.set(end,top);
+            siftDown(entries,0,end);
+        }
+    }
+
+    private static <T> void siftDown(ArrayList<Entry<T>> entries,int i,int n){
+        while (true) {
+            int largest = i, left = 2*i+1, right = left+1;
+            if(left < n && entries.get(left).order > entries.get(largest).order)
+                largest = left;
+            if(right < n && entries.get(right).order > entries.get(largest).order)
+                largest = right;
+            if(largest == i)
+                return;
+            Entry<T> swap = entries.get(i);
+            entries.set(i,entries.get(largest));
+            entries.set(largest,swap);
+            i = largest;
+        }
+    }
+}
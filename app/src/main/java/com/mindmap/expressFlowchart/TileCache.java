@@ -0,0 +1,147 @@
+package com.mindmap.expressFlowchart;
+
+import android.graphics.Bitmap;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Byte bounded LRU cache of rendered tiles.
+ * The world is cut into a grid of TILE_SIZE pixel tiles per zoom level, level n is drawn at scale 2^n
+ * so a tile covers TILE_SIZE/2^n world units. Tiles are dropped by the world area of an edit.
+ */
+public class TileCache {
+
+    public static final int TILE_SIZE = 512; //pixels
+    //levels outside this range are clamped, MainView zooms from 0.1 to 4
+    static final int MIN_LEVEL = -8;
+    static final int MAX_LEVEL = 8;
+
+    static class Tile {
+        final int level,col,row;
+        //null when nothing is drawn on the tile
+        final Bitmap bitmap;
+        final long bytes;
+
+        Tile(int level,int col,int row,Bitmap bitmap,long bytes){
+            this.level = level;
+            this.col = col;
+            this.row = row;
+            this.bitmap = bitmap;
+            this.bytes = bytes;
+        }
+    }
+
+    //access ordered, the eldest entry is the least recently used tile
+    private final LinkedHashMap<Long,Tile> mTiles = new LinkedHashMap<>(64,0.75f,true);
+    private final int[] mLevelCounts = new int[MAX_LEVEL-MIN_LEVEL+1];
+    private long mMaxBytes;
+    private long mBytes = 0;
+
+    public TileCache(long maxBytes){
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * @return the lowest level whose scale is at least scale, tiles are only ever scaled down on screen
+     */
+    static int levelFor(float scale){
+        int level = (int)Math.ceil(Math.log(scale)/Math.log(2) - 1e-4);
+        return Math.max(MIN_LEVEL,Math.min(MAX_LEVEL,level));
+    }
+
+    static float levelScale(int level){
+        return (float)Math.pow(2,level);
+    }
+
+    /**
+     * @return world units covered by one side of a tile at level
+     */
+    static float tileWorldSize(int level){
+        return TILE_SIZE/levelScale(level);
+    }
+
+    static long key(int level,int col,int row){
+        return ((long)(level-MIN_LEVEL) << 56) | ((long)(col & 0xFFFFFFF) << 28) | (row & 0xFFFFFFF);
+    }
+
+    public Tile get(int level,int col,int row){
+        return mTiles.get(key(level,col,row));
+    }
+
+    /**
+     * Add a tile, least recently used tiles are evicted until the cache fits its byte budget again
+     * @param bytes memory held by bitmap
+     * @return the new tile
+     */
+    public Tile put(int level,int col,int row,Bitmap bitmap,long bytes){
+        Tile tile = new Tile(level,col,row,bitmap,bytes);
+        Tile old = mTiles.put(key(level,col,row),tile);
+        if(old != null)
+            forget(old);
+        mBytes += bytes;
+        mLevelCounts[level-MIN_LEVEL]++;
+        trimTo(mMaxBytes,tile);
+        return tile;
+    }
+
+    private void trimTo(long maxBytes,Tile keep){
+        Iterator<Tile> iterator = mTiles.values().iterator();
+        while (mBytes > maxBytes && iterator.hasNext()) {
+            Tile tile = iterator.next();
+            if(tile == keep)
+                continue;
+            iterator.remove();
+            forget(tile);
+        }
+    }
+
+    private void forget(Tile tile){
+        mBytes -= tile.bytes;
+        mLevelCounts[tile.level-MIN_LEVEL]--;
+    }
+
+    public boolean hasLevel(int level){
+        return mLevelCounts[level-MIN_LEVEL] > 0;
+    }
+
+    /**
+     * Drop the tiles of level that intersect the given world area
+     */
+    public void invalidate(int level,float left,float top,float right,float bottom){
+        if(!hasLevel(level))
+            return;
+        float size = tileWorldSize(level);
+        Iterator<Tile> iterator = mTiles.values().iterator();
+        while (iterator.hasNext()) {
+            Tile tile = iterator.next();
+            if(tile.level != level)
+                continue;
+            float tileLeft = tile.col*size, tileTop = tile.row*size;
+            if(tileLeft <= right && tileLeft+size >= left && tileTop <= bottom && tileTop+size >= top) {
+                iterator.remove();
+                forget(tile);
+            }
+        }
+    }
+
+    public void clear(){
+        mTiles.clear();
+        mBytes = 0;
+        for (int i = 0; i < mLevelCounts.length; i++)
+            mLevelCounts[i] = 0;
+    }
+
+    public void setMaxBytes(long maxBytes){
+        mMaxBytes = maxBytes;
+        trimTo(maxBytes,null);
+    }
+
+    public long getBytes(){
+        return mBytes;
+    }
+
+    public int size(){
+        return mTiles.size();
+    }
+}
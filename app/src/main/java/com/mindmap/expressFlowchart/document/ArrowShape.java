@@ -0,0 +1,6 @@
+package com.mindmap.expressFlowchart.document;
+
+/**
+ * Which ends of an edge carry an arrowhead, saved by name
+ */
+public enum ArrowShape { START,END,DOUBLE,NONE }
@@ -0,0 +1,186 @@
+package com.mindmap.expressFlowchart.document;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.UUID;
+
+/**
+ * Reads a file in the binary .map format, each item is handed to the target as soon as it is read.
+ * Items get new keys as with MapReader, and progress is reported the same way
+ */
+public class BinaryMapReader {
+
+    private final ItemTarget mTarget;
+    private final Camera mCamera;
+    private MapReader.ProgressListener mListener;
+    private int mProgressInterval = MapReader.DEFAULT_PROGRESS_INTERVAL;
+    private boolean mKeepIds = false;
+    private CountingInputStream mCounter;
+    private long mTotalBytes;
+    private int mItemsRead,mItemsSkipped;
+    private String[] mStrings;
+
+    /**
+     * @param target gets every item read, a GraphDocument or a view over one
+     * @param camera set from the file
+     */
+    public BinaryMapReader(ItemTarget target,Camera camera) {
+        mTarget = target;
+        mCamera = camera;
+    }
+
+    public void setProgressListener(MapReader.ProgressListener listener) {
+        mListener = listener;
+    }
+
+    public void setProgressInterval(int items) {
+        mProgressInterval = Math.max(1,items);
+    }
+
+    /**
+     * @see MapReader#setKeepIds(boolean)
+     */
+    public void setKeepIds(boolean keepIds) {
+        mKeepIds = keepIds;
+    }
+
+    public int getItemsRead() {
+        return mItemsRead;
+    }
+
+    /**
+     * @return number of items of the last read left out, edges to nodes that are not in the file
+     */
+    public int getItemsSkipped() {
+        return mItemsSkipped;
+    }
+
+    /**
+     * Read a whole file, the stream is not closed
+     * @param totalBytes size of the file for progress reports, -1 if it is not known
+     */
+    public void read(InputStream in,long totalBytes) throws IOException {
+        mCounter = new CountingInputStream(in);
+        mTotalBytes = totalBytes;
+        mItemsRead = 0;
+        mItemsSkipped = 0;
+        DataInputStream data = new DataInputStream(new BufferedInputStream(mCounter,BinaryMapWriter.BUFFER_SIZE));
+        byte[] magic = new byte[BinaryMapFormat.MAGIC.length];
+        data.readFully(magic);
+        if(!BinaryMapFormat.isBinary(magic,magic.length))
+            throw new IOException("Not a binary .map file");
+        int version = data.readUnsignedByte();
+        if(version > BinaryMapFormat.VERSION)
+            throw new IOException("Unsupported .map version "+version);
+        data.readUnsignedByte(); //flags
+        mCamera.set(data.readFloat(),data.readFloat(),data.readFloat());
+
+        mStrings = new String[count(data)];
+        byte[] bytes = new byte[64];
+        for (int i = 0; i < mStrings.length; i++) {
+            int length = count(data);
+            if(length > bytes.length)
+                bytes = new byte[Math.max(length,2*bytes.length)];
+            data.readFully(bytes,0,length);
+            mStrings[i] = new String(bytes,0,length,"UTF-8");
+        }
+
+        int itemCount = count(data);
+        ArrayList<GraphNode> nodes = new ArrayList<>();
+        for (int i = 0; i < itemCount; i++) {
+            int tag = data.readUnsignedByte();
+            GraphItem item;
+            if(tag == BinaryMapFormat.NODE_TAG) {
+                String id = readId(data);
+                float x = data.readFloat(), y = data.readFloat(), r = data.readFloat();
+                String title = readString(data), description = readString(data);
+                int color = readColor(data);
+                String shape = readString(data);
+                GraphNode node = new GraphNode(mTarget.getNodeStore(),id,x,y,r,title,description,color,GraphNode.shapeFromString(shape),data.readFloat());
+                nodes.add(node);
+                item = node;
+            }
+            else if(tag == BinaryMapFormat.EDGE_TAG) {
+                String id = readId(data);
+                long start = BinaryMapFormat.readVarint(data), end = BinaryMapFormat.readVarint(data);
+                float strokeWidth = data.readFloat();
+                String title = readString(data), description = readString(data);
+                int color = readColor(data);
+                String arrow = readString(data);
+                float textSize = data.readFloat();
+                if(start >= nodes.size() || end >= nodes.size()) {
+                    mItemsSkipped++;
+                    continue;
+                }
+                GraphEdge edge = new GraphEdge(id,nodes.get((int) start),nodes.get((int) end),color,title,description,
+                        GraphEdge.arrowShapeFromString(arrow),textSize);
+                edge.setStrokeWidth(strokeWidth);
+                item = edge;
+            }
+            else
+                throw new IOException("Unknown item tag "+tag);
+            mTarget.addItem(item);
+            if(++mItemsRead % mProgressInterval == 0)
+                reportProgress();
+        }
+        mStrings = null;
+        reportProgress();
+    }
+
+    private static int count(DataInputStream data) throws IOException {
+        long count = BinaryMapFormat.readVarint(data);
+        if(count > Integer.MAX_VALUE)
+            throw new IOException("Bad count "+count);
+        return (int) count;
+    }
+
+    private static int readColor(DataInputStream data) throws IOException {
+        return (int) BinaryMapFormat.readVarint(data) ^ BinaryMapFormat.OPAQUE;
+    }
+
+    private String readString(DataInputStream data) throws IOException {
+        long index = BinaryMapFormat.readVarint(data);
+        if(index == 0)
+            return null;
+        if(index > mStrings.length)
+            throw new IOException("Bad string index "+index);
+        return mStrings[(int) index-1];
+    }
+
+    /**
+     * @return the id to give the item, null for a key that is not kept
+     */
+    private String readId(DataInputStream data) throws IOException {
+        long value = BinaryMapFormat.readVarint(data);
+        String id;
+        switch ((int) (value & 3)) {
+            case BinaryMapFormat.ID_NUMBER:
+                id = Long.toString(value >>> 2);
+                break;
+            case BinaryMapFormat.ID_UUID:
+                id = new UUID(data.readLong(),data.readLong()).toString();
+                break;
+            case BinaryMapFormat.ID_STRING:
+                long index = value >>> 2;
+                if(index >= mStrings.length)
+                    throw new IOException("Bad string index "+index);
+                id = mStrings[(int) index];
+                break;
+            default:
+                throw new IOException("Bad id kind "+(value & 3));
+        }
+        return mKeepIds ? id : IdRemap.externalId(id);
+    }
+
+    //progress points are where a read running on a thread that was interrupted stops
+    private void reportProgress() throws InterruptedIOException {
+        if(Thread.interrupted())
+            throw new InterruptedIOException("Read cancelled");
+        if(mListener != null)
+            mListener.onProgress(mCounter.getCount(),mTotalBytes,mItemsRead);
+    }
+}
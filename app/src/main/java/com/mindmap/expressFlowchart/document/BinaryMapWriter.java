@@ -0,0 +1,156 @@
+package com.mindmap.expressFlowchart.document;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Writes a document in the binary .map format described in BinaryMapFormat
+ */
+public class BinaryMapWriter {
+
+    public static final int BUFFER_SIZE = 16*1024; //bytes
+
+    private final GraphDocument mSource;
+    private final HashMap<String,Integer> mStringIndexes = new HashMap<>();
+    private final ArrayList<String> mStrings = new ArrayList<>();
+    private MapWriter.ProgressListener mListener;
+    private int mItemsWritten;
+
+    public BinaryMapWriter(GraphDocument source) {
+        mSource = source;
+    }
+
+    public void setProgressListener(MapWriter.ProgressListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * @return number of items written by the last write
+     */
+    public int getItemsWritten() {
+        return mItemsWritten;
+    }
+
+    /**
+     * Write the whole document, the stream is flushed but not closed
+     */
+    public void write(OutputStream out) throws IOException {
+        mItemsWritten = 0;
+        mStringIndexes.clear();
+        mStrings.clear();
+        List<GraphNode> nodes = mSource.inZOrder(mSource.getNodes());
+        List<GraphEdge> edges = mSource.inZOrder(mSource.getEdges());
+        //the string table comes first, so every string is collected before anything is written
+        IntMap<Integer> nodeIndexes = new IntMap<>(nodes.size());
+        for (int i = 0; i < nodes.size(); i++) {
+            GraphNode node = nodes.get(i);
+            nodeIndexes.put(node.getKey(),i);
+            internId(node.getId());
+            intern(node.getTitle());
+            intern(node.getDescription());
+            intern(node.getShape().toString());
+        }
+        List<GraphEdge> saved = new ArrayList<>(edges.size());
+        for (GraphEdge edge : edges) {
+            //edges still being drawn are not saved
+            if(edge.getFrom() == null || edge.getTo() == null
+                    || nodeIndexes.get(edge.getFrom().getKey()) == null || nodeIndexes.get(edge.getTo().getKey()) == null)
+                continue;
+            saved.add(edge);
+            internId(edge.getId());
+            intern(edge.getTitle());
+            intern(edge.getDescription());
+            intern(edge.getArrowShape().toString());
+        }
+
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out,BUFFER_SIZE));
+        data.write(BinaryMapFormat.MAGIC);
+        data.writeByte(BinaryMapFormat.VERSION);
+        data.writeByte(0);
+        Camera camera = mSource.getCamera();
+        data.writeFloat(camera.getScale());
+        data.writeFloat(camera.getTranslateX());
+        data.writeFloat(camera.getTranslateY());
+        BinaryMapFormat.writeVarint(data,mStrings.size());
+        for (String string : mStrings) {
+            byte[] bytes = string.getBytes("UTF-8");
+            BinaryMapFormat.writeVarint(data,bytes.length);
+            data.write(bytes);
+        }
+
+        BinaryMapFormat.writeVarint(data,nodes.size()+saved.size());
+        for (GraphNode node : nodes) {
+            data.writeByte(BinaryMapFormat.NODE_TAG);
+            writeId(data,node.getId());
+            data.writeFloat(node.getX());
+            data.writeFloat(node.getY());
+            data.writeFloat(node.getR());
+            writeString(data,node.getTitle());
+            writeString(data,node.getDescription());
+            BinaryMapFormat.writeVarint(data,(node.getColor() ^ BinaryMapFormat.OPAQUE) & 0xFFFFFFFFL);
+            writeString(data,node.getShape().toString());
+            data.writeFloat(node.getTextSize());
+            written(nodes.size()+saved.size());
+        }
+        for (GraphEdge edge : saved) {
+            data.writeByte(BinaryMapFormat.EDGE_TAG);
+            writeId(data,edge.getId());
+            BinaryMapFormat.writeVarint(data,nodeIndexes.get(edge.getFrom().getKey()));
+            BinaryMapFormat.writeVarint(data,nodeIndexes.get(edge.getTo().getKey()));
+            data.writeFloat(edge.getStrokeWidth());
+            writeString(data,edge.getTitle());
+            writeString(data,edge.getDescription());
+            BinaryMapFormat.writeVarint(data,(edge.getColor() ^ BinaryMapFormat.OPAQUE) & 0xFFFFFFFFL);
+            writeString(data,edge.getArrowShape().toString());
+            data.writeFloat(edge.getTextSize());
+            written(nodes.size()+saved.size());
+        }
+        data.flush();
+        MapWriter.reportProgress(mListener,mItemsWritten,mItemsWritten);
+    }
+
+    private void written(int itemCount) throws InterruptedIOException {
+        if(++mItemsWritten % MapReader.DEFAULT_PROGRESS_INTERVAL == 0)
+            MapWriter.reportProgress(mListener,mItemsWritten,itemCount);
+    }
+
+    private void intern(String string) {
+        if(string != null && !mStringIndexes.containsKey(string)) {
+            mStringIndexes.put(string,mStrings.size());
+            mStrings.add(string);
+        }
+    }
+
+    private void internId(String id) {
+        if(BinaryMapFormat.decimalId(id) < 0 && BinaryMapFormat.uuidId(id) == null)
+            intern(id);
+    }
+
+    //0 stands for null, strings are one up from their index
+    private void writeString(DataOutputStream data,String string) throws IOException {
+        BinaryMapFormat.writeVarint(data,string == null ? 0 : mStringIndexes.get(string)+1);
+    }
+
+    private void writeId(DataOutputStream data,String id) throws IOException {
+        long number = BinaryMapFormat.decimalId(id);
+        if(number >= 0) {
+            BinaryMapFormat.writeVarint(data,number << 2 | BinaryMapFormat.ID_NUMBER);
+            return;
+        }
+        UUID uuid = BinaryMapFormat.uuidId(id);
+        if(uuid != null) {
+            BinaryMapFormat.writeVarint(data,BinaryMapFormat.ID_UUID);
+            data.writeLong(uuid.getMostSignificantBits());
+            data.writeLong(uuid.getLeastSignificantBits());
+            return;
+        }
+        BinaryMapFormat.writeVarint(data,(long) mStringIndexes.get(id) << 2 | BinaryMapFormat.ID_STRING);
+    }
+}
@@ -0,0 +1,40 @@
+package com.mindmap.expressFlowchart.document;
+
+/**
+ * Axis aligned rectangle in world coordinates, the document's stand-in for RectF
+ */
+public class Box {
+    public float left;
+    public float top;
+    public float right;
+    public float bottom;
+
+    public void set(float left,float top,float right,float bottom) {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    public float width() {
+        return right-left;
+    }
+
+    public float height() {
+        return bottom-top;
+    }
+
+    /**
+     * @return true if the point lies inside or on the edge of the box
+     */
+    public boolean contains(float x,float y) {
+        return x >= left && x <= right && y >= top && y <= bottom;
+    }
+
+    /**
+     * @return true if the box overlaps the rectangle, touching edges count
+     */
+    public boolean intersects(float left,float top,float right,float bottom) {
+        return this.left <= right && left <= this.right && this.top <= bottom && top <= this.bottom;
+    }
+}
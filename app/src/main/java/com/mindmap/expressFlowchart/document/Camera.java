@@ -0,0 +1,61 @@
+package com.mindmap.expressFlowchart.document;
+
+/**
+ * Pan and zoom a document was last viewed with, screen = world*scale + translate
+ */
+public class Camera {
+    private float mScale = 1f;
+    private float mTranslateX = 0f;
+    private float mTranslateY = 0f;
+
+    public float getScale() {
+        return mScale;
+    }
+
+    public float getTranslateX() {
+        return mTranslateX;
+    }
+
+    public float getTranslateY() {
+        return mTranslateY;
+    }
+
+    public void set(float scale,float translateX,float translateY) {
+        mScale = scale;
+        mTranslateX = translateX;
+        mTranslateY = translateY;
+    }
+
+    public void setScale(float scale) {
+        mScale = scale;
+    }
+
+    public void setTranslate(float translateX,float translateY) {
+        mTranslateX = translateX;
+        mTranslateY = translateY;
+    }
+
+    /**
+     * Shift the camera by a screen distance
+     */
+    public void translate(float dx,float dy) {
+        mTranslateX += dx;
+        mTranslateY += dy;
+    }
+
+    public float toWorldX(float screenX) {
+        return (screenX-mTranslateX)/mScale;
+    }
+
+    public float toWorldY(float screenY) {
+        return (screenY-mTranslateY)/mScale;
+    }
+
+    public float toScreenX(float worldX) {
+        return worldX*mScale+mTranslateX;
+    }
+
+    public float toScreenY(float worldY) {
+        return worldY*mScale+mTranslateY;
+    }
+}
@@ -0,0 +1,44 @@
+package com.mindmap.expressFlowchart.document;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts the bytes read through it, for progress reports of the readers
+ */
+class CountingInputStream extends FilterInputStream {
+
+    private long mCount = 0;
+
+    CountingInputStream(InputStream in) {
+        super(in);
+    }
+
+    long getCount() {
+        return mCount;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if(b >= 0)
+            mCount++;
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer,int offset,int length) throws IOException {
+        int read = super.read(buffer,offset,length);
+        if(read > 0)
+            mCount += read;
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        mCount += skipped;
+        return skipped;
+    }
+}
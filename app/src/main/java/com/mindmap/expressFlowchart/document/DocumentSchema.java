@@ -0,0 +1,43 @@
+package com.mindmap.expressFlowchart.document;
+
+/**
+ * Keys of the .map JSON format
+ */
+public final class DocumentSchema {
+
+    private DocumentSchema(){}
+
+    /** key used to get an items */
+    public static final String ITEMS_KEY = "items";
+    /** key used to get the zoom of the view */
+    public static final String SCALE_KEY = "scale";
+    /** keys used to get the pan of the view, files without them hold screen coordinates */
+    public static final String TRANSLATE_X_KEY = "translate_x";
+    public static final String TRANSLATE_Y_KEY = "translate_y";
+    /** key used to get an item type */
+    public static final String ITEM_TYPE_KEY = "drawable_type";
+    /** key used to get an item id */
+    public static final String ITEM_ID_KEY = "drawable_id";
+
+    /** item types, the names of the classes that used to write the items */
+    public static final String NODE_TYPE = "com.mindmap.expressFlowchart.Node";
+    public static final String EDGE_TYPE = "com.mindmap.expressFlowchart.Edge";
+
+    public static final String NODE_CENTRE_X_KEY = "node_centre_x";
+    public static final String NODE_CENTRE_Y_KEY = "node_centre_y";
+    public static final String NODE_RADIUS_KEY = "node_radius";
+    public static final String NODE_TITLE_KEY = "node_title";
+    public static final String NODE_DESCRIPTION_KEY = "node_description";
+    public static final String NODE_COLOR_KEY = "node_color";
+    public static final String NODE_SHAPE_KEY = "node_shape";
+    public static final String NODE_TEXT_SIZE_KEY = "node_text_size";
+
+    public static final String EDGE_START_NODE_KEY = "edge_start_node";
+    public static final String EDGE_END_NODE_KEY = "edge_end_node";
+    public static final String EDGE_STROKE_WIDTH_KEY = "edge_stroke_width";
+    public static final String EDGE_TITLE_KEY = "edge_title";
+    public static final String EDGE_DESCRIPTION_KEY = "edge_description";
+    public static final String EDGE_COLOR_KEY = "edge_color";
+    public static final String EDGE_ARROW_TYPE_KEY = "edge_arrow_type";
+    public static final String EDGE_TEXT_SIZE_KEY = "edge_text_size";
+}
@@ -0,0 +1,117 @@
+package com.mindmap.expressFlowchart.document;
+
+/**
+ * Where the visible line and the arrowheads of an edge go.
+ * One instance is reused for every layout so drawing a frame does not allocate
+ */
+public class EdgeLayout {
+
+    //angle between the line and either side of an arrowhead
+    public static final double ARROW_ANGLE = Math.PI / 6d;
+
+    //visible line, between the node outlines unless the edge is being edited
+    public float lineStartX,lineStartY,lineEndX,lineEndY;
+    //direction of each end, as atan2 of the end minus a point further along the line
+    public float startAngle,endAngle;
+    //which ends carry an arrowhead and where its tip is
+    public boolean startArrow,endArrow;
+    public float arrowStartX,arrowStartY,arrowEndX,arrowEndY;
+    //last arrowhead computed by arrowHead()
+    public float arrowTipX,arrowTipY,arrowX1,arrowY1,arrowX2,arrowY2;
+
+    private final float[] mPoint = new float[2];
+
+    /**
+     * @param clipToNodes end the line on the node outlines, false for an edge being edited
+     * @param arrowheads  leave room for arrowheads at the ends its arrow shape asks for
+     */
+    public void compute(GraphEdge edge,boolean clipToNodes,boolean arrowheads) {
+        float startX = edge.getStartX(), startY = edge.getStartY();
+        float endX = edge.getEndX(), endY = edge.getEndY();
+
+        //get end and start direction points to calculate start and end angle
+        float startDirectionX,startDirectionY,endDirectionX,endDirectionY;
+        if(startX==endX) {
+            startDirectionX = startX;
+            endDirectionX = endX;
+            if (endY > startY) {
+                startDirectionY = startY + 10;
+                endDirectionY = endY - 10;
+            } else {
+                startDirectionY = startY - 10;
+                endDirectionY = endY + 10;
+            }
+        }
+        else {
+            float slope = -(startY - endY) / (startX - endX);//android cordinate increases downwards unlike ordinary coordinate
+            if(startX<endX) {
+                startDirectionX = startX + 10;
+                startDirectionY = startY - slope * 10;
+                endDirectionX = endX - 10;
+                endDirectionY = endY + slope*10;
+            }
+            else{
+                startDirectionX = startX - 10;
+                startDirectionY = startY + slope * 10;
+                endDirectionX = endX + 10;
+                endDirectionY = endY - slope*10;
+            }
+        }
+        startAngle = (float) Math.atan2(startY - startDirectionY, startX - startDirectionX);
+        endAngle = (float) Math.atan2(endY - endDirectionY, endX - endDirectionX);
+
+        lineStartX = startX;
+        lineStartY = startY;
+        lineEndX = endX;
+        lineEndY = endY;
+        startArrow = false;
+        endArrow = false;
+        if(!clipToNodes || edge.getFrom() == null || edge.getTo() == null)
+            return;
+        edge.getFrom().boundaryPoint( startAngle, mPoint );
+        lineStartX = mPoint[0];
+        lineStartY = mPoint[1];
+        edge.getTo().boundaryPoint( endAngle, mPoint );
+        lineEndX = mPoint[0];
+        lineEndY = mPoint[1];
+
+        //arrows sit on the boundary and the line stops at their base
+        ArrowShape arrowShape = edge.getArrowShape();
+        float base = (float)(4 * edge.getStrokeWidth() * Math.cos( ARROW_ANGLE ));
+        if (arrowheads && (arrowShape == ArrowShape.START || arrowShape == ArrowShape.DOUBLE)) {
+            startArrow = true;
+            arrowStartX = lineStartX;
+            arrowStartY = lineStartY;
+            lineStartX = lineStartX - (float) (base * Math.cos( startAngle ));
+            lineStartY = lineStartY - (float) (base * Math.sin( startAngle ));
+        }
+        if (arrowheads && (arrowShape == ArrowShape.END || arrowShape == ArrowShape.DOUBLE)) {
+            endArrow = true;
+            arrowEndX = lineEndX;
+            arrowEndY = lineEndY;
+            lineEndX = lineEndX - (float) (base * Math.cos( endAngle ));
+            lineEndY = lineEndY - (float) (base * Math.sin( endAngle ));
+        }
+    }
+
+    /**
+     * Corners of the arrowhead with its tip at x,y, written to arrowX1,arrowY1,arrowX2,arrowY2
+     */
+    public void arrowHead(float x,float y,float angle,float strokeWidth) {
+        float arrLength = 4*strokeWidth;
+        /* logic inspired by Cay Horstmann's Violet */
+        arrowX1 = (float) (x - arrLength * Math.cos(angle + ARROW_ANGLE));
+        arrowY1 = (float) (y - arrLength * Math.sin(angle + ARROW_ANGLE));
+        arrowX2 = (float) (x - arrLength * Math.cos(angle - ARROW_ANGLE));
+        arrowY2 = (float) (y - arrLength * Math.sin(angle - ARROW_ANGLE));
+        arrowTipX = x;
+        arrowTipY = y;
+    }
+
+    /**
+     * @return length of the visible line
+     */
+    public float getLineLength() {
+        return (float)Math.sqrt((lineStartX-lineEndX)*(lineStartX-lineEndX) + (lineStartY-lineEndY)*(lineStartY-lineEndY));
+    }
+}
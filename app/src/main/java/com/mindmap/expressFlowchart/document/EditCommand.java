@@ -0,0 +1,253 @@
+package com.mindmap.expressFlowchart.document;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One reversible edit, it holds only what the edit changed so undoing and redoing it
+ * costs as much as the edit did and nothing depends on the size of the document
+ */
+public abstract class EditCommand {
+
+    abstract void undo(GraphEditor editor);
+
+    abstract void redo(GraphEditor editor);
+
+    /**
+     * @return rough number of bytes the command holds on to, what the history's limit is counted in
+     */
+    abstract long getSize();
+
+    /**
+     * Fold the next command into this one, used to turn a drag into a single move
+     * @return true if next was merged and is not needed any more
+     */
+    boolean merge(EditCommand next) {
+        return false;
+    }
+
+    /**
+     * @return true if merge() may fold later commands into this one
+     */
+    boolean canMerge() {
+        return false;
+    }
+
+    /**
+     * @return a command for an item that was just added, a node or a connected edge
+     */
+    public static EditCommand add(GraphItem item) {
+        return new Add(item);
+    }
+
+    /**
+     * @return a command for a node that was just moved from fromX,fromY to where it is now
+     */
+    public static EditCommand move(GraphNode node,float fromX,float fromY) {
+        return new Move(node,fromX,fromY,node.getX(),node.getY());
+    }
+
+    /**
+     * @return a command for an item whose style was just changed from before to what it is now
+     */
+    public static EditCommand restyle(GraphItem item,ItemStyle before) {
+        return new Restyle(item,before,ItemStyle.of(item));
+    }
+
+    /**
+     * @param removed the edges that were removed along with a node
+     * @return a command for an item that was just removed
+     */
+    public static EditCommand delete(GraphItem item,List<GraphEdge> removed) {
+        return new Delete(item,removed);
+    }
+
+    /**
+     * @param fromOrder the z-order stamp the item held before, see GraphDocument.getOrder()
+     * @return a command for an item that was just brought to the front, the edit it was brought
+     * forward for is merged into it
+     */
+    public static EditCommand raise(GraphItem item,long fromOrder) {
+        return new Raise(item,fromOrder);
+    }
+
+    static long stringSize(String string) {
+        return string == null ? 0 : 40 + 2*string.length();
+    }
+
+    /**
+     * An item the command keeps alive once it is out of the document
+     */
+    static long itemSize(GraphItem item) {
+        long size = stringSize(item.getTitle()) + stringSize(item.getDescription()) + stringSize(item.getExternalId());
+        //a node's handle, its slot in a one node store and its renderer, or an edge and its renderer
+        return size + (item.isNode() ? 280 : 200);
+    }
+
+    private static class Add extends EditCommand {
+        private final GraphItem mItem;
+
+        Add(GraphItem item) {
+            mItem = item;
+        }
+
+        @Override
+        void undo(GraphEditor editor) {
+            editor.removeItem(mItem);
+        }
+
+        @Override
+        void redo(GraphEditor editor) {
+            editor.addItem(mItem);
+        }
+
+        @Override
+        long getSize() {
+            return 16 + itemSize(mItem);
+        }
+    }
+
+    private static class Move extends EditCommand {
+        private final GraphNode mNode;
+        private final float mFromX,mFromY;
+        private float mToX,mToY;
+
+        Move(GraphNode node,float fromX,float fromY,float toX,float toY) {
+            mNode = node;
+            mFromX = fromX;
+            mFromY = fromY;
+            mToX = toX;
+            mToY = toY;
+        }
+
+        @Override
+        void undo(GraphEditor editor) {
+            editor.moveNode(mNode,mFromX,mFromY);
+        }
+
+        @Override
+        void redo(GraphEditor editor) {
+            editor.moveNode(mNode,mToX,mToY);
+        }
+
+        @Override
+        long getSize() {
+            return 32;
+        }
+
+        @Override
+        boolean merge(EditCommand next) {
+            if(!(next instanceof Move) || ((Move) next).mNode != mNode)
+                return false;
+            mToX = ((Move) next).mToX;
+            mToY = ((Move) next).mToY;
+            return true;
+        }
+
+        @Override
+        boolean canMerge() {
+            return true;
+        }
+    }
+
+    private static class Restyle extends EditCommand {
+        private final GraphItem mItem;
+        private final ItemStyle mBefore,mAfter;
+
+        Restyle(GraphItem item,ItemStyle before,ItemStyle after) {
+            mItem = item;
+            mBefore = before;
+            mAfter = after;
+        }
+
+        @Override
+        void undo(GraphEditor editor) {
+            editor.restyle(mItem,mBefore);
+        }
+
+        @Override
+        void redo(GraphEditor editor) {
+            editor.restyle(mItem,mAfter);
+        }
+
+        @Override
+        long getSize() {
+            return 24 + mBefore.getSize() + mAfter.getSize();
+        }
+    }
+
+    private static class Raise extends EditCommand {
+        private final GraphItem mItem;
+        //stamps are never handed out twice, the old one still puts the item back where it was
+        private final long mFromOrder;
+        private EditCommand mNext;
+
+        Raise(GraphItem item,long fromOrder) {
+            mItem = item;
+            mFromOrder = fromOrder;
+        }
+
+        @Override
+        void undo(GraphEditor editor) {
+            if(mNext != null)
+                mNext.undo(editor);
+            editor.setOrder(mItem,mFromOrder);
+        }
+
+        @Override
+        void redo(GraphEditor editor) {
+            editor.bringToFront(mItem);
+            if(mNext != null)
+                mNext.redo(editor);
+        }
+
+        @Override
+        long getSize() {
+            return 32 + (mNext == null ? 0 : mNext.getSize());
+        }
+
+        @Override
+        boolean merge(EditCommand next) {
+            if(mNext == null) {
+                mNext = next;
+                return true;
+            }
+            return mNext.merge(next);
+        }
+
+        @Override
+        boolean canMerge() {
+            return true;
+        }
+    }
+
+    private static class Delete extends EditCommand {
+        private final GraphItem mItem;
+        private final ArrayList<GraphEdge> mRemoved;
+
+        Delete(GraphItem item,List<GraphEdge> removed) {
+            mItem = item;
+            mRemoved = new ArrayList<>(removed);
+        }
+
+        @Override
+        void undo(GraphEditor editor) {
+            editor.addItem(mItem);
+            for (int i = 0; i < mRemoved.size(); i++)
+                editor.addItem(mRemoved.get(i));
+        }
+
+        @Override
+        void redo(GraphEditor editor) {
+            editor.removeItem(mItem);
+        }
+
+        @Override
+        long getSize() {
+            long size = 32 + itemSize(mItem);
+            for (int i = 0; i < mRemoved.size(); i++)
+                size += 4 + itemSize(mRemoved.get(i));
+            return size;
+        }
+    }
+}
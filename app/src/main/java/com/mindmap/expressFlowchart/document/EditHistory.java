@@ -0,0 +1,163 @@
+package com.mindmap.expressFlowchart.document;
+
+import java.util.ArrayList;
+
+/**
+ * Undo and redo stacks of EditCommands. When the commands hold more than the limit,
+ * the oldest ones are dropped, the newest command is always kept
+ */
+public class EditHistory {
+
+    /**
+     * Told of every edit after it was applied. A command that takes merges is told of once, as it is
+     * when the gesture ends, another edit is recorded or one is undone or redone
+     */
+    public interface Listener {
+        /**
+         * @param undone true if the command was undone, false if it was just made or redone
+         */
+        void onEdit(EditCommand command,boolean undone);
+    }
+
+    //oldest first, commands before mPosition are undone from the end, the rest are redone from mPosition
+    private final ArrayList<EditCommand> mCommands = new ArrayList<>();
+    private int mPosition = 0;
+    private long mSize = 0;
+    private long mMaxBytes;
+    //the command on top takes merges until a gesture ends
+    private boolean mMergeOpen = false;
+    //the command on top while it takes merges, not told to the listener yet
+    private EditCommand mUnreported;
+    private Listener mListener;
+
+    public EditHistory(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        mMaxBytes = maxBytes;
+        trim();
+    }
+
+    public long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    /**
+     * @return rough number of bytes held by the commands
+     */
+    public long getSize() {
+        return mSize;
+    }
+
+    public boolean canUndo() {
+        return mPosition > 0;
+    }
+
+    public boolean canRedo() {
+        return mPosition < mCommands.size();
+    }
+
+    /**
+     * @return number of commands that can be undone
+     */
+    public int getUndoCount() {
+        return mPosition;
+    }
+
+    /**
+     * Record an edit that was just made, the commands that could be redone are dropped.
+     * While a gesture is going on the command may be merged into the previous one
+     */
+    public void record(EditCommand command) {
+        dropRedo();
+        if(mMergeOpen && mPosition > 0) {
+            EditCommand top = mCommands.get(mPosition-1);
+            long size = top.getSize();
+            if(top.merge(command)) {
+                mSize += top.getSize()-size;
+                return;
+            }
+        }
+        report();
+        mCommands.add(command);
+        mPosition++;
+        mSize += command.getSize();
+        mMergeOpen = true;
+        if(command.canMerge())
+            mUnreported = command;
+        else if(mListener != null)
+            mListener.onEdit(command,false);
+        trim();
+    }
+
+    /**
+     * The gesture is over, the next command recorded starts a new entry
+     */
+    public void endMerge() {
+        mMergeOpen = false;
+        report();
+    }
+
+    private void report() {
+        EditCommand command = mUnreported;
+        mUnreported = null;
+        if(command != null && mListener != null)
+            mListener.onEdit(command,false);
+    }
+
+    /**
+     * @return false if there was nothing to undo
+     */
+    public boolean undo(GraphEditor editor) {
+        endMerge();
+        if(!canUndo())
+            return false;
+        EditCommand command = mCommands.get(--mPosition);
+        command.undo(editor);
+        if(mListener != null)
+            mListener.onEdit(command,true);
+        return true;
+    }
+
+    /**
+     * @return false if there was nothing to redo
+     */
+    public boolean redo(GraphEditor editor) {
+        endMerge();
+        if(!canRedo())
+            return false;
+        EditCommand command = mCommands.get(mPosition++);
+        command.redo(editor);
+        if(mListener != null)
+            mListener.onEdit(command,false);
+        return true;
+    }
+
+    public void clear() {
+        mCommands.clear();
+        mPosition = 0;
+        mSize = 0;
+        mMergeOpen = false;
+        mUnreported = null;
+    }
+
+    private void dropRedo() {
+        for (int i = mCommands.size()-1; i >= mPosition; i--)
+            mSize -= mCommands.remove(i).getSize();
+    }
+
+    private void trim() {
+        int drop = 0;
+        while (drop < mPosition-1 && mSize > mMaxBytes)
+            mSize -= mCommands.get(drop++).getSize();
+        if(drop == 0)
+            return;
+        mCommands.subList(0,drop).clear();
+        mPosition -= drop;
+    }
+}
@@ -0,0 +1,760 @@
+package com.mindmap.expressFlowchart.document;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Append-only autosave log of the edits made since the document was last written to its base file.
+ * Every edit the history records, undoes or redoes is appended as a short record holding the state
+ * it left the touched item in, so an append costs as much as the edit and nothing depends on the
+ * size of the document. Compacting writes the document to the base and starts the log over; after
+ * a crash the base and the log are replayed to get the document back.
+ * <p>
+ * While a compaction is being written, the records before it are kept in a file next to the log,
+ * so a crash at any point replays onto whichever base is complete. Records hold absolute state,
+ * replaying them onto a base that already has them changes nothing.
+ * <p>
+ * Records name an item by its key in the run that logged it, the header pairs the keys of the base's items
+ * with their place in it, so items keep no id string for the log and a base is read as it is opened.
+ * <p>
+ * Layout: MAGIC, VERSION, the base path in UTF (empty for a document that was never written), the path
+ * of the file the user keeps the document in (empty for none, version 1 logs have the base only),
+ * the key and z-order stamp of the nodes and then the edges of the base in the order it holds them,
+ * then records of a tag byte followed by the item key and its state. Records that place an item in the
+ * z-order hold its stamp, so putting an item back where it was is as cheap as raising it.
+ * Logs before version 4 name items by the id they are saved with, version 3 has stamps without keys.
+ * A record cut short by a crash is left out when replaying
+ */
+public class EditJournal implements EditHistory.Listener {
+
+    public static final byte[] MAGIC = {'E','F','M','J'};
+    public static final int VERSION = 4;
+    public static final long DEFAULT_MAX_BYTES = 256*1024;
+
+    static final int ADD_NODE = 1;
+    static final int ADD_EDGE = 2;
+    static final int MOVE = 3;
+    static final int RESTYLE = 4;
+    static final int DELETE = 5;
+    static final int RAISE = 6;
+    static final int ORDER = 7;
+
+    private final File mFile;
+    private final File mPrevious;
+    private FileOutputStream mOutStream;
+    private DataOutputStream mOut;
+    private long mSize = 0;
+    private int mRecords = 0;
+    private long mMaxBytes = DEFAULT_MAX_BYTES;
+    private Runnable mOnFull;
+    private boolean mFullReported = false;
+    //bumped by start and rotate, a commit for an older compaction keeps the records set aside
+    private int mGeneration = 0;
+    private final Recorder mRecorder = new Recorder();
+
+    /**
+     * @param file where the log is kept, file.prev holds the records of a compaction being written
+     */
+    public EditJournal(File file) {
+        mFile = file;
+        mPrevious = previous(file);
+    }
+
+    private static File previous(File file) {
+        return new File(file.getPath()+".prev");
+    }
+
+    /**
+     * @param onFull run once the log grew past maxBytes or could not be written, time to compact
+     */
+    public void setLimit(long maxBytes,Runnable onFull) {
+        mMaxBytes = maxBytes;
+        mOnFull = onFull;
+    }
+
+    /**
+     * @return bytes of records appended since the log was last started
+     */
+    public long getSize() {
+        return mSize;
+    }
+
+    /**
+     * @return true if edits were appended, or could not be, since the log was last started
+     */
+    public boolean hasEdits() {
+        return mRecords > 0 || mOut == null;
+    }
+
+    /**
+     * Start an empty log for a document that is all in base, the file the user keeps it in
+     * @param base null for a new document that was never written
+     */
+    public void start(File base,GraphDocument document) throws IOException {
+        start(base,base,document);
+    }
+
+    /**
+     * Start an empty log for a document that is all in base, records kept aside are dropped
+     * @param base     null for a new document that was never written
+     * @param file     the file the user keeps the document in, null for none
+     * @param document the document as base holds it, its z-order stamps are logged
+     */
+    public void start(File base,File file,GraphDocument document) throws IOException {
+        mGeneration++;
+        close();
+        open(base,file,document);
+        mPrevious.delete();
+    }
+
+    /**
+     * Start a log for a compaction to base, the file the user keeps the document in, see rotate() with both
+     */
+    public int rotate(File base,GraphDocument snapshot) throws IOException {
+        return rotate(base,base,snapshot);
+    }
+
+    /**
+     * Move the records so far aside and start a log for a compaction to base.
+     * Call it when taking the snapshot that is written, and commit() once it is
+     * @param file     the file the user keeps the document in, null for none
+     * @param snapshot the snapshot written to base, its z-order stamps are logged
+     * @return the compaction to commit
+     */
+    public int rotate(File base,File file,GraphDocument snapshot) throws IOException {
+        mGeneration++;
+        close();
+        if(mPrevious.exists()) {
+            //the last compaction was not written, its records still count
+            if(mFile.exists())
+                appendRecords(mFile,mPrevious);
+        }
+        else if(mFile.exists() && !mFile.renameTo(mPrevious))
+            throw new IOException("Could not move "+mFile+" aside");
+        open(base,file,snapshot);
+        return mGeneration;
+    }
+
+    /**
+     * The compaction started by rotate() is written, the records kept aside are not needed any more
+     * unless the log was started or rotated again meanwhile
+     */
+    public void commit(int generation) {
+        if(generation == mGeneration)
+            mPrevious.delete();
+    }
+
+    /**
+     * Make what was appended survive a power loss as well as a crash of the app
+     */
+    public void sync() throws IOException {
+        if(mOut != null) {
+            mOut.flush();
+            mOutStream.getFD().sync();
+        }
+    }
+
+    public void close() {
+        if(mOut != null) {
+            try {
+                mOut.close();
+            } catch (IOException e) {
+                //what was not written is replaced by the next compaction
+            }
+            mOut = null;
+        }
+    }
+
+    private void open(File base,File file,GraphDocument document) throws IOException {
+        mOutStream = new FileOutputStream(mFile);
+        mOut = new DataOutputStream(new BufferedOutputStream(mOutStream,1024));
+        mOut.write(MAGIC);
+        mOut.writeByte(VERSION);
+        mOut.writeUTF(base == null ? "" : base.getPath());
+        mOut.writeUTF(file == null ? "" : file.getPath());
+        List<GraphNode> nodes = document == null ? new ArrayList<GraphNode>() : document.inZOrder(document.getNodes());
+        List<GraphEdge> edges = document == null ? new ArrayList<GraphEdge>() : document.inZOrder(document.getEdges());
+        writeItems(mOut,nodes);
+        //the edges a file is written with, see snapshot()
+        List<GraphEdge> saved = new ArrayList<>(edges.size());
+        for (GraphEdge edge : edges)
+            if(edge.getFrom() != null && edge.getTo() != null)
+                saved.add(edge);
+        writeItems(mOut,saved);
+        mOut.flush();
+        mSize = 0;
+        mRecords = 0;
+        mFullReported = false;
+    }
+
+    /**
+     * The key and stamp of each item, stamps in z-order only grow and are written as the step from the one before
+     */
+    private static void writeItems(DataOutputStream out,List<? extends GraphItem> items) throws IOException {
+        BinaryMapFormat.writeVarint(out,items.size());
+        long last = 0;
+        for (GraphItem item : items) {
+            BinaryMapFormat.writeVarint(out,item.getKey());
+            BinaryMapFormat.writeVarint(out,item.getOrder()-last);
+            last = item.getOrder();
+        }
+    }
+
+    /**
+     * @param keys filled with the keys of the items, null for a version 3 log that has stamps only
+     * @return the stamps of the items
+     */
+    private static long[] readItems(DataInputStream in,int[] keys) throws IOException {
+        long[] orders = new long[keys == null ? readCount(in) : keys.length];
+        long last = 0;
+        for (int i = 0; i < orders.length; i++) {
+            if(keys != null)
+                keys[i] = (int) BinaryMapFormat.readVarint(in);
+            last += BinaryMapFormat.readVarint(in);
+            orders[i] = last;
+        }
+        return orders;
+    }
+
+    private static int readCount(DataInputStream in) throws IOException {
+        long count = BinaryMapFormat.readVarint(in);
+        if(count > Integer.MAX_VALUE)
+            throw new IOException("Bad item count "+count);
+        return (int) count;
+    }
+
+    /**
+     * @return how a record names the item
+     */
+    private static String ref(GraphItem item) {
+        return Integer.toString(item.getKey());
+    }
+
+    private static void appendRecords(File from,File to) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(from)));
+        FileOutputStream out = new FileOutputStream(to,true);
+        try {
+            new Header(in);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0)
+                out.write(buffer,0,read);
+        } finally {
+            in.close();
+            out.close();
+        }
+    }
+
+    @Override
+    public void onEdit(EditCommand command,boolean undone) {
+        if(mOut == null)
+            return;
+        long size = mOut.size();
+        try {
+            if(undone)
+                command.undo(mRecorder);
+            else
+                command.redo(mRecorder);
+            //a record is on its way to the disk as soon as it is made, a crash of the app does not lose it
+            mOut.flush();
+        } catch (IOException e) {
+            close();
+        }
+        if(mOut != null)
+            mSize += mOut.size()-size;
+        if(!mFullReported && mOnFull != null && (mOut == null || mSize > mMaxBytes)) {
+            mFullReported = true;
+            mOnFull.run();
+        }
+    }
+
+    /**
+     * Turns the edits of a command into records, what an item is like now is what it is written with
+     */
+    private class Recorder implements GraphEditor {
+
+        @Override
+        public void addItem(GraphItem item) {
+            write(item.isNode() ? ADD_NODE : ADD_EDGE,item);
+        }
+
+        @Override
+        public void removeItem(GraphItem item) {
+            write(DELETE,item);
+        }
+
+        @Override
+        public void moveNode(GraphNode node,float x,float y) {
+            write(MOVE,node);
+        }
+
+        @Override
+        public void restyle(GraphItem item,ItemStyle style) {
+            write(RESTYLE,item);
+        }
+
+        @Override
+        public void bringToFront(GraphItem item) {
+            write(RAISE,item);
+        }
+
+        @Override
+        public void setOrder(GraphItem item,long order) {
+            write(ORDER,item);
+        }
+
+        private void write(int tag,GraphItem item) {
+            if(mOut == null)
+                return;
+            try {
+                writeRecord(mOut,tag,item);
+                mRecords++;
+            } catch (IOException e) {
+                close();
+            }
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out,int tag,GraphItem item) throws IOException {
+        out.writeByte(tag);
+        writeString(out,ref(item));
+        switch (tag) {
+            case ADD_NODE: {
+                GraphNode node = (GraphNode) item;
+                out.writeFloat(node.getX());
+                out.writeFloat(node.getY());
+                writeStyle(out,item);
+                BinaryMapFormat.writeVarint(out,item.getOrder());
+                writeString(out,item.getExternalId() == null ? "" : item.getExternalId());
+                break;
+            }
+            case ADD_EDGE: {
+                GraphEdge edge = (GraphEdge) item;
+                writeString(out,ref(edge.getFrom()));
+                writeString(out,ref(edge.getTo()));
+                writeStyle(out,item);
+                BinaryMapFormat.writeVarint(out,item.getOrder());
+                writeString(out,item.getExternalId() == null ? "" : item.getExternalId());
+                break;
+            }
+            case MOVE: {
+                GraphNode node = (GraphNode) item;
+                out.writeFloat(node.getX());
+                out.writeFloat(node.getY());
+                break;
+            }
+            case RESTYLE:
+                out.writeBoolean(item.isNode());
+                writeStyle(out,item);
+                break;
+            case RAISE:
+            case ORDER:
+                BinaryMapFormat.writeVarint(out,item.getOrder());
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static void writeStyle(DataOutputStream out,GraphItem item) throws IOException {
+        writeString(out,item.getTitle());
+        writeString(out,item.getDescription());
+        out.writeInt(item.getColor());
+        if(item.isNode()) {
+            GraphNode node = (GraphNode) item;
+            out.writeFloat(node.getTextSize());
+            out.writeFloat(node.getR());
+            writeString(out,node.getShape().toString());
+        }
+        else {
+            GraphEdge edge = (GraphEdge) item;
+            out.writeFloat(edge.getTextSize());
+            out.writeFloat(edge.getStrokeWidth());
+            writeString(out,edge.getArrowShape().toString());
+        }
+    }
+
+    private static void writeString(DataOutputStream out,String string) throws IOException {
+        byte[] bytes = string.getBytes("UTF-8");
+        BinaryMapFormat.writeVarint(out,bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        long length = BinaryMapFormat.readVarint(in);
+        if(length > Integer.MAX_VALUE)
+            throw new IOException("Bad string length "+length);
+        byte[] bytes = new byte[(int) length];
+        in.readFully(bytes);
+        return new String(bytes,"UTF-8");
+    }
+
+    /**
+     * What a log starts with, the records follow it
+     */
+    private static final class Header {
+        final int mVersion;
+        final File mBase,mFile;
+        //keys and stamps of the base's nodes and edges in the order it holds them,
+        //no keys before version 4 and no stamps before version 3
+        final int[] mNodeKeys,mEdgeKeys;
+        final long[] mNodeOrders,mEdgeOrders;
+
+        Header(DataInputStream in) throws IOException {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            for (int i = 0; i < MAGIC.length; i++)
+                if(magic[i] != MAGIC[i])
+                    throw new IOException("Not an edit journal");
+            mVersion = in.readUnsignedByte();
+            if(mVersion > VERSION)
+                throw new IOException("Unsupported journal version "+mVersion);
+            String base = in.readUTF();
+            mBase = toFile(base);
+            mFile = toFile(mVersion < 2 ? base : in.readUTF());
+            mNodeKeys = mVersion < 4 ? null : new int[readCount(in)];
+            mNodeOrders = mVersion < 3 ? new long[0] : readItems(in,mNodeKeys);
+            mEdgeKeys = mVersion < 4 ? null : new int[readCount(in)];
+            mEdgeOrders = mVersion < 3 ? new long[0] : readItems(in,mEdgeKeys);
+        }
+
+        /**
+         * @return true if records name items by key, false if by the id they are saved with
+         */
+        boolean isKeyed() {
+            return mVersion >= 4;
+        }
+
+        /**
+         * Give the items read from the base the stamps they had when it was written and index them
+         * by what the records name them with
+         */
+        void restore(GraphDocument document,HashMap<String,GraphItem> items) {
+            List<GraphNode> nodes = document.getNodes();
+            List<GraphEdge> edges = document.getEdges();
+            if(!isKeyed()) {
+                for (GraphNode node : nodes)
+                    items.put(node.getId(),node);
+                for (GraphEdge edge : edges)
+                    items.put(edge.getId(),edge);
+            }
+            //a base that does not match its header keeps the order it was read in
+            if(nodes.size() != mNodeOrders.length || edges.size() != mEdgeOrders.length)
+                return;
+            for (int i = 0; i < mNodeOrders.length; i++) {
+                document.setOrder(nodes.get(i),mNodeOrders[i]);
+                if(isKeyed())
+                    items.put(Integer.toString(mNodeKeys[i]),nodes.get(i));
+            }
+            for (int i = 0; i < mEdgeOrders.length; i++) {
+                document.setOrder(edges.get(i),mEdgeOrders[i]);
+                if(isKeyed())
+                    items.put(Integer.toString(mEdgeKeys[i]),edges.get(i));
+            }
+        }
+    }
+
+    private static File toFile(String path) {
+        return path.isEmpty() ? null : new File(path);
+    }
+
+    /**
+     * A document brought back from a base and the records appended after it
+     */
+    public static final class Recovery {
+        private final GraphDocument mDocument;
+        private final File mBase;
+        private final File mFile;
+        private final int mRecords;
+
+        Recovery(GraphDocument document,File base,File file,int records) {
+            mDocument = document;
+            mBase = base;
+            mFile = file;
+            mRecords = records;
+        }
+
+        public GraphDocument getDocument() {
+            return mDocument;
+        }
+
+        /**
+         * @return the file the document was last written to, null for one that never was
+         */
+        public File getBase() {
+            return mBase;
+        }
+
+        /**
+         * @return the file the user keeps the document in, null for none, it may be older than the base
+         */
+        public File getFile() {
+            return mFile;
+        }
+
+        /**
+         * @return number of records replayed
+         */
+        public int getRecords() {
+            return mRecords;
+        }
+    }
+
+    /**
+     * @return true if the log at file holds edits that are not in the user's file, left by a run that did not
+     * end cleanly. A log without records still needs it when its base is not the user's file, an autosave
+     */
+    public static boolean needsRecovery(File file) {
+        if(previous(file).exists())
+            return true;
+        if(!file.exists())
+            return false;
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                Header header = new Header(in);
+                if(header.mBase != null && !header.mBase.equals(header.mFile))
+                    return true;
+                return in.read() >= 0;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Replay the base and the records of the log at file, the records kept aside by a compaction first.
+     * Items keep the external ids they were logged with, the others get new keys
+     */
+    public static Recovery recover(File file) throws IOException {
+        File previous = previous(file);
+        Header oldest = null, newest = null;
+        //the base of the oldest records is the one that is known to be complete,
+        //the user's file is the one of the newest, a save may have moved it
+        for (File log : new File[]{previous,file}) {
+            if(!log.exists())
+                continue;
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(log)));
+            try {
+                newest = new Header(in);
+                if(oldest == null)
+                    oldest = newest;
+            } finally {
+                in.close();
+            }
+        }
+        if(oldest == null)
+            throw new IOException("No edit journal at "+file);
+
+        File base = oldest.mBase;
+        GraphDocument document = new GraphDocument();
+        HashMap<String,GraphItem> items = new HashMap<>();
+        if(base != null && base.exists()) {
+            //read as MapIo.load opened it, older logs name items by the ids of the file
+            MapIo.read(base,document,document.getCamera(),null,!oldest.isKeyed());
+            oldest.restore(document,items);
+        }
+        int records = 0;
+        for (File log : new File[]{previous,file})
+            if(log.exists())
+                records += replay(log,document,items);
+        return new Recovery(document,base,newest.mFile,records);
+    }
+
+    /**
+     * @return number of records applied
+     */
+    private static int replay(File log,GraphDocument document,HashMap<String,GraphItem> items) throws IOException {
+        InputStream stream = new BufferedInputStream(new FileInputStream(log));
+        DataInputStream in = new DataInputStream(stream);
+        int records = 0;
+        try {
+            int version = new Header(in).mVersion;
+            while (true) {
+                int tag = in.read();
+                if(tag < 0)
+                    break;
+                try {
+                    apply(tag,in,document,items,version);
+                } catch (EOFException e) {
+                    //the last record was cut short by the crash
+                    break;
+                }
+                records++;
+            }
+        } finally {
+            in.close();
+        }
+        return records;
+    }
+
+    /**
+     * Read a whole record before anything is changed, so one cut short changes nothing
+     * @param version of the log, records hold z-order stamps from version 3 and external ids from version 4,
+     *                before that they raise items to the front and name them by the id they are saved with
+     */
+    private static void apply(int tag,DataInputStream in,GraphDocument document,HashMap<String,GraphItem> items,
+                              int version) throws IOException {
+        boolean stamped = version >= 3;
+        String id = readString(in);
+        GraphItem item = find(id,document,items);
+        switch (tag) {
+            case ADD_NODE: {
+                float x = in.readFloat(), y = in.readFloat();
+                Style style = new Style(in);
+                long order = readOrder(in,stamped);
+                String externalId = readExternalId(in,id,version);
+                if(item == null || !item.isNode()) {
+                    item = new GraphNode(document.getNodeStore(),externalId,x,y,GraphNode.DEFAULT_RADIUS,"","",
+                            GraphNode.DEFAULT_COLOR,NodeShape.CIRCLE,GraphNode.DEFAULT_TEXT_SIZE);
+                    document.add(item);
+                    items.put(id,item);
+                }
+                place(document,item,order);
+                ((GraphNode) item).set(x,y);
+                style.applyTo(item);
+                break;
+            }
+            case ADD_EDGE: {
+                GraphItem from = find(readString(in),document,items), to = find(readString(in),document,items);
+                Style style = new Style(in);
+                long order = readOrder(in,stamped);
+                String externalId = readExternalId(in,id,version);
+                //an edge to a node that is gone is left out
+                if(from == null || to == null || !from.isNode() || !to.isNode())
+                    break;
+                if(item == null || item.isNode()) {
+                    item = new GraphEdge(externalId,(GraphNode) from,(GraphNode) to,GraphEdge.DEFAULT_COLOR,"","",ArrowShape.NONE,GraphEdge.DEFAULT_TEXT_SIZE);
+                    document.add(item);
+                    items.put(id,item);
+                }
+                else
+                    document.reconnect((GraphEdge) item,(GraphNode) from,(GraphNode) to);
+                place(document,item,order);
+                style.applyTo(item);
+                break;
+            }
+            case MOVE: {
+                float x = in.readFloat(), y = in.readFloat();
+                if(item != null && item.isNode())
+                    ((GraphNode) item).set(x,y);
+                break;
+            }
+            case RESTYLE: {
+                boolean node = in.readBoolean();
+                Style style = new Style(in);
+                if(item != null && item.isNode() == node)
+                    style.applyTo(item);
+                break;
+            }
+            case RAISE: {
+                long order = readOrder(in,stamped);
+                if(item != null)
+                    place(document,item,order);
+                break;
+            }
+            case ORDER: {
+                if(!stamped) {
+                    //version 2 named the item beneath instead, the item is left in front
+                    readString(in);
+                    break;
+                }
+                long order = readOrder(in,true);
+                if(item != null)
+                    document.setOrder(item,order);
+                break;
+            }
+            case DELETE:
+                if(item != null)
+                    document.remove(item);
+                break;
+            default:
+                throw new IOException("Unknown journal record "+tag);
+        }
+    }
+
+    /**
+     * @return the item a record names, null if there is none or it was deleted, along with its edges
+     */
+    private static GraphItem find(String id,GraphDocument document,HashMap<String,GraphItem> items) {
+        GraphItem item = items.get(id);
+        return document.contains(item) ? item : null;
+    }
+
+    /**
+     * @return the stamp that ends a record, -1 for a log that has none
+     */
+    private static long readOrder(DataInputStream in,boolean stamped) throws IOException {
+        return stamped ? BinaryMapFormat.readVarint(in) : -1;
+    }
+
+    /**
+     * @param id what the record names the item with, the id it is saved with before version 4
+     * @return the external id of an added item, null if it has none
+     */
+    private static String readExternalId(DataInputStream in,String id,int version) throws IOException {
+        if(version < 4)
+            return id;
+        String externalId = readString(in);
+        return externalId.isEmpty() ? null : externalId;
+    }
+
+    /**
+     * Put a replayed item where the record says, in front if it does not say
+     */
+    private static void place(GraphDocument document,GraphItem item,long order) {
+        if(order < 0)
+            document.bringToFront(item);
+        else
+            document.setOrder(item,order);
+    }
+
+    /**
+     * The style part of a record as writeStyle wrote it
+     */
+    private static class Style {
+        private final String mTitle,mDescription,mShape;
+        private final int mColor;
+        private final float mTextSize,mSize;
+
+        Style(DataInputStream in) throws IOException {
+            mTitle = readString(in);
+            mDescription = readString(in);
+            mColor = in.readInt();
+            mTextSize = in.readFloat();
+            mSize = in.readFloat();
+            mShape = readString(in);
+        }
+
+        void applyTo(GraphItem item) {
+            item.setTitle(mTitle);
+            item.setDescription(mDescription);
+            item.setColor(mColor);
+            if(item.isNode()) {
+                GraphNode node = (GraphNode) item;
+                node.setTextSize(mTextSize);
+                node.setR(mSize);
+                node.setShape(GraphNode.shapeFromString(mShape));
+            }
+            else {
+                GraphEdge edge = (GraphEdge) item;
+                edge.setTextSize(mTextSize);
+                edge.setStrokeWidth(mSize);
+                edge.setArrowShape(GraphEdge.arrowShapeFromString(mShape));
+            }
+        }
+    }
+}
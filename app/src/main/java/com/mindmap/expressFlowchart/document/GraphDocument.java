@@ -0,0 +1,364 @@
+package com.mindmap.expressFlowchart.document;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A mind map without any view: its nodes and edges, their keys, adjacency and z-order,
+ * the camera it was last seen through, and the .map JSON format.
+ * It uses no Android classes, MainView renders one and tests can build one on a plain JVM
+ */
+public class GraphDocument implements GraphEditor,ItemTarget {
+
+    //Columns every node of the document keeps its state in
+    private NodeStore mNodeStore = new NodeStore(16);
+    //one layer per type in the order items were added, edges are always beneath nodes
+    private final ArrayList<GraphNode> mNodes = new ArrayList<>();
+    private final ArrayList<GraphEdge> mEdges = new ArrayList<>();
+    //Key index over both layers
+    private final IntMap<GraphItem> mItemsByKey = new IntMap<>();
+    //Adjacency index, the edges attached to each node by node key
+    private final IntMap<ArrayList<GraphEdge>> mIncidentEdges = new IntMap<>();
+    private static final List<GraphEdge> NO_EDGES = Collections.emptyList();
+    private final Camera mCamera = new Camera();
+    //next z-order stamp, every add and bringToFront takes one
+    private long mNextOrder = 0;
+    //newest stamp of each layer, the item holding it is in front
+    private long mFrontNode = -1, mFrontEdge = -1;
+
+    private static final Comparator<GraphItem> Z_ORDER = new Comparator<GraphItem>() {
+        @Override
+        public int compare(GraphItem a, GraphItem b) {
+            long orderA = a.getOrder(), orderB = b.getOrder();
+            return orderA < orderB ? -1 : (orderA == orderB ? 0 : 1);
+        }
+    };
+
+    /**
+     * @return the store holding the state of every node in the document
+     */
+    @Override
+    public NodeStore getNodeStore() {
+        return mNodeStore;
+    }
+
+    public Camera getCamera() {
+        return mCamera;
+    }
+
+    /**
+     * @return the node layer in the order nodes were added, do not modify
+     */
+    public List<GraphNode> getNodes() {
+        return mNodes;
+    }
+
+    /**
+     * @return the edge layer in the order edges were added, do not modify
+     */
+    public List<GraphEdge> getEdges() {
+        return mEdges;
+    }
+
+    public boolean isEmpty() {
+        return mNodes.isEmpty() && mEdges.isEmpty();
+    }
+
+    /**
+     * @return the item with the given key, null if there is none
+     */
+    public GraphItem getItem(int key) {
+        return mItemsByKey.get(key);
+    }
+
+    /**
+     * @return the node with the given key, null if there is none or it is an edge
+     */
+    public GraphNode getNode(int key) {
+        GraphItem item = mItemsByKey.get(key);
+        return item != null && item.isNode() ? (GraphNode) item : null;
+    }
+
+    public boolean contains(GraphItem item) {
+        return item != null && mItemsByKey.get(item.getKey()) == item;
+    }
+
+    /**
+     * @return the edges attached to node, do not modify
+     */
+    public List<GraphEdge> getIncidentEdges(GraphNode node) {
+        ArrayList<GraphEdge> edges = mIncidentEdges.get(node.getKey());
+        return edges == null ? NO_EDGES : edges;
+    }
+
+    /**
+     * Add an item on top of its layer, an edge's nodes have to be added first.
+     * A node's state moves into the document's NodeStore
+     */
+    public void add(GraphItem item) {
+        if(item.isNode()) {
+            ((GraphNode) item).moveTo(mNodeStore);
+            mNodes.add((GraphNode) item);
+        }
+        else {
+            mEdges.add((GraphEdge) item);
+            linkEdge((GraphEdge) item);
+        }
+        mItemsByKey.put(item.getKey(),item);
+        setOrder(item,mNextOrder);
+    }
+
+    /**
+     * Remove an item, a node takes the edges attached to it along.
+     * Removed nodes keep working on a store of their own and can be added again
+     * @return the edges removed along with a node, empty for an edge
+     */
+    public List<GraphEdge> remove(GraphItem item) {
+        if(!contains(item))
+            return NO_EDGES;
+        mItemsByKey.remove(item.getKey());
+        if(!item.isNode()) {
+            unlinkEdge((GraphEdge) item);
+            mEdges.remove(item);
+            return NO_EDGES;
+        }
+        ArrayList<GraphEdge> incident = new ArrayList<>(getIncidentEdges((GraphNode) item));
+        for (GraphEdge edge : incident) {
+            mItemsByKey.remove(edge.getKey());
+            unlinkEdge(edge);
+            mEdges.remove(edge);
+        }
+        mIncidentEdges.remove(item.getKey());
+        mNodes.remove(item);
+        ((GraphNode) item).detach();
+        return incident;
+    }
+
+    /**
+     * Attach the edge to other nodes, keeping the incident edges in step
+     * @param to null while the edge is being drawn
+     */
+    public void reconnect(GraphEdge edge,GraphNode from,GraphNode to) {
+        boolean inDocument = contains(edge);
+        if(inDocument)
+            unlinkEdge(edge);
+        edge.setEnds(from,to);
+        if(inDocument)
+            linkEdge(edge);
+    }
+
+    @Override
+    public void addItem(GraphItem item) {
+        add(item);
+    }
+
+    @Override
+    public void removeItem(GraphItem item) {
+        remove(item);
+    }
+
+    @Override
+    public void moveNode(GraphNode node,float x,float y) {
+        node.set(x,y);
+    }
+
+    @Override
+    public void restyle(GraphItem item,ItemStyle style) {
+        style.applyTo(item);
+    }
+
+    /**
+     * Draw the item above every other one of its type, it is saved after them as well
+     */
+    @Override
+    public void bringToFront(GraphItem item) {
+        setOrder(item,mNextOrder);
+    }
+
+    /**
+     * Give the item a z-order stamp, stamps not handed out yet are taken up to it
+     */
+    @Override
+    public void setOrder(GraphItem item,long order) {
+        item.setOrder(order);
+        if(order >= mNextOrder)
+            mNextOrder = order+1;
+        if(item.isNode())
+            mFrontNode = Math.max(mFrontNode,order);
+        else
+            mFrontEdge = Math.max(mFrontEdge,order);
+    }
+
+    /**
+     * @return where the item is in the z-order, larger is drawn later
+     */
+    public long getOrder(GraphItem item) {
+        return item.getOrder();
+    }
+
+    /**
+     * @return true if item holds the newest stamp of its type, so nothing is drawn above it.
+     * An item put back beneath the front leaves the newest stamp unheld until the next one is handed out
+     */
+    public boolean isInFront(GraphItem item) {
+        return item.getOrder() == (item.isNode() ? mFrontNode : mFrontEdge);
+    }
+
+    /**
+     * @return the items of a layer sorted bottom to top
+     */
+    public <T extends GraphItem> List<T> inZOrder(List<T> items) {
+        List<T> sorted = new ArrayList<>(items);
+        Collections.sort(sorted, Z_ORDER);
+        return sorted;
+    }
+
+    /**
+     * Copy the document for another thread to read while this one goes on being edited.
+     * Items keep their keys, ids and z-order stamps, strings are shared as they never change.
+     * Edges still being drawn are left out
+     */
+    public GraphDocument snapshot() {
+        GraphDocument copy = new GraphDocument();
+        copy.mNodeStore = new NodeStore(mNodes.size());
+        copy.mCamera.set(mCamera.getScale(),mCamera.getTranslateX(),mCamera.getTranslateY());
+        for (GraphNode node : inZOrder(mNodes)) {
+            GraphNode nodeCopy = node.copy(copy.mNodeStore);
+            copy.add(nodeCopy);
+            copy.setOrder(nodeCopy,node.getOrder());
+        }
+        for (GraphEdge edge : inZOrder(mEdges)) {
+            if(edge.getFrom() == null || edge.getTo() == null)
+                continue;
+            GraphEdge edgeCopy = edge.copy(copy.getNode(edge.getFrom().getKey()),copy.getNode(edge.getTo().getKey()));
+            copy.add(edgeCopy);
+            copy.setOrder(edgeCopy,edge.getOrder());
+        }
+        return copy;
+    }
+
+    public void clear() {
+        //nodes still referenced elsewhere keep the old store
+        mNodeStore = new NodeStore(16);
+        mNodes.clear();
+        mEdges.clear();
+        mItemsByKey.clear();
+        mIncidentEdges.clear();
+        mNextOrder = 0;
+        mFrontNode = -1;
+        mFrontEdge = -1;
+    }
+
+    private void linkEdge(GraphEdge edge) {
+        addIncident(edge.getFrom(),edge);
+        if(edge.getTo() != edge.getFrom())
+            addIncident(edge.getTo(),edge);
+    }
+
+    private void unlinkEdge(GraphEdge edge) {
+        removeIncident(edge.getFrom(),edge);
+        removeIncident(edge.getTo(),edge);
+    }
+
+    private void addIncident(GraphNode node,GraphEdge edge) {
+        if(node == null)
+            return;
+        ArrayList<GraphEdge> edges = mIncidentEdges.get(node.getKey());
+        if(edges == null) {
+            edges = new ArrayList<>(4);
+            mIncidentEdges.put(node.getKey(),edges);
+        }
+        edges.add(edge);
+    }
+
+    private void removeIncident(GraphNode node,GraphEdge edge) {
+        if(node == null)
+            return;
+        ArrayList<GraphEdge> edges = mIncidentEdges.get(node.getKey());
+        if(edges == null)
+            return;
+        edges.remove(edge);
+        if(edges.isEmpty())
+            mIncidentEdges.remove(node.getKey());
+    }
+
+    /**
+     * @return the document in the .map format, nodes before the edges that refer to them,
+     *         each layer bottom to top. Edges still being drawn are left out
+     */
+    public JSONObject toJson() throws JSONException {
+        JSONArray arr = new JSONArray();
+        for (GraphNode node : inZOrder(mNodes))
+            arr.put(node.toJson());
+        for (GraphEdge edge : inZOrder(mEdges)) {
+            JSONObject obj = edge.toJson();
+            if(obj != null)
+                arr.put(obj);
+        }
+        JSONObject obj = new JSONObject();
+        obj.put( DocumentSchema.SCALE_KEY, mCamera.getScale());
+        obj.put( DocumentSchema.TRANSLATE_X_KEY, mCamera.getTranslateX());
+        obj.put( DocumentSchema.TRANSLATE_Y_KEY, mCamera.getTranslateY());
+        obj.put( DocumentSchema.ITEMS_KEY, arr);
+        return obj;
+    }
+
+    /**
+     * Decode one item of a saved file, it gets a new key.
+     * Edges are resolved against the nodes read before them, which remap records by their file ids
+     * @param remap shared by every item of the same file
+     * @return the item, not added yet, or null for an unknown type or an edge whose nodes are missing
+     */
+    public static GraphItem readItem(JSONObject item,IdRemap remap) throws JSONException {
+        String type = item.getString( DocumentSchema.ITEM_TYPE_KEY);
+        if(type.equals( DocumentSchema.NODE_TYPE)) {
+            GraphNode node = GraphNode.fromJson(item);
+            remap.put(item.getString( DocumentSchema.ITEM_ID_KEY),node);
+            return node;
+        }
+        if(type.equals( DocumentSchema.EDGE_TYPE))
+            return GraphEdge.fromJson(item,remap);
+        return null;
+    }
+
+    /**
+     * Add the items of a saved file, they get new keys so they never clash with the items already here
+     * @param items JSONArray of node and edge JSONObjects
+     */
+    public void addItems(JSONArray items) throws JSONException {
+        IdRemap remap = new IdRemap();
+        for (int i = 0; i < items.length(); i++) {
+            GraphItem item = readItem(items.getJSONObject(i),remap);
+            if(item != null)
+                add(item);
+        }
+    }
+
+    /**
+     * Set the camera from a saved file, older files without a pan saved what was on screen at scale 1
+     */
+    public void readCamera(JSONObject obj) throws JSONException {
+        if (obj.has( DocumentSchema.TRANSLATE_X_KEY))
+            mCamera.set((float)obj.getDouble( DocumentSchema.SCALE_KEY),
+                    (float)obj.getDouble( DocumentSchema.TRANSLATE_X_KEY),(float)obj.getDouble( DocumentSchema.TRANSLATE_Y_KEY));
+        else
+            mCamera.set(1f,0f,0f);
+    }
+
+    /**
+     * @param obj a whole saved file
+     * @return a new document holding it
+     */
+    public static GraphDocument fromJson(JSONObject obj) throws JSONException {
+        GraphDocument document = new GraphDocument();
+        document.readCamera(obj);
+        document.addItems(obj.getJSONArray( DocumentSchema.ITEMS_KEY));
+        return document;
+    }
+}
@@ -0,0 +1,345 @@
+package com.mindmap.expressFlowchart.document;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+
+/**
+ * An edge of the graph, its ends are the centres of the nodes it joins.
+ * While it is being drawn it has no end node and ends at a free point instead
+ */
+public class GraphEdge extends GraphItem {
+
+    public static final int DEFAULT_COLOR = 0xFFFF0000; //red
+    public static final float DEFAULT_STROKE_WIDTH = 14;
+    public static final float MIN_STROKE_WIDTH = 10;
+    public static final float DEFAULT_TEXT_SIZE = 40;
+
+    private final int mKey;
+    private final String mExternalId;
+    private String mTitle = "";
+    //a String, or a LazyText of a mapped file until it is asked for
+    private CharSequence mDescription = "";
+    private int mColor;
+    private int mRevision = 0;
+    private long mOrder = 0;
+    private Object mTag;
+    private GraphNode mFrom;
+    private GraphNode mTo;
+    private float mFreeEndX,mFreeEndY;
+    private float mStrokeWidth = DEFAULT_STROKE_WIDTH;
+    private ArrowShape mArrowShape = ArrowShape.NONE;
+    private float mTextSize = DEFAULT_TEXT_SIZE;
+
+    /**
+     * An edge being drawn from a node, it ends at freeEndX,freeEndY until it gets an end node
+     * @param id external id, null for an edge that only needs its key
+     */
+    public GraphEdge(String id,GraphNode from,float freeEndX,float freeEndY) {
+        mKey = newKey();
+        mExternalId = id;
+        mColor = DEFAULT_COLOR;
+        mFrom = from;
+        mFreeEndX = freeEndX;
+        mFreeEndY = freeEndY;
+    }
+
+    public GraphEdge(String id,GraphNode from,GraphNode to,int color,String title,String description,ArrowShape arrowShape,float textSize) {
+        mKey = newKey();
+        mExternalId = id;
+        mColor = color;
+        mFrom = from;
+        mTo = to;
+        mArrowShape = arrowShape == null ? ArrowShape.NONE : arrowShape;
+        mTextSize = textSize;
+        setTitle(title);
+        setDescription(description);
+    }
+
+    /**
+     * A copy of source with the same key and id between the given nodes
+     */
+    private GraphEdge(GraphEdge source,GraphNode from,GraphNode to) {
+        mKey = source.mKey;
+        mExternalId = source.mExternalId;
+        mTitle = source.mTitle;
+        mDescription = source.mDescription;
+        mColor = source.mColor;
+        mFrom = from;
+        mTo = to;
+        mFreeEndX = source.mFreeEndX;
+        mFreeEndY = source.mFreeEndY;
+        mStrokeWidth = source.mStrokeWidth;
+        mArrowShape = source.mArrowShape;
+        mTextSize = source.mTextSize;
+    }
+
+    /**
+     * @return an edge with the same key, id and state between copies of its nodes
+     */
+    GraphEdge copy(GraphNode from,GraphNode to) {
+        return new GraphEdge(this,from,to);
+    }
+
+    @Override
+    public boolean isNode() {
+        return false;
+    }
+
+    @Override
+    public int getKey() {
+        return mKey;
+    }
+
+    @Override
+    public String getExternalId() {
+        return mExternalId;
+    }
+
+    @Override
+    public String getTitle() {
+        return mTitle;
+    }
+
+    @Override
+    public void setTitle(String title) {
+        mTitle = title == null ? "" : title;
+        changed();
+    }
+
+    @Override
+    public String getDescription() {
+        if(mDescription instanceof LazyText)
+            mDescription = mDescription.toString();
+        return (String) mDescription;
+    }
+
+    @Override
+    public void setDescription(String description) {
+        mDescription = description == null ? "" : description;
+    }
+
+    /**
+     * Set a description that is decoded when it is first asked for
+     */
+    void setDescriptionText(CharSequence description) {
+        mDescription = description;
+    }
+
+    @Override
+    public int getColor() {
+        return mColor;
+    }
+
+    @Override
+    public void setColor(int color) {
+        mColor = color;
+        changed();
+    }
+
+    @Override
+    public Object getTag() {
+        return mTag;
+    }
+
+    @Override
+    public void setTag(Object tag) {
+        mTag = tag;
+    }
+
+    @Override
+    long getOrder() {
+        return mOrder;
+    }
+
+    @Override
+    void setOrder(long order) {
+        mOrder = order;
+    }
+
+    private void changed() {
+        mRevision++;
+    }
+
+    public GraphNode getFrom() {
+        return mFrom;
+    }
+
+    public GraphNode getTo() {
+        return mTo;
+    }
+
+    /**
+     * Only GraphDocument.reconnect() may change the ends of an edge in a document,
+     * it keeps the incident edges of the nodes in step
+     */
+    void setEnds(GraphNode from,GraphNode to) {
+        mFrom = from;
+        mTo = to;
+        changed();
+    }
+
+    /**
+     * Move the free end of an edge that has no end node yet
+     */
+    public void setFreeEnd(float x,float y) {
+        mFreeEndX = x;
+        mFreeEndY = y;
+        changed();
+    }
+
+    public float getStartX() {
+        return mFrom == null ? mFreeEndX : mFrom.getX();
+    }
+
+    public float getStartY() {
+        return mFrom == null ? mFreeEndY : mFrom.getY();
+    }
+
+    public float getEndX() {
+        return mTo == null ? mFreeEndX : mTo.getX();
+    }
+
+    public float getEndY() {
+        return mTo == null ? mFreeEndY : mTo.getY();
+    }
+
+    public float getStrokeWidth() {
+        return mStrokeWidth;
+    }
+
+    /**
+     * @param strokeWidth raised to MIN_STROKE_WIDTH if thinner
+     */
+    public void setStrokeWidth(float strokeWidth) {
+        mStrokeWidth = Math.max(MIN_STROKE_WIDTH,strokeWidth);
+        changed();
+    }
+
+    public ArrowShape getArrowShape() {
+        return mArrowShape;
+    }
+
+    public void setArrowShape(ArrowShape arrowShape) {
+        mArrowShape = arrowShape;
+        changed();
+    }
+
+    public float getTextSize() {
+        return mTextSize;
+    }
+
+    public void setTextSize(float textSize) {
+        mTextSize = textSize;
+        changed();
+    }
+
+    /**
+     * @return a number that changes whenever the edge's look changes, the end nodes' position, size and shape included
+     */
+    @Override
+    public int getRevision() {
+        int revision = mRevision;
+        if(mFrom != null)
+            revision += mFrom.getRevision();
+        if(mTo != null)
+            revision += mTo.getRevision();
+        return revision;
+    }
+
+    /**
+     * @return how far from the line between the centres a click still selects the edge
+     */
+    public float getSelectionPad() {
+        return 3*mStrokeWidth;
+    }
+
+    @Override
+    public boolean contains(float x,float y) {
+        //the rectangle spanned by the two ends, widened by the selection pad and a small tolerance
+        float pad = getSelectionPad()+0.1f;
+        float startX = getStartX(), startY = getStartY(), endX = getEndX(), endY = getEndY();
+        return x > Math.min(startX,endX)-pad && x < Math.max(startX,endX)+pad
+            && y > Math.min(startY,endY)-pad && y < Math.max(startY,endY)+pad;
+    }
+
+    @Override
+    public void getBounds(Box bounds) {
+        float pad = getSelectionPad()+1;
+        float startX = getStartX(), startY = getStartY(), endX = getEndX(), endY = getEndY();
+        bounds.set(Math.min(startX,endX)-pad,Math.min(startY,endY)-pad,
+                   Math.max(startX,endX)+pad,Math.max(startY,endY)+pad);
+    }
+
+    /**
+     * @return the edge in the .map format, null while it has no end node
+     */
+    @Override
+    public JSONObject toJson() throws JSONException {
+        if(mFrom == null || mTo == null)
+            return null;
+        JSONObject obj = new JSONObject();
+        obj.put( DocumentSchema.ITEM_TYPE_KEY, DocumentSchema.EDGE_TYPE);
+        obj.put( DocumentSchema.EDGE_START_NODE_KEY, mFrom.getId());
+        obj.put( DocumentSchema.EDGE_END_NODE_KEY, mTo.getId());
+        obj.put( DocumentSchema.EDGE_STROKE_WIDTH_KEY, mStrokeWidth);
+        obj.put( DocumentSchema.ITEM_ID_KEY, getId());
+        obj.put( DocumentSchema.EDGE_TITLE_KEY, getTitle());
+        obj.put( DocumentSchema.EDGE_DESCRIPTION_KEY, getDescription());
+        obj.put( DocumentSchema.EDGE_COLOR_KEY, getColor());
+        obj.put( DocumentSchema.EDGE_ARROW_TYPE_KEY, mArrowShape.toString());
+        obj.put( DocumentSchema.EDGE_TEXT_SIZE_KEY, mTextSize);
+        return obj;
+    }
+
+    @Override
+    public boolean writeJson(JsonStreamWriter writer) throws IOException {
+        if(mFrom == null || mTo == null)
+            return false;
+        writer.beginObject();
+        writer.name( DocumentSchema.ITEM_TYPE_KEY).value( DocumentSchema.EDGE_TYPE);
+        writer.name( DocumentSchema.EDGE_START_NODE_KEY).value(mFrom.getId());
+        writer.name( DocumentSchema.EDGE_END_NODE_KEY).value(mTo.getId());
+        writer.name( DocumentSchema.EDGE_STROKE_WIDTH_KEY).value(mStrokeWidth);
+        writer.name( DocumentSchema.ITEM_ID_KEY).value(getId());
+        writer.name( DocumentSchema.EDGE_TITLE_KEY).value(getTitle());
+        writer.name( DocumentSchema.EDGE_DESCRIPTION_KEY).value(getDescription());
+        writer.name( DocumentSchema.EDGE_COLOR_KEY).value(getColor());
+        writer.name( DocumentSchema.EDGE_ARROW_TYPE_KEY).value(mArrowShape.toString());
+        writer.name( DocumentSchema.EDGE_TEXT_SIZE_KEY).value(mTextSize);
+        writer.endObject();
+        return true;
+    }
+
+    /**
+     * @return the arrow shape with the given name, NONE for names it does not know
+     */
+    public static ArrowShape arrowShapeFromString(String string) {
+        for (ArrowShape shape : ArrowShape.values())
+            if(shape.toString().equals(string))
+                return shape;
+        return ArrowShape.NONE;
+    }
+
+    /**
+     * @param obj      an edge in the .map format
+     * @param remap    the nodes read so far from the same file, the ends are looked up in it
+     * @return a new GraphEdge that is not in any document yet, null if either node is missing
+     */
+    public static GraphEdge fromJson(JSONObject obj,IdRemap remap) throws JSONException {
+        GraphNode from = remap.getNode(obj.getString( DocumentSchema.EDGE_START_NODE_KEY));
+        GraphNode to = remap.getNode(obj.getString( DocumentSchema.EDGE_END_NODE_KEY));
+        if(from == null || to == null)
+            return null;
+        GraphEdge edge = new GraphEdge(IdRemap.externalId(obj.getString( DocumentSchema.ITEM_ID_KEY)),from,to,
+                obj.getInt( DocumentSchema.EDGE_COLOR_KEY),
+                obj.getString( DocumentSchema.EDGE_TITLE_KEY),
+                obj.getString( DocumentSchema.EDGE_DESCRIPTION_KEY),
+                arrowShapeFromString(obj.getString( DocumentSchema.EDGE_ARROW_TYPE_KEY)),
+                (float) obj.getDouble( DocumentSchema.EDGE_TEXT_SIZE_KEY));
+        if(obj.has( DocumentSchema.EDGE_STROKE_WIDTH_KEY))
+            edge.setStrokeWidth((float) obj.getDouble( DocumentSchema.EDGE_STROKE_WIDTH_KEY));
+        return edge;
+    }
+}
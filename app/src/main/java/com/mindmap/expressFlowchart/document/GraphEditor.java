@@ -0,0 +1,32 @@
+package com.mindmap.expressFlowchart.document;
+
+/**
+ * What edit commands are applied through: a GraphDocument on its own,
+ * or a view that keeps its renderers and indexes in step with its document
+ */
+public interface GraphEditor {
+
+    /**
+     * Put back an item that was removed, a node goes back before the edges attached to it
+     */
+    void addItem(GraphItem item);
+
+    /**
+     * Remove an item, a node takes the edges attached to it along
+     */
+    void removeItem(GraphItem item);
+
+    void moveNode(GraphNode node,float x,float y);
+
+    void restyle(GraphItem item,ItemStyle style);
+
+    /**
+     * Draw the item above every other one of its type
+     */
+    void bringToFront(GraphItem item);
+
+    /**
+     * Put the item back at a z-order stamp it held before, see GraphDocument.getOrder()
+     */
+    void setOrder(GraphItem item,long order);
+}
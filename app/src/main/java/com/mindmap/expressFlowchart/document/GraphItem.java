@@ -0,0 +1,107 @@
+package com.mindmap.expressFlowchart.document;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * State shared by the nodes and edges of a GraphDocument, everything here is saved
+ * except the revision, the z-order stamp and the tag
+ */
+public abstract class GraphItem {
+
+    //keys are unique in the process, not only in a document, so items can move between documents
+    private static final AtomicInteger sNextKey = new AtomicInteger(1);
+
+    /**
+     * @return a new random id, for callers that want an external identity that stays unique across files
+     */
+    public static String newId() {
+        return UUID.randomUUID().toString();
+    }
+
+    /**
+     * @return a new key, always positive
+     */
+    static int newKey() {
+        return sNextKey.getAndIncrement();
+    }
+
+    /**
+     * @return the compact id the item is known by in memory
+     */
+    public abstract int getKey();
+
+    /**
+     * @return the id the item had in the file it was read from or was created with, null if it only has a key
+     */
+    public abstract String getExternalId();
+
+    /**
+     * @return the id written to files, the external id if there is one, the key otherwise
+     */
+    public String getId() {
+        String externalId = getExternalId();
+        return externalId != null ? externalId : Integer.toString(getKey());
+    }
+
+    public abstract String getTitle();
+
+    public abstract void setTitle(String title);
+
+    public abstract String getDescription();
+
+    /**
+     * Descriptions are not drawn, setting one does not change the revision
+     */
+    public abstract void setDescription(String description);
+
+    public abstract int getColor();
+
+    public abstract void setColor(int color);
+
+    /**
+     * @return a number that changes whenever the item's look changes
+     */
+    public abstract int getRevision();
+
+    /**
+     * @return whatever renders the item, the document never looks at it
+     */
+    public abstract Object getTag();
+
+    public abstract void setTag(Object tag);
+
+    /**
+     * z-order stamp, bigger is drawn later, kept by the GraphDocument the item is in
+     */
+    abstract long getOrder();
+
+    abstract void setOrder(long order);
+
+    public abstract boolean isNode();
+
+    /**
+     * @return true if the point is on the item, what a click at the point selects
+     */
+    public abstract boolean contains(float x,float y);
+
+    /**
+     * Bounding box of everything contains() can return true for
+     */
+    public abstract void getBounds(Box bounds);
+
+    /**
+     * @return the item in the .map format
+     */
+    public abstract JSONObject toJson() throws JSONException;
+
+    /**
+     * Write the item in the .map format, the same keys in the same order as toJson
+     * @return false if the item is not saved and nothing was written
+     */
+    public abstract boolean writeJson(JsonStreamWriter writer) throws IOException;
+}
@@ -0,0 +1,368 @@
+package com.mindmap.expressFlowchart.document;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+
+/**
+ * A node of the graph, a shape with a title around a centre point.
+ * Its state lives in a NodeStore, the one of its document or a store of its own while it is in none
+ */
+public class GraphNode extends GraphItem {
+
+    public static final int DEFAULT_COLOR = 0xFF0000FF; //blue
+    public static final float DEFAULT_RADIUS = 100;
+    public static final float DEFAULT_TEXT_SIZE = 40;
+    private static final float SQRT_2 = (float)Math.sqrt(2);
+
+    private NodeStore mStore;
+    private int mHandle;
+
+    /**
+     * @param id external id, null for a node that only needs its key
+     */
+    public GraphNode(String id,float x,float y,String title) {
+        this(id,x,y,DEFAULT_RADIUS,title,"",DEFAULT_COLOR,NodeShape.CIRCLE,DEFAULT_TEXT_SIZE);
+    }
+
+    public GraphNode(String id,float x,float y,float r,String title,String description,int color,NodeShape shape,float textSize) {
+        this(null,id,x,y,r,title,description,color,shape,textSize);
+    }
+
+    /**
+     * @param store what the node's state is kept in, the one of the document it is going to be added to
+     *              so adding it copies nothing, or null for a store of its own
+     */
+    GraphNode(NodeStore store,String id,float x,float y,float r,String title,String description,int color,NodeShape shape,float textSize) {
+        mStore = store == null ? new NodeStore(1) : store;
+        int h = mHandle = mStore.allocate();
+        mStore.setKey(h,newKey());
+        mStore.setExternalId(h,id);
+        mStore.set(h,x,y);
+        mStore.setR(h,r);
+        mStore.setShape(h,shape == null ? NodeShape.CIRCLE : shape);
+        mStore.setTextSize(h,textSize);
+        mStore.setColor(h,color);
+        mStore.setTitle(h,title == null ? "" : title);
+        mStore.setDescription(h,description == null ? "" : description);
+    }
+
+    /**
+     * @param store see the constructor, null for a store of its own
+     * @return a node with the same key, id and state that is not in any document
+     */
+    GraphNode copy(NodeStore store) {
+        GraphNode copy = new GraphNode(store,getExternalId(),getX(),getY(),getR(),getTitle(),"",getColor(),getShape(),getTextSize());
+        copy.mStore.setKey(copy.mHandle,getKey());
+        //a description not read yet stays that way
+        copy.mStore.setDescription(copy.mHandle,mStore.getDescriptionText(mHandle));
+        return copy;
+    }
+
+    /**
+     * Move the node's state into store, its old handle is given back
+     */
+    void moveTo(NodeStore store) {
+        if(store == mStore)
+            return;
+        int handle = store.copyFrom(mStore,mHandle);
+        mStore.release(mHandle);
+        mStore = store;
+        mHandle = handle;
+    }
+
+    /**
+     * Move the node's state into a store of its own, for a node leaving its document.
+     * The undo history holds on to removed nodes without telling anyone when it lets them go,
+     * so they cannot keep a slot in a shared store
+     */
+    void detach() {
+        moveTo(new NodeStore(1));
+    }
+
+    public NodeStore getStore() {
+        return mStore;
+    }
+
+    public int getHandle() {
+        return mHandle;
+    }
+
+    @Override
+    public boolean isNode() {
+        return true;
+    }
+
+    @Override
+    public int getKey() {
+        return mStore.getKey(mHandle);
+    }
+
+    @Override
+    public String getExternalId() {
+        return mStore.getExternalId(mHandle);
+    }
+
+    @Override
+    public String getTitle() {
+        return mStore.getTitle(mHandle);
+    }
+
+    @Override
+    public void setTitle(String title) {
+        mStore.setTitle(mHandle,title == null ? "" : title);
+        mStore.changed(mHandle);
+    }
+
+    @Override
+    public String getDescription() {
+        return mStore.getDescription(mHandle);
+    }
+
+    @Override
+    public void setDescription(String description) {
+        mStore.setDescription(mHandle,description == null ? "" : description);
+    }
+
+    /**
+     * Set a description that is decoded when it is first asked for
+     */
+    void setDescriptionText(CharSequence description) {
+        mStore.setDescription(mHandle,description);
+    }
+
+    @Override
+    public int getColor() {
+        return mStore.getColor(mHandle);
+    }
+
+    @Override
+    public void setColor(int color) {
+        mStore.setColor(mHandle,color);
+        mStore.changed(mHandle);
+    }
+
+    @Override
+    public int getRevision() {
+        return mStore.getRevision(mHandle);
+    }
+
+    @Override
+    public Object getTag() {
+        return mStore.getTag(mHandle);
+    }
+
+    @Override
+    public void setTag(Object tag) {
+        mStore.setTag(mHandle,tag);
+    }
+
+    @Override
+    long getOrder() {
+        return mStore.getOrder(mHandle);
+    }
+
+    @Override
+    void setOrder(long order) {
+        mStore.setOrder(mHandle,order);
+    }
+
+    public float getX() {
+        return mStore.getX(mHandle);
+    }
+
+    public float getY() {
+        return mStore.getY(mHandle);
+    }
+
+    public float getR() {
+        return mStore.getR(mHandle);
+    }
+
+    public NodeShape getShape() {
+        return mStore.getShape(mHandle);
+    }
+
+    public float getTextSize() {
+        return mStore.getTextSize(mHandle);
+    }
+
+    public void set(float x,float y) {
+        mStore.set(mHandle,x,y);
+        mStore.changed(mHandle);
+    }
+
+    /**
+     * @param radius ignored unless positive
+     */
+    public void setR(float radius) {
+        if(radius <= 0)
+            return;
+        mStore.setR(mHandle,radius);
+        mStore.changed(mHandle);
+    }
+
+    public void setShape(NodeShape shape) {
+        mStore.setShape(mHandle,shape);
+        mStore.changed(mHandle);
+    }
+
+    public void setTextSize(float textSize) {
+        mStore.setTextSize(mHandle,textSize);
+        mStore.changed(mHandle);
+    }
+
+    /**
+     * @return how far the outline reaches from the centre along either axis
+     */
+    public float getExtent() {
+        float r = getR();
+        return getShape() == NodeShape.DIAMOND ? r*SQRT_2 : r;
+    }
+
+    @Override
+    public boolean contains(float x,float y) {
+        float cx = getX(), cy = getY(), r = getR();
+        NodeShape shape = getShape();
+        if(shape == NodeShape.CIRCLE)
+            return (x-cx)*(x-cx) + (y-cy)*(y-cy) <= r*r;
+        //inside when closer than 2r to all four corners of the square or diamond
+        float d = shape == NodeShape.DIAMOND ? r*SQRT_2 : r;
+        float limit = 4*r*r;
+        if(shape == NodeShape.SQUARE)
+            return distance2(x,y,cx-d,cy-d) < limit && distance2(x,y,cx-d,cy+d) < limit
+                && distance2(x,y,cx+d,cy-d) < limit && distance2(x,y,cx+d,cy+d) < limit;
+        return distance2(x,y,cx-d,cy) < limit && distance2(x,y,cx,cy-d) < limit
+            && distance2(x,y,cx+d,cy) < limit && distance2(x,y,cx,cy+d) < limit;
+    }
+
+    private static float distance2(float x1,float y1,float x2,float y2) {
+        return (x1-x2)*(x1-x2) + (y1-y2)*(y1-y2);
+    }
+
+    @Override
+    public void getBounds(Box bounds) {
+        float extent = getExtent(), x = getX(), y = getY();
+        bounds.set(x-extent,y-extent,x+extent,y+extent);
+    }
+
+    /**
+     * Where a line leaving the centre crosses the outline
+     * @param angle direction of the line as atan2 of centre minus a point further along it,
+     *              so the line runs towards angle+PI
+     * @param point the crossing is written to point[0],point[1]
+     */
+    public void boundaryPoint(float angle,float[] point) {
+        float x = getX(), y = getY(), r = getR();
+        NodeShape shape = getShape();
+        float sin = (float) Math.sin( angle );
+        float cos = (float) Math.cos( angle );
+        point[0] = x;
+        point[1] = y;
+        if(shape == NodeShape.CIRCLE) {
+            point[0] = x - r*cos;
+            point[1] = y - r*sin;
+        }
+        else if(shape == NodeShape.SQUARE) {
+            if (cos < 0 && Math.abs( sin ) <= Math.abs( cos )) {
+                point[0] = x + r;
+                point[1] = y + r*sin/cos;
+            }
+            else if(cos > 0 && Math.abs( sin ) <= Math.abs( cos )) {
+                point[0] = x - r;
+                point[1] = y - r*sin/cos;
+            }
+            else if(sin > 0 && Math.abs( sin ) > Math.abs( cos )) {
+                point[0] = x - r*cos/sin;
+                point[1] = y - r;
+            }
+            else if(sin < 0 && Math.abs( sin ) > Math.abs( cos )) {
+                point[0] = x + r*cos/sin;
+                point[1] = y + r;
+            }
+        }
+        else if(shape == NodeShape.DIAMOND) {
+            float d = SQRT_2*r, tan = sin/cos;
+            if(sin >= 0 && cos > 0) {
+                point[0] = -d/(tan+1) + x;
+                point[1] = -d*tan/(tan+1) + y;
+            }
+            if(sin >= 0 && cos < 0) {
+                point[0] = -d/(tan-1) + x;
+                point[1] = -d*tan/(tan-1) + y;
+            }
+            if(sin <= 0 && cos < 0) {
+                point[0] = d/(tan+1) + x;
+                point[1] = d*tan/(tan+1) + y;
+            }
+            if(sin <= 0 && cos > 0) {
+                point[0] = d/(tan-1) + x;
+                point[1] = d*tan/(tan-1) + y;
+            }
+            if(cos == 0) {
+                point[0] = x;
+                point[1] = sin > 0 ? y - d : y + d;
+            }
+        }
+    }
+
+    @Override
+    public JSONObject toJson() throws JSONException {
+        JSONObject obj = new JSONObject();
+        obj.put( DocumentSchema.ITEM_TYPE_KEY, DocumentSchema.NODE_TYPE);
+        obj.put( DocumentSchema.NODE_CENTRE_X_KEY, getX());
+        obj.put( DocumentSchema.NODE_CENTRE_Y_KEY, getY());
+        obj.put( DocumentSchema.NODE_RADIUS_KEY, getR());
+        obj.put( DocumentSchema.ITEM_ID_KEY, getId());
+        obj.put( DocumentSchema.NODE_TITLE_KEY, getTitle());
+        obj.put( DocumentSchema.NODE_DESCRIPTION_KEY, getDescription());
+        obj.put( DocumentSchema.NODE_COLOR_KEY, getColor());
+        obj.put( DocumentSchema.NODE_SHAPE_KEY, getShape().toString());
+        obj.put( DocumentSchema.NODE_TEXT_SIZE_KEY, getTextSize());
+        return obj;
+    }
+
+    @Override
+    public boolean writeJson(JsonStreamWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name( DocumentSchema.ITEM_TYPE_KEY).value( DocumentSchema.NODE_TYPE);
+        writer.name( DocumentSchema.NODE_CENTRE_X_KEY).value(getX());
+        writer.name( DocumentSchema.NODE_CENTRE_Y_KEY).value(getY());
+        writer.name( DocumentSchema.NODE_RADIUS_KEY).value(getR());
+        writer.name( DocumentSchema.ITEM_ID_KEY).value(getId());
+        writer.name( DocumentSchema.NODE_TITLE_KEY).value(getTitle());
+        writer.name( DocumentSchema.NODE_DESCRIPTION_KEY).value(getDescription());
+        writer.name( DocumentSchema.NODE_COLOR_KEY).value(getColor());
+        writer.name( DocumentSchema.NODE_SHAPE_KEY).value(getShape().toString());
+        writer.name( DocumentSchema.NODE_TEXT_SIZE_KEY).value(getTextSize());
+        writer.endObject();
+        return true;
+    }
+
+    /**
+     * @return the shape with the given name, SQUARE for names it does not know
+     */
+    public static NodeShape shapeFromString(String string) {
+        for (NodeShape shape : NodeShape.values())
+            if(shape.toString().equals(string))
+                return shape;
+        return NodeShape.SQUARE;
+    }
+
+    /**
+     * @param obj a node in the .map format
+     * @return a new GraphNode that is not in any document yet, with a new key
+     */
+    public static GraphNode fromJson(JSONObject obj) throws JSONException {
+        return new GraphNode(IdRemap.externalId(obj.getString( DocumentSchema.ITEM_ID_KEY)),
+                (float) obj.getDouble( DocumentSchema.NODE_CENTRE_X_KEY),
+                (float) obj.getDouble( DocumentSchema.NODE_CENTRE_Y_KEY),
+                (float) obj.getDouble( DocumentSchema.NODE_RADIUS_KEY),
+                obj.getString( DocumentSchema.NODE_TITLE_KEY),
+                obj.getString( DocumentSchema.NODE_DESCRIPTION_KEY),
+                obj.getInt( DocumentSchema.NODE_COLOR_KEY),
+                shapeFromString(obj.getString( DocumentSchema.NODE_SHAPE_KEY)),
+                (float) obj.getDouble( DocumentSchema.NODE_TEXT_SIZE_KEY));
+    }
+}
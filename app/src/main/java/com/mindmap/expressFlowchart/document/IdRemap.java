@@ -0,0 +1,44 @@
+package com.mindmap.expressFlowchart.document;
+
+import java.util.HashMap;
+
+/**
+ * Ids of one file being imported mapped to the nodes read for them.
+ * Every item read gets a fresh key, so an import never clashes with what is already open,
+ * and the string ids of the file are dropped once the import is done
+ */
+public class IdRemap {
+
+    private final HashMap<String,GraphNode> mNodes = new HashMap<>();
+
+    public void put(String fileId,GraphNode node) {
+        mNodes.put(fileId,node);
+    }
+
+    /**
+     * @return the node read for the file id, null if there is none
+     */
+    public GraphNode getNode(String fileId) {
+        return mNodes.get(fileId);
+    }
+
+    public int size() {
+        return mNodes.size();
+    }
+
+    /**
+     * Files written by older versions identify items by UUID, those are kept as the external id of the item.
+     * Ids that are plain keys belong to the file they were saved in and are not kept
+     * @return the id to keep, null for a key
+     */
+    public static String externalId(String fileId) {
+        if(fileId == null || fileId.isEmpty() || fileId.length() > 10)
+            return fileId;
+        for (int i = 0; i < fileId.length(); i++) {
+            char c = fileId.charAt(i);
+            if(c < '0' || c > '9')
+                return fileId;
+        }
+        return null;
+    }
+}
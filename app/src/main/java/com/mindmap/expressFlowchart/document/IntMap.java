@@ -0,0 +1,112 @@
+package com.mindmap.expressFlowchart.document;
+
+import java.util.Arrays;
+
+/**
+ * Hash map from positive int keys to values, open addressing over two parallel arrays
+ * so a lookup neither boxes the key nor follows an entry object
+ */
+public class IntMap<V> {
+
+    //0 marks an empty slot, which is why keys have to be positive
+    private int[] mKeys;
+    private Object[] mValues;
+    private int mSize = 0;
+
+    public IntMap() {
+        this(16);
+    }
+
+    public IntMap(int capacity) {
+        int slots = 4;
+        while (slots < 2*capacity)
+            slots <<= 1;
+        mKeys = new int[slots];
+        mValues = new Object[slots];
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    private int slot(int key) {
+        //spread the bits, keys handed out in sequence would otherwise fill one run of slots
+        int h = key*0x9E3779B9;
+        return (h ^ (h >>> 16)) & (mKeys.length-1);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int mask = mKeys.length-1;
+        for (int i = slot(key); mKeys[i] != 0; i = (i+1) & mask)
+            if(mKeys[i] == key)
+                return (V) mValues[i];
+        return null;
+    }
+
+    public void put(int key,V value) {
+        if(key <= 0)
+            throw new IllegalArgumentException("key "+key+" is not positive");
+        int mask = mKeys.length-1;
+        int i = slot(key);
+        for (; mKeys[i] != 0; i = (i+1) & mask) {
+            if(mKeys[i] == key) {
+                mValues[i] = value;
+                return;
+            }
+        }
+        mKeys[i] = key;
+        mValues[i] = value;
+        //keep at least half the slots free so probe runs stay short
+        if(++mSize*2 > mKeys.length)
+            rehash(2*mKeys.length);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int mask = mKeys.length-1;
+        int i = slot(key);
+        for (; mKeys[i] != key; i = (i+1) & mask)
+            if(mKeys[i] == 0)
+                return null;
+        V value = (V) mValues[i];
+        mSize--;
+        //shift later entries of the run back so no lookup stops at the hole
+        int hole = i;
+        for (i = (i+1) & mask; mKeys[i] != 0; i = (i+1) & mask) {
+            int home = slot(mKeys[i]);
+            //the entry may fill the hole if its home slot is not between the hole and it
+            if(hole <= i ? (home <= hole || home > i) : (home <= hole && home > i)) {
+                mKeys[hole] = mKeys[i];
+                mValues[hole] = mValues[i];
+                hole = i;
+            }
+        }
+        mKeys[hole] = 0;
+        mValues[hole] = null;
+        return value;
+    }
+
+    public void clear() {
+        Arrays.fill(mKeys,0);
+        Arrays.fill(mValues,null);
+        mSize = 0;
+    }
+
+    private void rehash(int slots) {
+        int[] keys = mKeys;
+        Object[] values = mValues;
+        mKeys = new int[slots];
+        mValues = new Object[slots];
+        int mask = slots-1;
+        for (int j = 0; j < keys.length; j++) {
+            if(keys[j] == 0)
+                continue;
+            int i = slot(keys[j]);
+            while (mKeys[i] != 0)
+                i = (i+1) & mask;
+            mKeys[i] = keys[j];
+            mValues[i] = values[j];
+        }
+    }
+}
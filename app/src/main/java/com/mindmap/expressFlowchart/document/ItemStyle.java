@@ -0,0 +1,92 @@
+package com.mindmap.expressFlowchart.document;
+
+/**
+ * Everything about an item that the details window edits, taken at one moment.
+ * Positions and ends are not part of it, moves and reconnects are commands of their own
+ */
+public class ItemStyle {
+
+    private final boolean mNode;
+    private final String mTitle,mDescription;
+    private final int mColor;
+    private final float mTextSize;
+    //radius and shape of a node, stroke width and arrows of an edge
+    private final float mSize;
+    private final NodeShape mShape;
+    private final ArrowShape mArrowShape;
+
+    private ItemStyle(GraphItem item) {
+        mNode = item.isNode();
+        mTitle = item.getTitle();
+        mDescription = item.getDescription();
+        mColor = item.getColor();
+        if(mNode) {
+            GraphNode node = (GraphNode) item;
+            mTextSize = node.getTextSize();
+            mSize = node.getR();
+            mShape = node.getShape();
+            mArrowShape = null;
+        }
+        else {
+            GraphEdge edge = (GraphEdge) item;
+            mTextSize = edge.getTextSize();
+            mSize = edge.getStrokeWidth();
+            mShape = null;
+            mArrowShape = edge.getArrowShape();
+        }
+    }
+
+    /**
+     * @return the style the item has now
+     */
+    public static ItemStyle of(GraphItem item) {
+        return new ItemStyle(item);
+    }
+
+    /**
+     * Give the item this style, it has to be of the same type as the one the style was taken from
+     */
+    public void applyTo(GraphItem item) {
+        if(item.isNode() != mNode)
+            throw new IllegalArgumentException("style of a "+(mNode ? "node" : "edge")+" applied to a "+(mNode ? "edge" : "node"));
+        item.setTitle(mTitle);
+        item.setDescription(mDescription);
+        item.setColor(mColor);
+        if(mNode) {
+            GraphNode node = (GraphNode) item;
+            node.setTextSize(mTextSize);
+            node.setR(mSize);
+            node.setShape(mShape);
+        }
+        else {
+            GraphEdge edge = (GraphEdge) item;
+            edge.setTextSize(mTextSize);
+            edge.setStrokeWidth(mSize);
+            edge.setArrowShape(mArrowShape);
+        }
+    }
+
+    /**
+     * @return rough number of bytes the style holds on to
+     */
+    long getSize() {
+        return 48 + EditCommand.stringSize(mTitle) + EditCommand.stringSize(mDescription);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o)
+            return true;
+        if(!(o instanceof ItemStyle))
+            return false;
+        ItemStyle style = (ItemStyle) o;
+        return mNode == style.mNode && mColor == style.mColor && mTextSize == style.mTextSize && mSize == style.mSize
+                && mShape == style.mShape && mArrowShape == style.mArrowShape
+                && mTitle.equals(style.mTitle) && mDescription.equals(style.mDescription);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31*(31*mTitle.hashCode() + mColor) + Float.floatToIntBits(mSize);
+    }
+}
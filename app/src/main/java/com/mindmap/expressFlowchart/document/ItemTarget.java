@@ -0,0 +1,17 @@
+package com.mindmap.expressFlowchart.document;
+
+/**
+ * What the readers of .map files hand the items they read to, in the order of the file
+ */
+public interface ItemTarget {
+
+    /**
+     * Add an item, a node comes before the edges attached to it
+     */
+    void addItem(GraphItem item);
+
+    /**
+     * @return the store nodes are read into before they are added, null for a store of their own each
+     */
+    NodeStore getNodeStore();
+}
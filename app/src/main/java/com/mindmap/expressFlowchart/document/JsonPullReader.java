@@ -0,0 +1,346 @@
+package com.mindmap.expressFlowchart.document;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads JSON one token at a time without building a tree, the calls are those of android.util.JsonReader
+ * so the reader can run on a plain JVM as well
+ */
+public class JsonPullReader implements Closeable {
+
+    public enum Token { BEGIN_ARRAY, END_ARRAY, BEGIN_OBJECT, END_OBJECT, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT }
+
+    //what comes next in each open scope
+    private static final int ARRAY_EMPTY = 1;
+    private static final int ARRAY = 2;
+    private static final int OBJECT_EMPTY = 3;
+    private static final int OBJECT_NAME = 4;
+    private static final int OBJECT = 5;
+    private static final int DOCUMENT_EMPTY = 6;
+    private static final int DOCUMENT_DONE = 7;
+
+    private final Reader mIn;
+    private final char[] mBuffer = new char[8192];
+    private int mPos = 0, mLimit = 0;
+    //chars read before mBuffer[0]
+    private long mBufferStart = 0;
+    private int[] mStack = new int[16];
+    private int mDepth = 0;
+    private Token mPeeked = null;
+    //text of the peeked name, string, number or literal
+    private String mValue;
+    private final StringBuilder mBuilder = new StringBuilder();
+
+    public JsonPullReader(Reader in) {
+        mIn = in;
+        push(DOCUMENT_EMPTY);
+    }
+
+    /**
+     * @return number of chars consumed so far
+     */
+    public long getPosition() {
+        return mBufferStart + mPos;
+    }
+
+    public Token peek() throws IOException {
+        if(mPeeked != null)
+            return mPeeked;
+        int c;
+        switch (mStack[mDepth-1]) {
+            case ARRAY_EMPTY:
+                mStack[mDepth-1] = ARRAY;
+                c = nextNonWhitespace();
+                if(c == ']')
+                    return mPeeked = Token.END_ARRAY;
+                return mPeeked = readValue(c);
+            case ARRAY:
+                c = nextNonWhitespace();
+                if(c == ']')
+                    return mPeeked = Token.END_ARRAY;
+                if(c != ',')
+                    throw syntaxError("expected , or ]");
+                return mPeeked = readValue(nextNonWhitespace());
+            case OBJECT_EMPTY:
+            case OBJECT:
+                c = nextNonWhitespace();
+                if(c == '}')
+                    return mPeeked = Token.END_OBJECT;
+                if(mStack[mDepth-1] == OBJECT) {
+                    if(c != ',')
+                        throw syntaxError("expected , or }");
+                    c = nextNonWhitespace();
+                }
+                if(c != '"')
+                    throw syntaxError("expected a name");
+                mValue = readString();
+                mStack[mDepth-1] = OBJECT_NAME;
+                return mPeeked = Token.NAME;
+            case OBJECT_NAME:
+                if(nextNonWhitespace() != ':')
+                    throw syntaxError("expected :");
+                mStack[mDepth-1] = OBJECT;
+                return mPeeked = readValue(nextNonWhitespace());
+            case DOCUMENT_EMPTY:
+                mStack[mDepth-1] = DOCUMENT_DONE;
+                return mPeeked = readValue(nextNonWhitespace());
+            default:
+                if(nextNonWhitespace() != -1)
+                    throw syntaxError("expected the end of the document");
+                return mPeeked = Token.END_DOCUMENT;
+        }
+    }
+
+    public boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    public void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        push(ARRAY_EMPTY);
+    }
+
+    public void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        mDepth--;
+    }
+
+    public void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        push(OBJECT_EMPTY);
+    }
+
+    public void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        mDepth--;
+    }
+
+    public String nextName() throws IOException {
+        expect(Token.NAME);
+        return mValue;
+    }
+
+    /**
+     * @return a string, or the text of a number
+     */
+    public String nextString() throws IOException {
+        Token token = peek();
+        if(token != Token.STRING && token != Token.NUMBER)
+            throw new IllegalStateException("expected a string but was "+token+" at "+getPosition());
+        mPeeked = null;
+        return mValue;
+    }
+
+    public double nextDouble() throws IOException {
+        String text = nextString();
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw new NumberFormatException("not a number: "+text+" at "+getPosition());
+        }
+    }
+
+    public long nextLong() throws IOException {
+        String text = nextString();
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            double value = Double.parseDouble(text);
+            if(value != (long) value)
+                throw new NumberFormatException("not a whole number: "+text+" at "+getPosition());
+            return (long) value;
+        }
+    }
+
+    public int nextInt() throws IOException {
+        long value = nextLong();
+        if(value != (int) value)
+            throw new NumberFormatException("out of range for an int: "+value+" at "+getPosition());
+        return (int) value;
+    }
+
+    public boolean nextBoolean() throws IOException {
+        expect(Token.BOOLEAN);
+        return mValue.equals("true");
+    }
+
+    public void nextNull() throws IOException {
+        expect(Token.NULL);
+    }
+
+    /**
+     * Skip the next value, along with everything inside it if it is an array or object
+     */
+    public void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            Token token = peek();
+            if(token == Token.BEGIN_ARRAY) {
+                beginArray();
+                depth++;
+            }
+            else if(token == Token.BEGIN_OBJECT) {
+                beginObject();
+                depth++;
+            }
+            else if(token == Token.END_ARRAY) {
+                endArray();
+                depth--;
+            }
+            else if(token == Token.END_OBJECT) {
+                endObject();
+                depth--;
+            }
+            else if(token == Token.END_DOCUMENT)
+                throw syntaxError("unexpected end of the document");
+            else
+                mPeeked = null;
+        } while (depth > 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        mIn.close();
+    }
+
+    private void expect(Token token) throws IOException {
+        if(peek() != token)
+            throw new IllegalStateException("expected "+token+" but was "+mPeeked+" at "+getPosition());
+        mPeeked = null;
+    }
+
+    private void push(int scope) {
+        if(mDepth == mStack.length) {
+            int[] stack = new int[2*mDepth];
+            System.arraycopy(mStack,0,stack,0,mDepth);
+            mStack = stack;
+        }
+        mStack[mDepth++] = scope;
+    }
+
+    private boolean fill() throws IOException {
+        mBufferStart += mLimit;
+        mPos = 0;
+        mLimit = 0;
+        int read = mIn.read(mBuffer,0,mBuffer.length);
+        if(read <= 0)
+            return false;
+        mLimit = read;
+        return true;
+    }
+
+    private int nextChar() throws IOException {
+        if(mPos == mLimit && !fill())
+            return -1;
+        return mBuffer[mPos++];
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        int c;
+        do {
+            c = nextChar();
+        } while (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+        return c;
+    }
+
+    private Token readValue(int c) throws IOException {
+        switch (c) {
+            case '{':
+                return Token.BEGIN_OBJECT;
+            case '[':
+                return Token.BEGIN_ARRAY;
+            case '"':
+                mValue = readString();
+                return Token.STRING;
+            case 't':
+                readLiteral("true");
+                return Token.BOOLEAN;
+            case 'f':
+                readLiteral("false");
+                return Token.BOOLEAN;
+            case 'n':
+                readLiteral("null");
+                return Token.NULL;
+        }
+        if(c != '-' && (c < '0' || c > '9'))
+            throw syntaxError(c == -1 ? "unexpected end of the document" : "unexpected character "+(char) c);
+        mBuilder.setLength(0);
+        while (c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E' || (c >= '0' && c <= '9')) {
+            mBuilder.append((char) c);
+            c = nextChar();
+        }
+        if(c != -1)
+            mPos--;
+        mValue = mBuilder.toString();
+        return Token.NUMBER;
+    }
+
+    private void readLiteral(String literal) throws IOException {
+        for (int i = 1; i < literal.length(); i++)
+            if(nextChar() != literal.charAt(i))
+                throw syntaxError("expected "+literal);
+        mValue = literal;
+    }
+
+    /**
+     * Read the rest of a string whose opening quote was consumed
+     */
+    private String readString() throws IOException {
+        mBuilder.setLength(0);
+        while (true) {
+            //copy runs without escapes straight out of the buffer
+            int start = mPos;
+            while (mPos < mLimit) {
+                char c = mBuffer[mPos];
+                if(c == '"') {
+                    mBuilder.append(mBuffer,start,mPos-start);
+                    mPos++;
+                    return mBuilder.toString();
+                }
+                if(c == '\\')
+                    break;
+                mPos++;
+            }
+            mBuilder.append(mBuffer,start,mPos-start);
+            if(mPos < mLimit) {
+                mPos++;
+                mBuilder.append(readEscape());
+            }
+            else if(!fill())
+                throw syntaxError("unterminated string");
+        }
+    }
+
+    private char readEscape() throws IOException {
+        int c = nextChar();
+        switch (c) {
+            case 'b': return '\b';
+            case 'f': return '\f';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 't': return '\t';
+            case '"':
+            case '\\':
+            case '/':
+                return (char) c;
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(nextChar(),16);
+                    if(digit < 0)
+                        throw syntaxError("bad \\u escape");
+                    value = (value << 4) | digit;
+                }
+                return (char) value;
+            default:
+                throw syntaxError("bad escape");
+        }
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException(message+" at "+getPosition());
+    }
+}
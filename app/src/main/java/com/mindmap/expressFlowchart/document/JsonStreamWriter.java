@@ -0,0 +1,203 @@
+package com.mindmap.expressFlowchart.document;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes JSON one token at a time without building a tree, the calls are those of android.util.JsonWriter.
+ * Strings and numbers come out exactly as Android's org.json writes them, so a file written here is
+ * byte for byte the one JSONObject.toString() gave with the keys written in the same order
+ */
+public class JsonStreamWriter implements Closeable, Flushable {
+
+    //what was written last in each open scope
+    private static final int ARRAY_EMPTY = 1;
+    private static final int ARRAY = 2;
+    private static final int OBJECT_EMPTY = 3;
+    private static final int OBJECT_NAME = 4;
+    private static final int OBJECT = 5;
+    private static final int DOCUMENT_EMPTY = 6;
+    private static final int DOCUMENT_DONE = 7;
+
+    private final Writer mOut;
+    private int[] mStack = new int[16];
+    private int mDepth = 0;
+
+    /**
+     * @param out should be buffered, every token is a few small writes
+     */
+    public JsonStreamWriter(Writer out) {
+        mOut = out;
+        push(DOCUMENT_EMPTY);
+    }
+
+    public JsonStreamWriter beginArray() throws IOException {
+        beforeValue();
+        push(ARRAY_EMPTY);
+        mOut.write('[');
+        return this;
+    }
+
+    public JsonStreamWriter endArray() throws IOException {
+        return close(ARRAY_EMPTY,ARRAY,']');
+    }
+
+    public JsonStreamWriter beginObject() throws IOException {
+        beforeValue();
+        push(OBJECT_EMPTY);
+        mOut.write('{');
+        return this;
+    }
+
+    public JsonStreamWriter endObject() throws IOException {
+        return close(OBJECT_EMPTY,OBJECT,'}');
+    }
+
+    public JsonStreamWriter name(String name) throws IOException {
+        int scope = mStack[mDepth-1];
+        if(scope != OBJECT_EMPTY && scope != OBJECT)
+            throw new IllegalStateException("Nesting problem");
+        if(scope == OBJECT)
+            mOut.write(',');
+        mStack[mDepth-1] = OBJECT_NAME;
+        string(name);
+        mOut.write(':');
+        return this;
+    }
+
+    /**
+     * @param value written as null when it is null
+     */
+    public JsonStreamWriter value(String value) throws IOException {
+        if(value == null)
+            return nullValue();
+        beforeValue();
+        string(value);
+        return this;
+    }
+
+    public JsonStreamWriter value(boolean value) throws IOException {
+        beforeValue();
+        mOut.write(value ? "true" : "false");
+        return this;
+    }
+
+    public JsonStreamWriter value(long value) throws IOException {
+        beforeValue();
+        mOut.write(Long.toString(value));
+        return this;
+    }
+
+    /**
+     * Whole numbers are written without a fraction, as org.json does
+     * @param value finite
+     */
+    public JsonStreamWriter value(double value) throws IOException {
+        if(Double.isNaN(value) || Double.isInfinite(value))
+            throw new IllegalArgumentException("Numeric values must be finite, but was "+value);
+        beforeValue();
+        mOut.write(numberToString(value));
+        return this;
+    }
+
+    public JsonStreamWriter nullValue() throws IOException {
+        beforeValue();
+        mOut.write("null");
+        return this;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        mOut.flush();
+    }
+
+    /**
+     * Flush and close the underlying writer, the document must be complete
+     */
+    @Override
+    public void close() throws IOException {
+        mOut.close();
+        if(mDepth > 1 || mStack[0] != DOCUMENT_DONE)
+            throw new IOException("Incomplete document");
+    }
+
+    static String numberToString(double value) {
+        if(Double.doubleToRawLongBits(value) == Double.doubleToRawLongBits(-0d))
+            return "-0";
+        long longValue = (long) value;
+        if(value == (double) longValue)
+            return Long.toString(longValue);
+        return Double.toString(value);
+    }
+
+    private void string(String value) throws IOException {
+        Writer out = mOut;
+        out.write('"');
+        int start = 0, length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            String escape;
+            switch (c) {
+                case '"': escape = "\\\""; break;
+                case '\\': escape = "\\\\"; break;
+                case '/': escape = "\\/"; break;
+                case '\t': escape = "\\t"; break;
+                case '\b': escape = "\\b"; break;
+                case '\n': escape = "\\n"; break;
+                case '\r': escape = "\\r"; break;
+                case '\f': escape = "\\f"; break;
+                default:
+                    if(c > 0x1F)
+                        continue;
+                    escape = String.format("\\u%04x",(int) c);
+            }
+            //copy the run of plain chars in one write
+            if(start < i)
+                out.write(value,start,i-start);
+            out.write(escape);
+            start = i+1;
+        }
+        if(start < length)
+            out.write(value,start,length-start);
+        out.write('"');
+    }
+
+    private void beforeValue() throws IOException {
+        switch (mStack[mDepth-1]) {
+            case DOCUMENT_EMPTY:
+                mStack[mDepth-1] = DOCUMENT_DONE;
+                break;
+            case ARRAY_EMPTY:
+                mStack[mDepth-1] = ARRAY;
+                break;
+            case ARRAY:
+                mOut.write(',');
+                break;
+            case OBJECT_NAME:
+                mStack[mDepth-1] = OBJECT;
+                break;
+            default:
+                throw new IllegalStateException("Nesting problem");
+        }
+    }
+
+    private JsonStreamWriter close(int empty,int nonEmpty,char bracket) throws IOException {
+        int scope = mStack[mDepth-1];
+        if(scope != empty && scope != nonEmpty)
+            throw new IllegalStateException("Nesting problem");
+        mDepth--;
+        mOut.write(bracket);
+        return this;
+    }
+
+    private void push(int scope) {
+        if(mDepth == mStack.length) {
+            int[] stack = new int[mDepth*2];
+            System.arraycopy(mStack,0,stack,0,mDepth);
+            mStack = stack;
+        }
+        mStack[mDepth++] = scope;
+    }
+}
@@ -0,0 +1,59 @@
+package com.mindmap.expressFlowchart.document;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * UTF-8 text left in the buffer it was read from until it is asked for, used for descriptions
+ * read from a mapped file. Holders swap it for the String once it was decoded, after which the
+ * buffer is no longer kept alive by it
+ */
+final class LazyText implements CharSequence {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer mBuffer;
+    private final int mOffset,mLength;
+    private String mText;
+
+    LazyText(ByteBuffer buffer,int offset,int length) {
+        mBuffer = buffer;
+        mOffset = offset;
+        mLength = length;
+    }
+
+    /**
+     * @return true once the text was decoded
+     */
+    boolean isDecoded() {
+        return mText != null;
+    }
+
+    @Override
+    public String toString() {
+        if(mText == null) {
+            byte[] bytes = new byte[mLength];
+            //a view of its own, the buffer's position is shared by everything that reads it
+            ByteBuffer view = mBuffer.duplicate();
+            view.position(mOffset);
+            view.get(bytes);
+            mText = new String(bytes,UTF_8);
+        }
+        return mText;
+    }
+
+    @Override
+    public int length() {
+        return toString().length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start,int end) {
+        return toString().subSequence(start,end);
+    }
+}
@@ -0,0 +1,76 @@
+package com.mindmap.expressFlowchart.document;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The compressed container of .map files, either format deflated in gzip framing. The gzip header tells
+ * it from a plain file, its trailer holds a CRC-32 of the content that is checked on load, and the files
+ * can be opened with any gzip tool. Both are written and read as streams, nothing is held in memory
+ */
+public final class MapCompression {
+
+    public static final byte[] MAGIC = {0x1F,(byte) 0x8B};
+
+    /** Level to write a plain file, without the container */
+    public static final int NONE = 0;
+    public static final int BEST_SPEED = Deflater.BEST_SPEED;
+    public static final int BEST_COMPRESSION = Deflater.BEST_COMPRESSION;
+    /** Level deflate picks by default, the one zip tools use */
+    public static final int DEFAULT_LEVEL = 6;
+
+    private static final int BUFFER_SIZE = 64*1024;
+
+    private MapCompression() {
+    }
+
+    /**
+     * @param head the first bytes of a file
+     * @return true if they start with the gzip header
+     */
+    public static boolean isCompressed(byte[] head,int length) {
+        return length >= MAGIC.length && head[0] == MAGIC[0] && head[1] == MAGIC[1];
+    }
+
+    /**
+     * @param in its first bytes are marked and reset
+     * @return true if the stream holds a compressed .map file
+     */
+    public static boolean isCompressed(BufferedInputStream in) throws IOException {
+        byte[] head = new byte[MAGIC.length];
+        in.mark(head.length);
+        int length = 0, read;
+        while (length < head.length && (read = in.read(head,length,head.length-length)) > 0)
+            length += read;
+        in.reset();
+        return isCompressed(head,length);
+    }
+
+    /**
+     * @param level from BEST_SPEED to BEST_COMPRESSION
+     * @return a stream compressing what is written into out, finish() must be called once it is all written
+     */
+    public static DeflaterOutputStream compress(OutputStream out,final int level) throws IOException {
+        if(level < BEST_SPEED || level > BEST_COMPRESSION)
+            throw new IllegalArgumentException("Bad compression level "+level);
+        return new GZIPOutputStream(out,BUFFER_SIZE) {
+            {
+                def.setLevel(level);
+            }
+        };
+    }
+
+    /**
+     * @param in positioned at the gzip header
+     * @return the content of the container, read as it is inflated
+     */
+    public static InputStream decompress(InputStream in) throws IOException {
+        return new GZIPInputStream(in,BUFFER_SIZE);
+    }
+}
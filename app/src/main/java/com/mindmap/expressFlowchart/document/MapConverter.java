@@ -0,0 +1,32 @@
+package com.mindmap.expressFlowchart.document;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Converts .map files between the JSON and the binary format. Ids are kept as they are, so a file the app
+ * wrote converts to the other format and back to the same bytes. Unknown keys and items are dropped,
+ * as the app would drop them when opening the file
+ */
+public final class MapConverter {
+
+    private MapConverter() {
+    }
+
+    public static void jsonToBinary(InputStream json,OutputStream binary) throws IOException {
+        GraphDocument document = new GraphDocument();
+        MapReader reader = new MapReader(document,document.getCamera());
+        reader.setKeepIds(true);
+        reader.read(json,-1);
+        new BinaryMapWriter(document).write(binary);
+    }
+
+    public static void binaryToJson(InputStream binary,OutputStream json) throws IOException {
+        GraphDocument document = new GraphDocument();
+        BinaryMapReader reader = new BinaryMapReader(document,document.getCamera());
+        reader.setKeepIds(true);
+        reader.read(binary,-1);
+        new MapWriter(document).write(json);
+    }
+}
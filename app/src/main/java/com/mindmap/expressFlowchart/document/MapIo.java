@@ -0,0 +1,423 @@
+package com.mindmap.expressFlowchart.document;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Runs saves, loads and other file work one at a time on an I/O thread of its own.
+ * A save writes a snapshot taken on the calling thread, so the document can go on being edited meanwhile.
+ * Progress and results are delivered through the executor given for the main thread, and a task that
+ * was cancelled there gets no other callback than onCancelled
+ */
+public class MapIo {
+
+    /**
+     * Told on the main thread how a task is getting on, exactly one of the last three is called
+     */
+    public interface Callback<T> {
+        /**
+         * @param total -1 if it is not known
+         */
+        void onProgress(long done,long total);
+        void onDone(T result);
+        void onFailed(Exception e);
+        void onCancelled();
+    }
+
+    public interface LoadCallback extends Callback<Camera> {
+        /**
+         * Items read since the last call in file order, edges after their nodes, ready to be added to a document.
+         * The camera of the file comes with onDone
+         */
+        void onItems(List<GraphItem> items);
+    }
+
+    /**
+     * Work run on the I/O thread, it should stop with an InterruptedIOException once its thread is interrupted
+     */
+    public interface Job<T> {
+        T run(Task<T> task) throws Exception;
+    }
+
+    /**
+     * A job handed to the I/O thread, cancel and the getters are for the main thread
+     */
+    public static class Task<T> {
+        private final Executor mMain;
+        private final Callback<T> mCallback;
+        private Future<?> mFuture;
+        //written on the main thread, read by the I/O thread to drop what it still delivers
+        private volatile boolean mCancelled = false;
+        private boolean mFinished = false;
+
+        Task(Executor main,Callback<T> callback) {
+            mMain = main;
+            mCallback = callback;
+        }
+
+        /**
+         * Stop the job, nothing but onCancelled is delivered from now on. Does nothing once the task finished
+         */
+        public void cancel() {
+            if(mCancelled || mFinished)
+                return;
+            mCancelled = true;
+            if(mFuture != null)
+                mFuture.cancel(true);
+            mMain.execute(new Runnable() {
+                @Override
+                public void run() {
+                    mCallback.onCancelled();
+                }
+            });
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        /**
+         * @return true once onDone or onFailed was delivered
+         */
+        public boolean isFinished() {
+            return mFinished;
+        }
+
+        /**
+         * Called by the job, posted to the main thread
+         */
+        public void progress(final long done,final long total) {
+            deliver(new Runnable() {
+                @Override
+                public void run() {
+                    mCallback.onProgress(done,total);
+                }
+            });
+        }
+
+        void deliver(final Runnable delivery) {
+            if(mCancelled)
+                return;
+            mMain.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if(!mCancelled && !mFinished)
+                        delivery.run();
+                }
+            });
+        }
+
+        void finish(final T result,final Exception failure) {
+            deliver(new Runnable() {
+                @Override
+                public void run() {
+                    mFinished = true;
+                    if(failure == null)
+                        mCallback.onDone(result);
+                    else
+                        mCallback.onFailed(failure);
+                }
+            });
+        }
+    }
+
+    private final ExecutorService mWorker;
+    private final Executor mMain;
+
+    /**
+     * @param worker runs the jobs, a single thread keeps them in order
+     * @param main   delivers callbacks, the UI thread's handler on Android
+     */
+    public MapIo(ExecutorService worker,Executor main) {
+        mWorker = worker;
+        mMain = main;
+    }
+
+    /**
+     * @return a MapIo with one background thread of its own, below the priority of the UI thread
+     */
+    public static MapIo create(Executor main) {
+        return new MapIo(Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable,"map-io");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.NORM_PRIORITY-1);
+                return thread;
+            }
+        }),main);
+    }
+
+    public <T> Task<T> submit(final Job<T> job,Callback<T> callback) {
+        final Task<T> task = new Task<>(mMain,callback);
+        task.mFuture = mWorker.submit(new Runnable() {
+            @Override
+            public void run() {
+                if(task.isCancelled())
+                    return;
+                try {
+                    task.finish(job.run(task),null);
+                } catch (InterruptedIOException e) {
+                    //cancelled, onCancelled is on its way
+                    if(!task.isCancelled())
+                        task.finish(null,e);
+                } catch (Exception e) {
+                    task.finish(null,e);
+                }
+            }
+        });
+        return task;
+    }
+
+    /**
+     * Write a plain document file in the background, see write()
+     * @param snapshot not edited while it is written, see GraphDocument.snapshot()
+     * @param binary   true for the binary format, the JSON one otherwise
+     * @return the task, its result is the destination
+     */
+    public Task<File> save(GraphDocument snapshot,File destination,boolean binary,Callback<File> callback) {
+        return save(snapshot,destination,binary,MapCompression.NONE,callback);
+    }
+
+    /**
+     * Write a document to a file in the background, see write()
+     * @param snapshot not edited while it is written, see GraphDocument.snapshot()
+     * @param binary   true for the binary format, the JSON one otherwise
+     * @param level    compression level, MapCompression.NONE for a plain file
+     * @return the task, its result is the destination
+     */
+    public Task<File> save(final GraphDocument snapshot,final File destination,final boolean binary,final int level,Callback<File> callback) {
+        return submit(new Job<File>() {
+            @Override
+            public File run(final Task<File> task) throws Exception {
+                write(snapshot,destination,binary,level,new MapWriter.ProgressListener() {
+                    @Override
+                    public void onProgress(int itemsWritten, int itemCount) {
+                        task.progress(itemsWritten,itemCount);
+                    }
+                });
+                return destination;
+            }
+        },callback);
+    }
+
+    /**
+     * Read a file in either format, its items are handed over in batches while it is read,
+     * in the order the file holds them, which is how EditJournal pairs them with the file
+     * @return the task, its result is the camera of the file
+     */
+    public Task<Camera> load(final File source,final LoadCallback callback) {
+        return submit(new Job<Camera>() {
+            @Override
+            public Camera run(final Task<Camera> task) throws Exception {
+                final Camera camera = new Camera();
+                final ItemBatch batch = new ItemBatch();
+                read(source,batch,camera,new MapReader.ProgressListener() {
+                    @Override
+                    public void onProgress(long bytesRead, long totalBytes, int itemsRead) {
+                        final List<GraphItem> items = batch.take();
+                        task.deliver(new Runnable() {
+                            @Override
+                            public void run() {
+                                callback.onItems(items);
+                            }
+                        });
+                        task.progress(bytesRead,totalBytes);
+                    }
+                });
+                return camera;
+            }
+        },callback);
+    }
+
+    /**
+     * Stop the I/O thread, running jobs are interrupted
+     */
+    public void shutdown() {
+        mWorker.shutdownNow();
+    }
+
+    /**
+     * Write a plain document file, see write() with a compression level
+     */
+    public static void write(GraphDocument document,File destination,boolean binary,MapWriter.ProgressListener listener) throws IOException {
+        write(document,destination,binary,MapCompression.NONE,listener);
+    }
+
+    /**
+     * Write a document to a file through a temporary file next to it, so that a failed or cancelled
+     * write leaves the old file as it was
+     * @param level    compression level, MapCompression.NONE for a plain file
+     * @param listener told how far the write got, may be null
+     */
+    public static void write(GraphDocument document,File destination,boolean binary,int level,MapWriter.ProgressListener listener) throws IOException {
+        File temp = new File(destination.getPath()+".tmp");
+        FileOutputStream out = new FileOutputStream(temp);
+        DeflaterOutputStream deflater = null;
+        boolean written = false;
+        try {
+            OutputStream stream = out;
+            if(level != MapCompression.NONE)
+                stream = deflater = MapCompression.compress(out,level);
+            if(binary) {
+                BinaryMapWriter writer = new BinaryMapWriter(document);
+                writer.setProgressListener(listener);
+                writer.write(stream);
+            }
+            else {
+                MapWriter writer = new MapWriter(document);
+                writer.setProgressListener(listener);
+                writer.write(stream);
+            }
+            if(deflater != null)
+                deflater.finish();
+            out.getFD().sync();
+            if(deflater != null)
+                deflater.close();
+            out.close();
+            if(!temp.renameTo(destination))
+                throw new IOException("Could not replace "+destination);
+            written = true;
+        } finally {
+            if(!written) {
+                //frees the deflater, what it still writes goes with the temporary file
+                if(deflater != null) {
+                    try {
+                        deflater.close();
+                    } catch (IOException e) {
+                        //the write failed already
+                    }
+                }
+                out.close();
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Read a .map file in either format into target. Only a plain binary file is read through a memory
+     * mapping, with its descriptions left in the mapping until they are asked for, see MappedMapReader.
+     * A JSON file and a compressed file of either format are read as a stream, the latter as it is inflated
+     * @param listener told how far the read got, may be null
+     */
+    public static void read(File source,ItemTarget target,Camera camera,MapReader.ProgressListener listener) throws IOException {
+        read(source,target,camera,listener,false);
+    }
+
+    /**
+     * @param keepIds see MapReader.setKeepIds()
+     */
+    static void read(File source,ItemTarget target,Camera camera,MapReader.ProgressListener listener,boolean keepIds) throws IOException {
+        byte[] head = new byte[BinaryMapFormat.MAGIC.length];
+        int length;
+        InputStream in = new FileInputStream(source);
+        try {
+            length = in.read(head);
+        } finally {
+            in.close();
+        }
+        if(BinaryMapFormat.isBinary(head,length)) {
+            MappedMapReader reader = new MappedMapReader(target,camera);
+            reader.setProgressListener(listener);
+            reader.setKeepIds(keepIds);
+            reader.read(source);
+            return;
+        }
+        in = new FileInputStream(source);
+        try {
+            read(in,source.length(),target,camera,listener,keepIds);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Read a .map file in either format into target, the format and whether it is compressed are told by the first bytes
+     * @param totalBytes size of the file for progress reports, -1 if it is not known
+     * @param listener   told how far the read got, may be null
+     */
+    public static void read(InputStream in,long totalBytes,ItemTarget target,Camera camera,MapReader.ProgressListener listener) throws IOException {
+        read(in,totalBytes,target,camera,listener,false);
+    }
+
+    /**
+     * @param keepIds see MapReader.setKeepIds()
+     */
+    static void read(InputStream in,final long totalBytes,ItemTarget target,Camera camera,MapReader.ProgressListener listener,
+                     boolean keepIds) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in);
+        boolean compressed = MapCompression.isCompressed(buffered);
+        if(compressed) {
+            //progress is told in bytes of the file, not in the bytes they inflate to
+            final CountingInputStream counter = new CountingInputStream(buffered);
+            buffered = new BufferedInputStream(MapCompression.decompress(counter));
+            if(listener != null) {
+                final MapReader.ProgressListener fileListener = listener;
+                listener = new MapReader.ProgressListener() {
+                    @Override
+                    public void onProgress(long bytesRead, long inflatedBytes, int itemsRead) {
+                        fileListener.onProgress(counter.getCount(),totalBytes,itemsRead);
+                    }
+                };
+            }
+        }
+        if(BinaryMapFormat.isBinary(buffered)) {
+            BinaryMapReader reader = new BinaryMapReader(target,camera);
+            reader.setProgressListener(listener);
+            reader.setKeepIds(keepIds);
+            reader.read(buffered,compressed ? -1 : totalBytes);
+        }
+        else {
+            MapReader reader = new MapReader(target,camera);
+            reader.setProgressListener(listener);
+            reader.setKeepIds(keepIds);
+            reader.read(buffered,compressed ? -1 : totalBytes);
+        }
+        if(compressed) {
+            //the CRC of the container is checked once its end is read
+            byte[] rest = new byte[256];
+            while (buffered.read(rest) >= 0) {
+            }
+        }
+    }
+
+    /**
+     * Collects the items a reader hands out on the I/O thread until they are taken to the main thread.
+     * The nodes of a batch share a store that goes along with them, the main thread copies them out of it
+     */
+    private static class ItemBatch implements ItemTarget {
+        private ArrayList<GraphItem> mItems = new ArrayList<>();
+        private NodeStore mStore = new NodeStore(16);
+
+        List<GraphItem> take() {
+            List<GraphItem> items = mItems;
+            mItems = new ArrayList<>();
+            mStore = new NodeStore(Math.max(16,mStore.size()));
+            return items;
+        }
+
+        @Override
+        public void addItem(GraphItem item) {
+            mItems.add(item);
+        }
+
+        @Override
+        public NodeStore getNodeStore() {
+            return mStore;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.mindmap.expressFlowchart.document;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.InputStreamReader;
+
+/**
+ * Reads a .map file in one pass without building a JSON tree, each item is handed to the target
+ * as soon as its object ends. Items get new keys through an IdRemap, as with GraphDocument.addItems
+ */
+public class MapReader {
+
+    /**
+     * Told how far the read got every few hundred items and once at the end
+     */
+    public interface ProgressListener {
+        /**
+         * @param totalBytes size of the file, -1 if it is not known
+         */
+        void onProgress(long bytesRead,long totalBytes,int itemsRead);
+    }
+
+    public static final int DEFAULT_PROGRESS_INTERVAL = 500; //items
+
+    //fields an item needs to be read, an item missing any of them is skipped like JSONObject.getString would have
+    private static final int ID = 1, X = 1 << 1, Y = 1 << 2, R = 1 << 3, TITLE = 1 << 4, DESCRIPTION = 1 << 5,
+            COLOR = 1 << 6, SHAPE = 1 << 7, TEXT_SIZE = 1 << 8, START = 1 << 9, END = 1 << 10, ARROW = 1 << 11;
+    private static final int NODE_FIELDS = ID | X | Y | R | TITLE | DESCRIPTION | COLOR | SHAPE | TEXT_SIZE;
+    private static final int EDGE_FIELDS = ID | START | END | TITLE | DESCRIPTION | COLOR | ARROW | TEXT_SIZE;
+
+    private final ItemTarget mTarget;
+    private final Camera mCamera;
+    private ProgressListener mListener;
+    private int mProgressInterval = DEFAULT_PROGRESS_INTERVAL;
+    private boolean mKeepIds = false;
+    private IdRemap mRemap;
+    private CountingInputStream mCounter;
+    private long mTotalBytes;
+    private int mItemsRead,mItemsSkipped;
+
+    /**
+     * @param target gets every item read, a GraphDocument or a view over one
+     * @param camera set from the file once it has been read
+     */
+    public MapReader(ItemTarget target,Camera camera) {
+        mTarget = target;
+        mCamera = camera;
+    }
+
+    public void setProgressListener(ProgressListener listener) {
+        mListener = listener;
+    }
+
+    public void setProgressInterval(int items) {
+        mProgressInterval = Math.max(1,items);
+    }
+
+    /**
+     * @param keepIds true to keep every id of the file as the external id of its item, so writing the
+     *                document again gives the same ids. By default ids that are plain keys are dropped
+     */
+    public void setKeepIds(boolean keepIds) {
+        mKeepIds = keepIds;
+    }
+
+    /**
+     * @return number of items handed to the target by the last read
+     */
+    public int getItemsRead() {
+        return mItemsRead;
+    }
+
+    /**
+     * @return number of items of the last read left out, unknown types, missing fields and edges to missing nodes
+     */
+    public int getItemsSkipped() {
+        return mItemsSkipped;
+    }
+
+    /**
+     * Read a whole file, the stream is not closed
+     * @param totalBytes size of the file for progress reports, -1 if it is not known
+     */
+    public void read(InputStream in,long totalBytes) throws IOException {
+        mCounter = new CountingInputStream(in);
+        mTotalBytes = totalBytes;
+        mRemap = new IdRemap();
+        mItemsRead = 0;
+        mItemsSkipped = 0;
+        JsonPullReader reader = new JsonPullReader(new InputStreamReader(mCounter,"UTF-8"));
+        float scale = 1f, translateX = 0f, translateY = 0f;
+        boolean hasTranslate = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if(name.equals( DocumentSchema.ITEMS_KEY)) {
+                reader.beginArray();
+                while (reader.hasNext())
+                    readItem(reader);
+                reader.endArray();
+            }
+            else if(name.equals( DocumentSchema.SCALE_KEY))
+                scale = (float) reader.nextDouble();
+            else if(name.equals( DocumentSchema.TRANSLATE_X_KEY)) {
+                translateX = (float) reader.nextDouble();
+                hasTranslate = true;
+            }
+            else if(name.equals( DocumentSchema.TRANSLATE_Y_KEY))
+                translateY = (float) reader.nextDouble();
+            else
+                reader.skipValue();
+        }
+        reader.endObject();
+        //older files without a pan saved what was on screen at scale 1
+        if(hasTranslate)
+            mCamera.set(scale,translateX,translateY);
+        else
+            mCamera.set(1f,0f,0f);
+        mRemap = null;
+        reportProgress();
+    }
+
+    private void readItem(JsonPullReader reader) throws IOException {
+        String type = null, id = null, title = null, description = null, shape = null, arrow = null, start = null, end = null;
+        float x = 0, y = 0, r = 0, textSize = 0, strokeWidth = -1;
+        int color = 0, fields = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case DocumentSchema.ITEM_TYPE_KEY:
+                    type = string(reader);
+                    break;
+                case DocumentSchema.ITEM_ID_KEY:
+                    if((id = string(reader)) != null) fields |= ID;
+                    break;
+                case DocumentSchema.NODE_CENTRE_X_KEY:
+                    if(isNumber(reader)) { x = (float) reader.nextDouble(); fields |= X; }
+                    break;
+                case DocumentSchema.NODE_CENTRE_Y_KEY:
+                    if(isNumber(reader)) { y = (float) reader.nextDouble(); fields |= Y; }
+                    break;
+                case DocumentSchema.NODE_RADIUS_KEY:
+                    if(isNumber(reader)) { r = (float) reader.nextDouble(); fields |= R; }
+                    break;
+                case DocumentSchema.NODE_TITLE_KEY:
+                case DocumentSchema.EDGE_TITLE_KEY:
+                    if((title = string(reader)) != null) fields |= TITLE;
+                    break;
+                case DocumentSchema.NODE_DESCRIPTION_KEY:
+                case DocumentSchema.EDGE_DESCRIPTION_KEY:
+                    if((description = string(reader)) != null) fields |= DESCRIPTION;
+                    break;
+                case DocumentSchema.NODE_COLOR_KEY:
+                case DocumentSchema.EDGE_COLOR_KEY:
+                    if(isNumber(reader)) { color = reader.nextInt(); fields |= COLOR; }
+                    break;
+                case DocumentSchema.NODE_SHAPE_KEY:
+                    if((shape = string(reader)) != null) fields |= SHAPE;
+                    break;
+                case DocumentSchema.NODE_TEXT_SIZE_KEY:
+                case DocumentSchema.EDGE_TEXT_SIZE_KEY:
+                    if(isNumber(reader)) { textSize = (float) reader.nextDouble(); fields |= TEXT_SIZE; }
+                    break;
+                case DocumentSchema.EDGE_START_NODE_KEY:
+                    if((start = string(reader)) != null) fields |= START;
+                    break;
+                case DocumentSchema.EDGE_END_NODE_KEY:
+                    if((end = string(reader)) != null) fields |= END;
+                    break;
+                case DocumentSchema.EDGE_ARROW_TYPE_KEY:
+                    if((arrow = string(reader)) != null) fields |= ARROW;
+                    break;
+                case DocumentSchema.EDGE_STROKE_WIDTH_KEY:
+                    if(isNumber(reader)) strokeWidth = (float) reader.nextDouble();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        GraphItem item = null;
+        if(DocumentSchema.NODE_TYPE.equals(type) && (fields & NODE_FIELDS) == NODE_FIELDS) {
+            GraphNode node = new GraphNode(mTarget.getNodeStore(),mKeepIds ? id : IdRemap.externalId(id),x,y,r,title,description,color,GraphNode.shapeFromString(shape),textSize);
+            mRemap.put(id,node);
+            item = node;
+        }
+        else if(DocumentSchema.EDGE_TYPE.equals(type) && (fields & EDGE_FIELDS) == EDGE_FIELDS) {
+            GraphNode from = mRemap.getNode(start), to = mRemap.getNode(end);
+            if(from != null && to != null) {
+                GraphEdge edge = new GraphEdge(mKeepIds ? id : IdRemap.externalId(id),from,to,color,title,description,GraphEdge.arrowShapeFromString(arrow),textSize);
+                if(strokeWidth >= 0)
+                    edge.setStrokeWidth(strokeWidth);
+                item = edge;
+            }
+        }
+        if(item == null) {
+            mItemsSkipped++;
+            return;
+        }
+        mTarget.addItem(item);
+        if(++mItemsRead % mProgressInterval == 0)
+            reportProgress();
+    }
+
+    /**
+     * @return the next value as a string, null if it is not one and was skipped
+     */
+    private static String string(JsonPullReader reader) throws IOException {
+        JsonPullReader.Token token = reader.peek();
+        if(token == JsonPullReader.Token.STRING || token == JsonPullReader.Token.NUMBER)
+            return reader.nextString();
+        reader.skipValue();
+        return null;
+    }
+
+    /**
+     * @return true if the next value is a number, anything else is skipped
+     */
+    private static boolean isNumber(JsonPullReader reader) throws IOException {
+        if(reader.peek() == JsonPullReader.Token.NUMBER)
+            return true;
+        reader.skipValue();
+        return false;
+    }
+
+    //progress points are where a read running on a thread that was interrupted stops
+    private void reportProgress() throws InterruptedIOException {
+        if(Thread.interrupted())
+            throw new InterruptedIOException("Read cancelled");
+        if(mListener != null)
+            mListener.onProgress(mCounter.getCount(),mTotalBytes,mItemsRead);
+    }
+}
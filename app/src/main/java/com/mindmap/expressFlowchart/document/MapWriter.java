@@ -0,0 +1,83 @@
+package com.mindmap.expressFlowchart.document;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+
+/**
+ * Writes a document in the .map format straight to a stream, item by item, without building a JSON tree.
+ * The bytes are those of GraphDocument.toJson().toString() on Android
+ */
+public class MapWriter {
+
+    /**
+     * Told how far a write got every few hundred items and once at the end
+     */
+    public interface ProgressListener {
+        void onProgress(int itemsWritten,int itemCount);
+    }
+
+    public static final int BUFFER_SIZE = 16*1024; //chars
+
+    private final GraphDocument mSource;
+    private ProgressListener mListener;
+    private int mItemsWritten,mItemCount;
+
+    public MapWriter(GraphDocument source) {
+        mSource = source;
+    }
+
+    public void setProgressListener(ProgressListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * @return number of items written by the last write
+     */
+    public int getItemsWritten() {
+        return mItemsWritten;
+    }
+
+    /**
+     * Write the whole document in UTF-8, the stream is flushed but not closed
+     */
+    public void write(OutputStream out) throws IOException {
+        mItemsWritten = 0;
+        mItemCount = mSource.getNodes().size()+mSource.getEdges().size();
+        JsonStreamWriter writer = new JsonStreamWriter(new BufferedWriter(new OutputStreamWriter(out,"UTF-8"),BUFFER_SIZE));
+        Camera camera = mSource.getCamera();
+        writer.beginObject();
+        writer.name( DocumentSchema.SCALE_KEY).value(camera.getScale());
+        writer.name( DocumentSchema.TRANSLATE_X_KEY).value(camera.getTranslateX());
+        writer.name( DocumentSchema.TRANSLATE_Y_KEY).value(camera.getTranslateY());
+        writer.name( DocumentSchema.ITEMS_KEY).beginArray();
+        //nodes before the edges that refer to them, each layer bottom to top
+        for (GraphNode node : mSource.inZOrder(mSource.getNodes()))
+            if(node.writeJson(writer))
+                written();
+        for (GraphEdge edge : mSource.inZOrder(mSource.getEdges()))
+            if(edge.writeJson(writer))
+                written();
+        writer.endArray();
+        writer.endObject();
+        writer.flush();
+        reportProgress(mListener,mItemsWritten,mItemsWritten);
+    }
+
+    private void written() throws InterruptedIOException {
+        if(++mItemsWritten % MapReader.DEFAULT_PROGRESS_INTERVAL == 0)
+            reportProgress(mListener,mItemsWritten,mItemCount);
+    }
+
+    /**
+     * Progress points are where a write running on a thread that was interrupted stops
+     */
+    static void reportProgress(ProgressListener listener,int itemsWritten,int itemCount) throws InterruptedIOException {
+        if(Thread.interrupted())
+            throw new InterruptedIOException("Write cancelled");
+        if(listener != null)
+            listener.onProgress(itemsWritten,itemCount);
+    }
+}
@@ -0,0 +1,266 @@
+package com.mindmap.expressFlowchart.document;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.UUID;
+
+/**
+ * Reads a file in the binary .map format through a memory mapping instead of a stream.
+ * The string table is only indexed, strings are decoded the first time an item needs them, and
+ * descriptions are not decoded at all: items get a LazyText over the mapping that is decoded when
+ * the description is asked for. Opening a file costs the same whatever its descriptions hold,
+ * and they take no heap until they are read.
+ * <p>
+ * The mapping lives as long as a description still points into it. Files are only ever replaced
+ * by renaming a new one over them, see MapIo.write(), so a mapping never sees its file change
+ */
+public class MappedMapReader {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ItemTarget mTarget;
+    private final Camera mCamera;
+    private MapReader.ProgressListener mListener;
+    private int mProgressInterval = MapReader.DEFAULT_PROGRESS_INTERVAL;
+    private boolean mKeepIds = false;
+    private ByteBuffer mBuffer;
+    private int mItemsRead,mItemsSkipped;
+    //where each string of the table starts and how many bytes it takes, decoded ones are kept
+    private int[] mOffsets,mLengths;
+    private String[] mStrings;
+    private LazyText[] mTexts;
+
+    /**
+     * @param target gets every item read, a GraphDocument or a view over one
+     * @param camera set from the file
+     */
+    public MappedMapReader(ItemTarget target,Camera camera) {
+        mTarget = target;
+        mCamera = camera;
+    }
+
+    public void setProgressListener(MapReader.ProgressListener listener) {
+        mListener = listener;
+    }
+
+    public void setProgressInterval(int items) {
+        mProgressInterval = Math.max(1,items);
+    }
+
+    /**
+     * @see MapReader#setKeepIds(boolean)
+     */
+    public void setKeepIds(boolean keepIds) {
+        mKeepIds = keepIds;
+    }
+
+    public int getItemsRead() {
+        return mItemsRead;
+    }
+
+    /**
+     * @return number of items of the last read left out, edges to nodes that are not in the file
+     */
+    public int getItemsSkipped() {
+        return mItemsSkipped;
+    }
+
+    /**
+     * Map a whole file and read it
+     */
+    public void read(File file) throws IOException {
+        RandomAccessFile access = new RandomAccessFile(file,"r");
+        MappedByteBuffer buffer;
+        try {
+            FileChannel channel = access.getChannel();
+            if(channel.size() > Integer.MAX_VALUE)
+                throw new IOException("File too large to map "+file);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY,0,channel.size());
+        } finally {
+            //the mapping stays valid once the channel is closed
+            access.close();
+        }
+        read(buffer);
+    }
+
+    /**
+     * Read a file in the binary .map format from its first byte, the buffer must not change afterwards
+     * as descriptions are decoded from it later on
+     */
+    public void read(ByteBuffer buffer) throws IOException {
+        mBuffer = buffer;
+        mItemsRead = 0;
+        mItemsSkipped = 0;
+        try {
+            readDocument();
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated .map file");
+        } finally {
+            mBuffer = null;
+            mOffsets = mLengths = null;
+            mStrings = null;
+            mTexts = null;
+        }
+    }
+
+    private void readDocument() throws IOException {
+        ByteBuffer in = mBuffer;
+        byte[] magic = new byte[BinaryMapFormat.MAGIC.length];
+        in.get(magic);
+        if(!BinaryMapFormat.isBinary(magic,magic.length))
+            throw new IOException("Not a binary .map file");
+        int version = in.get() & 0xFF;
+        if(version > BinaryMapFormat.VERSION)
+            throw new IOException("Unsupported .map version "+version);
+        in.get(); //flags
+        mCamera.set(in.getFloat(),in.getFloat(),in.getFloat());
+
+        int stringCount = count(in);
+        mOffsets = new int[stringCount];
+        mLengths = new int[stringCount];
+        mStrings = new String[stringCount];
+        mTexts = new LazyText[stringCount];
+        for (int i = 0; i < stringCount; i++) {
+            int length = count(in);
+            if(length > in.remaining())
+                throw new BufferUnderflowException();
+            mOffsets[i] = in.position();
+            mLengths[i] = length;
+            in.position(in.position()+length);
+        }
+
+        int itemCount = count(in);
+        ArrayList<GraphNode> nodes = new ArrayList<>();
+        for (int i = 0; i < itemCount; i++) {
+            int tag = in.get() & 0xFF;
+            GraphItem item;
+            if(tag == BinaryMapFormat.NODE_TAG) {
+                String id = readId(in);
+                float x = in.getFloat(), y = in.getFloat(), r = in.getFloat();
+                String title = readString(in);
+                CharSequence description = readText(in);
+                int color = readColor(in);
+                String shape = readString(in);
+                GraphNode node = new GraphNode(mTarget.getNodeStore(),id,x,y,r,title,null,color,GraphNode.shapeFromString(shape),in.getFloat());
+                node.setDescriptionText(description);
+                nodes.add(node);
+                item = node;
+            }
+            else if(tag == BinaryMapFormat.EDGE_TAG) {
+                String id = readId(in);
+                long start = BinaryMapFormat.readVarint(in), end = BinaryMapFormat.readVarint(in);
+                float strokeWidth = in.getFloat();
+                String title = readString(in);
+                CharSequence description = readText(in);
+                int color = readColor(in);
+                String arrow = readString(in);
+                float textSize = in.getFloat();
+                if(start >= nodes.size() || end >= nodes.size()) {
+                    mItemsSkipped++;
+                    continue;
+                }
+                GraphEdge edge = new GraphEdge(id,nodes.get((int) start),nodes.get((int) end),color,title,null,
+                        GraphEdge.arrowShapeFromString(arrow),textSize);
+                edge.setDescriptionText(description);
+                edge.setStrokeWidth(strokeWidth);
+                item = edge;
+            }
+            else
+                throw new IOException("Unknown item tag "+tag);
+            mTarget.addItem(item);
+            if(++mItemsRead % mProgressInterval == 0)
+                reportProgress();
+        }
+        reportProgress();
+    }
+
+    private static int count(ByteBuffer in) throws IOException {
+        long count = BinaryMapFormat.readVarint(in);
+        if(count > Integer.MAX_VALUE)
+            throw new IOException("Bad count "+count);
+        return (int) count;
+    }
+
+    private static int readColor(ByteBuffer in) throws IOException {
+        return (int) BinaryMapFormat.readVarint(in) ^ BinaryMapFormat.OPAQUE;
+    }
+
+    /**
+     * @return the string of the table at index, decoded the first time it is needed
+     */
+    private String string(long index) throws IOException {
+        if(index < 0 || index >= mStrings.length)
+            throw new IOException("Bad string index "+index);
+        int i = (int) index;
+        if(mStrings[i] == null) {
+            byte[] bytes = new byte[mLengths[i]];
+            ByteBuffer view = mBuffer.duplicate();
+            view.position(mOffsets[i]);
+            view.get(bytes);
+            mStrings[i] = new String(bytes,UTF_8);
+        }
+        return mStrings[i];
+    }
+
+    private String readString(ByteBuffer in) throws IOException {
+        long index = BinaryMapFormat.readVarint(in);
+        return index == 0 ? null : string(index-1);
+    }
+
+    /**
+     * @return a description left in the mapping, items with the same one share it
+     */
+    private CharSequence readText(ByteBuffer in) throws IOException {
+        long index = BinaryMapFormat.readVarint(in);
+        if(index == 0)
+            return "";
+        if(index > mTexts.length)
+            throw new IOException("Bad string index "+index);
+        int i = (int) index-1;
+        if(mStrings[i] != null)
+            return mStrings[i];
+        if(mLengths[i] == 0)
+            return "";
+        if(mTexts[i] == null)
+            mTexts[i] = new LazyText(mBuffer,mOffsets[i],mLengths[i]);
+        return mTexts[i];
+    }
+
+    /**
+     * @return the id to give the item, null for a key that is not kept
+     */
+    private String readId(ByteBuffer in) throws IOException {
+        long value = BinaryMapFormat.readVarint(in);
+        String id;
+        switch ((int) (value & 3)) {
+            case BinaryMapFormat.ID_NUMBER:
+                id = Long.toString(value >>> 2);
+                break;
+            case BinaryMapFormat.ID_UUID:
+                id = new UUID(in.getLong(),in.getLong()).toString();
+                break;
+            case BinaryMapFormat.ID_STRING:
+                id = string(value >>> 2);
+                break;
+            default:
+                throw new IOException("Bad id kind "+(value & 3));
+        }
+        return mKeepIds ? id : IdRemap.externalId(id);
+    }
+
+    //progress points are where a read running on a thread that was interrupted stops
+    private void reportProgress() throws InterruptedIOException {
+        if(Thread.interrupted())
+            throw new InterruptedIOException("Read cancelled");
+        if(mListener != null)
+            mListener.onProgress(mBuffer.position(),mBuffer.limit(),mItemsRead);
+    }
+}
@@ -0,0 +1,6 @@
+package com.mindmap.expressFlowchart.document;
+
+/**
+ * Outline of a node, saved by name
+ */
+public enum NodeShape { CIRCLE, SQUARE, DIAMOND }
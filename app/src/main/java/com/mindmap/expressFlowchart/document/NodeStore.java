@@ -0,0 +1,242 @@
+package com.mindmap.expressFlowchart.document;
+
+import java.util.Arrays;
+
+/**
+ * Nodes kept as columns of primitive arrays instead of one object graph per node.
+ * A node is an int handle into the arrays, titles, descriptions and external ids are side tables of the same length.
+ * Handles of removed nodes are reused, a GraphNode is the only thing that should hold on to one
+ */
+public class NodeStore {
+
+    private static final NodeShape[] SHAPES = NodeShape.values();
+
+    private float[] mX,mY,mR,mTextSize;
+    private int[] mKey,mColor,mRevision;
+    private byte[] mShape;
+    private long[] mOrder;
+    private String[] mExternalIds,mTitles;
+    //Strings, or LazyTexts of a mapped file until they are asked for
+    private CharSequence[] mDescriptions;
+    private Object[] mTags;
+    //handles in use are below mSize, removed ones are stacked in mFree
+    private int mSize = 0;
+    private int[] mFree = new int[0];
+    private int mFreeCount = 0;
+
+    public NodeStore(int capacity) {
+        capacity = Math.max(1,capacity);
+        mX = new float[capacity];
+        mY = new float[capacity];
+        mR = new float[capacity];
+        mTextSize = new float[capacity];
+        mKey = new int[capacity];
+        mColor = new int[capacity];
+        mRevision = new int[capacity];
+        mShape = new byte[capacity];
+        mOrder = new long[capacity];
+        mExternalIds = new String[capacity];
+        mTitles = new String[capacity];
+        mDescriptions = new CharSequence[capacity];
+        mTags = new Object[capacity];
+    }
+
+    /**
+     * @return number of nodes in the store
+     */
+    public int size() {
+        return mSize-mFreeCount;
+    }
+
+    public int capacity() {
+        return mX.length;
+    }
+
+    /**
+     * @return a handle for a new node, its columns are zero and its strings null
+     */
+    int allocate() {
+        if(mFreeCount > 0)
+            return mFree[--mFreeCount];
+        if(mSize == mX.length)
+            grow(2*mSize);
+        return mSize++;
+    }
+
+    /**
+     * Give the handle back, its strings and tag are dropped so they can be collected
+     */
+    void release(int handle) {
+        mExternalIds[handle] = null;
+        mTitles[handle] = null;
+        mDescriptions[handle] = null;
+        mTags[handle] = null;
+        if(mFreeCount == mFree.length)
+            mFree = Arrays.copyOf(mFree,Math.max(4,2*mFreeCount));
+        mFree[mFreeCount++] = handle;
+    }
+
+    /**
+     * Copy every column of a node from another store into a new handle of this one
+     * @return the new handle
+     */
+    int copyFrom(NodeStore store,int handle) {
+        int h = allocate();
+        mX[h] = store.mX[handle];
+        mY[h] = store.mY[handle];
+        mR[h] = store.mR[handle];
+        mTextSize[h] = store.mTextSize[handle];
+        mKey[h] = store.mKey[handle];
+        mColor[h] = store.mColor[handle];
+        mRevision[h] = store.mRevision[handle];
+        mShape[h] = store.mShape[handle];
+        mOrder[h] = store.mOrder[handle];
+        mExternalIds[h] = store.mExternalIds[handle];
+        mTitles[h] = store.mTitles[handle];
+        mDescriptions[h] = store.mDescriptions[handle];
+        mTags[h] = store.mTags[handle];
+        return h;
+    }
+
+    private void grow(int capacity) {
+        mX = Arrays.copyOf(mX,capacity);
+        mY = Arrays.copyOf(mY,capacity);
+        mR = Arrays.copyOf(mR,capacity);
+        mTextSize = Arrays.copyOf(mTextSize,capacity);
+        mKey = Arrays.copyOf(mKey,capacity);
+        mColor = Arrays.copyOf(mColor,capacity);
+        mRevision = Arrays.copyOf(mRevision,capacity);
+        mShape = Arrays.copyOf(mShape,capacity);
+        mOrder = Arrays.copyOf(mOrder,capacity);
+        mExternalIds = Arrays.copyOf(mExternalIds,capacity);
+        mTitles = Arrays.copyOf(mTitles,capacity);
+        mDescriptions = Arrays.copyOf(mDescriptions,capacity);
+        mTags = Arrays.copyOf(mTags,capacity);
+    }
+
+    public float getX(int h) {
+        return mX[h];
+    }
+
+    public float getY(int h) {
+        return mY[h];
+    }
+
+    public float getR(int h) {
+        return mR[h];
+    }
+
+    public float getTextSize(int h) {
+        return mTextSize[h];
+    }
+
+    public int getKey(int h) {
+        return mKey[h];
+    }
+
+    public int getColor(int h) {
+        return mColor[h];
+    }
+
+    public NodeShape getShape(int h) {
+        return SHAPES[mShape[h]];
+    }
+
+    public int getRevision(int h) {
+        return mRevision[h];
+    }
+
+    /**
+     * @return the external id, null for most nodes
+     */
+    public String getExternalId(int h) {
+        return mExternalIds[h];
+    }
+
+    public String getTitle(int h) {
+        return mTitles[h];
+    }
+
+    public String getDescription(int h) {
+        CharSequence description = mDescriptions[h];
+        if(description instanceof LazyText) {
+            //decoded once, the String takes its place
+            mDescriptions[h] = description = description.toString();
+        }
+        return (String) description;
+    }
+
+    /**
+     * @return the description as it is kept, without decoding it
+     */
+    CharSequence getDescriptionText(int h) {
+        return mDescriptions[h];
+    }
+
+    long getOrder(int h) {
+        return mOrder[h];
+    }
+
+    Object getTag(int h) {
+        return mTags[h];
+    }
+
+    //setters below leave the revision alone, GraphNode bumps it for changes that show
+
+    void set(int h,float x,float y) {
+        mX[h] = x;
+        mY[h] = y;
+    }
+
+    void setKey(int h,int key) {
+        mKey[h] = key;
+    }
+
+    void setR(int h,float r) {
+        mR[h] = r;
+    }
+
+    void setTextSize(int h,float textSize) {
+        mTextSize[h] = textSize;
+    }
+
+    void setColor(int h,int color) {
+        mColor[h] = color;
+    }
+
+    void setShape(int h,NodeShape shape) {
+        mShape[h] = (byte)shape.ordinal();
+    }
+
+    void changed(int h) {
+        mRevision[h]++;
+    }
+
+    void setOrder(int h,long order) {
+        mOrder[h] = order;
+    }
+
+    void setExternalId(int h,String id) {
+        mExternalIds[h] = id;
+    }
+
+    void setTitle(int h,String title) {
+        mTitles[h] = title;
+    }
+
+    void setDescription(int h,CharSequence description) {
+        mDescriptions[h] = description;
+    }
+
+    void setTag(int h,Object tag) {
+        mTags[h] = tag;
+    }
+
+    /**
+     * @return bytes held by the columns, strings and tags not included
+     */
+    public long getColumnBytes() {
+        //4 floats, 3 ints, a byte, a long and 4 references per slot
+        return (long)capacity()*(4*4 + 3*4 + 1 + 8 + 4*4);
+    }
+}
@@ -0,0 +1,99 @@
+package com.mindmap.expressFlowchart;
+
+import com.mindmap.expressFlowchart.document.ArrowShape;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Node to incident edge index of MainView
+ */
+public class AdjacencyTest {
+
+    private static Edge connect(MainView view,Node from,Node to){
+        Edge edge = new Edge(from,to,from.getTitle()+to.getTitle(),view,Edge.DEFAULT_EDGE_COLOR,"","",ArrowShape.NONE,Edge.DEFAULT_TEXT_SIZE);
+        view.addDrawable(edge);
+        return edge;
+    }
+
+    @Test
+    public void addAndDelete_keepIncidentEdges() {
+        MainView view = new MainView(null);
+        Node a = new Node(0,0,view,"a");
+        Node b = new Node(500,0,view,"b");
+        Node c = new Node(0,500,view,"c");
+        view.addDrawable(a);
+        view.addDrawable(b);
+        view.addDrawable(c);
+        Edge ab = connect(view,a,b);
+        Edge bc = connect(view,b,c);
+        Edge ca = connect(view,c,a);
+
+        assertEquals(2,view.getIncidentEdges(a).size());
+        assertTrue(view.getIncidentEdges(b).contains(ab));
+        assertTrue(view.getIncidentEdges(b).contains(bc));
+
+        view.deleteItem(bc);
+        assertEquals(1,view.getIncidentEdges(b).size());
+        assertEquals(1,view.getIncidentEdges(c).size());
+
+        view.deleteItem(a);
+        assertTrue(view.getIncidentEdges(a).isEmpty());
+        assertTrue(view.getIncidentEdges(b).isEmpty());
+        assertTrue(view.getIncidentEdges(c).isEmpty());
+        assertTrue(view.getEdges().isEmpty());
+        assertFalse(view.getEdges().contains(ca));
+        assertEquals(2,view.getNodes().size());
+    }
+
+    @Test
+    public void reconnect_movesEdgeBetweenNodes() {
+        MainView view = new MainView(null);
+        Node a = new Node(0,0,view,"a");
+        Node b = new Node(500,0,view,"b");
+        Node c = new Node(0,500,view,"c");
+        view.addDrawable(a);
+        view.addDrawable(b);
+        view.addDrawable(c);
+        //an edge being drawn is only attached to where it starts
+        Edge edge = new Edge(a,0,0,view);
+        view.addDrawable(edge);
+        assertEquals(1,view.getIncidentEdges(a).size());
+        assertTrue(view.getIncidentEdges(b).isEmpty());
+
+        view.reconnectEdge(edge,a,b);
+        assertSame(b,edge.getToNode());
+        assertEquals(1,view.getIncidentEdges(a).size());
+        assertEquals(1,view.getIncidentEdges(b).size());
+
+        view.reconnectEdge(edge,c,b);
+        assertTrue(view.getIncidentEdges(a).isEmpty());
+        assertSame(edge,view.getIncidentEdges(c).get(0));
+        assertSame(edge,view.getIncidentEdges(b).get(0));
+    }
+
+    @Test
+    public void moveNode_leavesOtherEdgesAlone() {
+        MainView view = new MainView(null);
+        Node hub = new Node(0,0,view,"hub");
+        view.addDrawable(hub);
+        Node previous = hub;
+        for (int i = 1; i <= 50; i++) {
+            Node node = new Node(300*i,0,view,"n"+i);
+            view.addDrawable(node);
+            connect(view,previous,node);
+            previous = node;
+        }
+        Node far = view.getNodes().get(50);
+        Edge farEdge = view.getIncidentEdges(far).get(0);
+        int farRevision = farEdge.getRevision();
+        int hubRevision = view.getIncidentEdges(hub).get(0).getRevision();
+
+        view.moveNode(hub,-100,-100);
+        assertEquals(-100,hub.getX(),0);
+        //edges derive their ends from the nodes, the hub's edge sees the move
+        assertNotEquals(hubRevision,view.getIncidentEdges(hub).get(0).getRevision());
+        assertEquals(farRevision,farEdge.getRevision());
+    }
+}
@@ -0,0 +1,79 @@
+package com.mindmap.expressFlowchart;
+
+import android.graphics.RectF;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Screen rectangles DamageRegion hands to invalidate() while dragging
+ */
+public class DamageRegionTest {
+
+    private static RectF rect(float left,float top,float right,float bottom){
+        RectF rect = new RectF();
+        rect.left = left;
+        rect.top = top;
+        rect.right = right;
+        rect.bottom = bottom;
+        return rect;
+    }
+
+    private static void assertScreen(DamageRegion damage,int left,int top,int right,int bottom){
+        assertEquals(left,damage.getScreenLeft());
+        assertEquals(top,damage.getScreenTop());
+        assertEquals(right,damage.getScreenRight());
+        assertEquals(bottom,damage.getScreenBottom());
+    }
+
+    @Test
+    public void union_coversEveryRect() {
+        DamageRegion damage = new DamageRegion();
+        assertTrue(damage.isEmpty());
+        damage.union(rect(10,20,30,40));
+        assertFalse(damage.isEmpty());
+        damage.union(rect(-5,25,15,60));
+        damage.mapToScreen(1,0,0,0);
+        assertScreen(damage,-5,20,30,60);
+    }
+
+    @Test
+    public void reset_forgetsPreviousRects() {
+        DamageRegion damage = new DamageRegion();
+        damage.union(-1000,-1000,1000,1000);
+        damage.reset();
+        assertTrue(damage.isEmpty());
+        damage.union(0,0,10,10);
+        damage.mapToScreen(1,0,0,0);
+        assertScreen(damage,0,0,10,10);
+    }
+
+    @Test
+    public void mapToScreen_appliesCameraAndRoundsOutwards() {
+        DamageRegion damage = new DamageRegion();
+        damage.union(10.2f,-4.6f,20.1f,5.5f);
+        //screen = world*2 + (100,50)
+        damage.mapToScreen(2,100,50,0);
+        assertScreen(damage,120,40,141,61);
+        damage.mapToScreen(2,100,50,3);
+        assertScreen(damage,117,37,144,64);
+    }
+
+    @Test
+    public void nodeDrag_damagesOldAndNewPositionsOnly() {
+        //node of radius 100 dragged from (0,0) to (50,30) with an edge to a node at (1000,0)
+        DamageRegion damage = new DamageRegion();
+        damage.union(rect(-110,-60,1010,60));  //edge before
+        damage.union(rect(-60,-30,1010,90));   //edge after
+        damage.union(rect(-100,-100,100,100)); //node before
+        damage.union(rect(-50,-70,150,130));   //node after
+        damage.mapToScreen(0.5f,200,300,2);
+        assertScreen(damage,143,248,707,367);
+
+        //the far node and anything below the drag stay untouched
+        assertTrue(damage.getScreenBottom() < 0.5f*400+300);
+        damage.reset();
+        assertTrue(damage.isEmpty());
+    }
+}
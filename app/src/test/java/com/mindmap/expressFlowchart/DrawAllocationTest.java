@@ -0,0 +1,60 @@
+package com.mindmap.expressFlowchart;
+
+import android.graphics.Canvas;
+
+import com.mindmap.expressFlowchart.document.ArrowShape;
+import com.mindmap.expressFlowchart.document.NodeShape;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Guards the draw hot path, once warmed up a frame must not allocate
+ * Runs against the stub android.jar so only the Java side of Node and Edge is measured
+ */
+public class DrawAllocationTest {
+
+    private static final int FRAMES = 10000;
+
+    private static long allocatedBytes(){
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @Test
+    public void steadyStateFrame_allocatesNothing() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+
+        MainView view = new MainView(null);
+        Node square = new Node(0,0,view,"a square node with a long title",null,NodeShape.SQUARE);
+        Node diamond = new Node(600,300,view,"diamond",null,NodeShape.DIAMOND);
+        Node circle = new Node(0,600,view,"circle");
+        Edge arrow = new Edge(square,diamond,"arrow",view,Edge.DEFAULT_EDGE_COLOR,"edge title","",ArrowShape.DOUBLE,Edge.DEFAULT_TEXT_SIZE);
+        Edge vertical = new Edge(square,circle,"vertical",view,Edge.DEFAULT_EDGE_COLOR,"","",ArrowShape.END,Edge.DEFAULT_TEXT_SIZE);
+        Edge rubberBand = new Edge(circle,300,900,view);
+        MindMapDrawable[] drawables = {square,diamond,circle,arrow,vertical,rubberBand};
+        for (MindMapDrawable drawable : drawables)
+            view.addDrawable(drawable);
+        Canvas canvas = new Canvas();
+
+        for (int i = 0; i < FRAMES; i++)
+            drawFrame(view,canvas,drawables);
+        long before = allocatedBytes();
+        for (int i = 0; i < FRAMES; i++)
+            drawFrame(view,canvas,drawables);
+        long allocated = allocatedBytes()-before;
+
+        //a single allocation per frame would already be several hundred kilobytes
+        assertTrue("draw allocated "+allocated+" bytes over "+FRAMES+" frames",allocated < 1024);
+    }
+
+    private static void drawFrame(MainView view,Canvas canvas,MindMapDrawable[] drawables){
+        view.onDraw(canvas);
+        for (MindMapDrawable drawable : drawables)
+            drawable.draw(canvas);
+    }
+}
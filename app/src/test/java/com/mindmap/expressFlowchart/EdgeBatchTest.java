@@ -0,0 +1,99 @@
+package com.mindmap.expressFlowchart;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+
+import com.mindmap.expressFlowchart.document.ArrowShape;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Edges are drawn with a number of canvas calls that depends on their styles, not their count
+ */
+public class EdgeBatchTest {
+
+    private static class CountingCanvas extends Canvas {
+        int lineCalls = 0, lines = 0, pathCalls = 0;
+
+        @Override
+        public void drawLines(float[] pts, int offset, int count, Paint paint) {
+            lineCalls++;
+            lines += count/4;
+        }
+
+        @Override
+        public void drawLine(float startX, float startY, float stopX, float stopY, Paint paint) {
+            lineCalls++;
+            lines++;
+        }
+
+        @Override
+        public void drawPath(Path path, Paint paint) {
+            pathCalls++;
+        }
+    }
+
+    @Test
+    public void groups_areKeyedByColorAndWidth() {
+        EdgeBatch batch = new EdgeBatch();
+        batch.addLine(Color.RED,10,0,0,1,1);
+        batch.addLine(Color.RED,10,1,1,2,2);
+        batch.addLine(Color.RED,14,0,0,1,1);
+        batch.addLine(Color.BLUE,10,0,0,1,1);
+        batch.addArrowHead(Color.BLUE,10,0,0,1,0,0,1);
+        assertEquals(3,batch.getGroupCount());
+        assertEquals(2,batch.getLineCount(Color.RED,10));
+        assertEquals(1,batch.getLineCount(Color.RED,14));
+
+        CountingCanvas canvas = new CountingCanvas();
+        batch.draw(canvas);
+        assertEquals(3,canvas.lineCalls);
+        assertEquals(4,canvas.lines);
+        assertEquals(1,canvas.pathCalls);
+        assertEquals(4,batch.getDrawCalls());
+
+        batch.reset();
+        assertEquals(0,batch.getGroupCount());
+        //groups grow past their initial capacity
+        for (int i = 0; i < 1000; i++)
+            batch.addLine(Color.BLACK,12,i,i,i+1,i+1);
+        assertEquals(1000,batch.getLineCount(Color.BLACK,12));
+    }
+
+    @Test
+    public void drawCalls_growWithStylesNotEdges() {
+        MainView view = new MainView(null);
+        int[] colors = {Color.RED,Color.BLACK,Color.BLUE};
+        List<MindMapDrawable> edges = new ArrayList<>();
+        Node previous = new Node(0,0,view,"");
+        for (int i = 1; i <= 300; i++) {
+            Node node = new Node(300*(i%20),300*(i/20),view,"");
+            ArrowShape arrow = i%2 == 0 ? ArrowShape.END : ArrowShape.NONE;
+            edges.add(new Edge(previous,node,"e"+i,view,colors[i%3],"title "+i,"",arrow,Edge.DEFAULT_TEXT_SIZE));
+            previous = node;
+        }
+
+        CountingCanvas canvas = new CountingCanvas();
+        view.drawDrawables(canvas,edges);
+        assertEquals(3,view.getEdgeBatch().getGroupCount());
+        assertEquals(3,canvas.lineCalls);
+        assertEquals(300,canvas.lines);
+        //one arrowhead path per style
+        assertEquals(3,canvas.pathCalls);
+
+        //an edge being drawn by the user still draws on its own
+        Edge rubberBand = new Edge(previous,100,100,view);
+        edges.add(rubberBand);
+        canvas = new CountingCanvas();
+        view.drawDrawables(canvas,edges);
+        assertEquals(3,canvas.lineCalls);
+        assertEquals(3+3,canvas.pathCalls); //line and both cursors
+    }
+}
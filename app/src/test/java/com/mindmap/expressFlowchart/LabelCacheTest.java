@@ -0,0 +1,94 @@
+package com.mindmap.expressFlowchart;
+
+import android.graphics.Paint;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Truncation and invalidation of LabelCache
+ */
+public class LabelCacheTest {
+
+    /** every glyph is textSize/4 wide, counts how often text gets measured */
+    private static class FixedWidthPaint extends Paint {
+        float textSize = 40;
+        int measured = 0;
+
+        @Override
+        public float getTextSize() {
+            return textSize;
+        }
+
+        @Override
+        public int getTextWidths(String text, int start, int end, float[] widths) {
+            measured++;
+            for (int i = start; i < end; i++)
+                widths[i-start] = textSize/4;
+            return end-start;
+        }
+
+        @Override
+        public float measureText(String text) {
+            return text.length()*textSize/4;
+        }
+    }
+
+    @Test
+    public void shortTitle_isKeptWhole() {
+        FixedWidthPaint paint = new FixedWidthPaint();
+        LabelCache cache = new LabelCache();
+        assertEquals("abc",cache.get("abc",paint,30));
+        assertEquals(30,cache.getWidth(),0);
+        assertEquals("",cache.get("",paint,30));
+    }
+
+    @Test
+    public void longTitle_isCutToFitWithEllipsis() {
+        FixedWidthPaint paint = new FixedWidthPaint();
+        LabelCache cache = new LabelCache();
+        //10 wide glyphs, "..." takes 30 so 4 glyphs fit in 75
+        assertEquals("abcd...",cache.get("abcdefghij",paint,75));
+        assertEquals(70,cache.getWidth(),0);
+        assertEquals("...",cache.get("abcdefghij",paint,20));
+    }
+
+    @Test
+    public void label_isOnlyMeasuredWhenKeyChanges() {
+        FixedWidthPaint paint = new FixedWidthPaint();
+        LabelCache cache = new LabelCache();
+        String title = "a fairly long title";
+        String label = cache.get(title,paint,100);
+        for (int i = 0; i < 100; i++)
+            assertSame(label,cache.get(title,paint,100));
+        assertEquals(1,paint.measured);
+
+        cache.get(title,paint,120);
+        assertEquals(2,paint.measured);
+        paint.textSize = 20;
+        assertEquals(title,cache.get(title,paint,120));
+        assertEquals(3,paint.measured);
+        cache.get("another title",paint,120);
+        assertEquals(4,paint.measured);
+    }
+
+    @Test
+    public void fitCount_matchesLinearSearch() {
+        Random random = new Random(11);
+        for (int run = 0; run < 1000; run++) {
+            int count = 1+random.nextInt(60);
+            float[] totals = new float[count];
+            for (int i = 0; i < count; i++)
+                totals[i] = 1+random.nextFloat()*30;
+            LabelCache.accumulate(totals,count);
+            float maxWidth = random.nextFloat()*totals[count-1]*1.2f;
+            int expected = 0;
+            while (expected < count && totals[expected] <= maxWidth)
+                expected++;
+            assertEquals(expected,LabelCache.fitCount(totals,count,maxWidth));
+        }
+    }
+}
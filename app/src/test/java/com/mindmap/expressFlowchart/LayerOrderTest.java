@@ -0,0 +1,102 @@
+package com.mindmap.expressFlowchart;
+
+import com.mindmap.expressFlowchart.document.ArrowShape;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Node and edge layers of MainView, their z-order and hit testing
+ */
+public class LayerOrderTest {
+
+    @Test
+    public void drawOrder_putsEdgesBeneathNodes() {
+        MainView view = new MainView(null);
+        Node a = new Node(0,0,view,"a");
+        view.addDrawable(a);
+        Node b = new Node(500,0,view,"b");
+        view.addDrawable(b);
+        Edge edge = new Edge(a,b,"e",view,Edge.DEFAULT_EDGE_COLOR,"","",ArrowShape.NONE,Edge.DEFAULT_TEXT_SIZE);
+        view.addDrawable(edge);
+        Node c = new Node(0,500,view,"c");
+        view.addDrawable(c);
+
+        List<MindMapDrawable> drawn = new ArrayList<>();
+        view.query(-1000,-1000,1000,1000,drawn);
+        assertEquals(4,drawn.size());
+        assertSame(edge,drawn.get(0));
+        assertSame(a,drawn.get(1));
+        assertSame(b,drawn.get(2));
+        assertSame(c,drawn.get(3));
+        assertEquals(3,view.getNodes().size());
+        assertEquals(1,view.getEdges().size());
+    }
+
+    @Test
+    public void bringToFront_changesZOrderNotLists() {
+        MainView view = new MainView(null);
+        Node bottom = new Node(0,0,view,"bottom");
+        Node top = new Node(10,10,view,"top");
+        view.addDrawable(bottom);
+        view.addDrawable(top);
+        //both contain the point, the one drawn last wins
+        assertSame(top,view.findItem(0,0));
+        assertSame(top,view.findItem(0,0,DrawableType.NODE));
+
+        view.bringDrawableToFront(bottom);
+        assertSame(bottom,view.findItem(0,0));
+        assertSame(bottom,view.getNodes().get(0));
+        List<MindMapDrawable> drawn = new ArrayList<>();
+        view.query(-1000,-1000,1000,1000,drawn);
+        assertSame(top,drawn.get(0));
+        assertSame(bottom,drawn.get(1));
+    }
+
+    @Test
+    public void raise_isAnEditThatCanBeUndone() {
+        MainView view = new MainView(null);
+        Node bottom = new Node(0,0,view,"bottom");
+        Node top = new Node(10,10,view,"top");
+        view.addDrawable(bottom);
+        view.addDrawable(top);
+
+        view.raise(top);
+        assertFalse(view.getHistory().canUndo());
+        view.raise(bottom);
+        assertSame(bottom,view.findItem(0,0));
+        assertTrue(view.undo());
+        assertSame(top,view.findItem(0,0));
+        List<MindMapDrawable> drawn = new ArrayList<>();
+        view.query(-1000,-1000,1000,1000,drawn);
+        assertSame(bottom,drawn.get(0));
+        assertSame(top,drawn.get(1));
+        assertTrue(view.redo());
+        assertSame(bottom,view.findItem(0,0));
+    }
+
+    @Test
+    public void typedQueries_onlySearchTheirLayer() {
+        MainView view = new MainView(null);
+        Node a = new Node(0,0,view,"a");
+        Node b = new Node(1000,0,view,"b");
+        view.addDrawable(a);
+        view.addDrawable(b);
+        Edge edge = new Edge(a,b,"e",view,Edge.DEFAULT_EDGE_COLOR,"","",ArrowShape.NONE,Edge.DEFAULT_TEXT_SIZE);
+        view.addDrawable(edge);
+        //both contain the point, each query only sees its own layer
+        assertSame(a,view.findItem(0,0,DrawableType.NODE));
+        assertSame(edge,view.findItem(0,0,DrawableType.EDGE));
+        assertSame(a,view.findItem(0,0));
+        assertNull(view.findItem(500,0,DrawableType.NODE));
+
+        view.deleteItem(a);
+        assertEquals(1,view.getNodes().size());
+        assertTrue(view.getEdges().isEmpty());
+        assertNull(view.findItem(500,0));
+    }
+}
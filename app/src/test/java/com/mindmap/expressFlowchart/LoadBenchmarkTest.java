@@ -0,0 +1,127 @@
+package com.mindmap.expressFlowchart;
+
+import com.mindmap.expressFlowchart.document.ArrowShape;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Loading synthetic maps through MainView.addItems, edges are resolved through the id index.
+ * The baseline resolves them the way Edge.fromJson used to, by scanning every node loaded so far.
+ */
+public class LoadBenchmarkTest {
+
+    private static JSONArray syntheticMap(int nodeCount,int edgeCount,long seed){
+        Random random = new Random(seed);
+        MainView source = new MainView(null);
+        Node[] nodes = new Node[nodeCount];
+        JSONArray items = new JSONArray();
+        for (int i = 0; i < nodeCount; i++) {
+            nodes[i] = new Node(random.nextFloat()*20000,random.nextFloat()*20000,source,"node "+i);
+            items.put(nodes[i].toJson());
+        }
+        for (int i = 0; i < edgeCount; i++) {
+            Node from = nodes[random.nextInt(nodeCount)];
+            Node to = nodes[random.nextInt(nodeCount)];
+            if(from == to)
+                to = nodes[(random.nextInt(nodeCount-1)+1+indexOf(nodes,from)) % nodeCount];
+            Edge edge = new Edge(from,to,FileHelper.getUniqueID(),source,Edge.DEFAULT_EDGE_COLOR,"edge "+i,"",ArrowShape.END,Edge.DEFAULT_TEXT_SIZE);
+            items.put(edge.toJson());
+        }
+        return items;
+    }
+
+    private static int indexOf(Node[] nodes,Node node){
+        for (int i = 0; i < nodes.length; i++)
+            if(nodes[i] == node)
+                return i;
+        return -1;
+    }
+
+    private static void scanLoad(JSONArray items,MainView view) throws JSONException {
+        //the file ids of the nodes loaded so far, loaded nodes get new keys
+        List<String> fileIds = new ArrayList<>();
+        for (int i = 0; i < items.length(); i++) {
+            JSONObject item = items.getJSONObject(i);
+            if (item.getString( FileHelper.ITEM_TYPE_KEY).equals(Node.class.getName())) {
+                view.addDrawable(Node.fromJson(item,view));
+                fileIds.add(item.getString( FileHelper.ITEM_ID_KEY));
+                continue;
+            }
+            Node startNode = null, endNode = null;
+            String startId = item.getString( FileHelper.EdgeSchema.EDGE_START_NODE_KEY);
+            String endId = item.getString( FileHelper.EdgeSchema.EDGE_END_NODE_KEY);
+            for (int j = 0; j < fileIds.size(); j++) {
+                if (fileIds.get(j).equals(startId)) startNode = view.getNodes().get(j);
+                if (fileIds.get(j).equals(endId)) endNode = view.getNodes().get(j);
+            }
+            view.addDrawable(new Edge(startNode,endNode,item.getString( FileHelper.ITEM_ID_KEY),view,
+                    item.getInt( FileHelper.EdgeSchema.EDGE_COLOR_KEY),"","",ArrowShape.END,Edge.DEFAULT_TEXT_SIZE));
+        }
+    }
+
+    @Test
+    public void addItems_resolvesEveryEdge() throws JSONException {
+        JSONArray items = syntheticMap(200,300,1);
+        MainView view = new MainView(null);
+        view.addItems(items);
+        assertEquals(200,view.getNodes().size());
+        assertEquals(300,view.getEdges().size());
+        //loaded items get new keys, node titles tell which file node an edge ends at
+        Map<String,String> titles = new HashMap<>();
+        for (int i = 0; i < 200; i++)
+            titles.put(items.getJSONObject(i).getString( FileHelper.ITEM_ID_KEY),items.getJSONObject(i).getString( FileHelper.NodeSchema.NODE_TITLE_KEY));
+        for (int i = 200; i < 500; i++) {
+            JSONObject item = items.getJSONObject(i);
+            Edge edge = view.getEdges().get(i-200);
+            assertSame(edge,view.getDrawable(edge.getKey()));
+            assertEquals(item.getString( FileHelper.ITEM_ID_KEY),edge.getId());
+            assertEquals(titles.get(item.getString( FileHelper.EdgeSchema.EDGE_START_NODE_KEY)),edge.getFromNode().getTitle());
+            assertEquals(titles.get(item.getString( FileHelper.EdgeSchema.EDGE_END_NODE_KEY)),edge.getToNode().getTitle());
+        }
+        //deleting a node drops it and its edges from the index
+        Node node = view.getNodes().get(0);
+        assertSame(node,view.getNode(node.getKey()));
+        Edge incident = view.getIncidentEdges(node).isEmpty() ? null : view.getIncidentEdges(node).get(0);
+        view.deleteItem(node);
+        assertNull(view.getNode(node.getKey()));
+        if(incident != null)
+            assertNull(view.getDrawable(incident.getKey()));
+    }
+
+    @Test
+    public void benchmark_addItemsScalesLinearly() throws JSONException {
+        //timings, run with -Dbenchmarks=true
+        Assume.assumeTrue(Boolean.getBoolean("benchmarks"));
+        int[][] sizes = {{750,1000},{1500,2000},{3000,4000}};
+        long indexed = 0, scanned = 0;
+        for (int[] size : sizes) {
+            JSONArray items = syntheticMap(size[0],size[1],size[0]);
+            //warm up both paths once
+            new MainView(null).addItems(items);
+            scanLoad(items,new MainView(null));
+
+            long start = System.nanoTime();
+            new MainView(null).addItems(items);
+            indexed = System.nanoTime()-start;
+            start = System.nanoTime();
+            scanLoad(items,new MainView(null));
+            scanned = System.nanoTime()-start;
+            System.out.println(String.format("load %d nodes %d edges: id index %.1f ms, scan %.1f ms",
+                    size[0],size[1],indexed/1e6,scanned/1e6));
+        }
+        //at 3000 nodes and 4000 edges the scan compares 12 million ids
+        assertTrue("indexed "+indexed+"ns, scan "+scanned+"ns",indexed < scanned);
+    }
+}
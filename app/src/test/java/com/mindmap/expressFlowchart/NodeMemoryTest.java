@@ -0,0 +1,108 @@
+package com.mindmap.expressFlowchart;
+
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+
+import com.mindmap.expressFlowchart.document.GraphDocument;
+import com.mindmap.expressFlowchart.document.GraphNode;
+import com.mindmap.expressFlowchart.document.NodeShape;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Heap used per node, measured with the collector run between snapshots.
+ * The before figure comes from a copy of what every Node allocated when it held its own fields and paints
+ */
+public class NodeMemoryTest {
+
+    private static final int NODES = 50000;
+
+    //per node state of the old Node, its own fields, two Paints, a Path, a Rect and a label cache
+    @SuppressWarnings("unused")
+    private static class OldNode {
+        int colorID = Node.DEFAULT_NODE_COLOR;
+        float x,y,r = Node.DEFAULT_NODE_RADIUS;
+        String id = FileHelper.getUniqueID();
+        String title,description = "";
+        NodeShape shape = NodeShape.CIRCLE;
+        float textSize = Node.DEFAULT_TEXT_SIZE;
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        Path path = new Path();
+        Paint titlePaint = new Paint();
+        MainView parentView;
+        float pathX,pathY,pathR = -1;
+        NodeShape pathShape;
+        Rect titleBounds = new Rect();
+        String labelSource,label = "";
+        float labelTextSize,labelMaxWidth,labelWidth;
+        float[] labelWidths = new float[32];
+        int revision;
+        Object displayList;
+
+        OldNode(float x,float y,MainView view,String title) {
+            this.x = x;
+            this.y = y;
+            this.parentView = view;
+            this.title = title;
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                break;
+            }
+            used = Math.min(used,runtime.totalMemory()-runtime.freeMemory());
+        }
+        return used;
+    }
+
+    @Test
+    public void benchmark_bytesPerNodeBeforeAndAfter() {
+        //heap measured around collections, run with -Dbenchmarks=true
+        Assume.assumeTrue(Boolean.getBoolean("benchmarks"));
+        MainView view = new MainView(null);
+        long start = usedHeap();
+        List<OldNode> oldNodes = new ArrayList<>(NODES);
+        for (int i = 0; i < NODES; i++)
+            oldNodes.add(new OldNode(i,i,view,"node "+i));
+        long before = (usedHeap()-start)/NODES;
+        assertEquals(NODES,oldNodes.size());
+        oldNodes = null;
+
+        start = usedHeap();
+        GraphDocument document = new GraphDocument();
+        for (int i = 0; i < NODES; i++)
+            document.add(new GraphNode(null,i,i,"node "+i));
+        long headless = (usedHeap()-start)/NODES;
+        assertEquals(NODES,document.getNodes().size());
+        document = null;
+
+        start = usedHeap();
+        List<Node> nodes = new ArrayList<>(NODES);
+        GraphDocument rendered = new GraphDocument();
+        for (int i = 0; i < NODES; i++) {
+            GraphNode model = new GraphNode(null,i,i,"node "+i);
+            rendered.add(model);
+            nodes.add(new Node(model,view));
+        }
+        long after = (usedHeap()-start)/NODES;
+        assertEquals(NODES,nodes.size());
+
+        System.out.println(String.format("bytes per node: old Node %d, document node %d, document node with renderer %d, store columns %d",
+                before,headless,after,rendered.getNodeStore().getColumnBytes()/NODES));
+        assertTrue("old "+before+" new "+after,after < before);
+    }
+}
@@ -0,0 +1,147 @@
+package com.mindmap.expressFlowchart;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that hit testing and viewport queries through QuadTree give the same results
+ * as the linear scans MainView used to do
+ */
+public class QuadTreeTest {
+
+    /** circle shaped item, contains() is tighter than its bounding box like Node */
+    private static class Disc {
+        float x,y,r;
+        Disc(float x,float y,float r){
+            this.x = x;
+            this.y = y;
+            this.r = r;
+        }
+        boolean contains(float px,float py){
+            return (px-x)*(px-x) + (py-y)*(py-y) <= r*r;
+        }
+    }
+
+    private static Disc linearFind(List<Disc> all,float x,float y){
+        for (Disc disc : all)
+            if(disc.contains(x,y))
+                return disc;
+        return null;
+    }
+
+    private static Disc indexFind(QuadTree<Disc> index,float x,float y){
+        ArrayList<Disc> candidates = new ArrayList<>();
+        index.query(x,y,candidates);
+        for (Disc disc : candidates)
+            if(disc.contains(x,y))
+                return disc;
+        return null;
+    }
+
+    private static void insert(QuadTree<Disc> index,Disc disc){
+        index.insert(disc,disc.x-disc.r,disc.y-disc.r,disc.x+disc.r,disc.y+disc.r);
+    }
+
+    private static void assertSameHits(List<Disc> all,QuadTree<Disc> index,Random random,float extent){
+        for (int i = 0; i < 5000; i++) {
+            float x = random.nextFloat()*extent - extent/2;
+            float y = random.nextFloat()*extent - extent/2;
+            assertSame(linearFind(all,x,y),indexFind(index,x,y));
+        }
+    }
+
+    @Test
+    public void hitTest_matchesLinearScan() {
+        Random random = new Random(42);
+        List<Disc> all = new ArrayList<>();
+        QuadTree<Disc> index = new QuadTree<>();
+        for (int i = 0; i < 3000; i++) {
+            Disc disc = new Disc(random.nextFloat()*8000-4000,random.nextFloat()*8000-4000,20+random.nextFloat()*200);
+            all.add(disc);
+            insert(index,disc);
+        }
+        assertEquals(all.size(),index.size());
+        assertSameHits(all,index,random,8000);
+    }
+
+    @Test
+    public void hitTest_matchesLinearScanAfterMovesAndDeletes() {
+        Random random = new Random(7);
+        List<Disc> all = new ArrayList<>();
+        QuadTree<Disc> index = new QuadTree<>();
+        for (int i = 0; i < 2000; i++) {
+            Disc disc = new Disc(random.nextFloat()*4000-2000,random.nextFloat()*4000-2000,20+random.nextFloat()*100);
+            all.add(disc);
+            insert(index,disc);
+        }
+        for (int i = 0; i < 1000; i++) {
+            Disc disc = all.get(random.nextInt(all.size()));
+            disc.x += random.nextFloat()*600-300;
+            disc.y += random.nextFloat()*600-300;
+            index.update(disc,disc.x-disc.r,disc.y-disc.r,disc.x+disc.r,disc.y+disc.r);
+        }
+        for (int i = 0; i < 500; i++) {
+            Disc disc = all.remove(random.nextInt(all.size()));
+            index.remove(disc);
+        }
+        assertEquals(all.size(),index.size());
+        assertSameHits(all,index,random,5000);
+    }
+
+    @Test
+    public void hitTest_growsToFarAwayItems() {
+        QuadTree<Disc> index = new QuadTree<>();
+        Disc near = new Disc(0,0,100);
+        Disc far = new Disc(-250000,180000,100);
+        insert(index,near);
+        insert(index,far);
+        assertSame(near,indexFind(index,10,10));
+        assertSame(far,indexFind(index,-250010,180010));
+        assertNull(indexFind(index,5000,5000));
+    }
+
+    @Test
+    public void hitTest_overlapsReturnOldestFirst() {
+        QuadTree<Disc> index = new QuadTree<>();
+        Disc first = new Disc(0,0,100);
+        Disc second = new Disc(10,10,100);
+        insert(index,first);
+        insert(index,second);
+        assertSame(first,indexFind(index,5,5));
+        //moving an item keeps its place in the order
+        first.x = 1;
+        index.update(first,first.x-first.r,first.y-first.r,first.x+first.r,first.y+first.r);
+        assertSame(first,indexFind(index,5,5));
+        index.remove(first);
+        assertSame(second,indexFind(index,5,5));
+    }
+
+    @Test
+    public void viewportQuery_matchesLinearScanInOrder() {
+        Random random = new Random(3);
+        List<Disc> all = new ArrayList<>();
+        QuadTree<Disc> index = new QuadTree<>();
+        for (int i = 0; i < 3000; i++) {
+            Disc disc = new Disc(random.nextFloat()*20000-10000,random.nextFloat()*20000-10000,20+random.nextFloat()*200);
+            all.add(disc);
+            insert(index,disc);
+        }
+        for (int i = 0; i < 200; i++) {
+            float left = random.nextFloat()*20000-10000;
+            float top = random.nextFloat()*20000-10000;
+            float right = left+1080, bottom = top+1920;
+            List<Disc> expected = new ArrayList<>();
+            for (Disc disc : all)
+                if(disc.x-disc.r <= right && disc.x+disc.r >= left && disc.y-disc.r <= bottom && disc.y+disc.r >= top)
+                    expected.add(disc);
+            List<Disc> visible = new ArrayList<>();
+            index.query(left,top,right,bottom,visible);
+            assertEquals(expected,visible);
+        }
+    }
+}
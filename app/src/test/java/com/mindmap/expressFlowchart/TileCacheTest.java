@@ -0,0 +1,87 @@
+package com.mindmap.expressFlowchart;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Zoom levels, LRU eviction and invalidation of TileCache
+ */
+public class TileCacheTest {
+
+    @Test
+    public void levelFor_neverScalesTilesUp() {
+        assertEquals(0,TileCache.levelFor(1f));
+        assertEquals(1,TileCache.levelFor(1.2f));
+        assertEquals(2,TileCache.levelFor(4f));
+        assertEquals(-1,TileCache.levelFor(0.5f));
+        assertEquals(-3,TileCache.levelFor(0.1f));
+        for (float scale = 0.1f; scale <= 4f; scale += 0.01f)
+            assertTrue(TileCache.levelScale(TileCache.levelFor(scale)) >= scale*0.9999f);
+        assertEquals(TileCache.TILE_SIZE/4f,TileCache.tileWorldSize(2),0);
+    }
+
+    @Test
+    public void key_isUniquePerTile() {
+        assertNotEquals(TileCache.key(0,1,2),TileCache.key(0,2,1));
+        assertNotEquals(TileCache.key(0,-1,0),TileCache.key(0,0,-1));
+        assertNotEquals(TileCache.key(1,5,5),TileCache.key(2,5,5));
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsedOverBudget() {
+        TileCache cache = new TileCache(300);
+        cache.put(0,0,0,null,100);
+        cache.put(0,1,0,null,100);
+        cache.put(0,2,0,null,100);
+        assertEquals(300,cache.getBytes());
+        //touch the oldest so the second one is evicted next
+        assertNotNull(cache.get(0,0,0));
+        cache.put(0,3,0,null,100);
+        assertEquals(3,cache.size());
+        assertEquals(300,cache.getBytes());
+        assertNotNull(cache.get(0,0,0));
+        assertNull(cache.get(0,1,0));
+        assertNotNull(cache.get(0,3,0));
+
+        //a tile larger than the budget still gets kept on its own
+        cache.put(0,4,0,null,1000);
+        assertEquals(1,cache.size());
+        assertNotNull(cache.get(0,4,0));
+
+        cache.setMaxBytes(10);
+        assertEquals(0,cache.size());
+        assertEquals(0,cache.getBytes());
+    }
+
+    @Test
+    public void invalidate_dropsIntersectingTilesOfLevelOnly() {
+        TileCache cache = new TileCache(Long.MAX_VALUE);
+        float size = TileCache.tileWorldSize(0);
+        for (int col = -2; col < 2; col++)
+            for (int row = -2; row < 2; row++) {
+                cache.put(0,col,row,null,10);
+                cache.put(1,col,row,null,10);
+            }
+        //node around the origin touches the four tiles meeting there at level 0
+        cache.invalidate(0,-10,-10,10,10);
+        assertNull(cache.get(0,0,0));
+        assertNull(cache.get(0,-1,0));
+        assertNull(cache.get(0,0,-1));
+        assertNull(cache.get(0,-1,-1));
+        assertNotNull(cache.get(0,1,1));
+        assertNotNull(cache.get(1,0,0));
+        assertEquals(28,cache.size());
+        assertEquals(280,cache.getBytes());
+
+        cache.invalidate(0,size+1,size+1,size+2,size+2);
+        assertNull(cache.get(0,1,1));
+        assertTrue(cache.hasLevel(0));
+        cache.invalidate(0,-1e6f,-1e6f,1e6f,1e6f);
+        assertFalse(cache.hasLevel(0));
+        assertTrue(cache.hasLevel(1));
+        cache.clear();
+        assertFalse(cache.hasLevel(1));
+        assertEquals(0,cache.getBytes());
+    }
+}
@@ -0,0 +1,88 @@
+package com.mindmap.expressFlowchart;
+
+import com.mindmap.expressFlowchart.document.ArrowShape;
+import com.mindmap.expressFlowchart.document.EditCommand;
+import com.mindmap.expressFlowchart.document.NodeShape;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Undo and redo through MainView keep its renderers and indexes in step with the document
+ */
+public class UndoTest {
+
+    private static Edge connect(MainView view,Node from,Node to){
+        Edge edge = new Edge(from,to,null,view,Edge.DEFAULT_EDGE_COLOR,"","",ArrowShape.NONE,Edge.DEFAULT_TEXT_SIZE);
+        view.addDrawable(edge);
+        return edge;
+    }
+
+    @Test
+    public void deleteNode_undoBringsBackItsEdges() {
+        MainView view = new MainView(null);
+        view.addNode(0,0,"a","",NodeShape.CIRCLE,Node.DEFAULT_NODE_COLOR,Node.DEFAULT_NODE_RADIUS);
+        view.addNode(500,0,"b","",NodeShape.SQUARE,Node.DEFAULT_NODE_COLOR,Node.DEFAULT_NODE_RADIUS);
+        Node a = view.getNodes().get(0), b = view.getNodes().get(1);
+        Edge ab = connect(view,a,b);
+        assertEquals(2,view.getHistory().getUndoCount());
+
+        view.deleteItem(a);
+        assertEquals(1,view.getNodes().size());
+        assertTrue(view.getEdges().isEmpty());
+
+        assertTrue(view.undo());
+        assertEquals(2,view.getNodes().size());
+        assertSame(ab,view.getEdges().get(0));
+        assertSame(a,view.getNode(a.getKey()));
+        assertSame(ab,view.getDrawable(ab.getKey()));
+        assertSame(ab,view.getIncidentEdges(b).get(0));
+        assertTrue(view.getSavePending());
+
+        assertTrue(view.redo());
+        assertNull(view.getNode(a.getKey()));
+        assertTrue(view.getIncidentEdges(b).isEmpty());
+        assertFalse(view.redo());
+
+        //undo the delete and the add of b, a stays
+        view.undo();
+        view.undo();
+        assertEquals(1,view.getNodes().size());
+        assertSame(a,view.getNodes().get(0));
+        assertTrue(view.getEdges().isEmpty());
+    }
+
+    @Test
+    public void moveNode_undoMovesItsEdgesBack() {
+        MainView view = new MainView(null);
+        view.addNode(0,0,"a","",NodeShape.CIRCLE,Node.DEFAULT_NODE_COLOR,Node.DEFAULT_NODE_RADIUS);
+        view.addNode(500,0,"b","",NodeShape.CIRCLE,Node.DEFAULT_NODE_COLOR,Node.DEFAULT_NODE_RADIUS);
+        Node a = view.getNodes().get(0);
+        Edge edge = connect(view,a,view.getNodes().get(1));
+        int revision = edge.getRevision();
+
+        view.getHistory().endMerge();
+        view.moveNode(a,-200,300);
+        view.getHistory().record(EditCommand.move(a.getModel(),0,0));
+        view.getHistory().endMerge();
+        assertNotEquals(revision,edge.getRevision());
+
+        view.undo();
+        assertEquals(0,a.getX(),0);
+        assertEquals(0,a.getY(),0);
+        assertEquals(0,edge.getModel().getStartX(),0);
+        view.redo();
+        assertEquals(-200,edge.getModel().getStartX(),0);
+        assertEquals(300,edge.getModel().getStartY(),0);
+    }
+
+    @Test
+    public void resetSpace_forgetsHistory() {
+        MainView view = new MainView(null);
+        view.addNode(0,0,"a","",NodeShape.CIRCLE,Node.DEFAULT_NODE_COLOR,Node.DEFAULT_NODE_RADIUS);
+        view.resetSpace(1f,0f,0f);
+        assertFalse(view.undo());
+        assertTrue(view.isEmpty());
+    }
+}
@@ -0,0 +1,190 @@
+package com.mindmap.expressFlowchart.document;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * The binary .map format against the JSON one, and how much smaller and faster it is
+ */
+public class BinaryMapTest {
+
+    private static GraphDocument readBinary(byte[] bytes) throws IOException {
+        GraphDocument document = new GraphDocument();
+        new BinaryMapReader(document,document.getCamera()).read(new ByteArrayInputStream(bytes),bytes.length);
+        return document;
+    }
+
+    private static GraphDocument readJson(byte[] bytes) throws IOException {
+        GraphDocument document = new GraphDocument();
+        new MapReader(document,document.getCamera()).read(new ByteArrayInputStream(bytes),bytes.length);
+        return document;
+    }
+
+    private static GraphDocument mixedDocument() {
+        GraphDocument document = new GraphDocument();
+        document.getCamera().set(0.3f,-1234.5f,77.25f);
+        GraphNode a = new GraphNode(null,10.5f,-20f,80,"a/b \"c\"","line\n\u00e9 \u4e2d",0x8000FF00,NodeShape.DIAMOND,32);
+        GraphNode b = new GraphNode("e3a1b7c2-5a44-4c1e-9d2f-6f0b1c2d3e4f",400,300,"uuid");
+        GraphNode c = new GraphNode("custom",-1e-3f,Float.MAX_VALUE,"custom");
+        GraphNode d = new GraphNode("E3A1B7C2-5A44-4C1E-9D2F-6F0B1C2D3E4F",0,0,"upper case uuid");
+        GraphNode e = new GraphNode("007",0,0,"padded number");
+        for (GraphNode node : new GraphNode[]{a,b,c,d,e})
+            document.add(node);
+        GraphEdge ab = new GraphEdge(null,a,b,0xFF000000,"joins","",ArrowShape.DOUBLE,28);
+        ab.setStrokeWidth(13.5f);
+        document.add(ab);
+        document.add(new GraphEdge("edge",c,c,GraphEdge.DEFAULT_COLOR,"","",ArrowShape.NONE,GraphEdge.DEFAULT_TEXT_SIZE));
+        document.add(new GraphEdge(GraphItem.newId(),e,d,0,"","",ArrowShape.START,GraphEdge.DEFAULT_TEXT_SIZE));
+        //an edge still being drawn is not saved
+        document.add(new GraphEdge(null,a,50,50));
+        document.bringToFront(a);
+        return document;
+    }
+
+    @Test
+    public void converter_roundTripsBytes() throws IOException {
+        byte[] json = TestDocuments.json(mixedDocument());
+
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        MapConverter.jsonToBinary(new ByteArrayInputStream(json),binary);
+        ByteArrayOutputStream back = new ByteArrayOutputStream();
+        MapConverter.binaryToJson(new ByteArrayInputStream(binary.toByteArray()),back);
+        assertEquals(new String(json,"UTF-8"),back.toString("UTF-8"));
+
+        ByteArrayOutputStream binaryAgain = new ByteArrayOutputStream();
+        MapConverter.jsonToBinary(new ByteArrayInputStream(back.toByteArray()),binaryAgain);
+        assertArrayEquals(binary.toByteArray(),binaryAgain.toByteArray());
+    }
+
+    @Test
+    public void read_matchesJsonLoad() throws IOException {
+        GraphDocument source = mixedDocument();
+        byte[] binary = TestDocuments.binary(source);
+        BufferedInputStream in = new BufferedInputStream(new ByteArrayInputStream(binary));
+        assertTrue(BinaryMapFormat.isBinary(in));
+        assertFalse(BinaryMapFormat.isBinary(new BufferedInputStream(new ByteArrayInputStream(TestDocuments.json(source)))));
+        assertFalse(BinaryMapFormat.isBinary(new BufferedInputStream(new ByteArrayInputStream(new byte[2]))));
+
+        GraphDocument fromBinary = new GraphDocument();
+        BinaryMapReader reader = new BinaryMapReader(fromBinary,fromBinary.getCamera());
+        //the check left the stream where it was
+        reader.read(in,binary.length);
+        assertEquals(8,reader.getItemsRead());
+        GraphDocument fromJson = readJson(TestDocuments.json(source));
+        //plain keys are dropped as with JSON, ids that are not keys are kept
+        assertNull(fromBinary.getNodes().get(4).getExternalId());
+        assertEquals("custom",fromBinary.getNodes().get(1).getExternalId());
+        assertEquals(0.3f,fromBinary.getCamera().getScale(),0);
+        assertEquals(0x8000FF00,fromBinary.getNodes().get(4).getColor());
+        assertEquals(Float.MAX_VALUE,fromBinary.getNodes().get(1).getY(),0);
+        assertEquals(13.5f,fromBinary.getEdges().get(0).getStrokeWidth(),0);
+        assertEquals(fromJson.getNodes().size(),fromBinary.getNodes().size());
+        for (int i = 0; i < fromJson.getNodes().size(); i++) {
+            GraphNode expected = fromJson.getNodes().get(i), actual = fromBinary.getNodes().get(i);
+            assertEquals(expected.getExternalId(),actual.getExternalId());
+            assertEquals(expected.getTitle(),actual.getTitle());
+            assertEquals(expected.getDescription(),actual.getDescription());
+            assertEquals(expected.getShape(),actual.getShape());
+            assertEquals(expected.getX(),actual.getX(),0);
+        }
+        for (int i = 0; i < fromJson.getEdges().size(); i++) {
+            GraphEdge expected = fromJson.getEdges().get(i), actual = fromBinary.getEdges().get(i);
+            assertEquals(expected.getFrom().getTitle(),actual.getFrom().getTitle());
+            assertEquals(expected.getTo().getTitle(),actual.getTo().getTitle());
+            assertEquals(expected.getArrowShape(),actual.getArrowShape());
+            assertEquals(expected.getColor(),actual.getColor());
+        }
+    }
+
+    @Test
+    public void read_rejectsOtherFiles() throws IOException {
+        byte[] binary = TestDocuments.binary(mixedDocument());
+        byte[] newer = binary.clone();
+        newer[BinaryMapFormat.MAGIC.length] = (byte) (BinaryMapFormat.VERSION+1);
+        byte[] truncated = new byte[binary.length-3];
+        System.arraycopy(binary,0,truncated,0,truncated.length);
+        for (byte[] bad : new byte[][]{TestDocuments.json(mixedDocument()),newer,truncated,new byte[0]}) {
+            try {
+                readBinary(bad);
+                fail();
+            } catch (IOException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void varints_roundTrip() throws IOException {
+        long[] values = {0,1,127,128,16383,16384,0xFFFFFFFFL,Long.MAX_VALUE,-1};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (long value : values)
+            BinaryMapFormat.writeVarint(out,value);
+        assertEquals(1+1+1+2+2+3+5+9+10,bytes.size());
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        for (long value : values)
+            assertEquals(value,BinaryMapFormat.readVarint(in));
+        assertEquals(-1,BinaryMapFormat.decimalId("012"));
+        assertEquals(12,BinaryMapFormat.decimalId("12"));
+        assertNull(BinaryMapFormat.uuidId("E3A1B7C2-5A44-4C1E-9D2F-6F0B1C2D3E4F"));
+    }
+
+    @Test
+    public void write_isAQuarterOfJson() throws IOException {
+        for (boolean uuids : new boolean[]{false,true}) {
+            GraphDocument source = TestDocuments.random(21,2000,3000,50000,uuids);
+            assertTrue(TestDocuments.binary(source).length*4 < TestDocuments.json(source).length);
+        }
+    }
+
+    @Test
+    public void benchmark_sizeAndTime() throws IOException, JSONException {
+        //timings, run with -Dbenchmarks=true
+        Assume.assumeTrue(Boolean.getBoolean("benchmarks"));
+        for (boolean uuids : new boolean[]{false,true}) {
+            GraphDocument source = TestDocuments.random(21,10000,15000,50000,uuids);
+            long treeSave = 0, jsonSave = 0, binarySave = 0, treeLoad = 0, jsonLoad = 0, binaryLoad = 0;
+            byte[] json = null, binary = null;
+            //the second round is measured
+            for (int round = 0; round < 2; round++) {
+                long start = System.nanoTime();
+                byte[] tree = source.toJson().toString().getBytes("UTF-8");
+                treeSave = System.nanoTime()-start;
+                start = System.nanoTime();
+                json = TestDocuments.json(source);
+                jsonSave = System.nanoTime()-start;
+                start = System.nanoTime();
+                binary = TestDocuments.binary(source);
+                binarySave = System.nanoTime()-start;
+
+                start = System.nanoTime();
+                GraphDocument.fromJson(new JSONObject(new String(tree,"UTF-8")));
+                treeLoad = System.nanoTime()-start;
+                start = System.nanoTime();
+                readJson(json);
+                jsonLoad = System.nanoTime()-start;
+                start = System.nanoTime();
+                assertEquals(15000,readBinary(binary).getEdges().size());
+                binaryLoad = System.nanoTime()-start;
+            }
+            System.out.println(String.format("%s ids, 10000 nodes 15000 edges: json %d KB, binary %d KB",
+                    uuids ? "uuid" : "key",json.length/1024,binary.length/1024));
+            System.out.println(String.format("  save: org.json %.1f ms, streamed json %.1f ms, binary %.1f ms",
+                    treeSave/1e6,jsonSave/1e6,binarySave/1e6));
+            System.out.println(String.format("  load: org.json %.1f ms, streamed json %.1f ms, binary %.1f ms",
+                    treeLoad/1e6,jsonLoad/1e6,binaryLoad/1e6));
+            assertTrue(binary.length*4 < json.length);
+            assertTrue("binary "+binaryLoad+"ns, org.json "+treeLoad+"ns",binaryLoad < treeLoad);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.mindmap.expressFlowchart.document;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Undo and redo of edit commands applied to a document on its own
+ */
+public class EditHistoryTest {
+
+    //counts what the commands ask for before passing it on to the document
+    private static class CountingEditor implements GraphEditor {
+        final GraphDocument document;
+        int calls = 0;
+
+        CountingEditor(GraphDocument document) {
+            this.document = document;
+        }
+
+        @Override
+        public void addItem(GraphItem item) {
+            calls++;
+            document.addItem(item);
+        }
+
+        @Override
+        public void removeItem(GraphItem item) {
+            calls++;
+            document.removeItem(item);
+        }
+
+        @Override
+        public void moveNode(GraphNode node,float x,float y) {
+            calls++;
+            document.moveNode(node,x,y);
+        }
+
+        @Override
+        public void restyle(GraphItem item,ItemStyle style) {
+            calls++;
+            document.restyle(item,style);
+        }
+
+        @Override
+        public void bringToFront(GraphItem item) {
+            calls++;
+            document.bringToFront(item);
+        }
+
+        @Override
+        public void setOrder(GraphItem item,long order) {
+            calls++;
+            document.setOrder(item,order);
+        }
+    }
+
+    private static GraphEdge connect(GraphDocument document,EditHistory history,GraphNode from,GraphNode to) {
+        GraphEdge edge = new GraphEdge(null,from,to,GraphEdge.DEFAULT_COLOR,"","",ArrowShape.NONE,GraphEdge.DEFAULT_TEXT_SIZE);
+        document.add(edge);
+        history.record(EditCommand.add(edge));
+        return edge;
+    }
+
+    private static GraphNode addNode(GraphDocument document,EditHistory history,float x,float y,String title) {
+        GraphNode node = new GraphNode(null,x,y,title);
+        document.add(node);
+        history.record(EditCommand.add(node));
+        history.endMerge();
+        return node;
+    }
+
+    @Test
+    public void raise_isUndoneWithTheEditItWasMadeFor() {
+        GraphDocument document = new GraphDocument();
+        EditHistory history = new EditHistory(1 << 20);
+        GraphNode a = addNode(document,history,0,0,"a");
+        GraphNode b = addNode(document,history,10,0,"b");
+        GraphNode c = addNode(document,history,20,0,"c");
+
+        //a drag of b, brought to the front as it starts
+        history.record(EditCommand.raise(b,document.getOrder(b)));
+        document.bringToFront(b);
+        for (int i = 1; i <= 3; i++) {
+            float fromX = b.getX(), fromY = b.getY();
+            document.moveNode(b,10,10*i);
+            history.record(EditCommand.move(b,fromX,fromY));
+        }
+        history.endMerge();
+        assertEquals(Arrays.asList(a,c,b),document.inZOrder(document.getNodes()));
+        assertEquals(4,history.getUndoCount());
+
+        assertTrue(document.isInFront(b));
+
+        //one undo puts it back where it was and beneath c again, nothing else is touched
+        CountingEditor editor = new CountingEditor(document);
+        assertTrue(history.undo(editor));
+        assertEquals(2,editor.calls);
+        assertEquals(0,b.getY(),0);
+        assertEquals(Arrays.asList(a,b,c),document.inZOrder(document.getNodes()));
+        assertTrue(history.redo(document));
+        assertEquals(30,b.getY(),0);
+        assertEquals(Arrays.asList(a,c,b),document.inZOrder(document.getNodes()));
+
+        //from the bottom
+        history.record(EditCommand.raise(a,document.getOrder(a)));
+        document.bringToFront(a);
+        assertTrue(document.isInFront(a));
+        history.undo(document);
+        assertEquals(Arrays.asList(a,c,b),document.inZOrder(document.getNodes()));
+        assertFalse(document.isInFront(a));
+    }
+
+    @Test
+    public void everyCommand_undoesAndRedoes() {
+        GraphDocument document = new GraphDocument();
+        EditHistory history = new EditHistory(1 << 20);
+        GraphNode a = addNode(document,history,0,0,"a");
+        GraphNode b = addNode(document,history,500,0,"b");
+        GraphNode c = addNode(document,history,0,500,"c");
+        GraphEdge ab = connect(document,history,a,b);
+        connect(document,history,c,a);
+
+        ItemStyle before = ItemStyle.of(a);
+        a.setTitle("renamed");
+        a.setShape(NodeShape.DIAMOND);
+        a.setR(140);
+        history.record(EditCommand.restyle(a,before));
+
+        List<GraphEdge> removed = document.remove(a);
+        history.record(EditCommand.delete(a,removed));
+        assertEquals(2,document.getNodes().size());
+        assertTrue(document.getEdges().isEmpty());
+
+        //undo the delete, a comes back with both its edges
+        assertTrue(history.undo(document));
+        assertTrue(document.contains(a));
+        assertEquals(2,document.getIncidentEdges(a).size());
+        assertSame(ab,document.getItem(ab.getKey()));
+        assertEquals("renamed",a.getTitle());
+
+        //undo the restyle
+        history.undo(document);
+        assertEquals("a",a.getTitle());
+        assertEquals(NodeShape.CIRCLE,a.getShape());
+        assertEquals(GraphNode.DEFAULT_RADIUS,a.getR(),0);
+
+        //undo both connects and the add of c
+        history.undo(document);
+        history.undo(document);
+        history.undo(document);
+        assertFalse(document.contains(c));
+        assertTrue(document.getEdges().isEmpty());
+        assertEquals(2,history.getUndoCount());
+
+        //and redo everything
+        while (history.redo(document));
+        assertFalse(history.canRedo());
+        assertFalse(document.contains(a));
+        assertTrue(document.contains(c));
+        assertTrue(document.getEdges().isEmpty());
+        history.undo(document);
+        assertEquals("renamed",a.getTitle());
+        assertEquals(2,document.getEdges().size());
+
+        //a new edit drops what could be redone
+        addNode(document,history,1000,1000,"d");
+        assertFalse(history.canRedo());
+    }
+
+    @Test
+    public void drag_isOneCommand() {
+        GraphDocument document = new GraphDocument();
+        EditHistory history = new EditHistory(1 << 20);
+        GraphNode node = addNode(document,history,0,0,"dragged");
+        long size = history.getSize();
+        for (int i = 1; i <= 100; i++) {
+            float fromX = node.getX(), fromY = node.getY();
+            node.set(i,2*i);
+            history.record(EditCommand.move(node,fromX,fromY));
+        }
+        history.endMerge();
+        assertEquals(2,history.getUndoCount());
+        assertEquals(size+32,history.getSize());
+
+        history.undo(document);
+        assertEquals(0,node.getX(),0);
+        assertEquals(0,node.getY(),0);
+        history.redo(document);
+        assertEquals(100,node.getX(),0);
+        assertEquals(200,node.getY(),0);
+
+        //the next drag is a command of its own
+        node.set(300,300);
+        history.record(EditCommand.move(node,100,200));
+        assertEquals(3,history.getUndoCount());
+    }
+
+    @Test
+    public void history_keepsToItsLimit() {
+        GraphDocument document = new GraphDocument();
+        EditHistory history = new EditHistory(4096);
+        GraphNode node = addNode(document,history,0,0,"");
+        for (int i = 0; i < 1000; i++) {
+            node.set(i+1,0);
+            history.record(EditCommand.move(node,i,0));
+            history.endMerge();
+        }
+        assertTrue(history.getSize() <= 4096);
+        assertTrue(history.getUndoCount() > 50);
+        assertTrue(history.getUndoCount() < 1000);
+        //the oldest moves were forgotten, undoing all that is left stops part way
+        while (history.undo(document));
+        assertTrue(node.getX() > 0);
+
+        while (history.redo(document));
+        assertEquals(1000,node.getX(),0);
+        //the newest edit is kept whatever the limit
+        history.setMaxBytes(0);
+        assertEquals(1,history.getUndoCount());
+    }
+
+    @Test
+    public void undo_costsTheSizeOfTheChange() {
+        GraphDocument document = new GraphDocument();
+        EditHistory history = new EditHistory(1 << 20);
+        for (int i = 0; i < 20000; i++)
+            document.add(new GraphNode(null,i,i,"filler "+i));
+        GraphNode hub = addNode(document,history,0,0,"hub");
+        for (int i = 0; i < 3; i++)
+            connect(document,history,hub,document.getNodes().get(i));
+        history.record(EditCommand.delete(hub,document.remove(hub)));
+
+        CountingEditor editor = new CountingEditor(document);
+        history.undo(editor);
+        //the node and its three edges, nothing else is touched
+        assertEquals(4,editor.calls);
+        assertEquals(3,document.getIncidentEdges(hub).size());
+        editor.calls = 0;
+        history.redo(editor);
+        assertEquals(1,editor.calls);
+        assertFalse(document.contains(hub));
+    }
+}
@@ -0,0 +1,497 @@
+package com.mindmap.expressFlowchart.document;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Edits logged as they are made and replayed onto the base after a crash
+ */
+public class EditJournalTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mLog;
+    private GraphDocument mDocument;
+    private EditHistory mHistory;
+    private EditJournal mJournal;
+
+    @Before
+    public void setUp() {
+        mLog = new File(mFolder.getRoot(),"autosave.journal");
+        mDocument = new GraphDocument();
+        mHistory = new EditHistory(1 << 20);
+        mJournal = new EditJournal(mLog);
+        mHistory.setListener(mJournal);
+    }
+
+    /**
+     * @return the id of the item, its title for one that is known by a key, keys differ after a recovery
+     */
+    private static String name(GraphItem item) {
+        String id = IdRemap.externalId(item.getId());
+        return id != null ? id : "#"+item.getTitle();
+    }
+
+    /**
+     * @return every item by name with what is saved of it, in name order
+     */
+    private static List<String> state(GraphDocument document) {
+        List<String> state = new ArrayList<>();
+        for (GraphNode node : document.getNodes())
+            state.add(name(node)+" node "+node.getX()+","+node.getY()+" r"+node.getR()+" "+node.getTitle()+"|"+node.getDescription()
+                    +" "+Integer.toHexString(node.getColor())+" "+node.getShape()+" "+node.getTextSize());
+        for (GraphEdge edge : document.getEdges())
+            state.add(name(edge)+" edge "+name(edge.getFrom())+"->"+name(edge.getTo())+" "+edge.getTitle()+"|"+edge.getDescription()
+                    +" "+Integer.toHexString(edge.getColor())+" "+edge.getArrowShape()+" "+edge.getStrokeWidth()+" "+edge.getTextSize());
+        Collections.sort(state);
+        return state;
+    }
+
+    private GraphNode addNode(float x,float y,String title) {
+        GraphNode node = new GraphNode(null,x,y,title);
+        mDocument.add(node);
+        mHistory.record(EditCommand.add(node));
+        mHistory.endMerge();
+        return node;
+    }
+
+    private GraphEdge connect(GraphNode from,GraphNode to) {
+        GraphEdge edge = new GraphEdge(null,from,to,GraphEdge.DEFAULT_COLOR,"","",ArrowShape.END,GraphEdge.DEFAULT_TEXT_SIZE);
+        mDocument.add(edge);
+        mHistory.record(EditCommand.add(edge));
+        mHistory.endMerge();
+        return edge;
+    }
+
+    private void drag(GraphNode node,float toX,float toY) {
+        for (int i = 1; i <= 4; i++) {
+            float fromX = node.getX(), fromY = node.getY();
+            mDocument.moveNode(node,fromX+(toX-fromX)*i/4,fromY+(toY-fromY)*i/4);
+            mHistory.record(EditCommand.move(node,fromX,fromY));
+        }
+        mHistory.endMerge();
+    }
+
+    private void delete(GraphItem item) {
+        mHistory.record(EditCommand.delete(item,mDocument.remove(item)));
+        mHistory.endMerge();
+    }
+
+    /**
+     * A document of a few nodes written to base, with the log started on it
+     */
+    private File base(String name) throws IOException {
+        mDocument.getCamera().set(0.75f,10f,-20f);
+        GraphNode a = new GraphNode("a",0,0,"a");
+        GraphNode b = new GraphNode(null,100,0,"b");
+        GraphNode c = new GraphNode("e3a1b7c2-5a44-4c1e-9d2f-6f0b1c2d3e4f",0,100,"c");
+        mDocument.add(a);
+        mDocument.add(b);
+        mDocument.add(c);
+        mDocument.add(new GraphEdge(null,a,b,GraphEdge.DEFAULT_COLOR,"ab","",ArrowShape.NONE,GraphEdge.DEFAULT_TEXT_SIZE));
+        mDocument.add(new GraphEdge("bc",b,c,GraphEdge.DEFAULT_COLOR,"bc","",ArrowShape.NONE,GraphEdge.DEFAULT_TEXT_SIZE));
+        File base = new File(mFolder.getRoot(),name);
+        MapIo.write(mDocument,base,name.endsWith(".mapb"),null);
+        mJournal.start(base,mDocument);
+        return base;
+    }
+
+    private void edit() {
+        GraphNode a = mDocument.getNodes().get(0);
+        GraphNode b = mDocument.getNodes().get(1);
+        GraphNode d = addNode(300,300,"d");
+        GraphEdge da = connect(d,a);
+        drag(a,-50,75);
+
+        ItemStyle before = ItemStyle.of(d);
+        d.setTitle("renamed \u00e9");
+        d.setDescription("line\nbreak");
+        d.setShape(NodeShape.DIAMOND);
+        d.setR(140);
+        d.setColor(0x8000FF00);
+        mHistory.record(EditCommand.restyle(d,before));
+        mHistory.endMerge();
+        before = ItemStyle.of(da);
+        da.setStrokeWidth(21);
+        da.setArrowShape(ArrowShape.DOUBLE);
+        mHistory.record(EditCommand.restyle(da,before));
+        mHistory.endMerge();
+
+        delete(b);
+        assertTrue(mHistory.undo(mDocument));
+        assertTrue(mHistory.redo(mDocument));
+        delete(a);
+        assertTrue(mHistory.undo(mDocument));
+        drag(d,10,10);
+    }
+
+    @Test
+    public void replaysEditsOntoTheBase() throws IOException {
+        base("base.mapb");
+        edit();
+        assertTrue(mJournal.hasEdits());
+        assertTrue(EditJournal.needsRecovery(mLog));
+
+        EditJournal.Recovery recovery = EditJournal.recover(mLog);
+        assertEquals(new File(mFolder.getRoot(),"base.mapb"),recovery.getBase());
+        assertEquals(state(mDocument),state(recovery.getDocument()));
+        assertEquals(0.75f,recovery.getDocument().getCamera().getScale(),0f);
+        assertEquals(-20f,recovery.getDocument().getCamera().getTranslateY(),0f);
+    }
+
+    @Test
+    public void replaysOntoAJsonBase() throws IOException {
+        base("base.map");
+        edit();
+        assertEquals(state(mDocument),state(EditJournal.recover(mLog).getDocument()));
+    }
+
+    /**
+     * A file saved by an earlier run, its ids are the keys of that run
+     */
+    private File savedByAnotherRun() throws IOException {
+        GraphDocument document = new GraphDocument();
+        GraphNode a = new GraphNode("1",0,0,"a");
+        GraphNode b = new GraphNode("2",100,0,"b");
+        document.add(a);
+        document.add(b);
+        document.add(new GraphNode("3",0,100,"c"));
+        document.add(new GraphEdge("4",a,b,GraphEdge.DEFAULT_COLOR,"ab","",ArrowShape.NONE,GraphEdge.DEFAULT_TEXT_SIZE));
+        File file = new File(mFolder.getRoot(),"saved.map");
+        MapIo.write(document,file,false,null);
+        return file;
+    }
+
+    @Test
+    public void replaysEditsOntoALoadedFile() throws Exception {
+        File file = savedByAnotherRun();
+        final List<Runnable> main = new ArrayList<>();
+        ExecutorService worker = Executors.newSingleThreadExecutor();
+        MapIo io = new MapIo(worker,new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                synchronized (main) {
+                    main.add(command);
+                }
+            }
+        });
+        io.load(file,new MapIo.LoadCallback() {
+            @Override
+            public void onItems(List<GraphItem> items) {
+                for (GraphItem item : items)
+                    mDocument.add(item);
+            }
+
+            @Override
+            public void onProgress(long done, long total) {
+            }
+
+            @Override
+            public void onDone(Camera result) {
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                throw new AssertionError(e);
+            }
+
+            @Override
+            public void onCancelled() {
+            }
+        });
+        worker.shutdown();
+        assertTrue(worker.awaitTermination(10,TimeUnit.SECONDS));
+        for (Runnable runnable : main)
+            runnable.run();
+        assertEquals(3,mDocument.getNodes().size());
+        //ids that are keys of the run that saved the file are not kept
+        for (GraphNode node : mDocument.getNodes())
+            assertNull(node.getExternalId());
+
+        mJournal.start(file,mDocument);
+        edit();
+        EditJournal.Recovery recovery = EditJournal.recover(mLog);
+        assertEquals(file,recovery.getBase());
+        assertEquals(state(mDocument),state(recovery.getDocument()));
+    }
+
+    @Test
+    public void replaysANewDocument() throws IOException {
+        mJournal.start(null,mDocument);
+        assertFalse(EditJournal.needsRecovery(mLog));
+        GraphNode a = addNode(0,0,"a");
+        GraphNode b = addNode(10,10,"b");
+        connect(a,b);
+        drag(b,50,50);
+
+        EditJournal.Recovery recovery = EditJournal.recover(mLog);
+        assertNull(recovery.getBase());
+        assertEquals(state(mDocument),state(recovery.getDocument()));
+
+        mJournal.start(null,mDocument);
+        assertFalse(mJournal.hasEdits());
+        assertFalse(EditJournal.needsRecovery(mLog));
+    }
+
+    @Test
+    public void appendCostsAsMuchAsTheEdit() throws IOException {
+        for (int i = 0; i < 20000; i++)
+            mDocument.add(new GraphNode(null,i,i,"node "+i));
+        mJournal.start(null,mDocument);
+        GraphNode node = mDocument.getNodes().get(12345);
+        float fromX = node.getX(), fromY = node.getY();
+        mDocument.moveNode(node,1,2);
+        mHistory.record(EditCommand.move(node,fromX,fromY));
+        mHistory.endMerge();
+        //tag, id and position, nothing of the other 19999 nodes
+        assertEquals(1+1+Integer.toString(node.getKey()).length()+8,mJournal.getSize());
+    }
+
+    @Test
+    public void recordCutShortIsLeftOut() throws IOException {
+        mJournal.start(null,mDocument);
+        GraphNode a = addNode(0,0,"a");
+        List<String> before = state(mDocument);
+        addNode(10,10,"b");
+        mJournal.close();
+
+        RandomAccessFile file = new RandomAccessFile(mLog,"rw");
+        file.setLength(file.length()-3);
+        file.close();
+        EditJournal.Recovery recovery = EditJournal.recover(mLog);
+        assertEquals(1,recovery.getRecords());
+        assertEquals(before,state(recovery.getDocument()));
+        assertEquals(a.getTitle(),recovery.getDocument().getNodes().get(0).getTitle());
+    }
+
+    @Test
+    public void crashAtAnyPointOfACompactionLosesNothing() throws IOException {
+        base("base.mapb");
+        edit();
+        File next = new File(mFolder.getRoot(),"next.mapb");
+        GraphDocument snapshot = mDocument.snapshot();
+        int compaction = mJournal.rotate(next,snapshot);
+        addNode(-10,-10,"after the snapshot");
+        List<String> expected = state(mDocument);
+
+        //not written yet, the old base and every record
+        assertEquals(new File(mFolder.getRoot(),"base.mapb"),EditJournal.recover(mLog).getBase());
+        assertEquals(expected,state(EditJournal.recover(mLog).getDocument()));
+
+        //written but not committed, the records before it are replayed again and change nothing
+        MapIo.write(snapshot,next,true,null);
+        assertEquals(expected,state(EditJournal.recover(mLog).getDocument()));
+
+        mJournal.commit(compaction);
+        EditJournal.Recovery recovery = EditJournal.recover(mLog);
+        assertEquals(next,recovery.getBase());
+        assertEquals(1,recovery.getRecords());
+        assertEquals(expected,state(recovery.getDocument()));
+    }
+
+    @Test
+    public void autosaveLeavesTheUsersFileAlone() throws IOException {
+        File saved = base("saved.mapb");
+        byte[] before = Files.readAllBytes(saved.toPath());
+        edit();
+        File autosave = new File(mFolder.getRoot(),"autosave.mapb");
+        GraphDocument snapshot = mDocument.snapshot();
+        int compaction = mJournal.rotate(autosave,saved,snapshot);
+        MapIo.write(snapshot,autosave,true,null);
+        mJournal.commit(compaction);
+        addNode(-10,-10,"after the autosave");
+
+        EditJournal.Recovery recovery = EditJournal.recover(mLog);
+        assertEquals(autosave,recovery.getBase());
+        assertEquals(saved,recovery.getFile());
+        assertEquals(state(mDocument),state(recovery.getDocument()));
+        assertArrayEquals(before,Files.readAllBytes(saved.toPath()));
+    }
+
+    @Test
+    public void autosavedEditsAreRecoveredAfterARelaunch() throws IOException {
+        File saved = base("saved.mapb");
+        edit();
+        File autosave = new File(mFolder.getRoot(),"autosave.mapb");
+        GraphDocument snapshot = mDocument.snapshot();
+        int compaction = mJournal.rotate(autosave,saved,snapshot);
+        MapIo.write(snapshot,autosave,true,null);
+        mJournal.commit(compaction);
+        //the process is killed with every edit in the autosave and none in the log
+        mJournal.close();
+        assertTrue(EditJournal.needsRecovery(mLog));
+        EditJournal.Recovery recovery = EditJournal.recover(mLog);
+        assertEquals(0,recovery.getRecords());
+        assertEquals(saved,recovery.getFile());
+        assertEquals(state(mDocument),state(recovery.getDocument()));
+
+        //saving to the user's file leaves nothing to recover
+        snapshot = mDocument.snapshot();
+        compaction = mJournal.rotate(saved,snapshot);
+        MapIo.write(snapshot,saved,true,null);
+        mJournal.commit(compaction);
+        mJournal.close();
+        assertFalse(EditJournal.needsRecovery(mLog));
+    }
+
+    @Test
+    public void firstVersionLogsNameTheirBase() throws IOException {
+        File base = base("base.mapb");
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(mLog));
+        out.write(EditJournal.MAGIC);
+        out.writeByte(1);
+        out.writeUTF(base.getPath());
+        out.close();
+        EditJournal.Recovery recovery = EditJournal.recover(mLog);
+        assertEquals(base,recovery.getBase());
+        assertEquals(base,recovery.getFile());
+        assertEquals(state(mDocument),state(recovery.getDocument()));
+    }
+
+    @Test
+    public void dragIsLoggedOnceItEnds() throws IOException {
+        base("base.mapb");
+        GraphNode node = mDocument.getNodes().get(0);
+        for (int i = 1; i <= 50; i++) {
+            float fromX = node.getX(), fromY = node.getY();
+            mDocument.moveNode(node,i,2*i);
+            mHistory.record(EditCommand.move(node,fromX,fromY));
+        }
+        assertFalse(mJournal.hasEdits());
+        mHistory.endMerge();
+        //tag, id and where the drag ended
+        assertEquals(1+1+Integer.toString(node.getKey()).length()+8,mJournal.getSize());
+        assertEquals(state(mDocument),state(EditJournal.recover(mLog).getDocument()));
+
+        //an edit made during a drag tells of the drag first
+        float fromX = node.getX(), fromY = node.getY();
+        mDocument.moveNode(node,-5,-5);
+        mHistory.record(EditCommand.move(node,fromX,fromY));
+        delete(node);
+        assertEquals(state(mDocument),state(EditJournal.recover(mLog).getDocument()));
+    }
+
+    private static List<String> zOrder(GraphDocument document) {
+        List<String> ids = new ArrayList<>();
+        for (GraphNode node : document.inZOrder(document.getNodes()))
+            ids.add(name(node));
+        for (GraphEdge edge : document.inZOrder(document.getEdges()))
+            ids.add(name(edge));
+        return ids;
+    }
+
+    private void raise(GraphItem item) {
+        long fromOrder = mDocument.getOrder(item);
+        mDocument.bringToFront(item);
+        mHistory.record(EditCommand.raise(item,fromOrder));
+    }
+
+    @Test
+    public void raisesAndTheirUndoReplay() throws IOException {
+        base("base.mapb");
+        GraphNode a = mDocument.getNodes().get(0);
+        GraphNode b = mDocument.getNodes().get(1);
+        raise(a);
+        drag(a,40,40);
+        raise(b);
+        ItemStyle before = ItemStyle.of(b);
+        b.setTitle("raised");
+        mHistory.record(EditCommand.restyle(b,before));
+        mHistory.endMerge();
+        assertTrue(mHistory.undo(mDocument));
+        raise(mDocument.getEdges().get(0));
+        mHistory.endMerge();
+
+        EditJournal.Recovery recovery = EditJournal.recover(mLog);
+        assertEquals(state(mDocument),state(recovery.getDocument()));
+        assertEquals(zOrder(mDocument),zOrder(recovery.getDocument()));
+    }
+
+    @Test
+    public void raiseUndoneAfterACompactionReplays() throws IOException {
+        base("base.mapb");
+        GraphNode a = mDocument.getNodes().get(0);
+        GraphNode c = mDocument.getNodes().get(2);
+        raise(a);
+        drag(a,40,40);
+        raise(c);
+        drag(c,-40,40);
+        File autosave = new File(mFolder.getRoot(),"autosave.mapb");
+        GraphDocument snapshot = mDocument.snapshot();
+        int compaction = mJournal.rotate(autosave,snapshot);
+        MapIo.write(snapshot,autosave,true,null);
+        mJournal.commit(compaction);
+
+        //the base holds a above b, the undo puts a back beneath b from stamps made before it
+        assertTrue(mHistory.undo(mDocument));
+        assertTrue(mHistory.undo(mDocument));
+        List<String> expected = zOrder(mDocument);
+        assertEquals(Arrays.asList("a","#b",c.getExternalId()),expected.subList(0,3));
+        EditJournal.Recovery recovery = EditJournal.recover(mLog);
+        assertEquals(autosave,recovery.getBase());
+        assertEquals(expected,zOrder(recovery.getDocument()));
+        assertEquals(state(mDocument),state(recovery.getDocument()));
+    }
+
+    @Test
+    public void commitOfAnOlderCompactionKeepsTheRecords() throws IOException {
+        base("base.mapb");
+        edit();
+        int first = mJournal.rotate(new File(mFolder.getRoot(),"first.mapb"),mDocument.snapshot());
+        addNode(1,1,"between");
+        GraphDocument snapshot = mDocument.snapshot();
+        int second = mJournal.rotate(new File(mFolder.getRoot(),"second.mapb"),snapshot);
+        addNode(2,2,"last");
+
+        //the first compaction was written, the second one not yet
+        mJournal.commit(first);
+        EditJournal.Recovery recovery = EditJournal.recover(mLog);
+        assertEquals(new File(mFolder.getRoot(),"base.mapb"),recovery.getBase());
+        assertEquals(state(mDocument),state(recovery.getDocument()));
+
+        MapIo.write(snapshot,new File(mFolder.getRoot(),"second.mapb"),true,null);
+        mJournal.commit(second);
+        assertEquals(state(mDocument),state(EditJournal.recover(mLog).getDocument()));
+        assertEquals(1,EditJournal.recover(mLog).getRecords());
+    }
+
+    @Test
+    public void fullLogAsksForACompactionOnce() throws IOException {
+        final int[] full = {0};
+        mJournal.setLimit(100,new Runnable() {
+            @Override
+            public void run() {
+                full[0]++;
+            }
+        });
+        mJournal.start(null,mDocument);
+        for (int i = 0; i < 20; i++)
+            addNode(i,i,"node "+i);
+        assertEquals(1,full[0]);
+        mJournal.rotate(null,mDocument.snapshot());
+        assertEquals(0,mJournal.getSize());
+        for (int i = 0; i < 20; i++)
+            addNode(i,i,"node "+i);
+        assertEquals(2,full[0]);
+    }
+}
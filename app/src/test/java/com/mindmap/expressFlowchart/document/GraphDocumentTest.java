@@ -0,0 +1,248 @@
+package com.mindmap.expressFlowchart.document;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * The document model on a plain JVM, no view and no Android classes involved
+ */
+public class GraphDocumentTest {
+
+    private static GraphEdge connect(GraphDocument document,GraphNode from,GraphNode to) {
+        GraphEdge edge = new GraphEdge(null,from,to,GraphEdge.DEFAULT_COLOR,"","",ArrowShape.NONE,GraphEdge.DEFAULT_TEXT_SIZE);
+        document.add(edge);
+        return edge;
+    }
+
+    @Test
+    public void json_roundTripsEveryField() throws JSONException {
+        GraphDocument document = new GraphDocument();
+        document.getCamera().set(0.5f,-120.25f,33f);
+        GraphNode a = new GraphNode("a",10.5f,-20f,80,"first","about a",0xFF00FF00,NodeShape.DIAMOND,32);
+        GraphNode b = new GraphNode("b",400,300,"second");
+        b.setShape(NodeShape.SQUARE);
+        document.add(a);
+        document.add(b);
+        GraphEdge edge = new GraphEdge("e",a,b,0xFF000000,"joins","about e",ArrowShape.DOUBLE,28);
+        edge.setStrokeWidth(22);
+        document.add(edge);
+        document.bringToFront(a);
+
+        JSONObject saved = document.toJson();
+        GraphDocument loaded = GraphDocument.fromJson(new JSONObject(saved.toString()));
+        assertEquals(0.5f,loaded.getCamera().getScale(),0);
+        assertEquals(-120.25f,loaded.getCamera().getTranslateX(),0);
+        assertEquals(33f,loaded.getCamera().getTranslateY(),0);
+
+        //a was brought to the front, it is saved after b
+        assertEquals("b",loaded.getNodes().get(0).getId());
+        GraphNode loadedA = loaded.getNodes().get(1);
+        GraphNode loadedB = loaded.getNodes().get(0);
+        assertEquals("a",loadedA.getExternalId());
+        assertEquals(10.5f,loadedA.getX(),0);
+        assertEquals(-20f,loadedA.getY(),0);
+        assertEquals(80f,loadedA.getR(),0);
+        assertEquals("first",loadedA.getTitle());
+        assertEquals("about a",loadedA.getDescription());
+        assertEquals(0xFF00FF00,loadedA.getColor());
+        assertEquals(NodeShape.DIAMOND,loadedA.getShape());
+        assertEquals(32f,loadedA.getTextSize(),0);
+        assertEquals(NodeShape.SQUARE,loadedB.getShape());
+
+        GraphEdge loadedEdge = loaded.getEdges().get(0);
+        assertEquals("e",loadedEdge.getId());
+        assertSame(loadedA,loadedEdge.getFrom());
+        assertSame(loadedB,loadedEdge.getTo());
+        assertEquals(22f,loadedEdge.getStrokeWidth(),0);
+        assertEquals(ArrowShape.DOUBLE,loadedEdge.getArrowShape());
+        assertEquals("joins",loadedEdge.getTitle());
+        assertEquals("about e",loadedEdge.getDescription());
+        assertEquals(28f,loadedEdge.getTextSize(),0);
+
+        //saving the loaded document gives the same file
+        assertEquals(saved.toString(),loaded.toJson().toString());
+    }
+
+    @Test
+    public void readItem_skipsEdgesWithMissingNodes() throws JSONException {
+        GraphDocument source = new GraphDocument();
+        GraphNode a = new GraphNode(null,0,0,"a");
+        GraphNode b = new GraphNode(null,100,0,"b");
+        source.add(a);
+        source.add(b);
+        connect(source,a,b);
+        //an edge still being drawn is not saved
+        source.add(new GraphEdge(null,a,50,50));
+        JSONArray items = source.toJson().getJSONArray( DocumentSchema.ITEMS_KEY);
+        assertEquals(3,items.length());
+
+        GraphDocument document = new GraphDocument();
+        assertNull(GraphDocument.readItem(items.getJSONObject(2),new IdRemap()));
+        document.addItems(items);
+        assertEquals(2,document.getNodes().size());
+        assertEquals(1,document.getEdges().size());
+    }
+
+    @Test
+    public void import_remapsIdsToNewKeys() throws JSONException {
+        GraphDocument source = new GraphDocument();
+        GraphNode a = new GraphNode(null,0,0,"a");
+        GraphNode b = new GraphNode(null,100,0,"b");
+        source.add(a);
+        source.add(b);
+        GraphEdge ab = connect(source,a,b);
+        //items without an external id are saved by key
+        assertNull(a.getExternalId());
+        assertEquals(Integer.toString(a.getKey()),a.getId());
+        assertSame(a,source.getNode(a.getKey()));
+        assertSame(ab,source.getItem(ab.getKey()));
+        assertNull(source.getNode(ab.getKey()));
+
+        //importing the file twice gives two copies that do not share keys or ends
+        JSONArray items = source.toJson().getJSONArray( DocumentSchema.ITEMS_KEY);
+        GraphDocument document = new GraphDocument();
+        document.addItems(items);
+        document.addItems(items);
+        assertEquals(4,document.getNodes().size());
+        assertEquals(2,document.getEdges().size());
+        for (int i = 0; i < 2; i++) {
+            GraphNode copyA = document.getNodes().get(2*i), copyB = document.getNodes().get(2*i+1);
+            GraphEdge copy = document.getEdges().get(i);
+            assertNotEquals(a.getKey(),copyA.getKey());
+            assertNull(copyA.getExternalId());
+            assertSame(copyA,document.getNode(copyA.getKey()));
+            assertSame(copyA,copy.getFrom());
+            assertSame(copyB,copy.getTo());
+            assertEquals(1,document.getIncidentEdges(copyB).size());
+        }
+        assertNotEquals(document.getNodes().get(0).getKey(),document.getNodes().get(2).getKey());
+    }
+
+    @Test
+    public void externalIds_areKeptOnlyWhenNotKeys() {
+        assertNull(IdRemap.externalId("12"));
+        assertNull(IdRemap.externalId("0"));
+        assertEquals("e3a1b7c2-5a44-4c1e-9d2f-6f0b1c2d3e4f",IdRemap.externalId("e3a1b7c2-5a44-4c1e-9d2f-6f0b1c2d3e4f"));
+        assertEquals("12a",IdRemap.externalId("12a"));
+        assertEquals("-12",IdRemap.externalId("-12"));
+        assertEquals("12345678901",IdRemap.externalId("12345678901"));
+    }
+
+    @Test
+    public void remove_takesIncidentEdgesAlong() {
+        GraphDocument document = new GraphDocument();
+        GraphNode a = new GraphNode(null,0,0,"a");
+        GraphNode b = new GraphNode(null,500,0,"b");
+        GraphNode c = new GraphNode(null,0,500,"c");
+        document.add(a);
+        document.add(b);
+        document.add(c);
+        GraphEdge ab = connect(document,a,b);
+        GraphEdge bc = connect(document,b,c);
+        connect(document,c,a);
+        assertEquals(2,document.getIncidentEdges(a).size());
+
+        document.reconnect(bc,a,c);
+        assertEquals(1,document.getIncidentEdges(b).size());
+        assertEquals(3,document.getIncidentEdges(a).size());
+
+        assertEquals(3,document.remove(a).size());
+        assertNull(document.getItem(a.getKey()));
+        assertNull(document.getItem(ab.getKey()));
+        assertTrue(document.getEdges().isEmpty());
+        assertTrue(document.getIncidentEdges(b).isEmpty());
+        assertTrue(document.getIncidentEdges(c).isEmpty());
+        assertEquals(2,document.getNodes().size());
+    }
+
+    @Test
+    public void geometry_followsShapes() {
+        GraphNode circle = new GraphNode(null,0,0,"");
+        assertTrue(circle.contains(70,70));
+        assertFalse(circle.contains(71,71));
+        //a square selects within 2r of all four corners, which falls short of its sides
+        circle.setShape(NodeShape.SQUARE);
+        assertTrue(circle.contains(60,0));
+        assertFalse(circle.contains(90,0));
+        circle.setShape(NodeShape.DIAMOND);
+        Box bounds = new Box();
+        circle.getBounds(bounds);
+        assertEquals(100*(float)Math.sqrt(2),bounds.right,0.001f);
+
+        //a line leaving to the right crosses each outline at its right hand extent
+        float[] point = new float[2];
+        float right = (float)Math.PI;
+        circle.boundaryPoint(right,point);
+        assertEquals(100*Math.sqrt(2),point[0],0.01);
+        circle.setShape(NodeShape.CIRCLE);
+        circle.boundaryPoint(right,point);
+        assertEquals(100,point[0],0.01);
+        assertEquals(0,point[1],0.01);
+
+        GraphNode to = new GraphNode(null,1000,0,"");
+        GraphEdge edge = new GraphEdge(null,circle,to,GraphEdge.DEFAULT_COLOR,"","",ArrowShape.END,GraphEdge.DEFAULT_TEXT_SIZE);
+        assertTrue(edge.contains(500,3*GraphEdge.DEFAULT_STROKE_WIDTH));
+        assertFalse(edge.contains(500,3*GraphEdge.DEFAULT_STROKE_WIDTH+1));
+        EdgeLayout layout = new EdgeLayout();
+        layout.compute(edge,true,true);
+        assertEquals(100,layout.lineStartX,0.01);
+        assertTrue(layout.endArrow);
+        assertFalse(layout.startArrow);
+        assertEquals(900,layout.arrowEndX,0.01);
+        //the line stops at the base of the arrowhead
+        assertTrue(layout.lineEndX < 900);
+        layout.compute(edge,false,true);
+        assertEquals(1000,layout.lineEndX,0);
+        assertFalse(layout.endArrow);
+    }
+
+    @Test
+    public void fromJson_loadsLargeDocument() throws JSONException {
+        Random random = new Random(15);
+        GraphDocument source = new GraphDocument();
+        int nodeCount = 10000, edgeCount = 15000;
+        for (int i = 0; i < nodeCount; i++)
+            source.add(new GraphNode(null,random.nextFloat()*50000,random.nextFloat()*50000,"node "+i));
+        for (int i = 0; i < edgeCount; i++) {
+            GraphNode from = source.getNodes().get(random.nextInt(nodeCount));
+            GraphNode to = source.getNodes().get(random.nextInt(nodeCount));
+            connect(source,from,to);
+        }
+        String saved = source.toJson().toString();
+
+        GraphDocument loaded = GraphDocument.fromJson(new JSONObject(saved));
+        assertEquals(nodeCount,loaded.getNodes().size());
+        assertEquals(edgeCount,loaded.getEdges().size());
+    }
+
+    @Test
+    public void sources_doNotImportAndroid() throws IOException {
+        File dir = new File("src/main/java/com/mindmap/expressFlowchart/document");
+        if(!dir.isDirectory())
+            dir = new File("app/"+dir.getPath());
+        Assume.assumeTrue(dir.isDirectory());
+        File[] sources = dir.listFiles();
+        assertTrue(sources.length > 0);
+        for (File source : sources) {
+            BufferedReader reader = new BufferedReader(new FileReader(source));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null)
+                    assertFalse(source.getName()+": "+line,line.startsWith("import android"));
+            } finally {
+                reader.close();
+            }
+        }
+    }
+}
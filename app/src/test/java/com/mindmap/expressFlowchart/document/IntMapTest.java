@@ -0,0 +1,43 @@
+package com.mindmap.expressFlowchart.document;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * IntMap against a HashMap doing the same puts and removes
+ */
+public class IntMapTest {
+
+    @Test
+    public void putGetRemove_matchHashMap() {
+        IntMap<String> map = new IntMap<>(2);
+        HashMap<Integer,String> expected = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 20000; i++) {
+            //a small key range so removes hit and runs collide
+            int key = 1+random.nextInt(3000);
+            if(random.nextInt(3) == 0)
+                assertEquals(expected.remove(key),map.remove(key));
+            else {
+                expected.put(key,"v"+i);
+                map.put(key,"v"+i);
+            }
+            assertEquals(expected.size(),map.size());
+        }
+        for (int key = 1; key <= 3000; key++)
+            assertEquals(expected.get(key),map.get(key));
+
+        map.clear();
+        assertEquals(0,map.size());
+        assertNull(map.get(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void put_rejectsKeysThatAreNotPositive() {
+        new IntMap<String>().put(0,"zero");
+    }
+}
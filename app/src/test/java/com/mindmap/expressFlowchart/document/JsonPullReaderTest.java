@@ -0,0 +1,121 @@
+package com.mindmap.expressFlowchart.document;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+/**
+ * JsonPullReader against org.json parsing the same text
+ */
+public class JsonPullReaderTest {
+
+    //rebuild a tree out of the tokens so it can be compared with what org.json parsed
+    private static Object readTree(JsonPullReader reader) throws IOException, JSONException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                JSONObject obj = new JSONObject();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    obj.put(name,readTree(reader));
+                }
+                reader.endObject();
+                return obj;
+            case BEGIN_ARRAY:
+                JSONArray arr = new JSONArray();
+                reader.beginArray();
+                while (reader.hasNext())
+                    arr.put(readTree(reader));
+                reader.endArray();
+                return arr;
+            case NUMBER:
+                String number = reader.nextString();
+                return number.contains(".") || number.contains("e") || number.contains("E")
+                        ? (Object) Double.parseDouble(number) : (Object) Long.parseLong(number);
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+            default:
+                return reader.nextString();
+        }
+    }
+
+    private static JsonPullReader reader(String json) {
+        return new JsonPullReader(new StringReader(json));
+    }
+
+    @Test
+    public void tokens_matchOrgJson() throws IOException, JSONException {
+        StringBuilder longText = new StringBuilder();
+        for (int i = 0; i < 3000; i++)
+            longText.append("ab\\\"\\u00e9\\n");
+        String json = " { \"a\" : [1, -2.5, 3e2, 1.25E-3, 123456789012, true, false, null, [], {}],\n"
+                + "\"escapes\":\"q\\\" s\\\\ f\\/ \\b\\f\\n\\r\\t \\u0041\\u00e9\",\r\n"
+                + "\"nested\":{\"x\":{\"y\":[{\"z\":\"deep\"}]}},"
+                + "\"long\":\""+longText+"\", \"\":\"empty name\" } ";
+        JsonPullReader reader = reader(json);
+        JSONObject pulled = (JSONObject) readTree(reader);
+        assertEquals(JsonPullReader.Token.END_DOCUMENT,reader.peek());
+        JSONObject parsed = new JSONObject(json);
+        //org.json keeps small numbers as Integer, compare the text both trees write
+        assertTrue(parsed.toString().equals(pulled.toString()));
+        assertEquals(3000*5,pulled.getString("long").length());
+        assertEquals(json.length(),reader.getPosition());
+    }
+
+    @Test
+    public void skipValue_skipsWholeValues() throws IOException {
+        JsonPullReader reader = reader("{\"skip\":{\"a\":[1,{\"b\":[]}],\"c\":\"}\"},\"keep\":7,\"also\":[[]],\"last\":true}");
+        reader.beginObject();
+        assertEquals("skip",reader.nextName());
+        reader.skipValue();
+        assertEquals("keep",reader.nextName());
+        assertEquals(7,reader.nextInt());
+        assertEquals("also",reader.nextName());
+        reader.skipValue();
+        assertEquals("last",reader.nextName());
+        assertTrue(reader.nextBoolean());
+        assertFalse(reader.hasNext());
+        reader.endObject();
+    }
+
+    @Test
+    public void numbers_convert() throws IOException {
+        JsonPullReader reader = reader("[-16776961,2.0,1e3,4294967296,1.5]");
+        reader.beginArray();
+        assertEquals(-16776961,reader.nextInt());
+        assertEquals(2,reader.nextInt());
+        assertEquals(1000,reader.nextLong());
+        try {
+            reader.nextInt();
+            fail();
+        } catch (NumberFormatException expected) {
+        }
+        assertEquals(1.5,reader.nextDouble(),0);
+        reader.endArray();
+    }
+
+    @Test
+    public void malformedInput_throws() {
+        String[] bad = {"{\"a\" 1}","{\"a\":1,}","[1 2]","{\"a\":\"open","{'a':1}","[tru]","{\"a\":1} x","[\"\\x\"]",""};
+        for (String json : bad) {
+            try {
+                JsonPullReader reader = reader(json);
+                readTree(reader);
+                reader.peek();
+                fail(json);
+            } catch (IOException expected) {
+            } catch (JSONException e) {
+                fail(json+" "+e);
+            }
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.mindmap.expressFlowchart.document;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Maps saved in the compressed container and told from plain ones on load
+ */
+public class MapCompressionTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static final String[] WORDS = {"the","plan","review","with","team","budget","draft","for","next","week",
+            "check","design","notes","and","release","client","meeting","about","tasks","open"};
+
+    /**
+     * Nodes with titles and descriptions of words, as people write them
+     */
+    private static GraphDocument describedDocument(int nodeCount) {
+        Random random = new Random(25);
+        GraphDocument document = new GraphDocument();
+        for (int i = 0; i < nodeCount; i++) {
+            StringBuilder description = new StringBuilder();
+            for (int j = random.nextInt(40); j > 0; j--)
+                description.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            document.add(new GraphNode(null,random.nextFloat()*5000,random.nextFloat()*5000,100,
+                    WORDS[random.nextInt(WORDS.length)]+" "+i,description.toString(),
+                    GraphNode.DEFAULT_COLOR,NodeShape.CIRCLE,GraphNode.DEFAULT_TEXT_SIZE));
+        }
+        for (int i = 1; i < nodeCount; i++)
+            document.add(new GraphEdge(null,document.getNodes().get(random.nextInt(i)),document.getNodes().get(i),
+                    GraphEdge.DEFAULT_COLOR,"","",ArrowShape.END,GraphEdge.DEFAULT_TEXT_SIZE));
+        return document;
+    }
+
+    private static GraphDocument read(File file) throws IOException {
+        GraphDocument document = new GraphDocument();
+        InputStream in = new FileInputStream(file);
+        try {
+            MapIo.read(in,file.length(),document,document.getCamera(),null,true);
+        } finally {
+            in.close();
+        }
+        return document;
+    }
+
+    private static byte[] head(File file) throws IOException {
+        byte[] head = new byte[2];
+        InputStream in = new FileInputStream(file);
+        try {
+            assertEquals(2,in.read(head));
+        } finally {
+            in.close();
+        }
+        return head;
+    }
+
+    @Test
+    public void readsBackAtEveryLevel() throws IOException {
+        GraphDocument source = describedDocument(200);
+        source.getCamera().set(0.5f,12f,-3f);
+        for (boolean binary : new boolean[]{false,true}) {
+            File plain = mFolder.newFile();
+            MapIo.write(source,plain,binary,null);
+            byte[] expected = TestDocuments.json(read(plain));
+            for (int level = MapCompression.BEST_SPEED; level <= MapCompression.BEST_COMPRESSION; level++) {
+                File file = mFolder.newFile();
+                MapIo.write(source,file,binary,level,null);
+                assertTrue(MapCompression.isCompressed(head(file),2));
+                assertTrue(file.length() < plain.length());
+                GraphDocument document = read(file);
+                assertArrayEquals(expected,TestDocuments.json(document));
+                assertEquals(-3f,document.getCamera().getTranslateY(),0f);
+            }
+        }
+    }
+
+    @Test
+    public void containerIsPlainGzip() throws IOException {
+        GraphDocument source = describedDocument(20);
+        File file = mFolder.newFile();
+        MapIo.write(source,file,false,MapCompression.DEFAULT_LEVEL,null);
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        InputStream in = new GZIPInputStream(new FileInputStream(file));
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) > 0)
+            content.write(buffer,0,read);
+        in.close();
+        assertArrayEquals(TestDocuments.json(source),content.toByteArray());
+    }
+
+    @Test
+    public void progressIsToldInBytesOfTheFile() throws IOException {
+        File file = mFolder.newFile();
+        MapIo.write(describedDocument(3000),file,false,MapCompression.DEFAULT_LEVEL,null);
+        final List<long[]> progress = new ArrayList<>();
+        GraphDocument document = new GraphDocument();
+        InputStream in = new FileInputStream(file);
+        MapReader.ProgressListener listener = new MapReader.ProgressListener() {
+            @Override
+            public void onProgress(long bytesRead, long totalBytes, int itemsRead) {
+                progress.add(new long[]{bytesRead,totalBytes});
+            }
+        };
+        MapIo.read(in,file.length(),document,document.getCamera(),listener);
+        in.close();
+        assertTrue(progress.size() > 1);
+        long last = 0;
+        for (long[] report : progress) {
+            assertEquals(file.length(),report[1]);
+            assertTrue(report[0] >= last && report[0] <= file.length());
+            last = report[0];
+        }
+        assertEquals(file.length(),last);
+    }
+
+    @Test(expected = IOException.class)
+    public void damagedContainerFails() throws IOException {
+        File file = mFolder.newFile();
+        MapIo.write(describedDocument(50),file,true,MapCompression.DEFAULT_LEVEL,null);
+        //the CRC in the trailer, the content itself reads fine
+        RandomAccessFile access = new RandomAccessFile(file,"rw");
+        access.seek(access.length()-8);
+        int crc = access.read();
+        access.seek(access.length()-8);
+        access.write(crc ^ 0xFF);
+        access.close();
+        read(file);
+    }
+
+    @Test
+    public void journalReplaysOntoACompressedBase() throws IOException {
+        GraphDocument source = describedDocument(30);
+        File base = new File(mFolder.getRoot(),"base.map");
+        MapIo.write(source,base,false,MapCompression.BEST_SPEED,null);
+        File log = new File(mFolder.getRoot(),"autosave.journal");
+        EditJournal journal = new EditJournal(log);
+        journal.start(base,source);
+        GraphNode node = new GraphNode(null,1,2,"added");
+        source.add(node);
+        journal.onEdit(EditCommand.add(node),false);
+        journal.close();
+
+        //the items get new keys, everything saved of them is the same
+        GraphDocument recovered = EditJournal.recover(log).getDocument();
+        assertEquals(31,recovered.getNodes().size());
+        for (int i = 0; i < 31; i++) {
+            GraphNode expected = source.getNodes().get(i), actual = recovered.getNodes().get(i);
+            assertEquals(expected.getTitle(),actual.getTitle());
+            assertEquals(expected.getDescription(),actual.getDescription());
+            assertEquals(expected.getX(),actual.getX(),0);
+        }
+        assertEquals(29,recovered.getEdges().size());
+    }
+
+    @Test
+    public void higherLevelsWriteSmallerFiles() throws IOException {
+        GraphDocument source = describedDocument(2000);
+        for (boolean binary : new boolean[]{false,true}) {
+            long[] sizes = new long[MapCompression.BEST_COMPRESSION+1];
+            for (int level = MapCompression.NONE; level <= MapCompression.BEST_COMPRESSION; level++) {
+                File file = mFolder.newFile();
+                MapIo.write(source,file,binary,level,null);
+                sizes[level] = file.length();
+            }
+            assertTrue(sizes[MapCompression.BEST_SPEED] < sizes[MapCompression.NONE]/2);
+            assertTrue(sizes[MapCompression.BEST_COMPRESSION] <= sizes[MapCompression.BEST_SPEED]);
+        }
+    }
+
+    @Test
+    public void benchmark_sizeAndTimeAtEachLevel() throws IOException {
+        //timings, run with -Dbenchmarks=true
+        Assume.assumeTrue(Boolean.getBoolean("benchmarks"));
+        GraphDocument source = describedDocument(10000);
+        for (boolean binary : new boolean[]{false,true}) {
+            System.out.println(String.format("%s, 10000 nodes with descriptions of words:",binary ? "binary" : "json"));
+            long plainSize = 0;
+            long[] sizes = new long[MapCompression.BEST_COMPRESSION+1];
+            for (int level = MapCompression.NONE; level <= MapCompression.BEST_COMPRESSION; level++) {
+                File file = mFolder.newFile();
+                long save = 0, load = 0;
+                //the last round is measured
+                for (int round = 0; round < 3; round++) {
+                    long start = System.nanoTime();
+                    MapIo.write(source,file,binary,level,null);
+                    save = System.nanoTime()-start;
+                    start = System.nanoTime();
+                    GraphDocument document = new GraphDocument();
+                    InputStream in = new FileInputStream(file);
+                    MapIo.read(in,file.length(),document,document.getCamera(),null);
+                    in.close();
+                    load = System.nanoTime()-start;
+                    assertEquals(9999,document.getEdges().size());
+                }
+                sizes[level] = file.length();
+                if(level == MapCompression.NONE)
+                    plainSize = file.length();
+                System.out.println(String.format("  level %d: %d KB (%.0f%%), save %.1f ms, load %.1f ms",level,file.length()/1024,
+                        100.0*file.length()/plainSize,save/1e6,load/1e6));
+            }
+            assertTrue(sizes[MapCompression.BEST_SPEED] < plainSize/2);
+            assertTrue(sizes[MapCompression.BEST_COMPRESSION] <= sizes[MapCompression.BEST_SPEED]);
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.mindmap.expressFlowchart.document;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Saves and loads on the I/O thread, with the test thread standing in for the main thread
+ */
+public class MapIoTest {
+
+    //what the main thread's handler would run
+    private final LinkedBlockingQueue<Runnable> mMain = new LinkedBlockingQueue<>();
+    private ExecutorService mWorker;
+    private MapIo mIo;
+    private File mDir;
+
+    /**
+     * Keeps what it is told, in order
+     */
+    private static class Recorder implements MapIo.LoadCallback {
+        final List<String> events = new ArrayList<>();
+        final List<Long> progress = new ArrayList<>();
+        final List<GraphItem> items = new ArrayList<>();
+        int batches = 0;
+        Object result;
+        Exception failure;
+
+        @Override
+        public void onItems(List<GraphItem> batch) {
+            batches++;
+            items.addAll(batch);
+        }
+
+        @Override
+        public void onProgress(long done, long total) {
+            progress.add(done);
+        }
+
+        @Override
+        public void onDone(Camera camera) {
+            events.add("done");
+            result = camera;
+        }
+
+        @Override
+        public void onFailed(Exception e) {
+            events.add("failed");
+            failure = e;
+        }
+
+        @Override
+        public void onCancelled() {
+            events.add("cancelled");
+        }
+
+        <U> MapIo.Callback<U> as() {
+            return new MapIo.Callback<U>() {
+                @Override
+                public void onProgress(long done, long total) {
+                    Recorder.this.onProgress(done,total);
+                }
+
+                @Override
+                public void onDone(U result) {
+                    events.add("done");
+                    Recorder.this.result = result;
+                }
+
+                @Override
+                public void onFailed(Exception e) {
+                    Recorder.this.onFailed(e);
+                }
+
+                @Override
+                public void onCancelled() {
+                    Recorder.this.onCancelled();
+                }
+            };
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        mWorker = Executors.newSingleThreadExecutor();
+        mIo = new MapIo(mWorker,new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                mMain.add(command);
+            }
+        });
+        mDir = File.createTempFile("mapio","");
+        assertTrue(mDir.delete() && mDir.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        mIo.shutdown();
+        File[] files = mDir.listFiles();
+        if(files != null)
+            for (File file : files)
+                file.delete();
+        mDir.delete();
+    }
+
+    /**
+     * Run what is posted to the main thread until the recorder heard how the task ended
+     */
+    private void pump(Recorder recorder) throws InterruptedException {
+        while (recorder.events.isEmpty()) {
+            Runnable runnable = mMain.poll(10,TimeUnit.SECONDS);
+            assertNotNull("timed out",runnable);
+            runnable.run();
+        }
+    }
+
+    /**
+     * Wait for the worker to be idle and run whatever it still posted
+     */
+    private void drain() throws InterruptedException {
+        mWorker.shutdown();
+        assertTrue(mWorker.awaitTermination(10,TimeUnit.SECONDS));
+        Runnable runnable;
+        while ((runnable = mMain.poll()) != null)
+            runnable.run();
+    }
+
+    private static GraphDocument document(int nodeCount,int edgeCount) {
+        GraphDocument document = TestDocuments.random(22,nodeCount,edgeCount,5000,false);
+        document.getCamera().set(0.5f,-100f,250f);
+        return document;
+    }
+
+    private GraphDocument load(File file,Recorder recorder) throws InterruptedException {
+        mIo.load(file,recorder);
+        pump(recorder);
+        GraphDocument loaded = new GraphDocument();
+        for (GraphItem item : recorder.items)
+            loaded.add(item);
+        return loaded;
+    }
+
+    private static void assertMonotonic(List<Long> progress) {
+        assertFalse(progress.isEmpty());
+        for (int i = 1; i < progress.size(); i++)
+            assertTrue(progress.get(i-1) <= progress.get(i));
+    }
+
+    private void saveAndLoad(String name,boolean binary) throws Exception {
+        GraphDocument source = document(2000,1000);
+        File file = new File(mDir,name);
+        Recorder saved = new Recorder();
+        mIo.save(source.snapshot(),file,binary,saved.<File>as());
+        pump(saved);
+        assertEquals("done",saved.events.get(0));
+        assertEquals(file,saved.result);
+        assertMonotonic(saved.progress);
+        assertEquals(3000L,(long) saved.progress.get(saved.progress.size()-1));
+        assertFalse(new File(mDir,name+".tmp").exists());
+
+        Recorder loaded = new Recorder();
+        GraphDocument document = load(file,loaded);
+        assertEquals("done",loaded.events.get(0));
+        //items come in batches while the file is read, not all at the end
+        assertTrue(loaded.batches > 1);
+        assertMonotonic(loaded.progress);
+        assertEquals(2000,document.getNodes().size());
+        assertEquals(1000,document.getEdges().size());
+        Camera camera = (Camera) loaded.result;
+        assertEquals(0.5f,camera.getScale(),0f);
+        assertEquals(-100f,camera.getTranslateX(),0f);
+        assertEquals(250f,camera.getTranslateY(),0f);
+        assertEquals("edge 999",document.getEdges().get(999).getTitle());
+    }
+
+    @Test
+    public void savesAndLoadsJson() throws Exception {
+        saveAndLoad("large.map",false);
+    }
+
+    @Test
+    public void savesAndLoadsBinary() throws Exception {
+        saveAndLoad("large.mapb",true);
+    }
+
+    @Test
+    public void cancelledSaveKeepsTheOldFile() throws Exception {
+        File file = new File(mDir,"kept.map");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write("old".getBytes("UTF-8"));
+        out.close();
+
+        Recorder saved = new Recorder();
+        MapIo.Task<File> task = mIo.save(document(20000,20000).snapshot(),file,false,saved.<File>as());
+        task.cancel();
+        assertTrue(task.isCancelled());
+        drain();
+        assertEquals(1,saved.events.size());
+        assertEquals("cancelled",saved.events.get(0));
+        assertFalse(task.isFinished());
+        assertEquals(3,file.length());
+        assertFalse(new File(mDir,"kept.map.tmp").exists());
+    }
+
+    @Test
+    public void cancelStopsARunningJob() throws Exception {
+        final Object started = new Object();
+        final boolean[] running = {false};
+        Recorder recorder = new Recorder();
+        MapIo.Task<Integer> task = mIo.submit(new MapIo.Job<Integer>() {
+            @Override
+            public Integer run(MapIo.Task<Integer> task) throws Exception {
+                synchronized (started) {
+                    running[0] = true;
+                    started.notifyAll();
+                }
+                for (int i = 0; ; i++) {
+                    task.progress(i,-1);
+                    Thread.sleep(1);
+                }
+            }
+        },recorder.<Integer>as());
+        synchronized (started) {
+            while (!running[0])
+                started.wait();
+        }
+        task.cancel();
+        task.cancel();
+        drain();
+        //the interrupted sleep failed the job, but only the cancel is told
+        assertEquals(1,recorder.events.size());
+        assertEquals("cancelled",recorder.events.get(0));
+    }
+
+    @Test
+    public void failedLoadIsReported() throws Exception {
+        Recorder recorder = new Recorder();
+        MapIo.Task<Camera> task = mIo.load(new File(mDir,"missing.map"),recorder);
+        pump(recorder);
+        assertEquals("failed",recorder.events.get(0));
+        assertTrue(recorder.failure instanceof FileNotFoundException);
+        assertTrue(task.isFinished());
+        //too late to cancel
+        task.cancel();
+        assertFalse(task.isCancelled());
+    }
+
+    @Test
+    public void nodesAreReadIntoSharedStores() throws Exception {
+        GraphDocument snapshot = document(2000,0).snapshot();
+        for (GraphNode node : snapshot.getNodes())
+            assertSame(snapshot.getNodeStore(),node.getStore());
+        File file = new File(mDir,"stores.map");
+        MapIo.write(snapshot,file,true,null);
+
+        GraphDocument read = new GraphDocument();
+        MapIo.read(file,read,read.getCamera(),null);
+        for (GraphNode node : read.getNodes())
+            assertSame(read.getNodeStore(),node.getStore());
+
+        //a load on the I/O thread makes one store for each batch, not one for each node
+        Recorder loaded = new Recorder();
+        mIo.load(file,loaded);
+        pump(loaded);
+        HashSet<NodeStore> stores = new HashSet<>();
+        for (GraphItem item : loaded.items)
+            stores.add(((GraphNode) item).getStore());
+        assertEquals(2000,loaded.items.size());
+        assertTrue(loaded.batches > 1);
+        assertTrue(stores.size() <= loaded.batches);
+    }
+
+    @Test
+    public void snapshotDoesNotFollowLaterEdits() {
+        GraphDocument document = new GraphDocument();
+        GraphNode a = new GraphNode("a",0,0,"a");
+        GraphNode b = new GraphNode(null,10,10,"b");
+        document.add(a);
+        document.add(b);
+        document.add(new GraphEdge("ab",a,b,GraphEdge.DEFAULT_COLOR,"","",ArrowShape.END,GraphEdge.DEFAULT_TEXT_SIZE));
+        document.add(new GraphEdge(null,b,30,30));
+        document.getCamera().set(2f,3f,4f);
+
+        GraphDocument snapshot = document.snapshot();
+        a.setTitle("changed");
+        document.moveNode(b,99,99);
+        document.add(new GraphNode(null,5,5,"later"));
+        document.getCamera().set(1f,0f,0f);
+
+        assertEquals(2,snapshot.getNodes().size());
+        //the edge still being drawn is left out
+        assertEquals(1,snapshot.getEdges().size());
+        GraphNode copyA = (GraphNode) snapshot.getItem(a.getKey());
+        GraphNode copyB = (GraphNode) snapshot.getItem(b.getKey());
+        assertNotSame(a,copyA);
+        assertEquals("a",copyA.getTitle());
+        assertEquals("a",copyA.getId());
+        assertEquals(b.getId(),copyB.getId());
+        assertEquals(10f,copyB.getX(),0f);
+        GraphEdge edge = snapshot.getEdges().get(0);
+        assertEquals("ab",edge.getId());
+        assertSame(copyA,edge.getFrom());
+        assertSame(copyB,edge.getTo());
+        assertEquals(2f,snapshot.getCamera().getScale(),0f);
+    }
+}
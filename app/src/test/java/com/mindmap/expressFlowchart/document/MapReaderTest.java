@@ -0,0 +1,131 @@
+package com.mindmap.expressFlowchart.document;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Streaming a .map file in must give the same document as parsing it with org.json
+ */
+public class MapReaderTest {
+
+    private static GraphDocument read(String json,MapReader.ProgressListener listener) throws IOException {
+        GraphDocument document = new GraphDocument();
+        MapReader reader = new MapReader(document,document.getCamera());
+        reader.setProgressListener(listener);
+        byte[] bytes = json.getBytes("UTF-8");
+        reader.read(new ByteArrayInputStream(bytes),bytes.length);
+        return document;
+    }
+
+    @Test
+    public void read_matchesTreeLoad() throws IOException, JSONException {
+        GraphDocument source = new GraphDocument();
+        source.getCamera().set(0.75f,-40f,12.5f);
+        GraphNode a = new GraphNode("a",10.5f,-20f,80,"first \"quoted\"","line\nbreak \u00e9",0xFF00FF00,NodeShape.DIAMOND,32);
+        GraphNode b = new GraphNode("b",400,300,"second");
+        source.add(a);
+        source.add(b);
+        GraphEdge edge = new GraphEdge("e",a,b,0xFF000000,"joins","",ArrowShape.DOUBLE,28);
+        edge.setStrokeWidth(22);
+        source.add(edge);
+        String saved = source.toJson().toString();
+
+        GraphDocument streamed = read(saved,null);
+        GraphDocument parsed = GraphDocument.fromJson(new JSONObject(saved));
+        assertEquals(0.75f,streamed.getCamera().getScale(),0);
+        assertEquals(-40f,streamed.getCamera().getTranslateX(),0);
+        assertEquals(12.5f,streamed.getCamera().getTranslateY(),0);
+        assertEquals("a",streamed.getNodes().get(0).getExternalId());
+        assertSame(streamed.getNodes().get(1),streamed.getEdges().get(0).getTo());
+        assertEquals(22f,streamed.getEdges().get(0).getStrokeWidth(),0);
+        //every id is external so both loads save the same file
+        assertEquals(parsed.toJson().toString(),streamed.toJson().toString());
+    }
+
+    @Test
+    public void read_skipsWhatTreeLoadSkips() throws IOException, JSONException {
+        GraphNode a = new GraphNode(null,0,0,"a");
+        GraphNode b = new GraphNode(null,300,0,"b");
+        GraphNode c = new GraphNode(null,600,0,"c");
+        GraphEdge ab = new GraphEdge(null,a,b,GraphEdge.DEFAULT_COLOR,"","",ArrowShape.END,GraphEdge.DEFAULT_TEXT_SIZE);
+        GraphEdge ac = new GraphEdge(null,a,c,GraphEdge.DEFAULT_COLOR,"","",ArrowShape.END,GraphEdge.DEFAULT_TEXT_SIZE);
+        JSONObject unknown = new JSONObject();
+        unknown.put( DocumentSchema.ITEM_TYPE_KEY,"com.mindmap.expressFlowchart.Sticker");
+        unknown.put( DocumentSchema.ITEM_ID_KEY,"9");
+        JSONObject extra = a.toJson();
+        extra.put("extra",new JSONObject("{\"ignored\":[1,{\"x\":null}]}"));
+        //c has no title so it is left out, and so is the edge ending at it
+        JSONObject untitled = c.toJson();
+        untitled.put( DocumentSchema.NODE_TITLE_KEY,JSONObject.NULL);
+        JSONObject openEnded = ab.toJson();
+        openEnded.remove( DocumentSchema.EDGE_END_NODE_KEY);
+        String json = "{\""+DocumentSchema.ITEMS_KEY+"\":["+extra+","+b.toJson()+","+unknown+","+untitled+","
+                +ab.toJson()+","+ac.toJson()+","+openEnded+"],\""+DocumentSchema.SCALE_KEY+"\":2.0}";
+
+        GraphDocument document = new GraphDocument();
+        MapReader reader = new MapReader(document,document.getCamera());
+        reader.read(new ByteArrayInputStream(json.getBytes("UTF-8")),-1);
+        assertEquals(2,document.getNodes().size());
+        assertEquals(1,document.getEdges().size());
+        assertEquals(3,reader.getItemsRead());
+        assertEquals(4,reader.getItemsSkipped());
+        //ids that are only keys are not kept, the edge was resolved through new keys
+        GraphNode loadedA = document.getNodes().get(0);
+        assertNull(loadedA.getExternalId());
+        assertNotEquals(a.getKey(),loadedA.getKey());
+        assertSame(loadedA,document.getEdges().get(0).getFrom());
+        //a file without a pan was saved before the camera was, it opens at scale 1
+        assertEquals(1f,document.getCamera().getScale(),0);
+    }
+
+    @Test
+    public void read_reportsProgress() throws IOException, JSONException {
+        String saved = TestDocuments.random(19,2000,1000,50000,false).toJson().toString();
+        final long total = saved.getBytes("UTF-8").length;
+        final long[] last = {0,0};
+        final int[] reports = {0};
+        read(saved,new MapReader.ProgressListener() {
+            @Override
+            public void onProgress(long bytesRead, long totalBytes, int itemsRead) {
+                assertEquals(total,totalBytes);
+                assertTrue(bytesRead >= last[0]);
+                assertTrue(itemsRead >= last[1]);
+                last[0] = bytesRead;
+                last[1] = itemsRead;
+                reports[0]++;
+            }
+        });
+        assertEquals(total,last[0]);
+        assertEquals(3000,last[1]);
+        assertEquals(3000/MapReader.DEFAULT_PROGRESS_INTERVAL+1,reports[0]);
+    }
+
+    @Test
+    public void read_allocatesLessThanTreeLoad() throws IOException, JSONException {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        byte[] bytes = TestDocuments.random(19,4000,6000,50000,false).toJson().toString().getBytes("UTF-8");
+
+        long streamed = 0, tree = 0;
+        for (int i = 0; i < 2; i++) {
+            long before = TestDocuments.allocatedBytes();
+            GraphDocument document = new GraphDocument();
+            new MapReader(document,document.getCamera()).read(new ByteArrayInputStream(bytes),bytes.length);
+            streamed = TestDocuments.allocatedBytes()-before;
+            assertEquals(4000,document.getNodes().size());
+
+            before = TestDocuments.allocatedBytes();
+            document = GraphDocument.fromJson(new JSONObject(new String(bytes,"UTF-8")));
+            tree = TestDocuments.allocatedBytes()-before;
+            assertEquals(6000,document.getEdges().size());
+        }
+        assertTrue("streamed "+streamed+", tree "+tree,streamed < tree);
+    }
+}
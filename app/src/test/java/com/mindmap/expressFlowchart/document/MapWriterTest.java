@@ -0,0 +1,140 @@
+package com.mindmap.expressFlowchart.document;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Streaming saves must give the file the org.json tree gave
+ */
+public class MapWriterTest {
+
+    private static String write(GraphDocument document) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new MapWriter(document).write(out);
+        return out.toString("UTF-8");
+    }
+
+    @Test
+    public void write_givesAndroidJsonBytes() throws IOException {
+        GraphDocument document = new GraphDocument();
+        document.getCamera().set(0.5f,-120.25f,0.1f);
+        GraphNode a = new GraphNode("a",10.5f,-20f,80,"a/b \"c\"","tab\tline\n\u0001",0xFF00FF00,NodeShape.DIAMOND,32);
+        GraphNode b = new GraphNode("b",400,300,"\u00e9");
+        document.add(a);
+        document.add(b);
+        document.add(new GraphEdge("e",a,b,0xFF000000,"","",ArrowShape.DOUBLE,28));
+        //an edge still being drawn is not saved
+        document.add(new GraphEdge(null,a,50,50));
+
+        //what JSONObject.toString() writes on Android, keys in the order they were put
+        String expected = "{\"scale\":0.5,\"translate_x\":-120.25,\"translate_y\":0.10000000149011612,\"items\":["
+                + "{\"drawable_type\":\"com.mindmap.expressFlowchart.Node\",\"node_centre_x\":10.5,\"node_centre_y\":-20,"
+                + "\"node_radius\":80,\"drawable_id\":\"a\",\"node_title\":\"a\\/b \\\"c\\\"\",\"node_description\":\"tab\\tline\\n\\u0001\","
+                + "\"node_color\":-16711936,\"node_shape\":\"DIAMOND\",\"node_text_size\":32},"
+                + "{\"drawable_type\":\"com.mindmap.expressFlowchart.Node\",\"node_centre_x\":400,\"node_centre_y\":300,"
+                + "\"node_radius\":100,\"drawable_id\":\"b\",\"node_title\":\"\u00e9\",\"node_description\":\"\","
+                + "\"node_color\":-16776961,\"node_shape\":\"CIRCLE\",\"node_text_size\":40},"
+                + "{\"drawable_type\":\"com.mindmap.expressFlowchart.Edge\",\"edge_start_node\":\"a\",\"edge_end_node\":\"b\","
+                + "\"edge_stroke_width\":14,\"drawable_id\":\"e\",\"edge_title\":\"\",\"edge_description\":\"\","
+                + "\"edge_color\":-16777216,\"edge_arrow_type\":\"DOUBLE\",\"edge_text_size\":28}]}";
+        MapWriter writer = new MapWriter(document);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.write(out);
+        assertEquals(expected,out.toString("UTF-8"));
+        assertEquals(3,writer.getItemsWritten());
+    }
+
+    @Test
+    public void write_matchesTreeAndReadsBack() throws IOException, JSONException {
+        GraphDocument source = TestDocuments.random(20,2000,3000,50000,false);
+        source.getCamera().set(1.75f,300f,-42.5f);
+        source.bringToFront(source.getNodes().get(0));
+        String written = write(source);
+        //the JVM org.json keeps keys in a HashMap, so compare what both trees write
+        assertEquals(source.toJson().toString(),new JSONObject(written).toString());
+
+        GraphDocument loaded = new GraphDocument();
+        new MapReader(loaded,loaded.getCamera()).read(new ByteArrayInputStream(written.getBytes("UTF-8")),-1);
+        assertEquals(2000,loaded.getNodes().size());
+        assertEquals(3000,loaded.getEdges().size());
+        //the node brought to the front was written last of its layer
+        assertEquals("node 0",loaded.getNodes().get(1999).getTitle());
+    }
+
+    @Test
+    public void numbersAndNesting_followOrgJson() throws IOException {
+        assertEquals("0",JsonStreamWriter.numberToString(0));
+        assertEquals("-0",JsonStreamWriter.numberToString(-0d));
+        assertEquals("-16776961",JsonStreamWriter.numberToString(-16776961));
+        assertEquals("1.0E20",JsonStreamWriter.numberToString(1e20));
+        assertEquals("100000000000",JsonStreamWriter.numberToString(1e11));
+        assertEquals("1.25E-5",JsonStreamWriter.numberToString(1.25e-5));
+
+        StringWriter text = new StringWriter();
+        JsonStreamWriter writer = new JsonStreamWriter(text);
+        writer.beginArray().value(true).nullValue().value((String) null).beginObject().endObject().beginArray().endArray().endArray();
+        writer.close();
+        assertEquals("[true,null,null,{},[]]",text.toString());
+
+        writer = new JsonStreamWriter(new StringWriter());
+        writer.beginObject();
+        try {
+            writer.value(1);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            writer.name("x").value(Float.NaN);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            writer.close();
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void write_allocatesLessThanTree() throws IOException, JSONException {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        GraphDocument document = TestDocuments.random(20,4000,6000,50000,false);
+        //only the bytes are counted, as a file would take them
+        OutputStream sink = new OutputStream() {
+            long mCount = 0;
+
+            @Override
+            public void write(int b) {
+                mCount++;
+            }
+
+            @Override
+            public void write(byte[] buffer, int offset, int length) {
+                mCount += length;
+            }
+        };
+
+        long streamed = 0, tree = 0;
+        for (int i = 0; i < 2; i++) {
+            long before = TestDocuments.allocatedBytes();
+            new MapWriter(document).write(sink);
+            streamed = TestDocuments.allocatedBytes()-before;
+
+            before = TestDocuments.allocatedBytes();
+            sink.write(document.toJson().toString().getBytes("UTF-8"));
+            tree = TestDocuments.allocatedBytes()-before;
+        }
+        assertTrue("streamed "+streamed+", tree "+tree,streamed*4 < tree);
+    }
+}
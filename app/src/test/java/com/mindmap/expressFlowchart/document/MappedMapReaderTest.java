@@ -0,0 +1,168 @@
+package com.mindmap.expressFlowchart.document;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Binary .map files read through a mapping, with descriptions left in it until they are asked for
+ */
+public class MappedMapReaderTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File file(byte[] bytes) throws IOException {
+        File file = mFolder.newFile();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(bytes);
+        out.close();
+        return file;
+    }
+
+    private static GraphDocument readMapped(File file) throws IOException {
+        GraphDocument document = new GraphDocument();
+        MappedMapReader reader = new MappedMapReader(document,document.getCamera());
+        reader.setKeepIds(true);
+        reader.read(file);
+        return document;
+    }
+
+    private static GraphDocument readStreamed(byte[] bytes) throws IOException {
+        GraphDocument document = new GraphDocument();
+        BinaryMapReader reader = new BinaryMapReader(document,document.getCamera());
+        reader.setKeepIds(true);
+        reader.read(new ByteArrayInputStream(bytes),bytes.length);
+        return document;
+    }
+
+    private static GraphDocument describedDocument(int nodeCount,int descriptionLength) {
+        Random random = new Random(24);
+        GraphDocument document = new GraphDocument();
+        char[] text = new char[descriptionLength];
+        for (int i = 0; i < nodeCount; i++) {
+            for (int j = 0; j < text.length; j++)
+                text[j] = (char) ('a'+random.nextInt(26));
+            document.add(new GraphNode(null,random.nextFloat()*5000,random.nextFloat()*5000,100,"node "+i,new String(text),
+                    GraphNode.DEFAULT_COLOR,NodeShape.CIRCLE,GraphNode.DEFAULT_TEXT_SIZE));
+        }
+        for (int i = 1; i < nodeCount; i++)
+            document.add(new GraphEdge(null,document.getNodes().get(i-1),document.getNodes().get(i),GraphEdge.DEFAULT_COLOR,
+                    "edge "+i,"about edge "+i,ArrowShape.END,GraphEdge.DEFAULT_TEXT_SIZE));
+        return document;
+    }
+
+    @Test
+    public void readsWhatTheStreamReaderReads() throws IOException {
+        GraphDocument source = new GraphDocument();
+        source.getCamera().set(0.3f,-1234.5f,77.25f);
+        GraphNode a = new GraphNode(null,10.5f,-20f,80,"a/b \"c\"","line\n\u00e9 \u4e2d",0x8000FF00,NodeShape.DIAMOND,32);
+        GraphNode b = new GraphNode("e3a1b7c2-5a44-4c1e-9d2f-6f0b1c2d3e4f",400,300,"uuid");
+        GraphNode c = new GraphNode("custom",-1e-3f,Float.MAX_VALUE,"custom");
+        source.add(a);
+        source.add(b);
+        source.add(c);
+        source.add(new GraphEdge(null,a,b,0xFF000000,"joins","line\n\u00e9 \u4e2d",ArrowShape.DOUBLE,28));
+        source.add(new GraphEdge("edge",c,c,GraphEdge.DEFAULT_COLOR,"","",ArrowShape.NONE,GraphEdge.DEFAULT_TEXT_SIZE));
+        source.bringToFront(a);
+        byte[] bytes = TestDocuments.binary(source);
+
+        GraphDocument mapped = readMapped(file(bytes));
+        assertArrayEquals(TestDocuments.json(readStreamed(bytes)),TestDocuments.json(mapped));
+        assertEquals(0.3f,mapped.getCamera().getScale(),0f);
+    }
+
+    @Test
+    public void descriptionsAreDecodedWhenAskedFor() throws IOException {
+        GraphDocument source = describedDocument(3,100);
+        //the same description twice is one string of the table
+        source.getNodes().get(2).setDescription(source.getNodes().get(0).getDescription());
+        GraphDocument document = readMapped(file(TestDocuments.binary(source)));
+
+        GraphNode first = document.getNodes().get(0);
+        CharSequence text = document.getNodeStore().getDescriptionText(first.getHandle());
+        assertTrue(text instanceof LazyText);
+        assertFalse(((LazyText) text).isDecoded());
+        assertSame(text,document.getNodeStore().getDescriptionText(document.getNodes().get(2).getHandle()));
+        //copies for a save in the background do not decode them either
+        GraphDocument snapshot = document.snapshot();
+        assertSame(text,snapshot.getNodeStore().getDescriptionText(snapshot.getNodes().get(0).getHandle()));
+
+        assertEquals(source.getNodes().get(0).getDescription(),first.getDescription());
+        assertTrue(document.getNodeStore().getDescriptionText(first.getHandle()) instanceof String);
+        assertEquals(source.getNodes().get(2).getDescription(),document.getNodes().get(2).getDescription());
+        assertEquals("about edge 2",document.getEdges().get(1).getDescription());
+        assertEquals("about edge 2",snapshot.getEdges().get(1).getDescription());
+    }
+
+    @Test
+    public void readsFromAnyBuffer() throws IOException {
+        GraphDocument source = describedDocument(50,10);
+        GraphDocument document = new GraphDocument();
+        new MappedMapReader(document,document.getCamera()).read(ByteBuffer.wrap(TestDocuments.binary(source)));
+        assertEquals(50,document.getNodes().size());
+        assertEquals(49,document.getEdges().size());
+        assertEquals(source.getNodes().get(49).getDescription(),document.getNodes().get(49).getDescription());
+    }
+
+    @Test
+    public void onlyPlainBinaryFilesAreMapped() throws IOException {
+        GraphDocument source = describedDocument(5,100);
+        File binary = mFolder.newFile();
+        File json = mFolder.newFile();
+        File compressed = mFolder.newFile();
+        MapIo.write(source,binary,true,null);
+        MapIo.write(source,json,false,null);
+        MapIo.write(source,compressed,true,MapCompression.BEST_SPEED,null);
+        for (File file : new File[]{binary,json,compressed}) {
+            GraphDocument document = new GraphDocument();
+            MapIo.read(file,document,document.getCamera(),null);
+            CharSequence text = document.getNodeStore().getDescriptionText(document.getNodes().get(0).getHandle());
+            assertEquals(file == binary,text instanceof LazyText);
+            assertEquals(source.getNodes().get(0).getDescription(),text.toString());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedFileFails() throws IOException {
+        byte[] bytes = TestDocuments.binary(describedDocument(20,10));
+        readMapped(file(Arrays.copyOf(bytes,bytes.length-5)));
+    }
+
+    @Test
+    public void openingAllocationDoesNotFollowDescriptions() throws IOException {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        long[] mapped = new long[2], streamed = new long[2];
+        int[] lengths = {10,4000};
+        for (int size = 0; size < 2; size++) {
+            GraphDocument source = describedDocument(2000,lengths[size]);
+            byte[] bytes = TestDocuments.binary(source);
+            File file = file(bytes);
+            //the second round is measured
+            for (int round = 0; round < 2; round++) {
+                long before = TestDocuments.allocatedBytes();
+                assertEquals(1999,readMapped(file).getEdges().size());
+                mapped[size] = TestDocuments.allocatedBytes()-before;
+                before = TestDocuments.allocatedBytes();
+                readStreamed(bytes);
+                streamed[size] = TestDocuments.allocatedBytes()-before;
+            }
+        }
+        //8 MB more of descriptions, the streamed read decodes them all, the mapped one none of them
+        long descriptionBytes = 2000L*(lengths[1]-lengths[0]);
+        assertTrue("streamed "+Arrays.toString(streamed),streamed[1]-streamed[0] > descriptionBytes/2);
+        assertTrue("mapped "+Arrays.toString(mapped),mapped[1]-mapped[0] < descriptionBytes/10);
+    }
+}
@@ -0,0 +1,55 @@
+package com.mindmap.expressFlowchart.document;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Documents and encodings the reader and writer tests share
+ */
+final class TestDocuments {
+
+    private TestDocuments() {
+    }
+
+    /**
+     * Nodes scattered over a square and titled edges between random pairs of them
+     * @param seed   each test keeps its own so its documents stay what they were
+     * @param extent side of the square the nodes are scattered over
+     * @param uuids  true for ids as older versions saved them, false for nodes that only have keys
+     */
+    static GraphDocument random(long seed,int nodeCount,int edgeCount,float extent,boolean uuids) {
+        Random random = new Random(seed);
+        GraphDocument document = new GraphDocument();
+        for (int i = 0; i < nodeCount; i++)
+            document.add(new GraphNode(uuids ? GraphItem.newId() : null,random.nextFloat()*extent,random.nextFloat()*extent,"node "+i));
+        for (int i = 0; i < edgeCount; i++) {
+            GraphNode from = document.getNodes().get(random.nextInt(nodeCount));
+            GraphNode to = document.getNodes().get(random.nextInt(nodeCount));
+            document.add(new GraphEdge(uuids ? GraphItem.newId() : null,from,to,GraphEdge.DEFAULT_COLOR,"edge "+i,"",
+                    ArrowShape.END,GraphEdge.DEFAULT_TEXT_SIZE));
+        }
+        return document;
+    }
+
+    static byte[] json(GraphDocument document) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new MapWriter(document).write(out);
+        return out.toByteArray();
+    }
+
+    static byte[] binary(GraphDocument document) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BinaryMapWriter(document).write(out);
+        return out.toByteArray();
+    }
+
+    /**
+     * @return bytes the calling thread allocated so far
+     */
+    static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}